@@ -4,12 +4,14 @@ import net.sf.saxon.TransformerFactoryImpl;
 
 import org.apache.log4j.Logger;
 import org.fao.geonet.utils.CachedTransformer;
+import org.fao.geonet.utils.TransformerStatistics;
 
 import java.io.File;
 import java.net.URI;
 import java.net.URISyntaxException;
-import java.util.HashMap;
+import java.util.Collection;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 import javax.xml.transform.Source;
 import javax.xml.transform.Templates;
@@ -20,27 +22,33 @@ import javax.xml.transform.stream.StreamSource;
 
 /**
  * Caching implementation of JAXP transformer factory. This implementation caches templates that
- * were loaded from local files so that consequent calls to local stylesheets require stylesheet
- * reparsing only if stylesheet was changed.
+ * were loaded from local files so that consequent calls to local stylesheets do not require
+ * stylesheet reparsing.
+ *
+ * The cache is a concurrent map so transformers are handed out without locking. The
+ * stylesheet modification date is only checked when watch mode is enabled using the
+ * {@link #WATCH_MODE} system property (eg. when developing stylesheets), otherwise
+ * {@link #clearCache()} must be called to reload modified stylesheets.
  */
 public class CachingTransformerFactory extends TransformerFactoryImpl implements CachedTransformer {
+    /**
+     * System property enabling the check of the stylesheet modification date on each call.
+     */
+    public static final String WATCH_MODE = "geonetwork.xslt.watch";
     /**
      * Factory logger.
      */
     protected static final Logger logger =
         Logger.getLogger(CachingTransformerFactory.class);
     /**
-     * Active readers count.
-     */
-    static int activeReaders = 0;
-    /**
-     * Active writers count.
+     * Map to hold templates cache.
      */
-    static int activeWriters = 0;
+    private static final Map<String, TemplatesCacheEntry> templatesCache = new ConcurrentHashMap<String, TemplatesCacheEntry>();
+
     /**
-     * Map to hold templates cache.
+     * Check modification date of cached stylesheets.
      */
-    private static Map<String, TemplatesCacheEntry> templatesCache = new HashMap<String, TemplatesCacheEntry>();
+    private final boolean watchMode = Boolean.parseBoolean(System.getProperty(WATCH_MODE, "false"));
 
     /**
      * Clear the stylesheet cache. This is not part of the JAXP TransformerFactoryImpl so users
@@ -48,16 +56,31 @@ public class CachingTransformerFactory extends TransformerFactoryImpl implements
      * broken.
      */
     public void clearCache() {
-        beforeWrite();
         templatesCache.clear();
-        afterWrite();
+    }
+
+    /**
+     * Compiles the stylesheets and adds them to the cache. Stylesheets which can not be compiled
+     * on their own (eg. fragments only used by xsl:include) are skipped.
+     *
+     * @param stylesheets stylesheet files to compile.
+     */
+    public void precompile(final Collection<File> stylesheets) {
+        stylesheets.parallelStream().forEach(file -> {
+            try {
+                getTemplates(file);
+            } catch (TransformerConfigurationException e) {
+                if (logger.isDebugEnabled()) {
+                    logger.debug("Stylesheet [" + file.getAbsolutePath() + "] not precompiled: " + e.getMessage());
+                }
+            }
+        });
     }
 
     /**
      * Process the source into a Transformer object. If source is a StreamSource with
      * <code>systemID</code> pointing to a file, transformer is produced from a cached templates
-     * object. Cache is done in soft references; cached objects are reloaded, when file's date of
-     * last modification changes.
+     * object.
      *
      * @param source An object that holds a URI, input stream, etc.
      * @return A Transformer object that may be used to perform a transformation in a single thread,
@@ -94,102 +117,43 @@ public class CachingTransformerFactory extends TransformerFactoryImpl implements
      */
     protected Transformer newTransformer(final File file)
         throws TransformerConfigurationException {
-        // Search the cache for the templates entry
-        TemplatesCacheEntry templatesCacheEntry = read(file.getAbsolutePath());
-
-        // If entry found
-        if (templatesCacheEntry != null) {
-            // Check timestamp of modification
-            if (templatesCacheEntry.lastModified
-                < templatesCacheEntry.templatesFile.lastModified())
-                templatesCacheEntry = null;
+        return getTemplates(file).newTransformer();
+    }
+
+    /**
+     * Returns the compiled templates for a file, compiling it if not yet in the cache (or if
+     * modified in watch mode). Two threads requesting the same uncached stylesheet may both
+     * compile it, the last one wins.
+     */
+    private Templates getTemplates(final File file)
+        throws TransformerConfigurationException {
+        final String absolutePath = file.getAbsolutePath();
+        TemplatesCacheEntry templatesCacheEntry = templatesCache.get(absolutePath);
+
+        // Check timestamp of modification
+        if (templatesCacheEntry != null && watchMode
+            && templatesCacheEntry.lastModified < file.lastModified()) {
+            templatesCacheEntry = null;
         }
-        // If no templatesEntry is found or this entry was obsolete
+
         if (templatesCacheEntry == null) {
-            //System.out.println("Loading transformation [" + file.getAbsolutePath() + "].");
             // If this file does not exists, throw the exception
             if (!file.exists()) {
                 throw new TransformerConfigurationException(
                     "Requested transformation ["
-                        + file.getAbsolutePath()
+                        + absolutePath
                         + "] does not exist.");
             }
 
-            // Create new cache entry
-            templatesCacheEntry =
-                new TemplatesCacheEntry(newTemplates(new StreamSource(file)), file);
+            final long lastModified = file.lastModified();
+            final long start = System.nanoTime();
+            final Templates templates = newTemplates(new StreamSource(file));
+            TransformerStatistics.recordCompilation(absolutePath, System.nanoTime() - start);
 
-            // Save this entry to the cache
-            write(file.getAbsolutePath(), templatesCacheEntry);
-        } else {
-            //System.out.println("Using cached transformation [" + file.getAbsolutePath() + "].");
+            templatesCacheEntry = new TemplatesCacheEntry(templates, lastModified);
+            templatesCache.put(absolutePath, templatesCacheEntry);
         }
-        return templatesCacheEntry.templates.newTransformer();
-    }
-
-    /**
-     * Returns a templates cache entry for the specified absolute path.
-     *
-     * @param absolutePath absolute path of the entry.
-     * @return Templates cache entry for the specified path.
-     */
-    protected TemplatesCacheEntry read(String absolutePath) {
-        beforeRead();
-        final TemplatesCacheEntry templatesCacheEntry = templatesCache.get(absolutePath);
-        afterRead();
-        return templatesCacheEntry;
-    }
-
-    /**
-     * Saves templates cache entry for the specified absolute path.
-     *
-     * @param absolutePath        absolute path of the entry.
-     * @param templatesCacheEntry templates cache entry to save.
-     */
-    protected void write(String absolutePath, TemplatesCacheEntry templatesCacheEntry) {
-        beforeWrite();
-        templatesCache.put(absolutePath, templatesCacheEntry);
-        afterWrite();
-    }
-
-    /**
-     * Invoked just before reading, waits until reading is allowed.
-     */
-    protected synchronized void beforeRead() {
-        while (activeWriters > 0)
-            try {
-                wait();
-            } catch (InterruptedException iex) {
-            }
-        ++activeReaders;
-    }
-
-    /**
-     * Invoked just after reading.
-     */
-    protected synchronized void afterRead() {
-        --activeReaders;
-        notifyAll();
-    }
-
-    /**
-     * Invoked just before writing, waits until writing is allowed.
-     */
-    protected synchronized void beforeWrite() {
-        while (activeReaders > 0 || activeWriters > 0)
-            try {
-                wait();
-            } catch (InterruptedException iex) {
-            }
-        ++activeWriters;
-    }
-
-    /**
-     * Invoked just after writing.
-     */
-    protected synchronized void afterWrite() {
-        --activeWriters;
-        notifyAll();
+        return templatesCacheEntry.templates;
     }
 
     /**
@@ -197,30 +161,24 @@ public class CachingTransformerFactory extends TransformerFactoryImpl implements
      */
     private static final class TemplatesCacheEntry {
         /**
-         * When was the cached entry last modified.
+         * When was the stylesheet last modified when it was compiled.
          */
-        private long lastModified;
+        private final long lastModified;
 
         /**
          * Cached templates object.
          */
-        private Templates templates;
-
-        /**
-         * Templates file object.
-         */
-        private File templatesFile;
+        private final Templates templates;
 
         /**
          * Constructs a new cache entry.
          *
-         * @param templates     templates to cache.
-         * @param templatesFile file, from which this transformer was loaded.
+         * @param templates    templates to cache.
+         * @param lastModified modification date of the file, from which this transformer was loaded.
          */
-        private TemplatesCacheEntry(final Templates templates, final File templatesFile) {
+        private TemplatesCacheEntry(final Templates templates, final long lastModified) {
             this.templates = templates;
-            this.templatesFile = templatesFile;
-            this.lastModified = templatesFile.lastModified();
+            this.lastModified = lastModified;
         }
     }
 }
@@ -23,9 +23,17 @@
 
 package org.fao.geonet.utils;
 
+import java.io.File;
+import java.util.Collection;
+
 /**
  * User: bloemj Date: 1-7-2015 Time: 17:12
  */
 public interface CachedTransformer {
     void clearCache();
+
+    /**
+     * Compile stylesheets ahead of their first use.
+     */
+    void precompile(Collection<File> stylesheets);
 }
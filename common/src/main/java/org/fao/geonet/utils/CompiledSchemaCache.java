@@ -0,0 +1,123 @@
+/*
+ * Copyright (C) 2001-2016 Food and Agriculture Organization of the
+ * United Nations (FAO-UN), United Nations World Food Programme (WFP)
+ * and United Nations Environment Programme (UNEP)
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or (at
+ * your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301, USA
+ *
+ * Contact: Jeroen Ticheler - FAO - Viale delle Terme di Caracalla 2,
+ * Rome - Italy. email: geonetwork@osgeo.org
+ */
+
+package org.fao.geonet.utils;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.util.concurrent.UncheckedExecutionException;
+import org.apache.commons.lang.StringEscapeUtils;
+
+import javax.xml.validation.Schema;
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.nio.file.Path;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+
+/**
+ * Compiled XSD schemas used to validate metadata records. Compiling the XSDs of a schema plugin
+ * (eg. GML, xlink, gco and gmd for ISO19139) takes much longer than validating a record, so
+ * compiled schemas are kept until {@link #clear()} is called, for example when a schema plugin
+ * is added or updated.
+ *
+ * <p>{@link Schema}s are thread safe. A schema is compiled only once, threads validating with a
+ * schema being compiled wait for it.</p>
+ */
+public final class CompiledSchemaCache {
+    private static final int MAXIMUM_SIZE = 200;
+
+    private static final Cache<String, Schema> SCHEMAS = CacheBuilder.newBuilder()
+        .maximumSize(MAXIMUM_SIZE)
+        .build();
+
+    private CompiledSchemaCache() {
+    }
+
+    /**
+     * @return the schema of an .xsd file, compiled by the loader if not cached yet.
+     */
+    public static Schema get(Path schemaPath, Callable<Schema> loader) throws Exception {
+        return get("path:" + schemaPath.toUri(), loader);
+    }
+
+    /**
+     * @param schemaName     the metadata schema, its resolver is used to compile the schema.
+     * @param schemaLocation the value of a xsi:schemaLocation attribute.
+     * @return the schema of the xsi:schemaLocation hints, compiled by the loader if not cached yet.
+     */
+    public static Schema get(String schemaName, String schemaLocation, Callable<Schema> loader) throws Exception {
+        return get("hints:" + schemaName + "\n" + schemaLocation.trim(), loader);
+    }
+
+    private static Schema get(String key, Callable<Schema> loader) throws Exception {
+        try {
+            return SCHEMAS.get(key, loader);
+        } catch (ExecutionException | UncheckedExecutionException e) {
+            if (e.getCause() instanceof Exception) {
+                throw (Exception) e.getCause();
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * Forget all compiled schemas. XSDs of a schema plugin can import the ones of other plugins
+     * so all of them are removed.
+     */
+    public static void clear() {
+        SCHEMAS.invalidateAll();
+    }
+
+    public static long size() {
+        return SCHEMAS.size();
+    }
+
+    /**
+     * Build a schema importing the namespaces of xsi:schemaLocation hints, to compile the
+     * schemas used by documents validated with their hints.
+     *
+     * @return the schema document or null if the hints are not pairs of a namespace and an
+     * absolute location.
+     */
+    static String buildSchemaLocationImports(String schemaLocation) {
+        String[] tokens = schemaLocation.trim().split("\\s+");
+        if (tokens.length == 0 || tokens.length % 2 != 0) {
+            return null;
+        }
+        StringBuilder xsd = new StringBuilder("<xs:schema xmlns:xs=\"http://www.w3.org/2001/XMLSchema\">");
+        for (int i = 0; i < tokens.length; i += 2) {
+            try {
+                if (!new URI(tokens[i + 1]).isAbsolute()) {
+                    return null;
+                }
+            } catch (URISyntaxException e) {
+                return null;
+            }
+            xsd.append("<xs:import namespace=\"").append(StringEscapeUtils.escapeXml(tokens[i]))
+                .append("\" schemaLocation=\"").append(StringEscapeUtils.escapeXml(tokens[i + 1]))
+                .append("\"/>");
+        }
+        return xsd.append("</xs:schema>").toString();
+    }
+}
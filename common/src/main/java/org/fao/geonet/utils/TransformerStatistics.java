@@ -0,0 +1,86 @@
+/*
+ * Copyright (C) 2001-2016 Food and Agriculture Organization of the
+ * United Nations (FAO-UN), United Nations World Food Programme (WFP)
+ * and United Nations Environment Programme (UNEP)
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or (at
+ * your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301, USA
+ *
+ * Contact: Jeroen Ticheler - FAO - Viale delle Terme di Caracalla 2,
+ * Rome - Italy. email: geonetwork@osgeo.org
+ */
+
+package org.fao.geonet.utils;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Compilation and execution time of XSL stylesheets, by stylesheet absolute path.
+ */
+public final class TransformerStatistics {
+    private static final Map<String, Entry> STATISTICS = new ConcurrentHashMap<>();
+
+    private TransformerStatistics() {
+    }
+
+    public static void recordCompilation(String stylesheet, long durationNanos) {
+        Entry entry = STATISTICS.computeIfAbsent(stylesheet, k -> new Entry());
+        entry.compilations.increment();
+        entry.compilationTime.add(durationNanos);
+    }
+
+    public static void recordExecution(String stylesheet, long durationNanos) {
+        Entry entry = STATISTICS.computeIfAbsent(stylesheet, k -> new Entry());
+        entry.executions.increment();
+        entry.executionTime.add(durationNanos);
+    }
+
+    /**
+     * @return a read only view of the statistics.
+     */
+    public static Map<String, Entry> getStatistics() {
+        return Collections.unmodifiableMap(STATISTICS);
+    }
+
+    public static void clear() {
+        STATISTICS.clear();
+    }
+
+    public static final class Entry {
+        private final LongAdder compilations = new LongAdder();
+        private final LongAdder compilationTime = new LongAdder();
+        private final LongAdder executions = new LongAdder();
+        private final LongAdder executionTime = new LongAdder();
+
+        public long getCompilations() {
+            return compilations.sum();
+        }
+
+        public long getCompilationTimeMillis() {
+            return TimeUnit.NANOSECONDS.toMillis(compilationTime.sum());
+        }
+
+        public long getExecutions() {
+            return executions.sum();
+        }
+
+        public long getExecutionTimeMillis() {
+            return TimeUnit.NANOSECONDS.toMillis(executionTime.sum());
+        }
+    }
+}
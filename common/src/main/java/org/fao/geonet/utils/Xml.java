@@ -72,6 +72,7 @@ import javax.xml.bind.Unmarshaller;
 import javax.xml.transform.Result;
 import javax.xml.transform.Source;
 import javax.xml.transform.Transformer;
+import javax.xml.transform.TransformerConfigurationException;
 import javax.xml.transform.TransformerException;
 import javax.xml.transform.TransformerFactory;
 import javax.xml.transform.URIResolver;
@@ -102,10 +103,12 @@ import java.nio.charset.CharsetDecoder;
 import java.nio.charset.CharsetEncoder;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.FileSystemNotFoundException;
+import java.nio.file.FileSystems;
 import java.nio.file.Files;
 import java.nio.file.NoSuchFileException;
 import java.nio.file.Path;
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Iterator;
@@ -115,6 +118,7 @@ import java.util.Set;
 import java.util.UUID;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
+import java.util.stream.Stream;
 
 import static org.fao.geonet.Constants.ENCODING;
 
@@ -136,6 +140,11 @@ public final class Xml {
         + "\ud800\udc00-\udbff\udfff"
         + "]";
 
+    /**
+     * The transformer factory on which the URI resolver and saxon attributes were set.
+     */
+    private static volatile TransformerFactory configuredTransformerFactory;
+
     public static SAXBuilder getSAXBuilder(boolean validate) {
         SAXBuilder builder = getSAXBuilderWithPathXMLResolver(validate, null);
         Resolver resolver = ResolverWrapper.getInstance();
@@ -491,42 +500,86 @@ public final class Xml {
     transform(Element xml, Path styleSheetPath, Result result, Map<String, Object> params) throws Exception {
         NioPathHolder.setBase(styleSheetPath);
         Source srcXml = new JDOMSource(new Document((Element) xml.detach()));
-        try (InputStream in = IO.newInputStream(styleSheetPath)) {
-            Source srcSheet = new StreamSource(in, styleSheetPath.toUri().toASCIIString());
-
-            // Dear old saxon likes to yell loudly about each and every XSLT 1.0
-            // stylesheet so switch it off but trap any exceptions because this
-            // code is run on transformers other than saxon
-            TransformerFactory transFact = TransformerFactoryFactory.getTransformerFactory();
-            transFact.setURIResolver(new JeevesURIResolver());
-            try {
-                transFact.setAttribute(FeatureKeys.VERSION_WARNING, false);
-                transFact.setAttribute(FeatureKeys.LINE_NUMBERING, true);
-                transFact.setAttribute(FeatureKeys.PRE_EVALUATE_DOC_FUNCTION, false);
-                transFact.setAttribute(FeatureKeys.RECOVERY_POLICY, Configuration.RECOVER_SILENTLY);
+        TransformerFactory transFact = getConfiguredTransformerFactory();
 
-                // Add the following to get timing info on xslt transformations
-                //transFact.setAttribute(FeatureKeys.TIMING,true);
-            } catch (IllegalArgumentException e) {
-                Log.warning(Log.ENGINE, "WARNING: transformerfactory doesnt like saxon attributes!", e);
-            } finally {
-                transFact.setURIResolver(new JeevesURIResolver());
-                Transformer t = transFact.newTransformer(srcSheet);
-                if (params != null) {
-                    for (Map.Entry<String, Object> param : params.entrySet()) {
-                        t.setParameter(param.getKey(), param.getValue());
-                    }
+        Transformer t;
+        if (styleSheetPath.getFileSystem() == FileSystems.getDefault()) {
+            // Let the (caching) factory read the file if it is not compiled yet
+            t = transFact.newTransformer(new StreamSource(styleSheetPath.toFile()));
+        } else {
+            try (InputStream in = IO.newInputStream(styleSheetPath)) {
+                t = transFact.newTransformer(new StreamSource(in, styleSheetPath.toUri().toASCIIString()));
+            }
+        }
+        if (params != null) {
+            for (Map.Entry<String, Object> param : params.entrySet()) {
+                t.setParameter(param.getKey(), param.getValue());
+            }
 
-                if (params.containsKey("geonet-force-xml")) {
-                    ((Controller) t).setOutputProperty("indent", "yes");
-                    ((Controller) t).setOutputProperty("method", "xml");
-                    ((Controller) t).setOutputProperty("{http://saxon.sf.net/}indent-spaces", "3");
-                }
+            if (params.containsKey("geonet-force-xml")) {
+                ((Controller) t).setOutputProperty("indent", "yes");
+                ((Controller) t).setOutputProperty("method", "xml");
+                ((Controller) t).setOutputProperty("{http://saxon.sf.net/}indent-spaces", "3");
+            }
+        }
+
+        long start = System.nanoTime();
+        t.transform(srcXml, result);
+        TransformerStatistics.recordExecution(styleSheetPath.toAbsolutePath().toString(), System.nanoTime() - start);
+    }
 
+    /**
+     * Returns the shared transformer factory, configured once with the GeoNetwork URI resolver
+     * and saxon attributes. The factory is only reconfigured when it is replaced (see
+     * {@link TransformerFactoryFactory#init(String)}) so transformations do not mutate it.
+     */
+    private static TransformerFactory getConfiguredTransformerFactory() throws TransformerConfigurationException {
+        TransformerFactory transFact = TransformerFactoryFactory.getTransformerFactory();
+        if (transFact != configuredTransformerFactory) {
+            synchronized (Xml.class) {
+                if (transFact != configuredTransformerFactory) {
+                    transFact.setURIResolver(new JeevesURIResolver());
+                    // Dear old saxon likes to yell loudly about each and every XSLT 1.0
+                    // stylesheet so switch it off but trap any exceptions because this
+                    // code is run on transformers other than saxon
+                    try {
+                        transFact.setAttribute(FeatureKeys.VERSION_WARNING, false);
+                        transFact.setAttribute(FeatureKeys.LINE_NUMBERING, true);
+                        transFact.setAttribute(FeatureKeys.PRE_EVALUATE_DOC_FUNCTION, false);
+                        transFact.setAttribute(FeatureKeys.RECOVERY_POLICY, Configuration.RECOVER_SILENTLY);
+
+                        // Add the following to get timing info on xslt transformations
+                        //transFact.setAttribute(FeatureKeys.TIMING,true);
+                    } catch (IllegalArgumentException e) {
+                        Log.warning(Log.ENGINE, "WARNING: transformerfactory doesnt like saxon attributes!", e);
+                    }
+                    configuredTransformerFactory = transFact;
                 }
-                t.transform(srcXml, result);
             }
         }
+        return transFact;
+    }
+
+    /**
+     * Compiles all stylesheets (*.xsl) found in the directories ahead of their first use.
+     * This is a no-op if the transformer factory does not cache stylesheets.
+     */
+    public static void precompileStylesheets(Collection<Path> directories) throws Exception {
+        TransformerFactory transFact = getConfiguredTransformerFactory();
+        if (!(transFact instanceof CachedTransformer)) {
+            return;
+        }
+        List<File> stylesheets = new ArrayList<>();
+        for (Path directory : directories) {
+            if (directory.getFileSystem() != FileSystems.getDefault() || !Files.isDirectory(directory)) {
+                continue;
+            }
+            try (Stream<Path> files = Files.walk(directory)) {
+                files.filter(f -> f.getFileName().toString().endsWith(".xsl"))
+                    .forEach(f -> stylesheets.add(f.toFile()));
+            }
+        }
+        ((CachedTransformer) transFact).precompile(stylesheets);
     }
 
     //--------------------------------------------------------------------------
@@ -953,7 +1006,7 @@ public final class Xml {
      * Validates an xml document with respect to schemaLocation hints using supplied error handler.
      */
     public static Element validateInfo(Element xml, XmlErrorHandler eh, String schemaName) throws Exception {
-        Schema schema = factory().newSchema();
+        Schema schema = getSchemaFromHints(xml.getAttributeValue("schemaLocation", xsiNS), schemaName);
         return validateRealGuts(schema, xml, eh, schemaName);
     }
 
@@ -970,7 +1023,14 @@ public final class Xml {
 
     //---------------------------------------------------------------------------
 
-    private static Schema getSchemaFromPath(Path schemaPath) throws SAXException {
+    /**
+     * @return the compiled schema of an .xsd file (see {@link CompiledSchemaCache}).
+     */
+    public static Schema getSchemaFromPath(Path schemaPath) throws Exception {
+        return CompiledSchemaCache.get(schemaPath, () -> compileSchema(schemaPath));
+    }
+
+    private static Schema compileSchema(Path schemaPath) throws SAXException {
         PathStreamSource schemaFile = new PathStreamSource(schemaPath);
         schemaFile.setSystemId(schemaPath.toUri().toASCIIString());
 
@@ -981,6 +1041,26 @@ public final class Xml {
         return factory.newSchema(schemaFile);
     }
 
+    /**
+     * @return the compiled schema of xsi:schemaLocation hints or, if the hints can't be compiled
+     * on their own (eg. relative locations), a schema loading them during the validation.
+     */
+    private static Schema getSchemaFromHints(String schemaLocation, String schemaName) throws SAXException {
+        final String imports = schemaLocation == null ? null : CompiledSchemaCache.buildSchemaLocationImports(schemaLocation);
+        if (imports != null) {
+            try {
+                return CompiledSchemaCache.get(String.valueOf(schemaName), schemaLocation, () -> {
+                    final SchemaFactory factory = factory();
+                    factory.setResourceResolver(ResolverWrapper.getInstance(schemaName).getXmlResolver());
+                    return factory.newSchema(new StreamSource(new StringReader(imports)));
+                });
+            } catch (Exception e) {
+                Log.debug(Log.ENGINE, "Can't compile schemaLocation " + schemaLocation + ": " + e.getMessage());
+            }
+        }
+        return factory().newSchema();
+    }
+
     //---------------------------------------------------------------------------
 
     /**
@@ -0,0 +1,88 @@
+/*
+ * Copyright (C) 2001-2016 Food and Agriculture Organization of the
+ * United Nations (FAO-UN), United Nations World Food Programme (WFP)
+ * and United Nations Environment Programme (UNEP)
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or (at
+ * your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301, USA
+ *
+ * Contact: Jeroen Ticheler - FAO - Viale delle Terme di Caracalla 2,
+ * Rome - Italy. email: geonetwork@osgeo.org
+ */
+
+package org.fao.geonet.utils;
+
+import org.fao.geonet.exceptions.XSDValidationErrorEx;
+import org.jdom.Element;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import javax.xml.validation.Schema;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+public class CompiledSchemaCacheTest {
+    private static final String XSD = "<xs:schema xmlns:xs=\"http://www.w3.org/2001/XMLSchema\">"
+        + "<xs:element name=\"record\"><xs:complexType><xs:sequence>"
+        + "<xs:element name=\"title\" type=\"xs:string\"/>"
+        + "</xs:sequence></xs:complexType></xs:element></xs:schema>";
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void testSchemaIsCompiledOnce() throws Exception {
+        Path schemaFile = folder.newFile("schema.xsd").toPath();
+        Files.write(schemaFile, XSD.getBytes(StandardCharsets.UTF_8));
+
+        Schema schema = Xml.getSchemaFromPath(schemaFile);
+        assertSame(schema, Xml.getSchemaFromPath(schemaFile));
+
+        CompiledSchemaCache.clear();
+        assertNotSame(schema, Xml.getSchemaFromPath(schemaFile));
+    }
+
+    @Test
+    public void testValidateWithCachedSchema() throws Exception {
+        Path schemaFile = folder.newFile("schema.xsd").toPath();
+        Files.write(schemaFile, XSD.getBytes(StandardCharsets.UTF_8));
+
+        Xml.validate(schemaFile, new Element("record").addContent(new Element("title").setText("A")));
+        try {
+            Xml.validate(schemaFile, new Element("record").addContent(new Element("abstract")));
+            throw new AssertionError("Record should not be valid");
+        } catch (XSDValidationErrorEx e) {
+            // expected
+        }
+    }
+
+    @Test
+    public void testBuildSchemaLocationImports() {
+        assertEquals("<xs:schema xmlns:xs=\"http://www.w3.org/2001/XMLSchema\">"
+                + "<xs:import namespace=\"http://www.isotc211.org/2005/gmd\""
+                + " schemaLocation=\"http://schemas.opengis.net/iso/19139/20060504/gmd/gmd.xsd\"/>"
+                + "</xs:schema>",
+            CompiledSchemaCache.buildSchemaLocationImports(
+                " http://www.isotc211.org/2005/gmd\n  http://schemas.opengis.net/iso/19139/20060504/gmd/gmd.xsd "));
+        assertNull(CompiledSchemaCache.buildSchemaLocationImports("http://www.isotc211.org/2005/gmd"));
+        assertNull(CompiledSchemaCache.buildSchemaLocationImports("http://www.isotc211.org/2005/gmd gmd.xsd"));
+    }
+}
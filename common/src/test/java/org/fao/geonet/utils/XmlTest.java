@@ -140,6 +140,21 @@ public class XmlTest {
         assertEquals(openResources.toString(), 0, OpenResourceTracker.numberOfOpenResources());
     }
 
+    @Test
+    public void testTransformRecordsExecutionStatistics() throws Exception {
+        TransformerFactoryFactory.init("net.sf.saxon.TransformerFactoryImpl");
+        try {
+            TransformerStatistics.clear();
+            doTestTransform();
+            Path path = Paths.get(XmlTest.class.getResource("xmltest/xsl/test.xsl").toURI());
+            TransformerStatistics.Entry entry = TransformerStatistics.getStatistics().get(path.toAbsolutePath().toString());
+            assertNotNull(entry);
+            assertEquals(1, entry.getExecutions());
+        } finally {
+            TransformerFactoryFactory.init(null);
+        }
+    }
+
     @Test
     public void testTransformSaxonTransformer() throws Exception {
         TransformerFactoryFactory.init("net.sf.saxon.TransformerFactoryImpl");
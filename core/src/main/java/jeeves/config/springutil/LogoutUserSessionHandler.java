@@ -26,6 +26,7 @@ package jeeves.config.springutil;
 import jeeves.server.UserSession;
 import jeeves.server.sources.http.JeevesServlet;
 
+import org.fao.geonet.kernel.SelectionManager;
 import org.springframework.security.core.Authentication;
 import org.springframework.security.web.authentication.logout.LogoutHandler;
 
@@ -48,6 +49,7 @@ public class LogoutUserSessionHandler implements LogoutHandler {
             Object tmp = httpSession.getAttribute(JeevesServlet.USER_SESSION_ATTRIBUTE_KEY);
             if (tmp instanceof UserSession) {
                 UserSession userSession = (UserSession) tmp;
+                SelectionManager.removeStoredSelections(userSession);
                 userSession.clear();
             }
         }
@@ -121,6 +121,14 @@ public class ServiceContext extends BasicContext {
         ApplicationContextHolder.set(this.getApplicationContext());
     }
 
+    /**
+     * Remove the service context of this thread, eg. at the end of a request or of a task run
+     * by a pooled thread.
+     */
+    public static void clearThreadLocal() {
+        THREAD_LOCAL_INSTANCE.remove();
+    }
+
     //--------------------------------------------------------------------------
     //---
     //--- API methods
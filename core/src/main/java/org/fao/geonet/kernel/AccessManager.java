@@ -228,6 +228,24 @@ public class AccessManager {
         return hs;
     }
 
+    /**
+     * Computes the groups and profile of the current user once so that
+     * privileges of many records (eg. search results) can be checked
+     * without further database access.
+     */
+    public UserPermissionSnapshot getUserPermissionSnapshot(ServiceContext context) throws Exception {
+        UserSession us = context.getUserSession();
+        String ip = context.getIpAddress();
+        boolean authenticated = isUserAuthenticated(us);
+        return new UserPermissionSnapshot(authenticated,
+            authenticated ? us.getUserIdAsInt() : -1,
+            authenticated ? us.getProfile() : null,
+            getUserGroups(us, ip, false),
+            getUserGroups(us, ip, true),
+            getReviewerGroups(us),
+            settingManager.getValueAsBool(SYSTEM_METADATAPRIVS_PUBLICATIONBYGROUPOWNERONLY, true));
+    }
+
     /**
      * TODO javadoc.
      *
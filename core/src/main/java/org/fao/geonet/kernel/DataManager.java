@@ -172,6 +172,11 @@ public class DataManager {
         metadataIndexer.indexMetadata(metadataId, forceRefreshReaders);
     }
 
+    @Deprecated
+    public void indexMetadata(final List<String> metadataIds, boolean forceRefreshReaders) throws Exception {
+        metadataIndexer.indexMetadata(metadataIds, forceRefreshReaders);
+    }
+
     @Deprecated
     public MetadataSchema getSchema(String name) {
         return metadataSchemaUtils.getSchema(name);
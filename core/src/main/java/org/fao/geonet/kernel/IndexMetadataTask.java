@@ -33,6 +33,7 @@ import org.fao.geonet.utils.Log;
 import org.springframework.transaction.TransactionStatus;
 
 import java.io.IOException;
+import java.util.ArrayList;
 import java.util.List;
 import java.util.Set;
 import java.util.concurrent.atomic.AtomicInteger;
@@ -45,12 +46,18 @@ import javax.annotation.Nullable;
  */
 public final class IndexMetadataTask implements Runnable {
 
+    /**
+     * Number of records loaded from the database at once.
+     */
+    private static final int CHUNK_SIZE = 100;
+
     private final ServiceContext _context;
     private final List<?> _metadataIds;
     private final TransactionStatus _transactionStatus;
     private final Set<IndexMetadataTask> _batchIndex;
     private final EsSearchManager searchManager;
     private final AtomicInteger indexed;
+    private final boolean forceIndexChangesWhenDone;
     private User _user;
 
     /**
@@ -62,7 +69,18 @@ public final class IndexMetadataTask implements Runnable {
      */
     public IndexMetadataTask(@Nonnull ServiceContext context, @Nonnull List<?> metadataIds, Set<IndexMetadataTask> batchIndex,
                       @Nullable TransactionStatus transactionStatus, @Nonnull AtomicInteger indexed) {
+        this(context, metadataIds, batchIndex, transactionStatus, indexed, true);
+    }
+
+    /**
+     * @param forceIndexChangesWhenDone if false, the caller sends the pending documents to the
+     *                                  index once all tasks of the batch are done
+     */
+    public IndexMetadataTask(@Nonnull ServiceContext context, @Nonnull List<?> metadataIds, Set<IndexMetadataTask> batchIndex,
+                      @Nullable TransactionStatus transactionStatus, @Nonnull AtomicInteger indexed,
+                      boolean forceIndexChangesWhenDone) {
         this.indexed = indexed;
+        this.forceIndexChangesWhenDone = forceIndexChangesWhenDone;
         this._transactionStatus = transactionStatus;
         this._context = context;
         this._metadataIds = metadataIds;
@@ -100,23 +118,29 @@ public final class IndexMetadataTask implements Runnable {
 
             DataManager dataManager = _context.getBean(DataManager.class);
             // servlet up so safe to index all metadata that needs indexing
-            for (Object metadataId : _metadataIds) {
-                this.indexed.incrementAndGet();
-                if (this.indexed.compareAndSet(500, 0)) {
+            for (int start = 0; start < _metadataIds.size(); start += CHUNK_SIZE) {
+                List<String> chunk = new ArrayList<>();
+                for (Object metadataId : _metadataIds.subList(start, Math.min(start + CHUNK_SIZE, _metadataIds.size()))) {
+                    chunk.add(metadataId.toString());
+                }
+                if (this.indexed.addAndGet(chunk.size()) >= 500) {
+                    this.indexed.set(0);
                     searchManager.forceIndexChanges();
                 }
 
                 try {
-                    dataManager.indexMetadata(metadataId.toString(), false);
+                    dataManager.indexMetadata(chunk, false);
                 } catch (Exception e) {
-                    Log.error(Geonet.INDEX_ENGINE, "Error indexing metadata '" + metadataId + "': " + e.getMessage()
+                    Log.error(Geonet.INDEX_ENGINE, "Error indexing metadata " + chunk + ": " + e.getMessage()
                         + "\n" + Util.getStackTrace(e));
                 }
             }
             if (_user != null && _context.getUserSession().getUserId() == null) {
                 _context.getUserSession().loginAs(_user);
             }
-            searchManager.forceIndexChanges();
+            if (forceIndexChangesWhenDone) {
+                searchManager.forceIndexChanges();
+            }
         } finally {
             _batchIndex.remove(this);
         }
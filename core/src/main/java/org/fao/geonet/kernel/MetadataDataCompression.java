@@ -0,0 +1,244 @@
+/*
+ * Copyright (C) 2001-2021 Food and Agriculture Organization of the
+ * United Nations (FAO-UN), United Nations World Food Programme (WFP)
+ * and United Nations Environment Programme (UNEP)
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or (at
+ * your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301, USA
+ *
+ * Contact: Jeroen Ticheler - FAO - Viale delle Terme di Caracalla 2,
+ * Rome - Italy. email: geonetwork@osgeo.org
+ */
+
+package org.fao.geonet.kernel;
+
+import org.fao.geonet.constants.Geonet;
+import org.fao.geonet.domain.Metadata;
+import org.fao.geonet.domain.MetadataDataCodec;
+import org.fao.geonet.domain.MetadataDraft;
+import org.fao.geonet.utils.Log;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jmx.export.MBeanExporter;
+import org.springframework.jmx.export.annotation.ManagedAttribute;
+import org.springframework.jmx.export.annotation.ManagedOperation;
+import org.springframework.jmx.export.annotation.ManagedResource;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import javax.management.ObjectName;
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Configure the storage format of the records (see {@link MetadataDataCodec}) and convert the
+ * records already stored to it.
+ *
+ * <p>The conversion runs in a background thread, in batches ordered by id, directly on the data
+ * column: the XML of the records doesn't change so they don't have to be reindexed. Only the rows
+ * of the batch being converted are locked until it is committed, so a record saved meanwhile
+ * (with or without a new change date) waits for the conversion instead of being overwritten by
+ * it, while the other records can still be edited.</p>
+ */
+@ManagedResource()
+public class MetadataDataCompression {
+
+    @Autowired
+    private DataSource dataSource;
+
+    @Autowired(required = false)
+    private MBeanExporter exporter;
+
+    private boolean compress = false;
+    private int minLength = 4096;
+    private boolean convertOnStartup = false;
+    private int batchSize = 100;
+
+    private Thread conversion;
+    private volatile boolean stopRequested;
+    private final AtomicLong processedRecords = new AtomicLong();
+    private final AtomicLong convertedRecords = new AtomicLong();
+
+    @PostConstruct
+    public void init() throws Exception {
+        MetadataDataCodec.setCompress(compress);
+        MetadataDataCodec.setMinLength(minLength);
+        if (exporter != null) {
+            exporter.registerManagedResource(this, new ObjectName("geonetwork:name=metadata-data-compression"));
+        }
+        if (convertOnStartup) {
+            start();
+        }
+    }
+
+    /**
+     * Convert the stored records to the current format in a background thread.
+     *
+     * @return false if a conversion is already running.
+     */
+    @ManagedOperation
+    public synchronized boolean start() {
+        if (isRunning()) {
+            return false;
+        }
+        stopRequested = false;
+        processedRecords.set(0);
+        convertedRecords.set(0);
+        conversion = new Thread(() -> {
+            try {
+                convert(Metadata.TABLENAME);
+                convert(MetadataDraft.TABLENAME);
+                Log.info(Geonet.DB, String.format("Metadata data conversion ended, %d records converted out of %d.",
+                    convertedRecords.get(), processedRecords.get()));
+            } catch (Exception e) {
+                Log.error(Geonet.DB, "Metadata data conversion failed: " + e.getMessage(), e);
+            }
+        }, "metadata-data-compression");
+        conversion.setDaemon(true);
+        conversion.start();
+        return true;
+    }
+
+    @ManagedOperation
+    @PreDestroy
+    public void stop() {
+        stopRequested = true;
+    }
+
+    /**
+     * Convert the records of a table to the current format.
+     */
+    void convert(String table) throws SQLException {
+        // The ids of the next batch are read without lock, then only the rows of this id range
+        // are locked (by a no-op update, SELECT ... FOR UPDATE is not supported by all databases
+        // and would lock all the rows returned, not only the ones fetched).
+        String selectIds = String.format("SELECT id FROM %s WHERE id > ? ORDER BY id", table);
+        String lock = String.format("UPDATE %s SET rating = rating WHERE id > ? AND id <= ?", table);
+        String select = String.format("SELECT id, data FROM %s WHERE id > ? AND id <= ?", table);
+        String update = String.format("UPDATE %s SET data = ? WHERE id = ?", table);
+        int lastId = -1;
+        while (!stopRequested) {
+            int batchEnd = -1;
+            try (Connection connection = dataSource.getConnection();
+                 PreparedStatement selectIdsStatement = connection.prepareStatement(selectIds)) {
+                selectIdsStatement.setMaxRows(batchSize);
+                selectIdsStatement.setInt(1, lastId);
+                try (ResultSet rs = selectIdsStatement.executeQuery()) {
+                    while (rs.next()) {
+                        batchEnd = rs.getInt(1);
+                    }
+                }
+            }
+            if (batchEnd < 0) {
+                return;
+            }
+            convertRange(select, lock, update, lastId, batchEnd);
+            lastId = batchEnd;
+        }
+    }
+
+    /**
+     * Convert the records having an id in ]fromId, toId] in one transaction.
+     */
+    private void convertRange(String select, String lock, String update, int fromId, int toId) throws SQLException {
+        try (Connection connection = dataSource.getConnection()) {
+            boolean autoCommit = connection.getAutoCommit();
+            connection.setAutoCommit(false);
+            try (PreparedStatement lockStatement = connection.prepareStatement(lock);
+                 PreparedStatement selectStatement = connection.prepareStatement(select);
+                 PreparedStatement updateStatement = connection.prepareStatement(update)) {
+                lockStatement.setInt(1, fromId);
+                lockStatement.setInt(2, toId);
+                lockStatement.executeUpdate();
+
+                selectStatement.setInt(1, fromId);
+                selectStatement.setInt(2, toId);
+                int updates = 0;
+                try (ResultSet rs = selectStatement.executeQuery()) {
+                    while (rs.next()) {
+                        int id = rs.getInt(1);
+                        String stored = rs.getString(2);
+                        processedRecords.incrementAndGet();
+                        String converted = MetadataDataCodec.encode(MetadataDataCodec.decode(stored));
+                        if (stored != null && !stored.equals(converted)) {
+                            updateStatement.setString(1, converted);
+                            updateStatement.setInt(2, id);
+                            updateStatement.addBatch();
+                            updates++;
+                        }
+                    }
+                }
+                if (updates > 0) {
+                    for (int count : updateStatement.executeBatch()) {
+                        if (count > 0) {
+                            convertedRecords.addAndGet(count);
+                        }
+                    }
+                }
+                connection.commit();
+            } catch (SQLException | RuntimeException e) {
+                connection.rollback();
+                throw e;
+            } finally {
+                connection.setAutoCommit(autoCommit);
+            }
+        }
+    }
+
+    @ManagedAttribute
+    public synchronized boolean isRunning() {
+        return conversion != null && conversion.isAlive();
+    }
+
+    @ManagedAttribute
+    public long getProcessedRecords() {
+        return processedRecords.get();
+    }
+
+    @ManagedAttribute
+    public long getConvertedRecords() {
+        return convertedRecords.get();
+    }
+
+    @ManagedAttribute
+    public boolean isCompress() {
+        return compress;
+    }
+
+    /**
+     * @param compress if true, records are stored compressed.
+     */
+    public void setCompress(boolean compress) {
+        this.compress = compress;
+    }
+
+    public void setMinLength(int minLength) {
+        this.minLength = minLength;
+    }
+
+    /**
+     * @param convertOnStartup if true, records stored in the other format are converted when
+     *                         the application starts.
+     */
+    public void setConvertOnStartup(boolean convertOnStartup) {
+        this.convertOnStartup = convertOnStartup;
+    }
+
+    public void setBatchSize(int batchSize) {
+        this.batchSize = Math.max(1, batchSize);
+    }
+}
@@ -0,0 +1,325 @@
+//=============================================================================
+//===	Copyright (C) 2001-2007 Food and Agriculture Organization of the
+//===	United Nations (FAO-UN), United Nations World Food Programme (WFP)
+//===	and United Nations Environment Programme (UNEP)
+//===
+//===	This program is free software; you can redistribute it and/or modify
+//===	it under the terms of the GNU General Public License as published by
+//===	the Free Software Foundation; either version 2 of the License, or (at
+//===	your option) any later version.
+//===
+//===	This program is distributed in the hope that it will be useful, but
+//===	WITHOUT ANY WARRANTY; without even the implied warranty of
+//===	MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+//===	General Public License for more details.
+//===
+//===	You should have received a copy of the GNU General Public License
+//===	along with this program; if not, write to the Free Software
+//===	Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301, USA
+//===
+//===	Contact: Jeroen Ticheler - FAO - Viale delle Terme di Caracalla 2,
+//===	Rome - Italy. email: geonetwork@osgeo.org
+//==============================================================================
+
+package org.fao.geonet.kernel;
+
+import org.apache.commons.lang.StringUtils;
+import org.fao.geonet.constants.Geonet;
+import org.fao.geonet.exceptions.SchemaMatchConflictException;
+import org.fao.geonet.utils.Log;
+import org.jdom.Attribute;
+import org.jdom.Element;
+import org.jdom.Namespace;
+import org.jdom.filter.ElementFilter;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
+
+/**
+ * The autodetect rules of all schemas (the autodetect element of their schema-ident.xml),
+ * compiled so that the schema of a record is found with a single traversal of the record.
+ *
+ * <p>The rules are checked from the most specific to the most general, the first kind of rule
+ * matched by one schema only wins:</p>
+ * <ol>
+ * <li>attributes: all the attributes (name, namespace and value) are found on elements of the
+ * record</li>
+ * <li>elements with value: all the elements are found in the record with a value matching
+ * their value (a regular expression, whitespace ignored)</li>
+ * <li>elements of type search: all the elements are found in the record</li>
+ * <li>elements of type root: one of the elements is the root of the record</li>
+ * <li>namespaces: all the namespaces are used or declared in the record</li>
+ * </ol>
+ *
+ * <p>The index is immutable and can be used by several threads, a new index is built when
+ * schemas are added or removed.</p>
+ */
+public final class SchemaAutodetectIndex {
+
+    private static final String[] MODE_NAMES = {
+        "attributes", "elements with value", "elements", "elements with root", "namespaces"};
+    private static final int MODE_ATTRIBUTEWITHVALUE = 0;
+    private static final int MODE_NEEDLEWITHVALUE = 1;
+    private static final int MODE_NEEDLE = 2;
+    private static final int MODE_ROOT = 3;
+    private static final int MODE_NAMESPACE = 4;
+
+    /**
+     * A rule of a schema: all its needles must be found in the record.
+     */
+    private static final class Rule {
+        final String schema;
+        final int[] needles;
+
+        Rule(String schema, int[] needles) {
+            this.schema = schema;
+            this.needles = needles;
+        }
+    }
+
+    private static final class ValueNeedle {
+        final int id;
+        final Pattern pattern;
+
+        ValueNeedle(int id, Pattern pattern) {
+            this.id = id;
+            this.pattern = pattern;
+        }
+    }
+
+    // namespace uri -> element name -> needle id
+    private final Map<String, Map<String, Integer>> elementNeedles = new HashMap<>();
+    private final Map<String, Map<String, List<ValueNeedle>>> valueNeedles = new HashMap<>();
+    // namespace uri + "}" + attribute name -> attribute value -> needle id
+    private final Map<String, Map<String, Integer>> attributeNeedles = new HashMap<>();
+    private final Map<String, Integer> namespaceNeedles = new HashMap<>();
+    // namespace uri -> element name -> schemas
+    private final Map<String, Map<String, Set<String>>> roots = new HashMap<>();
+    private final List<List<Rule>> rules = new ArrayList<>();
+    private int needleCount = 0;
+
+    /**
+     * @param autodetectElements the children of the autodetect element of each schema.
+     */
+    public SchemaAutodetectIndex(Map<String, List<Element>> autodetectElements) {
+        for (int mode = 0; mode < MODE_NAMES.length; mode++) {
+            rules.add(new ArrayList<Rule>());
+        }
+        for (Map.Entry<String, List<Element>> schema : autodetectElements.entrySet()) {
+            if (schema.getValue() != null) {
+                for (Element elem : schema.getValue()) {
+                    addRules(schema.getKey(), elem);
+                }
+            }
+        }
+    }
+
+    private void addRules(String schema, Element elem) {
+        if (elem.getName().equals("attributes")) {
+            @SuppressWarnings("unchecked")
+            List<Attribute> atts = elem.getAttributes();
+            int[] needles = new int[atts.size()];
+            for (int i = 0; i < needles.length; i++) {
+                Attribute att = atts.get(i);
+                needles[i] = needle(attributeNeedles
+                    .computeIfAbsent(att.getNamespaceURI() + "}" + att.getName(), k -> new HashMap<>()), att.getValue());
+            }
+            addRule(MODE_ATTRIBUTEWITHVALUE, schema, needles);
+            return;
+        }
+        if (elem.getName().equals("namespaces")) {
+            @SuppressWarnings("unchecked")
+            List<Namespace> nss = elem.getAdditionalNamespaces();
+            int[] needles = new int[nss.size()];
+            for (int i = 0; i < needles.length; i++) {
+                needles[i] = needle(namespaceNeedles, nss.get(i).getURI());
+            }
+            addRule(MODE_NAMESPACE, schema, needles);
+            return;
+        }
+
+        @SuppressWarnings("unchecked")
+        List<Element> kids = elem.getChildren();
+        Attribute type = elem.getAttribute("type");
+        String typeValue = type == null ? null : type.getValue();
+
+        // any list of elements is also checked with the values of the elements
+        int[] needlesWithValue = new int[kids.size()];
+        for (int i = 0; i < needlesWithValue.length; i++) {
+            Element kid = kids.get(i);
+            int id = needleCount++;
+            needlesWithValue[i] = id;
+            String regex = StringUtils.deleteWhitespace(kid.getValue());
+            try {
+                valueNeedles.computeIfAbsent(kid.getNamespaceURI(), k -> new HashMap<>())
+                    .computeIfAbsent(kid.getName(), k -> new ArrayList<>())
+                    .add(new ValueNeedle(id, Pattern.compile(regex)));
+            } catch (PatternSyntaxException e) {
+                Log.warning(Geonet.SCHEMA_MANAGER, "Invalid value " + regex + " of autodetect element " +
+                    kid.getQualifiedName() + " of schema " + schema + ", the element is never matched with its value.");
+            }
+        }
+        addRule(MODE_NEEDLEWITHVALUE, schema, needlesWithValue);
+
+        if ("search".equals(typeValue)) {
+            int[] needles = new int[kids.size()];
+            for (int i = 0; i < needles.length; i++) {
+                Element kid = kids.get(i);
+                needles[i] = needle(elementNeedles
+                    .computeIfAbsent(kid.getNamespaceURI(), k -> new HashMap<>()), kid.getName());
+            }
+            addRule(MODE_NEEDLE, schema, needles);
+        } else if ("root".equals(typeValue)) {
+            for (Element kid : kids) {
+                roots.computeIfAbsent(kid.getNamespaceURI(), k -> new HashMap<>())
+                    .computeIfAbsent(kid.getName(), k -> new LinkedHashSet<>())
+                    .add(schema);
+            }
+        }
+    }
+
+    private int needle(Map<String, Integer> needles, String key) {
+        Integer id = needles.get(key);
+        if (id == null) {
+            id = needleCount++;
+            needles.put(key, id);
+        }
+        return id;
+    }
+
+    private void addRule(int mode, String schema, int[] needles) {
+        // a rule without needles never matches
+        if (needles.length > 0) {
+            rules.get(mode).add(new Rule(schema, needles));
+        }
+    }
+
+    /**
+     * @return the schema of the record or null if no rule matches.
+     * @throws SchemaMatchConflictException if the most specific kind of rule matched is matched by
+     *                                      more than one schema.
+     */
+    public String detect(Element md) throws SchemaMatchConflictException {
+        BitSet found = traverse(md);
+        for (int mode = 0; mode < MODE_NAMES.length; mode++) {
+            Set<String> matches = match(mode, md, found);
+            if (matches.size() > 1) {
+                throw new SchemaMatchConflictException("Metadata record with " + md.getName() + " (Namespace " + md.getNamespace() + " matches more than one schema - namely: " + matches.toString() + " - during schema autodetection mode " + MODE_NAMES[mode]);
+            } else if (matches.size() == 1) {
+                String schema = matches.iterator().next();
+                if (Log.isDebugEnabled(Geonet.SCHEMA_MANAGER)) {
+                    Log.debug(Geonet.SCHEMA_MANAGER, "  => Found schema " + schema + " using AUTODETECT(" + MODE_NAMES[mode] + ") examination");
+                }
+                return schema;
+            }
+        }
+        return null;
+    }
+
+    private Set<String> match(int mode, Element md, BitSet found) {
+        if (mode == MODE_ROOT) {
+            Map<String, Set<String>> names = roots.get(md.getNamespaceURI());
+            Set<String> schemas = names == null ? null : names.get(md.getName());
+            return schemas == null ? Collections.<String>emptySet() : schemas;
+        }
+        Set<String> matches = new LinkedHashSet<>();
+        for (Rule rule : rules.get(mode)) {
+            boolean match = true;
+            for (int needle : rule.needles) {
+                if (!found.get(needle)) {
+                    match = false;
+                    break;
+                }
+            }
+            if (match) {
+                matches.add(rule.schema);
+            }
+        }
+        return matches;
+    }
+
+    /**
+     * Find the needles of all rules in the record. Elements and attributes are searched in the
+     * descendants of the root, namespaces in the root too.
+     */
+    private BitSet traverse(Element md) {
+        BitSet found = new BitSet(needleCount);
+        checkNamespaces(md, found);
+        @SuppressWarnings("unchecked")
+        Iterator<Element> descendants = md.getDescendants(new ElementFilter());
+        while (descendants.hasNext()) {
+            Element elem = descendants.next();
+            checkNamespaces(elem, found);
+
+            String uri = elem.getNamespaceURI();
+            Map<String, Integer> names = elementNeedles.get(uri);
+            if (names != null) {
+                Integer id = names.get(elem.getName());
+                if (id != null) {
+                    found.set(id);
+                }
+            }
+
+            Map<String, List<ValueNeedle>> valueNames = valueNeedles.get(uri);
+            if (valueNames != null) {
+                List<ValueNeedle> needles = valueNames.get(elem.getName());
+                if (needles != null) {
+                    String value = null;
+                    for (ValueNeedle needle : needles) {
+                        if (!found.get(needle.id)) {
+                            if (value == null) {
+                                value = StringUtils.deleteWhitespace(elem.getValue());
+                            }
+                            if (needle.pattern.matcher(value).matches()) {
+                                found.set(needle.id);
+                            }
+                        }
+                    }
+                }
+            }
+
+            if (!attributeNeedles.isEmpty()) {
+                @SuppressWarnings("unchecked")
+                List<Attribute> atts = elem.getAttributes();
+                for (Attribute att : atts) {
+                    Map<String, Integer> values = attributeNeedles.get(att.getNamespaceURI() + "}" + att.getName());
+                    if (values != null) {
+                        Integer id = values.get(att.getValue());
+                        if (id != null) {
+                            found.set(id);
+                        }
+                    }
+                }
+            }
+        }
+        return found;
+    }
+
+    private void checkNamespaces(Element elem, BitSet found) {
+        if (namespaceNeedles.isEmpty()) {
+            return;
+        }
+        setNamespace(elem.getNamespaceURI(), found);
+        @SuppressWarnings("unchecked")
+        List<Namespace> nss = elem.getAdditionalNamespaces();
+        for (Namespace ns : nss) {
+            setNamespace(ns.getURI(), found);
+        }
+    }
+
+    private void setNamespace(String uri, BitSet found) {
+        Integer id = namespaceNeedles.get(uri);
+        if (id != null) {
+            found.set(id);
+        }
+    }
+}
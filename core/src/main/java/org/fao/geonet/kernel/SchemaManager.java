@@ -48,6 +48,7 @@ import org.fao.geonet.kernel.setting.SettingInfo;
 import org.fao.geonet.repository.SchematronCriteriaGroupRepository;
 import org.fao.geonet.repository.SchematronRepository;
 import org.fao.geonet.schema.iso19139.ISO19139SchemaPlugin;
+import org.fao.geonet.utils.CompiledSchemaCache;
 import org.fao.geonet.utils.IO;
 import org.fao.geonet.utils.Log;
 import org.fao.geonet.utils.PrefixUrlRewrite;
@@ -61,7 +62,6 @@ import org.jdom.Document;
 import org.jdom.Element;
 import org.jdom.JDOMException;
 import org.jdom.Namespace;
-import org.jdom.filter.ElementFilter;
 import org.springframework.context.ApplicationContext;
 
 import java.io.IOException;
@@ -78,7 +78,6 @@ import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
-import java.util.regex.Pattern;
 
 /**
  * Class that handles all functions relating to metadata schemas. This includes
@@ -90,12 +89,6 @@ import java.util.regex.Pattern;
  */
 public class SchemaManager {
 
-    private static final int MODE_NEEDLE = 0;
-    private static final int MODE_ROOT = 1;
-    private static final int MODE_NEEDLEWITHVALUE = 2;
-    private static final int MODE_ATTRIBUTEWITHVALUE = 3;
-    private static final int MODE_NAMESPACE = 4;
-
     private static final String GEONET_SCHEMA_URI = "http://geonetwork-opensource.org/schemas/schema-ident";
     private static final Namespace GEONET_SCHEMA_PREFIX_NS = Namespace.getNamespace("gns", GEONET_SCHEMA_URI);
     private static final Namespace GEONET_SCHEMA_NS = Namespace.getNamespace(GEONET_SCHEMA_URI);
@@ -108,6 +101,7 @@ public class SchemaManager {
      */
     private static int activeWriters = 0;
     private Map<String, Schema> hmSchemas = new HashMap<String, Schema>();
+    private volatile SchemaAutodetectIndex autodetectIndex;
     private Map<String, Namespace> hmSchemasTypenames = new HashMap<String, Namespace>();
     private String[] fnames = {"labels.xml", "codelists.xml", "strings.xml"};
     private Path schemaPluginsDir;
@@ -187,6 +181,7 @@ public class SchemaManager {
 
         this.hmSchemas.clear();
         this.hmSchemas.putAll(schemaManager.hmSchemas);
+        this.autodetectIndex = null;
 
 
         fnames = new String[schemaManager.fnames.length];
@@ -213,6 +208,7 @@ public class SchemaManager {
                           Path sPDir, String defaultLang, String defaultSchema, boolean createOrUpdateSchemaCatalog) throws Exception {
 
         hmSchemas.clear();
+        autodetectIndex = null;
 
         this.basePath = basePath;
         this.resourcePath = resourcePath;
@@ -244,6 +240,33 @@ public class SchemaManager {
 
         writeSchemaPluginCatalog(schemaPluginCatRoot);
 
+        compileSchemasInBackground();
+    }
+
+    /**
+     * Compile the XSDs of the schemas so that the first validations don't have to.
+     */
+    private void compileSchemasInBackground() {
+        final List<Path> schemaFiles = new ArrayList<>();
+        for (Schema schema : hmSchemas.values()) {
+            Path schemaFile = schema.getDir().resolve(Geonet.File.SCHEMA);
+            if (Files.exists(schemaFile)) {
+                schemaFiles.add(schemaFile);
+            }
+        }
+        Thread thread = new Thread(() -> {
+            for (Path schemaFile : schemaFiles) {
+                try {
+                    Xml.getSchemaFromPath(schemaFile);
+                } catch (Exception e) {
+                    Log.warning(Geonet.SCHEMA_MANAGER, "Can't compile " + schemaFile + ": " + e.getMessage());
+                }
+            }
+            Log.info(Geonet.SCHEMA_MANAGER, schemaFiles.size() + " schemas compiled");
+        }, "schema-compilation");
+        thread.setDaemon(true);
+        thread.setPriority(Thread.MIN_PRIORITY);
+        thread.start();
     }
 
     //--------------------------------------------------------------------------
@@ -704,68 +727,45 @@ public class SchemaManager {
      */
     public String autodetectSchema(Element md, String defaultSchema) throws SchemaMatchConflictException, NoSchemaMatchesException {
 
-        beforeRead();
-        try {
-            String schema;
-
-            // -- check the autodetect elements for all schemas with the most
-            // -- specific test first, then in order of increasing generality,
-            // -- first match wins
-            schema = compareElementsAndAttributes(md, MODE_ATTRIBUTEWITHVALUE);
-            if (schema != null) {
-                if (Log.isDebugEnabled(Geonet.SCHEMA_MANAGER))
-                    Log.debug(Geonet.SCHEMA_MANAGER, "  => Found schema " + schema + " using AUTODETECT(attributes) examination");
-            }
-
-            if (schema == null) {
-                schema = compareElementsAndAttributes(md, MODE_NEEDLEWITHVALUE);
-                if (schema != null) {
-                    if (Log.isDebugEnabled(Geonet.SCHEMA_MANAGER))
-                        Log.debug(Geonet.SCHEMA_MANAGER, "  => Found schema " + schema + " using AUTODETECT(elements with value) examination");
-                }
-            }
+        String schema = getAutodetectIndex().detect(md);
 
-            if (schema == null) {
-                schema = compareElementsAndAttributes(md, MODE_NEEDLE);
-                if (schema != null) {
-                    if (Log.isDebugEnabled(Geonet.SCHEMA_MANAGER))
-                        Log.debug(Geonet.SCHEMA_MANAGER, "  => Found schema " + schema + " using AUTODETECT(elements) examination");
-                }
-            }
-
-            if (schema == null) {
-                schema = compareElementsAndAttributes(md, MODE_ROOT);
-                if (schema != null) {
-                    if (Log.isDebugEnabled(Geonet.SCHEMA_MANAGER))
-                        Log.debug(Geonet.SCHEMA_MANAGER, "  => Found schema " + schema + " using AUTODETECT(elements with root) examination");
-                }
+        // -- If nothing has matched by this point choose defaultSchema supplied
+        // -- as argument to this method as long as its reasonable
+        if (schema == null && defaultSchema != null) {
+            String defaultSchemaOrDependencySchema = checkNamespace(md, defaultSchema);
+            if (defaultSchemaOrDependencySchema != null) {
+                Log.warning(Geonet.SCHEMA_MANAGER, "  Autodetecting schema failed for " + md.getName() + " in namespace " + md.getNamespace()
+                    + ". Using default schema or one of its dependency: " + defaultSchemaOrDependencySchema);
+                schema = defaultSchemaOrDependencySchema;
             }
+        }
 
-            if (schema == null) {
-                schema = compareElementsAndAttributes(md, MODE_NAMESPACE);
-                if (schema != null) {
-                    if (Log.isDebugEnabled(Geonet.SCHEMA_MANAGER))
-                        Log.debug(Geonet.SCHEMA_MANAGER, "  => Found schema " + schema + " using AUTODETECT(namespaces) examination");
-                }
-            }
+        // -- if the default schema failed then throw an exception
+        if (schema == null) {
+            throw new NoSchemaMatchesException("Autodetecting schema failed for metadata record with root element " + md.getName() + " in namespace " + md.getNamespace() + ".");
+        }
 
-            // -- If nothing has matched by this point choose defaultSchema supplied
-            // -- as argument to this method as long as its reasonable
-            if (schema == null && defaultSchema != null) {
-                String defaultSchemaOrDependencySchema = checkNamespace(md, defaultSchema);
-                if (defaultSchemaOrDependencySchema != null) {
-                    Log.warning(Geonet.SCHEMA_MANAGER, "  Autodetecting schema failed for " + md.getName() + " in namespace " + md.getNamespace()
-                        + ". Using default schema or one of its dependency: " + defaultSchemaOrDependencySchema);
-                    schema = defaultSchemaOrDependencySchema;
-                }
-            }
+        return schema;
+    }
 
-            // -- if the default schema failed then throw an exception
-            if (schema == null) {
-                throw new NoSchemaMatchesException("Autodetecting schema failed for metadata record with root element " + md.getName() + " in namespace " + md.getNamespace() + ".");
+    /**
+     * @return the autodetect rules of the registered schemas, built again after schemas are
+     * added or removed.
+     */
+    private SchemaAutodetectIndex getAutodetectIndex() {
+        SchemaAutodetectIndex index = autodetectIndex;
+        if (index != null) {
+            return index;
+        }
+        beforeRead();
+        try {
+            Map<String, List<Element>> autodetectElements = new HashMap<>();
+            for (Map.Entry<String, Schema> schema : hmSchemas.entrySet()) {
+                autodetectElements.put(schema.getKey(), schema.getValue().getAutodetectElements());
             }
-
-            return schema;
+            index = new SchemaAutodetectIndex(autodetectElements);
+            autodetectIndex = index;
+            return index;
         } finally {
             afterRead();
         }
@@ -877,6 +877,7 @@ public class SchemaManager {
             }
 
             removeSchemaInfo(name);
+            CompiledSchemaCache.clear();
         }
     }
 
@@ -904,9 +905,11 @@ public class SchemaManager {
             checkDepends(name, schema.getDependElements());
 
             writeSchemaPluginCatalog(schemaPluginCatRoot);
+            CompiledSchemaCache.clear();
         } catch (Exception e) {
             Log.error(Geonet.SCHEMA_MANAGER, e.getMessage(), e);
             hmSchemas.remove(name);
+            autodetectIndex = null;
             IO.deleteFileOrDirectory(schemaDir);
             throw new OperationAbortedEx("Failed to add schema " + name + " : " + e.getMessage(), e);
         }
@@ -1225,6 +1228,7 @@ public class SchemaManager {
         schema.setDependElements(dependElems);
 
         hmSchemas.put(name, schema);
+        autodetectIndex = null;
     }
 
     /**
@@ -1238,6 +1242,7 @@ public class SchemaManager {
 
         removeSchemaDir(schema.getDir(), name);
         hmSchemas.remove(name);
+        autodetectIndex = null;
 
         Element schemaPluginCatRoot = getSchemaPluginCatalog();
         schemaPluginCatRoot = deleteSchemaFromPluginCatalog(name, schemaPluginCatRoot);
@@ -1335,6 +1340,7 @@ public class SchemaManager {
         // now remove any that failed the dependency test
         for (String removeSchema : removes) {
             hmSchemas.remove(removeSchema);
+            autodetectIndex = null;
             deleteSchemaFromPluginCatalog(removeSchema, schemaPluginCatRoot);
         }
 
@@ -1381,6 +1387,7 @@ public class SchemaManager {
         // now remove any that failed the app version test
         for (String removeSchema : removes) {
             hmSchemas.remove(removeSchema);
+            autodetectIndex = null;
             deleteSchemaFromPluginCatalog(removeSchema, schemaPluginCatRoot);
         }
 
@@ -1598,226 +1605,6 @@ public class SchemaManager {
         return schemaLocElem.getTextNormalize();
     }
 
-    /**
-     * Search all available schemas for one which contains the element(s) or attributes specified in
-     * the autodetect info.
-     *
-     * @param md the XML record whose schema we are trying to find
-     */
-    private String compareElementsAndAttributes(Element md, int mode) throws SchemaMatchConflictException {
-        String returnVal = null;
-        Set<String> allSchemas = getSchemas();
-        List<String> matches = new ArrayList<>();
-
-        if (Log.isDebugEnabled(Geonet.SCHEMA_MANAGER))
-            Log.debug(Geonet.SCHEMA_MANAGER, "Schema autodetection starting on " + md.getName() + " (Namespace: " + md.getNamespace() + ") using mode: " + mode + "...");
-
-        for (String schemaName : allSchemas) {
-            if (Log.isDebugEnabled(Geonet.SCHEMA_MANAGER))
-                Log.debug(Geonet.SCHEMA_MANAGER, "	Doing schema " + schemaName);
-            Schema schema = hmSchemas.get(schemaName);
-            List<Element> adElems = schema.getAutodetectElements();
-
-            for (Element elem : adElems) {
-                if (Log.isDebugEnabled(Geonet.SCHEMA_MANAGER))
-                    Log.debug(Geonet.SCHEMA_MANAGER, "		Checking autodetect element " + Xml.getString(elem) + " with name " + elem.getName());
-
-                @SuppressWarnings("unchecked")
-                List<Element> elemKids = elem.getChildren();
-                boolean match = false;
-
-                Attribute type = elem.getAttribute("type");
-
-                // --- try and find the attribute and value in md
-                if (mode == MODE_ATTRIBUTEWITHVALUE && elem.getName() == "attributes") {
-                    @SuppressWarnings("unchecked")
-                    List<Attribute> atts = elem.getAttributes();
-                    for (Attribute searchAtt : atts) {
-                        if (Log.isDebugEnabled(Geonet.SCHEMA_MANAGER))
-                            Log.debug(Geonet.SCHEMA_MANAGER, "				Finding attribute " + searchAtt.toString());
-
-                        if (isMatchingAttributeInMetadata(searchAtt, md)) {
-                            match = true;
-                        } else {
-                            match = false;
-                            break;
-                        }
-                    }
-
-                    // --- try and find the namespace in md
-                } else if (mode == MODE_NAMESPACE && elem.getName().equals("namespaces")) {
-                    @SuppressWarnings("unchecked")
-                    List<Namespace> nss = elem.getAdditionalNamespaces();
-                    for (Namespace ns : nss) {
-                        if (Log.isDebugEnabled(Geonet.SCHEMA_MANAGER))
-                            Log.debug(Geonet.SCHEMA_MANAGER, "				Finding namespace " + ns.toString());
-
-                        if (isMatchingNamespaceInMetadata(ns, md)) {
-                            match = true;
-                        } else {
-                            match = false;
-                            break;
-                        }
-                    }
-                } else {
-                    for (Element kid : elemKids) {
-
-                        // --- is the kid the same as the root of the md
-                        if (mode == MODE_ROOT && type != null && "root".equals(type.getValue())) {
-                            if (Log.isDebugEnabled(Geonet.SCHEMA_MANAGER))
-                                Log.debug(Geonet.SCHEMA_MANAGER, "				Comparing " + Xml.getString(kid) + " with " + md.getName() + " with namespace " + md.getNamespace() + " : " + (kid.getName().equals(md.getName()) && kid.getNamespace().equals(md.getNamespace())));
-                            if (kid.getName().equals(md.getName()) &&
-                                kid.getNamespace().equals(md.getNamespace())) {
-                                match = true;
-                                break;
-                            } else {
-                                match = false;
-                            }
-                            // --- try and find the kid in the md (kid only, not value)
-                        } else if (mode == MODE_NEEDLE && type != null && "search".equals(type.getValue())) {
-                            if (Log.isDebugEnabled(Geonet.SCHEMA_MANAGER))
-                                Log.debug(Geonet.SCHEMA_MANAGER, "				Comparing " + Xml.getString(kid) + " with " + md.getName() + " with namespace " + md.getNamespace() + " : " + (kid.getName().equals(md.getName()) && kid.getNamespace().equals(md.getNamespace())));
-
-                            if (isMatchingElementInMetadata(kid, md, false)) {
-                                match = true;
-                            } else {
-                                match = false;
-                                break;
-                            }
-                            // --- try and find the kid in the md (kid + value)
-                        } else if (mode == MODE_NEEDLEWITHVALUE) {
-                            if (isMatchingElementInMetadata(kid, md, true)) {
-                                match = true;
-                            } else {
-                                match = false;
-                                break;
-                            }
-                        }
-                    }
-                }
-                if (match && (!matches.contains(schemaName))) matches.add(schemaName);
-            }
-        }
-
-        if (matches.size() > 1) {
-            throw new SchemaMatchConflictException("Metadata record with " + md.getName() + " (Namespace " + md.getNamespace() + " matches more than one schema - namely: " + matches.toString() + " - during schema autodetection mode " + mode);
-        } else if (matches.size() == 1) {
-            returnVal = matches.get(0);
-        }
-
-        return returnVal;
-    }
-
-    /**
-     * This method searches an entire metadata file for an attribute that matches the "needle"
-     * metadata attribute arg - A matching attribute has the same name and value.
-     *
-     * @param needle   the XML attribute we are trying to find
-     * @param haystack the XML metadata record we are searching
-     */
-    private boolean isMatchingAttributeInMetadata(Attribute needle, Element haystack) {
-        boolean returnVal = false;
-        @SuppressWarnings("unchecked")
-        Iterator<Element> haystackIterator = haystack.getDescendants(new ElementFilter());
-
-        if (Log.isDebugEnabled(Geonet.SCHEMA_MANAGER))
-            Log.debug(Geonet.SCHEMA_MANAGER, "Matching " + needle.toString());
-
-        while (haystackIterator.hasNext()) {
-            Element tempElement = haystackIterator.next();
-            Attribute tempAtt = tempElement.getAttribute(needle.getName());
-            if (tempAtt.equals(needle)) {
-                returnVal = true;
-                break;
-            }
-        }
-        return returnVal;
-    }
-
-    /**
-     * This method searches all elements of a metadata for a namespace that matches the "needle"
-     * namespace arg. (Note: matching namespaces have the same URI, prefix is ignored).
-     *
-     * @param needle   the XML namespace we are trying to find
-     * @param haystack the XML metadata record we are searching
-     */
-    private boolean isMatchingNamespaceInMetadata(Namespace needle, Element haystack) {
-        if (Log.isDebugEnabled(Geonet.SCHEMA_MANAGER))
-            Log.debug(Geonet.SCHEMA_MANAGER, "Matching " + needle.toString());
-
-        if (checkNamespacesOnElement(needle, haystack)) return true;
-
-        @SuppressWarnings("unchecked")
-        Iterator<Element> haystackIterator = haystack.getDescendants(new ElementFilter());
-        while (haystackIterator.hasNext()) {
-            Element tempElement = haystackIterator.next();
-            if (checkNamespacesOnElement(needle, tempElement)) return true;
-        }
-
-        return false;
-    }
-
-    /**
-     * This method searches an elements and its namespaces for a match with an input namespace.
-     *
-     * @param ns   the XML namespace we are trying to find
-     * @param elem the XML metadata element whose namespaces are to be searched
-     */
-    private boolean checkNamespacesOnElement(Namespace ns, Element elem) {
-        if (elem.getNamespace().equals(ns)) return true;
-        @SuppressWarnings("unchecked")
-        List<Namespace> nss = elem.getAdditionalNamespaces();
-        for (Namespace ans : nss) {
-            if (ans.equals(ns)) return true;
-        }
-        return false;
-    }
-
-    /**
-     * This method searches an entire metadata file for an element that matches the "needle"
-     * metadata element arg - A matching element has the same name, namespace and value.
-     *
-     * @param needle     the XML element we are trying to find
-     * @param haystack   the XML metadata record we are searching
-     * @param checkValue compare the value of the needle with the value of the element we find in
-     *                   the md
-     */
-    private boolean isMatchingElementInMetadata(Element needle, Element haystack, boolean checkValue) {
-        boolean returnVal = false;
-        @SuppressWarnings("unchecked")
-        Iterator<Element> haystackIterator = haystack.getDescendants(new ElementFilter());
-
-        String needleName = needle.getName();
-        Namespace needleNS = needle.getNamespace();
-        if (Log.isDebugEnabled(Geonet.SCHEMA_MANAGER))
-            Log.debug(Geonet.SCHEMA_MANAGER, "Matching " + Xml.getString(needle));
-
-        while (haystackIterator.hasNext()) {
-            Element tempElement = haystackIterator.next();
-
-            if (tempElement.getName().equals(needleName) && tempElement.getNamespace().equals(needleNS)) {
-                if (checkValue) {
-                    if (Log.isDebugEnabled(Geonet.SCHEMA_MANAGER))
-                        Log.debug(Geonet.SCHEMA_MANAGER, "  Searching value for element: " + tempElement.getName());
-
-                    String needleVal = StringUtils.deleteWhitespace(needle.getValue());
-                    String tempVal = StringUtils.deleteWhitespace(tempElement.getValue());
-                    returnVal = Pattern.matches(needleVal, tempVal);
-                    if (Log.isDebugEnabled(Geonet.SCHEMA_MANAGER)) {
-                        Log.debug(Geonet.SCHEMA_MANAGER, "    Pattern " + needleVal + " applied to value " + tempVal + " match: " + returnVal);
-                    }
-                    if (returnVal) {
-                        break;
-                    }
-                } else {
-                    returnVal = true;
-                    break;
-                }
-            }
-        }
-        return returnVal;
-    }
-
     /**
      * This method deletes all the files and directories inside another the schema dir and then the
      * schema dir itself.
@@ -29,45 +29,63 @@ import jeeves.server.context.ServiceContext;
 
 import org.apache.commons.lang.StringUtils;
 import org.elasticsearch.action.search.SearchResponse;
+import org.elasticsearch.index.query.QueryBuilder;
+import org.elasticsearch.index.query.QueryBuilders;
 import org.elasticsearch.search.SearchHit;
+import org.elasticsearch.search.sort.FieldSortBuilder;
+import org.elasticsearch.search.sort.SortBuilder;
+import org.elasticsearch.search.sort.SortOrder;
 import org.fao.geonet.ApplicationContextHolder;
 import org.fao.geonet.constants.Edit;
 import org.fao.geonet.constants.Geonet;
 import org.fao.geonet.constants.Params;
 import org.fao.geonet.kernel.search.EsSearchManager;
-import org.fao.geonet.kernel.setting.SettingInfo;
+import org.fao.geonet.kernel.selection.DatabaseSelectionResolver;
+import org.fao.geonet.kernel.selection.IdBitmap;
+import org.fao.geonet.kernel.selection.RecordSelection;
+import org.fao.geonet.kernel.selection.SelectionResolver;
+import org.fao.geonet.kernel.selection.SelectionStore;
 import org.fao.geonet.utils.Log;
 import org.jdom.Element;
+import org.springframework.beans.BeansException;
+import org.springframework.context.ConfigurableApplicationContext;
 
+import java.io.IOException;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.stream.Collectors;
 
 import javax.annotation.Nonnull;
 
-import static org.fao.geonet.kernel.search.EsSearchManager.FIELDLIST_UUID;
-
 /**
  * Manage objects selection for a user session.
+ *
+ * <p>The selected records are stored by id (see {@link RecordSelection}). If a
+ * {@link SelectionStore} is enabled, the selections of the authenticated users are also saved
+ * to it after each change, so that all the nodes of a cluster see them.</p>
  */
 public class SelectionManager {
 
     public static final String SELECTION_METADATA = "metadata";
     public static final String SELECTION_BUCKET = "bucket";
-    // used to limit select all if get system setting maxrecords fails or contains value we can't parse
-    public static final int DEFAULT_MAXHITS = 1000;
+    // number of records read by page when selecting all the records of a search
+    public static final int SELECT_ALL_PAGE_SIZE = 5000;
     public static final String ADD_ALL_SELECTED = "add-all";
     public static final String REMOVE_ALL_SELECTED = "remove-all";
     public static final String ADD_SELECTED = "add";
     public static final String REMOVE_SELECTED = "remove";
     public static final String CLEAR_ADD_SELECTED = "clear-add";
-    private Hashtable<String, Set<String>> selections = null;
+    private static final Set<String> FIELDLIST_SELECT_ALL = new HashSet<>(Arrays.asList(
+        Geonet.IndexFieldNames.ID, Geonet.IndexFieldNames.UUID, Geonet.IndexFieldNames.DRAFT));
 
-    private SelectionManager() {
-        selections = new Hashtable<String, Set<String>>(0);
+    private final Hashtable<String, RecordSelection> selections = new Hashtable<>();
+    private final Map<String, Long> storedVersions = new ConcurrentHashMap<>();
+    private final SelectionResolver resolver;
+    private volatile String owner;
 
-        Set<String> MDSelection = Collections
-            .synchronizedSet(new HashSet<String>(0));
-        selections.put(SELECTION_METADATA, MDSelection);
+    private SelectionManager() {
+        resolver = DatabaseSelectionResolver.INSTANCE;
+        selections.put(SELECTION_METADATA, new RecordSelection(resolver));
     }
 
 
@@ -92,16 +110,25 @@ public class SelectionManager {
         @SuppressWarnings("unchecked")
         List<Element> elList = result.getChildren();
 
-        Set<String> selection = manager.getSelection(bucket);
+        RecordSelection selection = manager.getSelection(bucket);
 
+        List<Element> infos = new ArrayList<>();
+        List<String> uuids = new ArrayList<>();
         for (Element element : elList) {
             if (element.getName().equals(Geonet.Elem.SUMMARY)) {
                 continue;
             }
             Element info = element.getChild(Edit.RootChild.INFO,
                 Edit.NAMESPACE);
+            infos.add(info);
+            uuids.add(info.getChildText(Edit.Info.Elem.UUID));
+        }
+
+        // check the whole page at once
+        Set<String> selected = selection.getSelected(uuids);
+        for (Element info : infos) {
             String uuid = info.getChildText(Edit.Info.Elem.UUID);
-            if (selection.contains(uuid)) {
+            if (selected.contains(uuid)) {
                 info.addContent(new Element(Edit.Info.Elem.SELECTED)
                     .setText("true"));
             } else {
@@ -162,9 +189,37 @@ public class SelectionManager {
             manager = new SelectionManager();
             session.setProperty(Geonet.Session.SELECTED_RESULT, manager);
         }
+        // Only the selections of authenticated users are shared, the user may have logged in
+        manager.owner = session.isAuthenticated() ? "user-" + session.getUserId() : null;
         return manager;
     }
 
+    /**
+     * Remove the stored selections of the user of the session (eg. on logout or when the
+     * session expires) so that they are not kept forever in the store.
+     */
+    public static void removeStoredSelections(UserSession session) {
+        Object manager = session.getProperty(Geonet.Session.SELECTED_RESULT);
+        if (manager instanceof SelectionManager) {
+            ((SelectionManager) manager).removeStored();
+        }
+    }
+
+    private void removeStored() {
+        String owner = this.owner;
+        SelectionStore store = getStore();
+        storedVersions.clear();
+        if (owner == null || store == null) {
+            return;
+        }
+        try {
+            store.remove(owner);
+        } catch (IOException e) {
+            Log.warning(Geonet.GEONETWORK, String.format(
+                "Error removing the selections of %s: %s", owner, e.getMessage()));
+        }
+    }
+
     /**
      * <p> Update selected element in session </p>
      *
@@ -180,11 +235,7 @@ public class SelectionManager {
                                UserSession session) {
 
         // Get the selection manager or create it
-        Set<String> selection = this.getSelection(type);
-        if (selection == null) {
-            selection = Collections.synchronizedSet(new HashSet<String>());
-            this.selections.put(type, selection);
-        }
+        RecordSelection selection = this.getSelection(type);
 
         if (selected != null) {
             if (selected.equals(ADD_ALL_SELECTED))
@@ -193,108 +244,134 @@ public class SelectionManager {
                 this.close(type);
             else if (selected.equals(ADD_SELECTED) && listOfIdentifiers.size() > 0) {
                 // TODO ? Should we check that the element exist first ?
-                for (String paramid : listOfIdentifiers) {
-                    selection.add(paramid);
-                }
+                selection.addAll(listOfIdentifiers);
+                save(type, selection);
             } else if (selected.equals(REMOVE_SELECTED) && listOfIdentifiers.size() > 0) {
-                for (String paramid : listOfIdentifiers) {
-                    selection.remove(paramid);
-                }
+                selection.removeAll(listOfIdentifiers);
+                save(type, selection);
             } else if (selected.equals(CLEAR_ADD_SELECTED) && listOfIdentifiers.size() > 0) {
-                this.close(type);
-                for (String paramid : listOfIdentifiers) {
-                    selection.add(paramid);
+                synchronized (selection) {
+                    selection.clear();
+                    selection.addAll(listOfIdentifiers);
                 }
+                save(type, selection);
             }
         }
 
-        // Remove empty/null element from the selection
-        Iterator<String> iter = selection.iterator();
-        while (iter.hasNext()) {
-            Object element = iter.next();
-            if (element == null)
-                iter.remove();
-        }
-
         return selection.size();
     }
 
     /**
      * <p> Selects all element in the last search
      * which is stored in session based on the bucket name.
-     * Sends the query with a max hits and build a collection of UUIDs.</p>
+     * Reads the ids of all the records found, by pages sorted on the record id.</p>
      */
     public void selectAll(String type, ServiceContext context, UserSession session) {
-        Set<String> selection = selections.get(type);
-        int maxhits = DEFAULT_MAXHITS;
-        SettingInfo settingInfo = ApplicationContextHolder.get().getBean(SettingInfo.class);
-        try {
-            maxhits = Integer.parseInt(settingInfo.getSelectionMaxRecords());
-        } catch (Exception e) {
-            Log.error(Geonet.GEONETWORK, "Select all - invalid max hits value, error: " + e.getMessage(), e);
-        }
-
-        if (selection != null) {
-            selection.clear();
-        }
+        RecordSelection selection = getSelection(type);
+        selection.clear();
 
         if (StringUtils.isNotEmpty(type)) {
             JsonNode request = (JsonNode) session.getProperty(Geonet.Session.SEARCH_REQUEST + type);
-            if (request == null) {
-                return;
-            } else {
-                final SearchResponse searchResponse;
+            if (request != null) {
                 try {
                     EsSearchManager searchManager = context.getBean(EsSearchManager.class);
-                    searchResponse = searchManager.query(request.get("query"), FIELDLIST_UUID, 0, maxhits);
-                    List<String> uuidList = new ArrayList();
-                    for (SearchHit h : Arrays.asList(searchResponse.getHits().getHits())) {
-                        uuidList.add((String) h.getSourceAsMap().get(Geonet.IndexFieldNames.UUID));
-                    }
-
-                    if (selection != null) {
-                        selection.addAll(uuidList);
-                    }
+                    selection.addIds(searchAllIds(searchManager, request.get("query")));
                 } catch (Exception e) {
                     Log.error(Geonet.GEONETWORK,
                         "Select all - query error: " + e.getMessage(), e);
                 }
             }
         }
+        save(type, selection);
+    }
+
+    /**
+     * Read the ids of the records matching a query with search_after requests, so the number of
+     * records is not limited by the maximum result window of the index. The drafts are replaced
+     * by their approved record, as when selecting a record by uuid.
+     */
+    private IdBitmap searchAllIds(EsSearchManager searchManager, JsonNode query) throws Exception {
+        QueryBuilder queryBuilder = QueryBuilders.wrapperQuery(String.valueOf(query));
+        List<SortBuilder<FieldSortBuilder>> sort = new ArrayList<>();
+        sort.add(new FieldSortBuilder(Geonet.IndexFieldNames.ID).order(SortOrder.ASC));
+
+        IdBitmap ids = new IdBitmap();
+        Object[] searchAfter = null;
+        while (true) {
+            SearchResponse response = searchManager.getClient().query(searchManager.getDefaultIndex(),
+                queryBuilder, null, FIELDLIST_SELECT_ALL, searchAfter, SELECT_ALL_PAGE_SIZE, sort);
+            if (response == null) {
+                return ids;
+            }
+            SearchHit[] hits = response.getHits().getHits();
+            List<String> drafts = new ArrayList<>();
+            for (SearchHit hit : hits) {
+                Map<String, Object> source = hit.getSourceAsMap();
+                if ("y".equals(source.get(Geonet.IndexFieldNames.DRAFT))) {
+                    if (source.get(Geonet.IndexFieldNames.UUID) != null) {
+                        drafts.add((String) source.get(Geonet.IndexFieldNames.UUID));
+                    }
+                } else {
+                    ids.add(Integer.parseInt(String.valueOf(source.get(Geonet.IndexFieldNames.ID))));
+                }
+                searchAfter = hit.getSortValues();
+            }
+            if (!drafts.isEmpty()) {
+                resolver.getIds(drafts).values().forEach(ids::add);
+            }
+            if (hits.length < SELECT_ALL_PAGE_SIZE) {
+                return ids;
+            }
+        }
     }
 
     /**
      * <p> Closes the current selection manager for the given element type. </p>
      */
     public void close(String type) {
-        Set<String> selection = selections.get(type);
-        if (selection != null)
-            selection.clear();
+        RecordSelection selection = getSelection(type);
+        selection.clear();
+        save(type, selection);
     }
 
     /**
      * <p> Close the current selection manager </p>
      */
     public void close() {
-        for (Set<String> selection : selections.values()) {
-            selection.clear();
+        for (String type : new ArrayList<>(selections.keySet())) {
+            close(type);
         }
     }
 
     /**
-     * <p> Gets selection for given element type. </p>
+     * <p> Gets selection for given element type. The selection is read again from the
+     * {@link SelectionStore} if it was changed on another node.</p>
      *
      * @param type The type of selected element handled in session
-     * @return Set<String>
+     * @return the selection
      */
-    public Set<String> getSelection(String type) {
-        Set<String> sel = selections.get(type);
-        if (sel == null) {
-            Set<String> MDSelection = Collections
-                .synchronizedSet(new HashSet<String>(0));
-            selections.put(type, MDSelection);
+    public RecordSelection getSelection(String type) {
+        RecordSelection selection = selections.computeIfAbsent(type, t -> new RecordSelection(resolver));
+        String owner = this.owner;
+        SelectionStore store = getStore();
+        if (owner != null && store != null) {
+            try {
+                long version = store.getVersion(owner, type);
+                Long loadedVersion = storedVersions.get(type);
+                if (version != -1 && (loadedVersion == null || version != loadedVersion)) {
+                    RecordSelection stored = store.get(owner, type, resolver);
+                    if (stored != null) {
+                        selection.replaceWith(stored);
+                    }
+                    storedVersions.put(type, version);
+                }
+            } catch (IOException e) {
+                Log.warning(Geonet.GEONETWORK, String.format(
+                    "Error reading selection %s of %s, using the selection of the session: %s",
+                    type, owner, e.getMessage()));
+            }
         }
-        return selections.get(type);
+        return selection;
     }
 
     /**
@@ -305,7 +382,10 @@ public class SelectionManager {
      * @return boolean
      */
     public boolean addSelection(String type, String uuid) {
-        return selections.get(type).add(uuid);
+        RecordSelection selection = getSelection(type);
+        boolean added = selection.add(uuid);
+        save(type, selection);
+        return added;
     }
 
     /**
@@ -316,7 +396,37 @@ public class SelectionManager {
      * @return boolean
      */
     public boolean addAllSelection(String type, Set<String> uuids) {
-        return selections.get(type).addAll(uuids);
+        RecordSelection selection = getSelection(type);
+        boolean added = selection.addAll(uuids);
+        save(type, selection);
+        return added;
     }
 
+    private void save(String type, RecordSelection selection) {
+        String owner = this.owner;
+        SelectionStore store = getStore();
+        if (owner == null || store == null) {
+            return;
+        }
+        try {
+            storedVersions.put(type, store.put(owner, type, selection));
+        } catch (IOException e) {
+            Log.warning(Geonet.GEONETWORK, String.format(
+                "Error saving selection %s of %s, it is only kept in the session: %s",
+                type, owner, e.getMessage()));
+        }
+    }
+
+    private static SelectionStore getStore() {
+        ConfigurableApplicationContext applicationContext = ApplicationContextHolder.get();
+        if (applicationContext == null) {
+            return null;
+        }
+        try {
+            SelectionStore store = applicationContext.getBean(SelectionStore.class);
+            return store.isEnabled() ? store : null;
+        } catch (BeansException e) {
+            return null;
+        }
+    }
 }
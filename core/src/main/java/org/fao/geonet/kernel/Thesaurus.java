@@ -23,8 +23,11 @@
 package org.fao.geonet.kernel;
 
 import org.apache.commons.lang.StringUtils;
+import org.fao.geonet.ApplicationContextHolder;
 import org.fao.geonet.constants.Geonet;
 import org.fao.geonet.domain.ISODate;
+import org.fao.geonet.events.thesaurus.ThesaurusUpdated;
+import org.fao.geonet.exceptions.LabelNotFoundException;
 import org.fao.geonet.exceptions.TermNotFoundException;
 import org.fao.geonet.kernel.rdf.Query;
 import org.fao.geonet.kernel.rdf.QueryBuilder;
@@ -62,6 +65,7 @@ import org.openrdf.sesame.query.QueryResultsTable;
 import org.openrdf.sesame.repository.local.LocalRepository;
 import org.openrdf.sesame.sail.StatementIterator;
 import org.springframework.context.ApplicationContext;
+import org.springframework.context.ConfigurableApplicationContext;
 
 import java.io.IOException;
 import java.nio.file.Files;
@@ -87,7 +91,12 @@ public class Thesaurus {
 
     private Path thesaurusFile;
 
-    private LocalRepository repository;
+    private volatile LocalRepository repository;
+
+    /**
+     * Concepts lookup tables, built on first use and dropped when the thesaurus is modified.
+     */
+    private volatile ThesaurusConceptIndex conceptIndex;
 
     private String title;
 
@@ -257,15 +266,63 @@ public class Thesaurus {
         // needs to have term/concept id tacked onto the end
     }
 
-    public synchronized LocalRepository getRepository() {
+    public LocalRepository getRepository() {
         return repository;
     }
 
     public synchronized Thesaurus setRepository(LocalRepository repository) {
         this.repository = repository;
+        invalidateConceptIndex();
         return this;
     }
 
+    /**
+     * Returns the concept index of the thesaurus, building it if needed. Lookups on the index do
+     * not need any lock. Complex queries still have to use {@link QueryBuilder}.
+     *
+     * @return the index or null if the thesaurus has no repository.
+     */
+    public ThesaurusConceptIndex getConceptIndex() {
+        ThesaurusConceptIndex index = conceptIndex;
+        if (index == null && repository != null) {
+            // Built while holding the lock used by updates so the index
+            // does not miss a concurrent modification.
+            synchronized (this) {
+                index = conceptIndex;
+                if (index == null) {
+                    try {
+                        index = ThesaurusConceptIndex.build(this);
+                    } catch (Exception e) {
+                        throw new RuntimeException(e);
+                    }
+                    conceptIndex = index;
+                    if (Log.isDebugEnabled(Geonet.THESAURUS)) {
+                        Log.debug(Geonet.THESAURUS, "Concept index of " + getKey() + " built with " + index.size() + " concepts.");
+                    }
+                }
+            }
+        }
+        return index;
+    }
+
+    /**
+     * Drop the concept index after a modification of the thesaurus. It is rebuilt on next use.
+     */
+    protected void invalidateConceptIndex() {
+        conceptIndex = null;
+        publishUpdated(getKey());
+    }
+
+    /**
+     * Notify listeners (eg. caches of keyword lookups) that a thesaurus changed.
+     */
+    static void publishUpdated(String thesaurusKey) {
+        ConfigurableApplicationContext applicationContext = ApplicationContextHolder.get();
+        if (applicationContext != null && applicationContext.isActive()) {
+            applicationContext.publishEvent(new ThesaurusUpdated(thesaurusKey));
+        }
+    }
+
     public synchronized Thesaurus initRepository() throws ConfigurationException, IOException {
         RepositoryConfig repConfig = new RepositoryConfig(getKey());
 
@@ -283,9 +340,10 @@ public class Thesaurus {
     }
 
     /**
-     * TODO javadoc.
+     * Run a SeRQL query on the thesaurus repository. The repository uses a synchronized sail
+     * which handles concurrent reads and writes so no lock is taken here.
      */
-    public synchronized QueryResultsTable performRequest(String query) throws IOException, MalformedQueryException,
+    public QueryResultsTable performRequest(String query) throws IOException, MalformedQueryException,
         QueryEvaluationException, AccessDeniedException {
         if (Log.isDebugEnabled(Geonet.THESAURUS))
             Log.debug(Geonet.THESAURUS, "Query : " + query);
@@ -413,6 +471,7 @@ public class Thesaurus {
         myGraph.add(gmlNode, predicateSrsName, srsNameURI);
 
         repository.addGraph(myGraph);
+        invalidateConceptIndex();
         return mySubject;
     }
 
@@ -460,6 +519,7 @@ public class Thesaurus {
             }
         }
         int removedItems = myGraph.remove(subject, null, null);
+        invalidateConceptIndex();
         if (Log.isDebugEnabled(Geonet.THESAURUS)) {
             String msg = "Removed " + removedItems + " elements from thesaurus " + this.title + " with uri: " + subject;
             Log.debug(Geonet.THESAURUS, msg);
@@ -571,6 +631,7 @@ public class Thesaurus {
             }
         }
 
+        invalidateConceptIndex();
         return subject;
     }
 
@@ -671,6 +732,7 @@ public class Thesaurus {
         }
         myGraph.remove(oldobj, null, null);
         myGraph.remove(null, null, oldobj);
+        invalidateConceptIndex();
         return this;
     }
 
@@ -978,6 +1040,7 @@ public class Thesaurus {
 
         myGraph.add(subjectURI, relationURI, relatedSubjectURI);
         myGraph.add(relatedSubjectURI, opposteRelationURI, subjectURI);
+        invalidateConceptIndex();
     }
 
     /**
@@ -1208,6 +1271,7 @@ public class Thesaurus {
     public synchronized void clear() throws IOException, AccessDeniedException {
         AdminListener listener = new DummyAdminListener();
         repository.clear(listener);
+        invalidateConceptIndex();
     }
 
     public String getDefaultNamespace() {
@@ -1220,6 +1284,18 @@ public class Thesaurus {
 
     public List <String> getKeywordHierarchy(String keywordLabel, String langCode) {
         boolean isUri = keywordLabel.startsWith("http");
+        ThesaurusConceptIndex index = getConceptIndex();
+        if (index != null) {
+            String language = toIndexLanguage(langCode);
+            String uri = isUri ? keywordLabel : index.getUri(keywordLabel, language);
+            if (uri == null || !index.hasConcept(uri)) {
+                throw new TermNotFoundException(getTermNotFoundMessage(keywordLabel));
+            }
+            return index.getHierarchies(uri, language, isUri).stream()
+                .map(path -> String.join("^", path))
+                .collect(Collectors.toList());
+        }
+
         KeywordBean term =
             isUri
             ? this.getKeyword(keywordLabel, langCode)
@@ -1237,6 +1313,46 @@ public class Thesaurus {
         return hierarchies;
     }
 
+    /**
+     * @return the preferred label of the keyword in the language or null if the keyword or the label
+     * does not exist.
+     */
+    public String getPreferredLabel(String uri, String langCode) {
+        ThesaurusConceptIndex index = getConceptIndex();
+        if (index != null) {
+            return index.getPreferredLabel(uri, toIndexLanguage(langCode));
+        }
+        try {
+            return getKeyword(uri, langCode).getPreferredLabel(langCode);
+        } catch (TermNotFoundException | LabelNotFoundException e) {
+            return null;
+        }
+    }
+
+    /**
+     * @return the URI of the keyword having this preferred label in the language or null.
+     */
+    public String getKeywordUriWithLabel(String label, String langCode) {
+        ThesaurusConceptIndex index = getConceptIndex();
+        if (index != null) {
+            return index.getUri(label, toIndexLanguage(langCode));
+        }
+        try {
+            return getKeywordWithLabel(label, langCode).getUriCode();
+        } catch (TermNotFoundException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Convert a 3 letters language code to the language code used in the concept index.
+     */
+    private String toIndexLanguage(String langCode) {
+        String language = getIsoLanguageMapper().iso639_2_to_iso639_1(langCode,
+            langCode.length() > 2 ? langCode.substring(0, 2) : langCode);
+        return language.toLowerCase(Locale.ROOT);
+    }
+
     public List<ArrayList <KeywordBean>> classify(KeywordBean term, String langCode) {
 
         List<ArrayList <KeywordBean>> result = new ArrayList<>();
@@ -0,0 +1,322 @@
+/*
+ * Copyright (C) 2001-2016 Food and Agriculture Organization of the
+ * United Nations (FAO-UN), United Nations World Food Programme (WFP)
+ * and United Nations Environment Programme (UNEP)
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or (at
+ * your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301, USA
+ *
+ * Contact: Jeroen Ticheler - FAO - Viale delle Terme di Caracalla 2,
+ * Rome - Italy. email: geonetwork@osgeo.org
+ */
+
+package org.fao.geonet.kernel;
+
+import org.fao.geonet.exceptions.LabelNotFoundException;
+import org.openrdf.model.Literal;
+import org.openrdf.model.Value;
+import org.openrdf.sesame.query.QueryResultsTable;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Immutable in-memory view of the concepts of a thesaurus: preferred labels by language,
+ * label to URI, broader/narrower relations and label prefixes for autocompletion.
+ *
+ * Built once from the RDF repository (see {@link Thesaurus#getConceptIndex()}) so that the
+ * lookups done for each keyword while indexing or editing records do not query the repository.
+ * Languages are the 2 letters codes used in the RDF file (eg. en, fr).
+ */
+public final class ThesaurusConceptIndex {
+    private static final String SKOS_NAMESPACE = "skos=<http://www.w3.org/2004/02/skos/core#>";
+    private static final int[] NO_RELATION = new int[0];
+
+    private final String[] uris;
+    private final Map<String, Integer> uriToConcept;
+    private final Map<String, String[]> labelsByLanguage;
+    private final Map<String, Map<String, Integer>> labelToConcept;
+    private final Map<String, PrefixIndex> prefixIndexes;
+    private final int[][] broader;
+    private final int[][] narrower;
+
+    private ThesaurusConceptIndex(String[] uris, Map<String, Integer> uriToConcept,
+                                  Map<String, String[]> labelsByLanguage,
+                                  int[][] broader, int[][] narrower) {
+        this.uris = uris;
+        this.uriToConcept = uriToConcept;
+        this.labelsByLanguage = labelsByLanguage;
+        this.broader = broader;
+        this.narrower = narrower;
+
+        this.labelToConcept = new HashMap<>();
+        this.prefixIndexes = new HashMap<>();
+        for (Map.Entry<String, String[]> entry : labelsByLanguage.entrySet()) {
+            String[] labels = entry.getValue();
+            Map<String, Integer> byLabel = new HashMap<>();
+            for (int i = 0; i < labels.length; i++) {
+                if (labels[i] != null) {
+                    byLabel.putIfAbsent(labels[i], i);
+                }
+            }
+            labelToConcept.put(entry.getKey(), byLabel);
+            prefixIndexes.put(entry.getKey(), new PrefixIndex(labels));
+        }
+    }
+
+    /**
+     * Read all concepts, preferred labels and broader/narrower relations of the thesaurus.
+     */
+    static ThesaurusConceptIndex build(Thesaurus thesaurus) throws Exception {
+        QueryResultsTable labelsTable = thesaurus.performRequest(
+            "SELECT id, label FROM {id} rdf:type {skos:Concept}, {id} skos:prefLabel {label}"
+                + " USING NAMESPACE " + SKOS_NAMESPACE);
+        QueryResultsTable conceptsTable = thesaurus.performRequest(
+            "SELECT id FROM {id} rdf:type {skos:Concept} USING NAMESPACE " + SKOS_NAMESPACE);
+
+        Map<String, Integer> uriToConcept = new HashMap<>();
+        List<String> uris = new ArrayList<>();
+        for (int row = 0; row < conceptsTable.getRowCount(); row++) {
+            String uri = conceptsTable.getValue(row, 0).toString();
+            if (!uriToConcept.containsKey(uri)) {
+                uriToConcept.put(uri, uris.size());
+                uris.add(uri);
+            }
+        }
+
+        Map<String, String[]> labelsByLanguage = new HashMap<>();
+        for (int row = 0; row < labelsTable.getRowCount(); row++) {
+            Integer concept = uriToConcept.get(labelsTable.getValue(row, 0).toString());
+            Value value = labelsTable.getValue(row, 1);
+            if (concept == null || !(value instanceof Literal)) {
+                continue;
+            }
+            Literal label = (Literal) value;
+            String language = label.getLanguage() == null ? "" : label.getLanguage().toLowerCase(Locale.ROOT);
+            String[] labels = labelsByLanguage.computeIfAbsent(language, l -> new String[uris.size()]);
+            if (labels[concept] == null) {
+                labels[concept] = label.getLabel();
+            }
+        }
+
+        List<Set<Integer>> broader = newAdjacency(uris.size());
+        List<Set<Integer>> narrower = newAdjacency(uris.size());
+        addRelations(thesaurus, "broader", uriToConcept, broader, narrower);
+        addRelations(thesaurus, "narrower", uriToConcept, narrower, broader);
+
+        return new ThesaurusConceptIndex(uris.toArray(new String[0]), uriToConcept, labelsByLanguage,
+            toArrays(broader), toArrays(narrower));
+    }
+
+    private static void addRelations(Thesaurus thesaurus, String relation, Map<String, Integer> uriToConcept,
+                                     List<Set<Integer>> relations, List<Set<Integer>> inverseRelations) throws Exception {
+        QueryResultsTable table = thesaurus.performRequest(
+            "SELECT id, related FROM {id} skos:" + relation + " {related} USING NAMESPACE " + SKOS_NAMESPACE);
+        for (int row = 0; row < table.getRowCount(); row++) {
+            Integer concept = uriToConcept.get(table.getValue(row, 0).toString());
+            Integer related = uriToConcept.get(table.getValue(row, 1).toString());
+            if (concept != null && related != null) {
+                relations.get(concept).add(related);
+                inverseRelations.get(related).add(concept);
+            }
+        }
+    }
+
+    private static List<Set<Integer>> newAdjacency(int size) {
+        List<Set<Integer>> adjacency = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            adjacency.add(new LinkedHashSet<>());
+        }
+        return adjacency;
+    }
+
+    private static int[][] toArrays(List<Set<Integer>> adjacency) {
+        int[][] result = new int[adjacency.size()][];
+        for (int i = 0; i < result.length; i++) {
+            Set<Integer> related = adjacency.get(i);
+            result[i] = related.isEmpty() ? NO_RELATION : related.stream().mapToInt(Integer::intValue).toArray();
+        }
+        return result;
+    }
+
+    public int size() {
+        return uris.length;
+    }
+
+    public boolean hasConcept(String uri) {
+        return uriToConcept.containsKey(uri);
+    }
+
+    /**
+     * @return the preferred label of the concept in the language or null if the concept or
+     * the label does not exist.
+     */
+    public String getPreferredLabel(String uri, String language) {
+        Integer concept = uriToConcept.get(uri);
+        return concept == null ? null : label(concept, language);
+    }
+
+    /**
+     * @return the URI of the concept having this preferred label in the language or null.
+     */
+    public String getUri(String label, String language) {
+        Map<String, Integer> byLabel = labelToConcept.get(language);
+        if (byLabel == null) {
+            return null;
+        }
+        Integer concept = byLabel.get(label);
+        return concept == null ? null : uris[concept];
+    }
+
+    public List<String> getBroader(String uri) {
+        return related(uri, broader);
+    }
+
+    public List<String> getNarrower(String uri) {
+        return related(uri, narrower);
+    }
+
+    /**
+     * Return the URIs of the concepts having a preferred label starting with the prefix
+     * (case insensitive), in label order.
+     *
+     * @param maxResults maximum number of URIs returned
+     */
+    public List<String> getUrisWithLabelPrefix(String prefix, String language, int maxResults) {
+        PrefixIndex prefixIndex = prefixIndexes.get(language);
+        if (prefixIndex == null) {
+            return Collections.emptyList();
+        }
+        List<String> result = new ArrayList<>();
+        for (int concept : prefixIndex.find(prefix, maxResults)) {
+            result.add(uris[concept]);
+        }
+        return result;
+    }
+
+    /**
+     * Paths from the top concepts down to the concept. Each path is made of the concept URIs
+     * or of their preferred labels in the language.
+     *
+     * @return an empty list if the concept does not exist.
+     * @throws LabelNotFoundException if labels are requested and a concept in a path has no label
+     * in the language.
+     */
+    public List<List<String>> getHierarchies(String uri, String language, boolean asUris) {
+        Integer concept = uriToConcept.get(uri);
+        if (concept == null) {
+            return Collections.emptyList();
+        }
+        List<List<String>> result = new ArrayList<>();
+        for (int[] path : paths(concept, new LinkedHashSet<>())) {
+            List<String> values = new ArrayList<>(path.length);
+            for (int c : path) {
+                String value = asUris ? uris[c] : label(c, language);
+                if (value == null) {
+                    throw new LabelNotFoundException(
+                        "Could not find preferred label for language code " + language + " for the keyword uri " + uris[c]);
+                }
+                values.add(value);
+            }
+            result.add(values);
+        }
+        return result;
+    }
+
+    private List<int[]> paths(int concept, Set<Integer> visiting) {
+        List<int[]> result = new ArrayList<>();
+        if (broader[concept].length == 0 || !visiting.add(concept)) {
+            result.add(new int[]{concept});
+            return result;
+        }
+        for (int parent : broader[concept]) {
+            for (int[] parentPath : paths(parent, visiting)) {
+                int[] path = Arrays.copyOf(parentPath, parentPath.length + 1);
+                path[parentPath.length] = concept;
+                result.add(path);
+            }
+        }
+        visiting.remove(concept);
+        return result;
+    }
+
+    private String label(int concept, String language) {
+        String[] labels = labelsByLanguage.get(language);
+        if (labels == null || labels[concept] == null || labels[concept].isEmpty()) {
+            return null;
+        }
+        return labels[concept];
+    }
+
+    private List<String> related(String uri, int[][] relations) {
+        Integer concept = uriToConcept.get(uri);
+        if (concept == null) {
+            return Collections.emptyList();
+        }
+        List<String> result = new ArrayList<>(relations[concept].length);
+        for (int related : relations[concept]) {
+            result.add(uris[related]);
+        }
+        return result;
+    }
+
+    /**
+     * Lower cased labels sorted alphabetically. All labels starting with a prefix are
+     * contiguous, so a prefix lookup is a binary search followed by a scan.
+     */
+    private static final class PrefixIndex {
+        private final String[] keys;
+        private final int[] concepts;
+
+        private PrefixIndex(String[] labels) {
+            List<Integer> withLabel = new ArrayList<>();
+            for (int i = 0; i < labels.length; i++) {
+                if (labels[i] != null && !labels[i].isEmpty()) {
+                    withLabel.add(i);
+                }
+            }
+            withLabel.sort((a, b) -> labels[a].toLowerCase(Locale.ROOT).compareTo(labels[b].toLowerCase(Locale.ROOT)));
+            keys = new String[withLabel.size()];
+            concepts = new int[withLabel.size()];
+            for (int i = 0; i < keys.length; i++) {
+                concepts[i] = withLabel.get(i);
+                keys[i] = labels[concepts[i]].toLowerCase(Locale.ROOT);
+            }
+        }
+
+        private int[] find(String prefix, int maxResults) {
+            String key = prefix.toLowerCase(Locale.ROOT);
+            int start = Arrays.binarySearch(keys, key);
+            if (start < 0) {
+                start = -start - 1;
+            } else {
+                while (start > 0 && keys[start - 1].equals(key)) {
+                    start--;
+                }
+            }
+            int end = start;
+            while (end < keys.length && end - start < maxResults && keys[end].startsWith(key)) {
+                end++;
+            }
+            return Arrays.copyOfRange(concepts, start, end);
+        }
+    }
+}
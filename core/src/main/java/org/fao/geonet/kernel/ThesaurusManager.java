@@ -305,6 +305,7 @@ public class ThesaurusManager implements ThesaurusFinder {
 
         createThesaurusRepository(gst);
         thesauriMap.put(gst.getKey(), gst);
+        Thesaurus.publishUpdated(gst.getKey());
 
         if (Log.isDebugEnabled(Geonet.THESAURUS_MAN)) {
             Log.debug(Geonet.THESAURUS_MAN, "Thesaurus " + gst.getKey() + " loaded.");
@@ -318,6 +319,7 @@ public class ThesaurusManager implements ThesaurusFinder {
     public void remove(String name) {
         service.removeRepository(name);
         thesauriMap.remove(name);
+        Thesaurus.publishUpdated(name);
     }
 
     /**
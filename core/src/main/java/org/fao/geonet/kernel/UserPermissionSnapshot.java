@@ -0,0 +1,162 @@
+/*
+ * Copyright (C) 2001-2016 Food and Agriculture Organization of the
+ * United Nations (FAO-UN), United Nations World Food Programme (WFP)
+ * and United Nations Environment Programme (UNEP)
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or (at
+ * your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301, USA
+ *
+ * Contact: Jeroen Ticheler - FAO - Viale delle Terme di Caracalla 2,
+ * Rome - Italy. email: geonetwork@osgeo.org
+ */
+
+package org.fao.geonet.kernel;
+
+import org.fao.geonet.domain.Profile;
+
+import java.util.Arrays;
+import java.util.Collection;
+
+/**
+ * Immutable view of the groups and profile of a user, computed once
+ * (see {@link AccessManager#getUserPermissionSnapshot(jeeves.server.context.ServiceContext)})
+ * and then used to check privileges on many records without any database access.
+ *
+ * The checks mirror {@link AccessManager#isOwner(jeeves.server.context.ServiceContext, org.fao.geonet.domain.MetadataSourceInfo)}
+ * and {@link AccessManager#hasReviewPermission(jeeves.server.context.ServiceContext, org.fao.geonet.domain.AbstractMetadata)}
+ * but work on the owner, group owner and operation group ids found in the index.
+ */
+public final class UserPermissionSnapshot {
+    private static final int[] EMPTY = new int[0];
+
+    private final boolean authenticated;
+    private final int userId;
+    private final Profile profile;
+    private final int[] groups;
+    private final int[] editingGroups;
+    private final int[] reviewerGroups;
+    private final boolean publicationByGroupOwnerOnly;
+
+    public UserPermissionSnapshot(boolean authenticated, int userId, Profile profile,
+                                  Collection<Integer> groups,
+                                  Collection<Integer> editingGroups,
+                                  Collection<Integer> reviewerGroups,
+                                  boolean publicationByGroupOwnerOnly) {
+        this.authenticated = authenticated;
+        this.userId = userId;
+        this.profile = profile;
+        this.groups = toSortedArray(groups);
+        this.editingGroups = toSortedArray(editingGroups);
+        this.reviewerGroups = toSortedArray(reviewerGroups);
+        this.publicationByGroupOwnerOnly = publicationByGroupOwnerOnly;
+    }
+
+    private static int[] toSortedArray(Collection<Integer> values) {
+        if (values == null || values.isEmpty()) {
+            return EMPTY;
+        }
+        int[] array = values.stream().mapToInt(Integer::intValue).distinct().toArray();
+        Arrays.sort(array);
+        return array;
+    }
+
+    private static boolean contains(int[] sortedValues, int value) {
+        return Arrays.binarySearch(sortedValues, value) >= 0;
+    }
+
+    public boolean isAuthenticated() {
+        return authenticated;
+    }
+
+    public int getUserId() {
+        return userId;
+    }
+
+    public Profile getProfile() {
+        return profile;
+    }
+
+    public boolean isAdministrator() {
+        return authenticated && profile == Profile.Administrator;
+    }
+
+    /**
+     * All groups accessible by the user (see {@link AccessManager#getUserGroups(jeeves.server.UserSession, String, boolean)}).
+     */
+    public boolean isInGroup(int groupId) {
+        return contains(groups, groupId);
+    }
+
+    /**
+     * Groups where the user is an editor.
+     */
+    public boolean isEditorInGroup(int groupId) {
+        return contains(editingGroups, groupId);
+    }
+
+    /**
+     * Groups where the user is a reviewer.
+     */
+    public boolean isReviewerInGroup(int groupId) {
+        return contains(reviewerGroups, groupId);
+    }
+
+    /**
+     * Return true if the user is administrator, the record owner or a
+     * reviewer/useradmin in the record group owner.
+     *
+     * @param owner      The record owner id, may be null.
+     * @param groupOwner The record group owner id, may be null.
+     */
+    public boolean isOwner(Integer owner, Integer groupOwner) {
+        if (!authenticated) {
+            return false;
+        }
+        if (profile == Profile.Administrator) {
+            return true;
+        }
+        if (owner != null && owner == userId) {
+            return true;
+        }
+        if (profile != Profile.Reviewer && profile != Profile.UserAdmin) {
+            return false;
+        }
+        return groupOwner != null && isReviewerInGroup(groupOwner);
+    }
+
+    /**
+     * Return true if the user can review the record.
+     *
+     * @param groupOwner     The record group owner id, may be null.
+     * @param editingGroups  The ids of the groups having the editing operation on the record.
+     */
+    public boolean hasReviewPermission(Integer groupOwner, int[] editingGroups) {
+        if (!authenticated) {
+            return false;
+        }
+        if (profile == Profile.Administrator) {
+            return true;
+        }
+        boolean userIsReviewerOfOwnerGroup = groupOwner != null && isReviewerInGroup(groupOwner);
+        if (publicationByGroupOwnerOnly || userIsReviewerOfOwnerGroup) {
+            return userIsReviewerOfOwnerGroup;
+        }
+        for (int groupId : editingGroups) {
+            if (isReviewerInGroup(groupId)) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
@@ -25,6 +25,7 @@ package org.fao.geonet.kernel.datamanager;
 
 import java.io.IOException;
 import java.util.Calendar;
+import java.util.Collection;
 import java.util.List;
 
 import org.fao.geonet.domain.AbstractMetadata;
@@ -106,8 +107,28 @@ public interface IMetadataIndexer {
      * @throws Exception
      */
     void indexMetadata(String metadataId, boolean forceRefreshReaders) throws Exception;
+
+    /**
+     * Index a chunk of records, loading the information needed by the index documents
+     * for all records at once. Records which can not be indexed are logged and skipped.
+     *
+     * @param metadataIds
+     * @param forceRefreshReaders
+     * @throws Exception
+     */
+    void indexMetadata(List<String> metadataIds, boolean forceRefreshReaders) throws Exception;
+
     void indexMetadataPrivileges(String uuid, int id) throws Exception;
 
+    /**
+     * Update the privileges fields of a set of records in the index, without reindexing the
+     * records.
+     *
+     * @param records
+     * @throws Exception
+     */
+    void indexMetadataPrivileges(Collection<? extends AbstractMetadata> records) throws Exception;
+
     /**
      * Start record versioning
      *
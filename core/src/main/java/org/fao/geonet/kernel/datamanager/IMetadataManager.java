@@ -159,6 +159,16 @@ public interface IMetadataManager {
                         boolean forEditing, boolean applyOperationsFilters,
                         boolean withEditorValidationErrors, boolean keepXlinkAttributes) throws Exception;
 
+    /**
+     * Retrieves a metadata (in xml) from an already loaded record in view mode (no editing information).
+     * Avoids querying the record again when callers bulk load records.
+     *
+     * @param applyOperationsFilters Filter elements based on operation filters
+     * @param keepXlinkAttributes When XLinks are resolved, do not remove XLink attributes.
+     */
+    Element getMetadata(ServiceContext srvContext, AbstractMetadata metadata,
+                        boolean applyOperationsFilters, boolean keepXlinkAttributes) throws Exception;
+
     /**
      * Update of owner info.
      */
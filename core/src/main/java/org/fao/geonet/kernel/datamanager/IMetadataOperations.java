@@ -24,8 +24,10 @@
 package org.fao.geonet.kernel.datamanager;
 
 import java.util.Collection;
+import java.util.List;
 
 import org.fao.geonet.domain.OperationAllowed;
+import org.fao.geonet.domain.OperationAllowedId;
 import org.fao.geonet.domain.ReservedOperation;
 import org.fao.geonet.repository.UserGroupRepository;
 
@@ -117,6 +119,24 @@ public interface IMetadataOperations {
      */
     boolean forceSetOperation(ServiceContext context, int mdId, int grpId, int opId) throws Exception;
 
+    /**
+     * Set privileges on a set of metadata even if the user logged in does not have privileges,
+     * with batched statements. Metadata are not reindexed.
+     *
+     * @param operations The privileges to set
+     * @return the privileges which were not already set.
+     */
+    List<OperationAllowedId> forceSetOperations(ServiceContext context, Collection<OperationAllowedId> operations) throws Exception;
+
+    /**
+     * Unset privileges on a set of metadata even if the user logged in does not have privileges,
+     * with one statement per group and operation. Metadata are not reindexed.
+     *
+     * @param operations The privileges to unset
+     * @return the privileges which were set.
+     */
+    List<OperationAllowedId> forceUnsetOperations(ServiceContext context, Collection<OperationAllowedId> operations) throws Exception;
+
     /**
      * Check that the operation has not been added and if not that it can be added.
      * <ul>
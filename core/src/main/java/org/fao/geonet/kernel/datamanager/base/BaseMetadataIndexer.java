@@ -45,12 +45,14 @@ import org.fao.geonet.kernel.datamanager.IMetadataUtils;
 import org.fao.geonet.kernel.datamanager.draft.DraftMetadataIndexer;
 import org.fao.geonet.kernel.search.EsSearchManager;
 import org.fao.geonet.kernel.search.IndexFields;
+import org.fao.geonet.kernel.search.index.IndexingScheduler;
 import org.fao.geonet.kernel.setting.SettingManager;
 import org.fao.geonet.kernel.setting.Settings;
 import org.fao.geonet.repository.*;
+import org.fao.geonet.repository.specification.MetadataSpecs;
 import org.fao.geonet.repository.userfeedback.UserFeedbackRepository;
 import org.fao.geonet.resources.Resources;
-import org.fao.geonet.util.ThreadUtils;
+import org.fao.geonet.util.XslFunctionCache;
 import org.fao.geonet.utils.Log;
 import org.jdom.Attribute;
 import org.jdom.Element;
@@ -68,14 +70,14 @@ import org.springframework.transaction.interceptor.TransactionAspectSupport;
 import java.io.IOException;
 import java.nio.file.Path;
 import java.util.*;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
 
 import static org.fao.geonet.resources.Resources.DEFAULT_LOGO_EXTENSION;
 
 
 public class BaseMetadataIndexer implements IMetadataIndexer, ApplicationEventPublisherAware {
+    private static final int SELECTION_BATCH_SIZE = 500;
 
     @Autowired
 	private EsSearchManager searchManager;
@@ -229,13 +231,16 @@ public class BaseMetadataIndexer implements IMetadataIndexer, ApplicationEventPu
         UserSession session = context.getUserSession();
         SelectionManager sm = SelectionManager.getManager(session);
 
-        synchronized (sm.getSelection(bucket)) {
-            for (Iterator<String> iter = sm.getSelection(bucket).iterator(); iter.hasNext(); ) {
-                String uuid = (String) iter.next();
-                String id = metadataUtils.getMetadataId(uuid);
-                if (id != null) {
-                    listOfIdsToIndex.add(id);
+        // The selection stores the id of the records, only check they were not removed since
+        PrimitiveIterator.OfInt ids = sm.getSelection(bucket).getIds().iterator();
+        List<Integer> batch = new ArrayList<>();
+        while (ids.hasNext()) {
+            batch.add(ids.nextInt());
+            if (batch.size() == SELECTION_BATCH_SIZE || !ids.hasNext()) {
+                for (Integer id : metadataUtils.findAllIdsBy(MetadataSpecs.hasMetadataIdIn(batch))) {
+                    listOfIdsToIndex.add(String.valueOf(id));
                 }
+                batch.clear();
             }
         }
 
@@ -271,43 +276,40 @@ public class BaseMetadataIndexer implements IMetadataIndexer, ApplicationEventPu
         } catch (NoTransactionException e) {
             // not in a transaction so we can go ahead.
         }
-        // split reindexing task according to number of processors we can assign
-        int threadCount = ThreadUtils.getNumberOfThreads();
-        ExecutorService executor = Executors.newFixedThreadPool(threadCount);
-
-        int perThread;
-        if (metadataIds.size() < threadCount)
-            perThread = metadataIds.size();
-        else
-            perThread = metadataIds.size() / threadCount;
-        int index = 0;
         if (Log.isDebugEnabled(Geonet.INDEX_ENGINE)) {
             Log.debug(Geonet.INDEX_ENGINE, "Indexing " + metadataIds.size() + " records.");
             Log.debug(Geonet.INDEX_ENGINE, metadataIds.toString());
         }
-        AtomicInteger numIndexedTracker = new AtomicInteger();
-        while (index < metadataIds.size()) {
-            int start = index;
-            int count = Math.min(perThread, metadataIds.size() - start);
-            int nbRecords = start + count;
-
-            if (Log.isDebugEnabled(Geonet.INDEX_ENGINE)) {
-                Log.debug(Geonet.INDEX_ENGINE, "Indexing records from " + start + " to " + nbRecords);
-            }
+        if (metadataIds.isEmpty()) {
+            return;
+        }
 
-            List<?> subList = metadataIds.subList(start, nbRecords);
+        // Keep index stylesheet lookups (codelists, keywords, ...) cached until all chunks are done
+        XslFunctionCache functionCache = XslFunctionCache.get();
+        if (functionCache != null) {
+            functionCache.reindexingStarted();
+        }
 
+        // the shared indexing threads take the records by small chunks, once the transaction
+        // is completed and the servlet is initialized (checked without holding an indexing thread)
+        final TransactionStatus status = transactionStatus;
+        AtomicInteger numIndexedTracker = new AtomicInteger();
+        IndexingScheduler.Job job = IndexingScheduler.get().submit(new ArrayList<>(metadataIds), chunk -> {
             if (Log.isDebugEnabled(Geonet.INDEX_ENGINE)) {
-                Log.debug(Geonet.INDEX_ENGINE, subList.toString());
+                Log.debug(Geonet.INDEX_ENGINE, "Indexing records " + chunk);
             }
-
-            // create threads to process this chunk of ids
-            Runnable worker = new IndexMetadataTask(context, subList, batchIndex, transactionStatus, numIndexedTracker);
-            executor.execute(worker);
-            index += count;
-        }
-
-        executor.shutdown();
+            XslFunctionCache.runIndexing(
+                new IndexMetadataTask(context, chunk, batchIndex, null, numIndexedTracker, false)::run);
+        }, () -> (status == null || status.isCompleted()) && context.isServletInitialized());
+        job.getCompletion().whenComplete((result, error) -> {
+            try {
+                searchManager.forceIndexChanges();
+            } finally {
+                if (functionCache != null) {
+                    functionCache.reindexingEnded();
+                }
+            }
+        });
     }
 
     @Override
@@ -317,28 +319,108 @@ public class BaseMetadataIndexer implements IMetadataIndexer, ApplicationEventPu
 
     @Override
     public void indexMetadata(final List<String> metadataIds) throws Exception {
-        for (String metadataId : metadataIds) {
-            indexMetadata(metadataId, true);
-        }
+        indexMetadata(metadataIds, true);
     }
 
     @Override
     public void indexMetadata(final String metadataId, final boolean forceRefreshReaders)
         throws Exception {
+        indexMetadata(Collections.singletonList(metadataId), forceRefreshReaders);
+    }
+
+    /**
+     * Index a chunk of records. The rows needed to build the index documents (records,
+     * privileges, owners, groups, status, validation, feedback counts and atom feeds) are
+     * loaded for the whole chunk by a few set based queries instead of a few queries per record.
+     */
+    @Override
+    public void indexMetadata(final List<String> metadataIds, final boolean forceRefreshReaders)
+        throws Exception {
+        if (metadataIds.isEmpty()) {
+            return;
+        }
+        IndexingBatch batch = loadBatch(metadataIds);
+        for (String metadataId : metadataIds) {
+            indexMetadata(metadataId, batch, forceRefreshReaders);
+        }
+    }
+
+    private IndexingBatch loadBatch(List<String> metadataIds) {
+        IndexingBatch batch = new IndexingBatch();
+        Set<Integer> ids = new HashSet<>();
+        for (String metadataId : metadataIds) {
+            try {
+                ids.add(Integer.parseInt(metadataId));
+            } catch (NumberFormatException e) {
+                // reported when indexing the record
+            }
+        }
+
+        for (AbstractMetadata md : metadataUtils.findAll(ids)) {
+            batch.metadata.put(md.getId(), md);
+        }
+        Set<Integer> loadedIds = batch.metadata.keySet();
+        if (loadedIds.isEmpty()) {
+            return batch;
+        }
+
+        Set<Integer> groupIds = new HashSet<>();
+        Set<Integer> ownerIds = new HashSet<>();
+        for (AbstractMetadata md : batch.metadata.values()) {
+            if (md.getSourceInfo().getOwner() != null) {
+                ownerIds.add(md.getSourceInfo().getOwner());
+            }
+            if (md.getSourceInfo().getGroupOwner() != null) {
+                groupIds.add(md.getSourceInfo().getGroupOwner());
+            }
+        }
+        for (OperationAllowed operationAllowed : operationAllowedRepository.findAllById_MetadataIdIn(loadedIds)) {
+            batch.operationsAllowed.put(operationAllowed.getId().getMetadataId(), operationAllowed);
+            if (operationAllowed.getId().getOperationId() == ReservedOperation.view.getId()) {
+                groupIds.add(operationAllowed.getId().getGroupId());
+            }
+        }
+        groupRepository.findAllById(groupIds).forEach(group -> batch.groups.put(group.getId(), group));
+        userRepository.findAllById(ownerIds).forEach(user -> batch.users.put(user.getId(), user));
+
+        // Most recent workflow status first
+        Sort statusSort = Sort.by(Sort.Direction.DESC, MetadataStatus_.changeDate.getName());
+        for (MetadataStatus status : statusRepository.findAllByMetadataIdsAndByType(loadedIds, StatusValueType.workflow, statusSort)) {
+            batch.workflowStatus.putIfAbsent(status.getMetadataId(), status);
+        }
+        for (MetadataValidation validation : metadataValidationRepository.findAllById_MetadataIdIn(loadedIds)) {
+            batch.validations.put(validation.getId().getMetadataId(), validation);
+        }
+        for (InspireAtomFeed feed : inspireAtomFeedRepository.findAllByMetadataIdIn(loadedIds)) {
+            batch.atomFeeds.putIfAbsent(feed.getMetadataId(), feed);
+        }
+        if (RatingsSetting.ADVANCED.equals(settingManager.getValue(Settings.SYSTEM_LOCALRATING_ENABLE))) {
+            batch.feedbackCounts = new HashMap<>();
+            for (Object[] count : userFeedbackRepository.countByMetadataIds(loadedIds)) {
+                batch.feedbackCounts.put(((Number) count[0]).intValue(), ((Number) count[1]).intValue());
+            }
+        }
+        return batch;
+    }
+
+    private void indexMetadata(final String metadataId, final IndexingBatch batch, final boolean forceRefreshReaders) {
         AbstractMetadata fullMd;
 
         try {
             Multimap<String, Object> fields = ArrayListMultimap.create();
             int id$ = Integer.parseInt(metadataId);
 
+            fullMd = batch.metadata.get(id$);
+            if (fullMd == null) {
+                throw new IllegalArgumentException("Record not found.");
+            }
+
             // get metadata, extracting and indexing any xlinks
-            Element md = getXmlSerializer().selectNoXLinkResolver(metadataId, true, false);
-            final ServiceContext serviceContext = getServiceContext();
+            Element md = getXmlSerializer().removeHiddenElements(true, fullMd, false);
             if (getXmlSerializer().resolveXLinks()) {
                 List<Attribute> xlinks = Processor.getXLinks(md);
                 if (xlinks.size() > 0) {
                     fields.put(Geonet.IndexFieldNames.HASXLINKS, true);
-                    StringBuilder sb = new StringBuilder();
                     for (Attribute xlink : xlinks) {
                         fields.put(Geonet.IndexFieldNames.XLINK, xlink.getValue());
                     }
@@ -350,8 +432,6 @@ public class BaseMetadataIndexer implements IMetadataIndexer, ApplicationEventPu
                 fields.put(Geonet.IndexFieldNames.HASXLINKS, false);
             }
 
-            fullMd = metadataUtils.findOne(id$);
-
             final String schema = fullMd.getDataInfo().getSchemaId();
             final String createDate = fullMd.getDataInfo().getCreateDate().getDateAndTime();
             final String changeDate = fullMd.getDataInfo().getChangeDate().getDateAndTime();
@@ -409,37 +489,32 @@ public class BaseMetadataIndexer implements IMetadataIndexer, ApplicationEventPu
                 fields.put(Geonet.IndexFieldNames.POPULARITY, popularity);
                 fields.put(Geonet.IndexFieldNames.RATING, rating);
 
-                if (RatingsSetting.ADVANCED.equals(settingManager.getValue(Settings.SYSTEM_LOCALRATING_ENABLE))) {
-                    int nbOfFeedback = userFeedbackRepository.findByMetadata_Uuid(uuid).size();
-                    fields.put(Geonet.IndexFieldNames.FEEDBACKCOUNT, nbOfFeedback);
+                if (batch.feedbackCounts != null) {
+                    fields.put(Geonet.IndexFieldNames.FEEDBACKCOUNT, batch.feedbackCounts.getOrDefault(id$, 0));
                 }
 
                 fields.put(Geonet.IndexFieldNames.DISPLAY_ORDER, displayOrder);
                 fields.put(Geonet.IndexFieldNames.EXTRA, extra);
 
                 // If the metadata has an atom document, index related information
-                InspireAtomFeed feed = inspireAtomFeedRepository.findByMetadataId(id$);
+                InspireAtomFeed feed = batch.atomFeeds.get(id$);
 
                 if ((feed != null) && StringUtils.isNotEmpty(feed.getAtom())) {
                     fields.put("has_atom", "y");
                     fields.put("any", feed.getAtom());
                 }
 
-                if (owner != null) {
-                    Optional<User> userOpt = userRepository.findById(fullMd.getSourceInfo().getOwner());
-                    if (userOpt.isPresent()) {
-                        User user = userOpt.get();
-                        fields.put(Geonet.IndexFieldNames.USERINFO, user.getUsername() + "|" + user.getSurname() + "|" + user
-                            .getName() + "|" + user.getProfile());
-                        fields.put(Geonet.IndexFieldNames.OWNERNAME, user.getName() + " " + user.getSurname());
-                    }
+                User user = batch.users.get(fullMd.getSourceInfo().getOwner());
+                if (user != null) {
+                    fields.put(Geonet.IndexFieldNames.USERINFO, user.getUsername() + "|" + user.getSurname() + "|" + user
+                        .getName() + "|" + user.getProfile());
+                    fields.put(Geonet.IndexFieldNames.OWNERNAME, user.getName() + " " + user.getSurname());
                 }
 
                 String logoUUID = null;
                 if (groupOwner != null) {
-                    final Optional<Group> groupOpt = groupRepository.findById(groupOwner);
-                    if (groupOpt.isPresent()) {
-                        Group group = groupOpt.get();
+                    Group group = batch.groups.get(groupOwner);
+                    if (group != null) {
                         fields.put(Geonet.IndexFieldNames.GROUP_OWNER, String.valueOf(groupOwner));
                         final boolean preferGroup = settingManager.getValueAsBool(Settings.SYSTEM_PREFER_GROUP_LOGO, true);
                         if (group.getWebsite() != null && !group.getWebsite().isEmpty() && preferGroup) {
@@ -452,46 +527,28 @@ public class BaseMetadataIndexer implements IMetadataIndexer, ApplicationEventPu
                 }
 
                 // Group logo are in the harvester folder and contains extension in file name
-                boolean added = false;
+                String logo = null;
                 if (StringUtils.isNotEmpty(logoUUID)) {
-                    final Path harvesterLogosDir = resources.locateHarvesterLogosDir(getServiceContext());
-                    try (Resources.ResourceHolder logo = resources.getImage(getServiceContext(), logoUUID, harvesterLogosDir)) {
-                        if (logo != null) {
-                            added = true;
-                            fields.put(Geonet.IndexFieldNames.LOGO,
-                                "/images/harvesting/" + logo.getPath().getFileName());
-                        }
-                    }
+                    logo = batch.groupLogos.computeIfAbsent(logoUUID, this::locateGroupLogo).orElse(null);
                 }
 
                 // If not available, use the local catalog logo
-                if (!added) {
-                    Source sourceCatalogue = sourceRepository.findOneByUuid(source);
-                    logoUUID =
-                        sourceCatalogue != null
-                            && StringUtils.isNotEmpty(sourceCatalogue.getLogo())
-                        ? sourceCatalogue.getLogo() : source + DEFAULT_LOGO_EXTENSION;
-                    final Path logosDir = resources.locateLogosDir(getServiceContext());
-                    try (Resources.ResourceHolder image = resources.getImage(getServiceContext(), logoUUID, logosDir)) {
-                        if (image != null) {
-                            fields.put(Geonet.IndexFieldNames.LOGO,
-                                "/images/logos/" + logoUUID);
-                        }
-                    }
+                if (logo == null) {
+                    logo = batch.sourceLogos.computeIfAbsent(String.valueOf(source), this::locateSourceLogo).orElse(null);
+                }
+                if (logo != null) {
+                    fields.put(Geonet.IndexFieldNames.LOGO, logo);
                 }
 
-                fields.putAll(buildFieldsForPrivileges(id$));
+                fields.putAll(buildFieldsForPrivileges(batch.operationsAllowed.get(id$), batch.groups::get));
 
                 for (MetadataCategory category : fullMd.getCategories()) {
                     fields.put(Geonet.IndexFieldNames.CAT, category.getName());
                 }
 
                 // get status
-                Sort statusSort = Sort.by(Sort.Direction.DESC,
-                    MetadataStatus_.changeDate.getName());
-                List<MetadataStatus> statuses = statusRepository.findAllByMetadataIdAndByType(id$, StatusValueType.workflow, statusSort);
-                if (!statuses.isEmpty()) {
-                    MetadataStatus stat = statuses.get(0);
+                MetadataStatus stat = batch.workflowStatus.get(id$);
+                if (stat != null) {
                     String status = String.valueOf(stat.getStatusValue().getId());
                     fields.put(Geonet.IndexFieldNames.STATUS, status);
                     String statusChangeDate = stat.getChangeDate().getDateAndTime();
@@ -502,7 +559,7 @@ public class BaseMetadataIndexer implements IMetadataIndexer, ApplicationEventPu
                 // -1 : not evaluated
                 // 0 : invalid
                 // 1 : valid
-                List<MetadataValidation> validationInfo = metadataValidationRepository.findAllById_MetadataId(id$);
+                Collection<MetadataValidation> validationInfo = batch.validations.get(id$);
                 if (validationInfo.isEmpty()) {
                     fields.put(Geonet.IndexFieldNames.VALID, "-1");
                 } else {
@@ -533,9 +590,7 @@ public class BaseMetadataIndexer implements IMetadataIndexer, ApplicationEventPu
 
                 fields.putAll(addExtraFields(fullMd));
 
-                if (fullMd != null) {
-                    this.publisher.publishEvent(new MetadataIndexStarted(fullMd, fields));
-                }
+                this.publisher.publishEvent(new MetadataIndexStarted(fullMd, fields));
 
                 searchManager.index(schemaManager.getSchemaDir(schema), md, indexKey, fields, metadataType, forceRefreshReaders);
             }
@@ -549,18 +604,90 @@ public class BaseMetadataIndexer implements IMetadataIndexer, ApplicationEventPu
         }
     }
 
+    private Optional<String> locateGroupLogo(String logoUUID) {
+        try {
+            final Path harvesterLogosDir = resources.locateHarvesterLogosDir(getServiceContext());
+            try (Resources.ResourceHolder logo = resources.getImage(getServiceContext(), logoUUID, harvesterLogosDir)) {
+                if (logo != null) {
+                    return Optional.of("/images/harvesting/" + logo.getPath().getFileName());
+                }
+            }
+        } catch (IOException e) {
+            Log.warning(Geonet.DATA_MANAGER, "Error looking for group logo " + logoUUID + ": " + e.getMessage());
+        }
+        return Optional.empty();
+    }
+
+    private Optional<String> locateSourceLogo(String source) {
+        Source sourceCatalogue = sourceRepository.findOneByUuid(source);
+        String logoUUID =
+            sourceCatalogue != null
+                && StringUtils.isNotEmpty(sourceCatalogue.getLogo())
+            ? sourceCatalogue.getLogo() : source + DEFAULT_LOGO_EXTENSION;
+        try {
+            final Path logosDir = resources.locateLogosDir(getServiceContext());
+            try (Resources.ResourceHolder image = resources.getImage(getServiceContext(), logoUUID, logosDir)) {
+                if (image != null) {
+                    return Optional.of("/images/logos/" + logoUUID);
+                }
+            }
+        } catch (IOException e) {
+            Log.warning(Geonet.DATA_MANAGER, "Error looking for catalog logo " + logoUUID + ": " + e.getMessage());
+        }
+        return Optional.empty();
+    }
+
     @Override
     public void indexMetadataPrivileges(String uuid, int id) throws Exception {
-        Set<String> operationFields = new HashSet<>();
+        searchManager.updateFields(uuid, buildFieldsForPrivileges(id), getPrivilegesFields());
+    }
+
+    @Override
+    public void indexMetadataPrivileges(Collection<? extends AbstractMetadata> records) throws Exception {
+        if (records.isEmpty()) {
+            return;
+        }
+        Set<Integer> ids = new HashSet<>();
+        records.forEach(md -> ids.add(md.getId()));
+
+        Multimap<Integer, OperationAllowed> operationsAllowed = ArrayListMultimap.create();
+        Set<Integer> groupIds = new HashSet<>();
+        for (OperationAllowed operationAllowed : operationAllowedRepository.findAllById_MetadataIdIn(ids)) {
+            operationsAllowed.put(operationAllowed.getId().getMetadataId(), operationAllowed);
+            if (operationAllowed.getId().getOperationId() == ReservedOperation.view.getId()) {
+                groupIds.add(operationAllowed.getId().getGroupId());
+            }
+        }
+        Map<Integer, Group> groups = new HashMap<>();
+        groupRepository.findAllById(groupIds).forEach(group -> groups.put(group.getId(), group));
+
+        Map<String, Multimap<String, Object>> fieldsByUuid = new LinkedHashMap<>();
+        for (AbstractMetadata md : records) {
+            fieldsByUuid.put(md.getUuid(), buildFieldsForPrivileges(operationsAllowed.get(md.getId()), groups::get));
+        }
+        searchManager.updateFields(fieldsByUuid, getPrivilegesFields());
+    }
+
+    /**
+     * @return the fields built from the privileges, removed before setting the new ones.
+     */
+    private Set<String> getPrivilegesFields() {
+        Set<String> privilegesFields = new HashSet<>();
         Arrays.asList(ReservedOperation.values()).forEach(o ->
-            operationFields.add("op" + o.getId())
+            privilegesFields.add(Geonet.IndexFieldNames.OP_PREFIX + o.getId())
         );
-
-        searchManager.updateFields(uuid, buildFieldsForPrivileges(id), operationFields);
+        privilegesFields.add(Geonet.IndexFieldNames.GROUP_PUBLISHED);
+        privilegesFields.add(Geonet.IndexFieldNames.GROUP_PUBLISHED + "Id");
+        return privilegesFields;
     }
 
     private Multimap<String, Object> buildFieldsForPrivileges(int recordId) {
-        List<OperationAllowed> operationsAllowed = operationAllowedRepository.findAllById_MetadataId(recordId);
+        return buildFieldsForPrivileges(operationAllowedRepository.findAllById_MetadataId(recordId),
+            groupId -> groupRepository.findById(groupId).orElse(null));
+    }
+
+    private Multimap<String, Object> buildFieldsForPrivileges(Collection<OperationAllowed> operationsAllowed,
+                                                             Function<Integer, Group> groups) {
         Multimap<String, Object> privilegesFields = ArrayListMultimap.create();
         boolean isPublishedToAll = false;
 
@@ -571,13 +698,13 @@ public class BaseMetadataIndexer implements IMetadataIndexer, ApplicationEventPu
 
             privilegesFields.put(Geonet.IndexFieldNames.OP_PREFIX + operationId, String.valueOf(groupId));
             if (operationId == ReservedOperation.view.getId()) {
-                Optional<Group> g = groupRepository.findById(groupId);
-                if (g.isPresent()) {
-                    privilegesFields.put(Geonet.IndexFieldNames.GROUP_PUBLISHED, g.get().getName());
-                    privilegesFields.put(Geonet.IndexFieldNames.GROUP_PUBLISHED + "Id", g.get().getId());
+                Group g = groups.apply(groupId);
+                if (g != null) {
+                    privilegesFields.put(Geonet.IndexFieldNames.GROUP_PUBLISHED, g.getName());
+                    privilegesFields.put(Geonet.IndexFieldNames.GROUP_PUBLISHED + "Id", g.getId());
 
 
-                    if (g.get().getId() == ReservedGroup.all.getId()) {
+                    if (g.getId() == ReservedGroup.all.getId()) {
                         isPublishedToAll = true;
                     }
                 }
@@ -634,4 +761,23 @@ public class BaseMetadataIndexer implements IMetadataIndexer, ApplicationEventPu
     public void setApplicationEventPublisher(ApplicationEventPublisher publisher) {
         this.publisher = publisher;
     }
+
+    /**
+     * Rows related to a chunk of records being indexed, by record id.
+     */
+    private static final class IndexingBatch {
+        private final Map<Integer, AbstractMetadata> metadata = new HashMap<>();
+        private final Multimap<Integer, OperationAllowed> operationsAllowed = ArrayListMultimap.create();
+        private final Multimap<Integer, MetadataValidation> validations = ArrayListMultimap.create();
+        private final Map<Integer, MetadataStatus> workflowStatus = new HashMap<>();
+        private final Map<Integer, InspireAtomFeed> atomFeeds = new HashMap<>();
+        private final Map<Integer, Group> groups = new HashMap<>();
+        private final Map<Integer, User> users = new HashMap<>();
+        /**
+         * Null if feedbacks are not counted.
+         */
+        private Map<Integer, Integer> feedbackCounts;
+        private final Map<String, Optional<String>> groupLogos = new HashMap<>();
+        private final Map<String, Optional<String>> sourceLogos = new HashMap<>();
+    }
 }
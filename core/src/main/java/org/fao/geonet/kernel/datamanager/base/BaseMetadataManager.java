@@ -678,6 +678,34 @@ public class BaseMetadataManager implements IMetadataManager {
         return metadataXml;
     }
 
+    /**
+     * Retrieves a metadata (in xml) from an already loaded record, in view mode.
+     * Same as {@link #getMetadata(ServiceContext, String, boolean, boolean, boolean, boolean)}
+     * with forEditing set to false, but does not query the record again. Used when
+     * records are bulk loaded (eg. CSW GetRecords).
+     */
+    @Override
+    public Element getMetadata(ServiceContext srvContext, AbstractMetadata metadata,
+                               boolean applyOperationsFilters, boolean keepXlinkAttributes) throws Exception {
+        Element metadataXml = getXmlSerializer().removeHiddenElements(false, metadata, applyOperationsFilters);
+        if (metadataXml == null)
+            return null;
+
+        if (getXmlSerializer().resolveXLinks()) {
+            if (keepXlinkAttributes) {
+                Processor.processXLink(metadataXml, srvContext);
+            } else {
+                Processor.detachXLink(metadataXml, srvContext);
+            }
+        }
+
+        metadataXml.addNamespaceDeclaration(Edit.NAMESPACE);
+        metadataXml.addContent(buildInfoElem(srvContext, metadata, null));
+
+        metadataXml.detach();
+        return metadataXml;
+    }
+
     /**
      * Retrieves a metadata (in xml) given its id. Use this method when you must
      * retrieve a metadata in the same transaction.
@@ -800,7 +828,11 @@ public class BaseMetadataManager implements IMetadataManager {
      * buildInfoElem contains similar portion of code with indexMetadata
      */
     private Element buildInfoElem(ServiceContext context, String id, String version) throws Exception {
-        AbstractMetadata metadata = metadataUtils.findOne(id);
+        return buildInfoElem(context, metadataUtils.findOne(id), version);
+    }
+
+    private Element buildInfoElem(ServiceContext context, AbstractMetadata metadata, String version) throws Exception {
+        String id = String.valueOf(metadata.getId());
         final MetadataDataInfo dataInfo = metadata.getDataInfo();
         String schema = dataInfo.getSchemaId();
         String createDate = dataInfo.getCreateDate().getDateAndTime();
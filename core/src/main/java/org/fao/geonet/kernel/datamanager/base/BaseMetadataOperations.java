@@ -25,12 +25,19 @@ package org.fao.geonet.kernel.datamanager.base;
 
 import static org.springframework.data.jpa.domain.Specification.where;
 
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
 
 import org.apache.commons.lang.StringUtils;
 import org.fao.geonet.constants.Geonet;
+import org.fao.geonet.domain.AbstractMetadata;
 import org.fao.geonet.domain.OperationAllowed;
 import org.fao.geonet.domain.OperationAllowedId;
 import org.fao.geonet.domain.OperationAllowedId_;
@@ -41,6 +48,7 @@ import org.fao.geonet.domain.UserGroup;
 import org.fao.geonet.domain.UserGroupId;
 import org.fao.geonet.events.md.MetadataPublished;
 import org.fao.geonet.events.md.MetadataUnpublished;
+import org.fao.geonet.events.md.sharing.MetadataShare;
 import org.fao.geonet.exceptions.ServiceNotAllowedEx;
 import org.fao.geonet.kernel.SvnManager;
 import org.fao.geonet.kernel.datamanager.IMetadataOperations;
@@ -61,6 +69,7 @@ import org.springframework.context.annotation.Lazy;
 import org.springframework.data.jpa.domain.Specification;
 
 import com.google.common.base.Optional;
+import com.google.common.collect.Lists;
 
 import jeeves.server.context.ServiceContext;
 
@@ -80,6 +89,11 @@ public class BaseMetadataOperations implements IMetadataOperations, ApplicationE
     @Autowired(required = false)
     private SvnManager svnManager;
 
+    /**
+     * Maximum number of ids in the IN clause of a statement.
+     */
+    private static final int MAX_IDS_PER_STATEMENT = 1000;
+
     private ApplicationEventPublisher eventPublisher;
 
     /**
@@ -188,6 +202,112 @@ public class BaseMetadataOperations implements IMetadataOperations, ApplicationE
         return false;
     }
 
+    /**
+     * Set privileges on a set of metadata without checking user privileges. The privileges are
+     * saved in batches and the events of {@link #forceSetOperation} are published.
+     *
+     * @param operations The privileges to set
+     * @return the privileges which were not already set.
+     */
+    @Override
+    public List<OperationAllowedId> forceSetOperations(ServiceContext context, Collection<OperationAllowedId> operations) throws Exception {
+        Set<OperationAllowedId> existing = findExisting(operations);
+        List<OperationAllowedId> added = new ArrayList<>();
+        List<OperationAllowed> toSave = new ArrayList<>();
+        for (OperationAllowedId id : new LinkedHashSet<>(operations)) {
+            if (!existing.contains(id)) {
+                added.add(id);
+                toSave.add(new OperationAllowed(id));
+            }
+        }
+        if (toSave.isEmpty()) {
+            return added;
+        }
+        opAllowedRepo.saveAll(toSave);
+
+        Set<Integer> published = operationsChanged(context, added);
+        if (!published.isEmpty()) {
+            Log.trace(Geonet.DATA_MANAGER, "This is a publish event");
+            for (AbstractMetadata md : metadataUtils.findAll(published)) {
+                this.eventPublisher.publishEvent(new MetadataPublished(md));
+            }
+        }
+        return added;
+    }
+
+    /**
+     * Unset privileges on a set of metadata without checking user privileges. The privileges are
+     * deleted with one statement per group and operation, and the events of
+     * {@link #forceUnsetOperation} are published.
+     *
+     * @param operations The privileges to unset
+     * @return the privileges which were set.
+     */
+    @Override
+    public List<OperationAllowedId> forceUnsetOperations(ServiceContext context, Collection<OperationAllowedId> operations) throws Exception {
+        Set<OperationAllowedId> existing = findExisting(operations);
+        List<OperationAllowedId> removed = new ArrayList<>();
+        Map<OperationAllowedId, List<Integer>> metadataIdsByGroupAndOperation = new LinkedHashMap<>();
+        for (OperationAllowedId id : new LinkedHashSet<>(operations)) {
+            if (existing.contains(id)) {
+                removed.add(id);
+                OperationAllowedId key = new OperationAllowedId().setGroupId(id.getGroupId()).setOperationId(id.getOperationId());
+                metadataIdsByGroupAndOperation.computeIfAbsent(key, k -> new ArrayList<>()).add(id.getMetadataId());
+            }
+        }
+        for (Map.Entry<OperationAllowedId, List<Integer>> entry : metadataIdsByGroupAndOperation.entrySet()) {
+            for (List<Integer> metadataIds : Lists.partition(entry.getValue(), MAX_IDS_PER_STATEMENT)) {
+                opAllowedRepo.deleteAllByGroupIdAndOperationIdAndMetadataIdIn(
+                    entry.getKey().getGroupId(), entry.getKey().getOperationId(), metadataIds);
+            }
+        }
+
+        // Bulk deletes don't go through the entity listeners
+        for (OperationAllowedId id : removed) {
+            this.eventPublisher.publishEvent(new MetadataShare(new OperationAllowed(id), MetadataShare.Type.REMOVE));
+        }
+        Set<Integer> unpublished = operationsChanged(context, removed);
+        if (!unpublished.isEmpty()) {
+            for (AbstractMetadata md : metadataUtils.findAll(unpublished)) {
+                this.eventPublisher.publishEvent(new MetadataUnpublished(md));
+            }
+        }
+        return removed;
+    }
+
+    private Set<OperationAllowedId> findExisting(Collection<OperationAllowedId> operations) {
+        Set<Integer> metadataIds = new HashSet<>();
+        operations.forEach(id -> metadataIds.add(id.getMetadataId()));
+        Set<OperationAllowedId> existing = new HashSet<>();
+        for (List<Integer> ids : Lists.partition(new ArrayList<>(metadataIds), MAX_IDS_PER_STATEMENT)) {
+            opAllowedRepo.findAllById_MetadataIdIn(ids).forEach(op -> existing.add(op.getId()));
+        }
+        return existing;
+    }
+
+    /**
+     * Record the history of the metadata whose privileges changed.
+     *
+     * @return the metadata published or unpublished.
+     */
+    private Set<Integer> operationsChanged(ServiceContext context, List<OperationAllowedId> changes) throws Exception {
+        Set<Integer> metadataIds = new LinkedHashSet<>();
+        Set<Integer> publication = new LinkedHashSet<>();
+        for (OperationAllowedId id : changes) {
+            metadataIds.add(id.getMetadataId());
+            if (id.getOperationId() == ReservedOperation.view.getId()
+                && id.getGroupId() == ReservedGroup.all.getId()) {
+                publication.add(id.getMetadataId());
+            }
+        }
+        if (svnManager != null) {
+            for (Integer metadataId : metadataIds) {
+                svnManager.setHistory(metadataId + "", context);
+            }
+        }
+        return publication;
+    }
+
     /**
      * Check that the operation has not been added and if not that it can be added.
      * <ul>
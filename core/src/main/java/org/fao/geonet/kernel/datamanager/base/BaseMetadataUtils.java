@@ -859,7 +859,11 @@ public class BaseMetadataUtils implements IMetadataUtils {
 
     @Override
     public Iterable<? extends AbstractMetadata> findAll(Set<Integer> keySet) {
-        return metadataRepository.findAllById(keySet);
+        if (keySet.isEmpty()) {
+            return Collections.emptyList();
+        }
+        // Categories are loaded eagerly, fetch them in the same query instead of one query per record
+        return metadataRepository.findAllWithCategoriesByIdIn(keySet);
     }
 
     @Override
@@ -24,15 +24,29 @@
 package org.fao.geonet.kernel.oaipmh;
 
 import jeeves.constants.Jeeves;
-import jeeves.server.ServiceConfig;
 import jeeves.server.context.ServiceContext;
 
+import org.apache.commons.lang.StringUtils;
+import org.elasticsearch.action.search.SearchResponse;
+import org.elasticsearch.index.query.BoolQueryBuilder;
+import org.elasticsearch.index.query.QueryBuilders;
+import org.elasticsearch.index.query.RangeQueryBuilder;
+import org.elasticsearch.search.SearchHit;
+import org.elasticsearch.search.sort.FieldSortBuilder;
+import org.elasticsearch.search.sort.SortBuilder;
+import org.elasticsearch.search.sort.SortOrder;
+import org.fao.geonet.NodeInfo;
+import org.fao.geonet.constants.Geonet;
+import org.fao.geonet.kernel.search.EsFilterBuilder;
+import org.fao.geonet.kernel.search.EsSearchManager;
 import org.fao.geonet.utils.Xml;
 import org.fao.oaipmh.exceptions.OaiPmhException;
 import org.jdom.Element;
 
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
 
 //=============================================================================
@@ -40,13 +54,16 @@ import java.util.List;
 public class Lib {
     public static final String SESSION_OBJECT = "oai-list-records-result";
 
+    private static final int SEARCH_PAGE_SIZE = 1000;
+    // categories are not analysed (eg. interactiveResources)
+    private static final String CATEGORY_FIELD = "cat.keyword";
+    private static final String TEMPORAL_EXTENT_FIELD = "resourceTemporalExtentDateRange";
+
     //---------------------------------------------------------------------------
     //---
     //--- API methods
     //---
     //---------------------------------------------------------------------------
-    private static ServiceConfig dummyConfig = new ServiceConfig();
-
     //--------------------------------------------------------------------------
 
     public static boolean existsConverter(Path schemaDir, String prefix) {
@@ -90,39 +107,122 @@ public class Lib {
 
     //---------------------------------------------------------------------------
 
+    /**
+     * Search the ids of the records matching the OAI parameters.
+     *
+     * @param params request element having dateFrom/dateTo (or extFrom/extTo for the temporal
+     *               extent mode), category and one or more _schema children.
+     */
     public static List<Integer> search(ServiceContext context, Element params) throws Exception {
-        throw new UnsupportedOperationException("ES search does not support OAI yet");
-
-//        GeonetContext gc = (GeonetContext) context.getHandlerContext(Geonet.CONTEXT_NAME);
-//        SearchManager sm = gc.getBean(SearchManager.class);
-//
-//        try (MetaSearcher searcher = sm.newSearcher(SearcherType.LUCENE, Geonet.File.SEARCH_LUCENE)) {
-//
-//            if (context.isDebugEnabled())
-//                context.debug("Searching with params:\n" + Xml.getString(params));
-//
-//            searcher.search(context, params, dummyConfig);
-//
-//            params.addContent(new Element("fast").setText("true"));
-//            params.addContent(new Element("from").setText("1"));
-//            params.addContent(new Element("to").setText(searcher.getSize() + ""));
-//
-//            context.info("Records found : " + searcher.getSize());
-//
-//            Element records = searcher.present(context, params, dummyConfig);
-//
-//            records.getChild("summary").detach();
-//
-//            List<Integer> result = new ArrayList<Integer>();
-//
-//            for (Object o : records.getChildren()) {
-//                Element rec = (Element) o;
-//                Element info = rec.getChild("info", Edit.NAMESPACE);
-//
-//                result.add(Integer.parseInt(info.getChildText("id")));
-//            }
-//            return result;
-//        }
+        List<Integer> result = new ArrayList<>();
+        SearchPage page = searchPage(context, params, null, SEARCH_PAGE_SIZE);
+        while (!page.getIds().isEmpty()) {
+            result.addAll(page.getIds());
+            page = searchPage(context, params, page.getLastSortValues(), SEARCH_PAGE_SIZE);
+        }
+        context.info("Records found : " + result.size());
+        return result;
+    }
+
+    /**
+     * Search a page of the ids of the records matching the OAI parameters (see
+     * {@link #search(ServiceContext, Element)}), sorted by id.
+     *
+     * @param searchAfter the sort values of the last record of the previous page
+     *                    (see {@link SearchPage#getLastSortValues()}) or null for the first page.
+     */
+    public static SearchPage searchPage(ServiceContext context, Element params,
+                                        Object[] searchAfter, int size) throws Exception {
+        EsSearchManager searchManager = context.getBean(EsSearchManager.class);
+
+        BoolQueryBuilder query = QueryBuilders.boolQuery()
+            .filter(QueryBuilders.queryStringQuery(EsFilterBuilder.buildPermissionsFilter(context)))
+            .filter(QueryBuilders.termQuery(Geonet.IndexFieldNames.IS_TEMPLATE, "n"))
+            .filter(QueryBuilders.termsQuery(Geonet.IndexFieldNames.DRAFT, "n", "e"));
+        String portalFilter = EsFilterBuilder.buildPortalFilter(context.getBean(NodeInfo.class));
+        if (StringUtils.isNotEmpty(portalFilter)) {
+            query.filter(QueryBuilders.queryStringQuery(portalFilter));
+        }
+
+        List<String> schemas = new ArrayList<>();
+        for (Object schema : params.getChildren("_schema")) {
+            schemas.add(((Element) schema).getText());
+        }
+        query.filter(QueryBuilders.termsQuery(Geonet.IndexFieldNames.SCHEMA, schemas));
+
+        String category = params.getChildText("category");
+        if (StringUtils.isNotEmpty(category)) {
+            query.filter(QueryBuilders.termQuery(CATEGORY_FIELD, category));
+        }
+        addRange(query, Geonet.IndexFieldNames.DATABASE_CHANGE_DATE,
+            params.getChildText("dateFrom"), params.getChildText("dateTo"));
+        addRange(query, TEMPORAL_EXTENT_FIELD,
+            params.getChildText("extFrom"), params.getChildText("extTo"));
+
+        // Record ids are unique so they can be used to get the next pages
+        List<SortBuilder<FieldSortBuilder>> sort = new ArrayList<>();
+        sort.add(new FieldSortBuilder(Geonet.IndexFieldNames.ID).order(SortOrder.ASC));
+        SearchResponse response = searchManager.getClient().query(searchManager.getDefaultIndex(), query, null,
+            Collections.singleton(Geonet.IndexFieldNames.ID), searchAfter, size, sort);
+
+        List<Integer> ids = new ArrayList<>();
+        Object[] lastSortValues = null;
+        long total = 0;
+        if (response != null) {
+            for (SearchHit hit : response.getHits()) {
+                ids.add(Integer.parseInt(String.valueOf(hit.getSourceAsMap().get(Geonet.IndexFieldNames.ID))));
+                lastSortValues = hit.getSortValues();
+            }
+            total = response.getHits().getTotalHits().value;
+        }
+        return new SearchPage(ids, lastSortValues, total);
+    }
+
+    private static void addRange(BoolQueryBuilder query, String field, String from, String until) {
+        if (from == null && until == null) {
+            return;
+        }
+        RangeQueryBuilder range = QueryBuilders.rangeQuery(field);
+        if (from != null) {
+            range.gte(from);
+        }
+        if (until != null) {
+            range.lte(until);
+        }
+        query.filter(range);
+    }
+
+    /**
+     * A page of record ids.
+     */
+    public static class SearchPage {
+        private final List<Integer> ids;
+        private final Object[] lastSortValues;
+        private final long total;
+
+        public SearchPage(List<Integer> ids, Object[] lastSortValues, long total) {
+            this.ids = ids;
+            this.lastSortValues = lastSortValues;
+            this.total = total;
+        }
+
+        public List<Integer> getIds() {
+            return ids;
+        }
+
+        /**
+         * @return the sort values of the last record of the page, to get the next page.
+         */
+        public Object[] getLastSortValues() {
+            return lastSortValues;
+        }
+
+        /**
+         * @return the number of records matching the search.
+         */
+        public long getTotal() {
+            return total;
+        }
     }
 
     //---------------------------------------------------------------------------
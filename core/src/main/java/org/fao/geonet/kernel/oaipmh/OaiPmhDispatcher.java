@@ -39,15 +39,23 @@ import org.fao.geonet.kernel.setting.SettingInfo;
 import org.fao.geonet.kernel.setting.SettingManager;
 import org.fao.geonet.utils.Log;
 import org.fao.geonet.utils.Xml;
+import org.fao.oaipmh.OaiPmh;
 import org.fao.oaipmh.exceptions.BadArgumentException;
 import org.fao.oaipmh.exceptions.OaiPmhException;
 import org.fao.oaipmh.requests.AbstractRequest;
 import org.fao.oaipmh.responses.AbstractResponse;
 import org.fao.oaipmh.server.OaiPmhFactory;
 import org.fao.oaipmh.util.Lib;
+import org.jdom.Comment;
 import org.jdom.Element;
+import org.jdom.output.Format;
+import org.jdom.output.XMLOutputter;
 
 import javax.annotation.PreDestroy;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Path;
 import java.util.HashMap;
 import java.util.Map;
@@ -58,6 +66,7 @@ public class OaiPmhDispatcher {
 
     public static final int MODE_MODIFIDATE = 2;
     public static final int MODE_TEMPEXTEND = 1;
+    private static final String STREAMED_CONTENT = "content";
     private ResumptionTokenCache cache;
 
     //---------------------------------------------------------------------------
@@ -86,7 +95,7 @@ public class OaiPmhDispatcher {
     //---
     //---------------------------------------------------------------------------
 
-    private void register(OaiPmhService s) {
+    void register(OaiPmhService s) {
         hmServices.put(s.getVerb(), s);
     }
 
@@ -97,15 +106,51 @@ public class OaiPmhDispatcher {
     //---------------------------------------------------------------------------
 
     public Element dispatch(Element request, ServiceContext context) {
-        Element response = dispatchI(request, context);
+        Element response = dispatchI(request, context, null);
         validateResponse(context, response);
 
         return response;
     }
 
+    /**
+     * Write the response to the output stream. Records of ListRecords responses are written as
+     * soon as they are converted, so the response is not validated and errors occurring once
+     * the response is started can't be reported to the client.
+     */
+    public void dispatch(Element request, ServiceContext context, OutputStream out) throws Exception {
+        Writer writer = new OutputStreamWriter(out, StandardCharsets.UTF_8);
+        XMLOutputter outputter = new XMLOutputter(Format.getRawFormat());
+        writer.write("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n");
+
+        StreamedResponse streamed = new StreamedResponse();
+        Element response = dispatchI(request, context, streamed);
+        if (streamed.response == null) {
+            if (context.isDebugEnabled()) {
+                validateResponse(context, response);
+            }
+            outputter.output(response, writer);
+        } else {
+            // Write the envelope around a placeholder replaced by the content of the response
+            Comment placeholder = new Comment(STREAMED_CONTENT);
+            streamed.verbElement.addContent(placeholder);
+            String envelope = outputter.outputString(response);
+            String marker = outputter.outputString(placeholder);
+            int index = envelope.indexOf(marker);
+
+            writer.write(envelope.substring(0, index));
+            streamed.response.writeContent(outputter, writer);
+            writer.write(envelope.substring(index + marker.length()));
+        }
+        writer.flush();
+    }
+
     //---------------------------------------------------------------------------
 
-    private Element dispatchI(Element request, ServiceContext context) {
+    /**
+     * @param streamed if not null and the response of the service is a {@link StreamingResponse},
+     *                 an empty verb element is returned and the response is set in streamed.
+     */
+    private Element dispatchI(Element request, ServiceContext context, StreamedResponse streamed) {
         String url = null;
 
         Map<String, String> params = null;
@@ -120,7 +165,14 @@ public class OaiPmhDispatcher {
             OaiPmhService srv = hmServices.get(req.getVerb());
             AbstractResponse res = srv.execute(req, context);
 
-            Element response = res.toXml();
+            Element response;
+            if (streamed != null && res instanceof StreamingResponse) {
+                streamed.response = (StreamingResponse) res;
+                streamed.verbElement = new Element(req.getVerb(), OaiPmh.Namespaces.OAI_PMH);
+                response = streamed.verbElement;
+            } else {
+                response = res.toXml();
+            }
 
             return Lib.createOaiRoot(url, params, response);
         } catch (OaiPmhException e) {
@@ -137,6 +189,11 @@ public class OaiPmhDispatcher {
         }
     }
 
+    private static class StreamedResponse {
+        private StreamingResponse response;
+        private Element verbElement;
+    }
+
     //---------------------------------------------------------------------------
     //---
     //--- Variables
@@ -0,0 +1,221 @@
+/*
+ * Copyright (C) 2001-2016 Food and Agriculture Organization of the
+ * United Nations (FAO-UN), United Nations World Food Programme (WFP)
+ * and United Nations Environment Programme (UNEP)
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or (at
+ * your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301, USA
+ *
+ * Contact: Jeroen Ticheler - FAO - Viale delle Terme di Caracalla 2,
+ * Rome - Italy. email: geonetwork@osgeo.org
+ */
+
+package org.fao.geonet.kernel.oaipmh;
+
+import jeeves.server.context.ServiceContext;
+import org.fao.geonet.ApplicationContextHolder;
+import org.fao.geonet.constants.Geonet;
+import org.fao.geonet.domain.Metadata;
+import org.fao.geonet.kernel.oaipmh.services.GetRecord;
+import org.fao.geonet.utils.Log;
+import org.fao.oaipmh.exceptions.CannotDisseminateFormatException;
+import org.fao.oaipmh.exceptions.IdDoesNotExistException;
+import org.fao.oaipmh.responses.Record;
+import org.springframework.beans.factory.NoSuchBeanDefinitionException;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.data.jpa.domain.Specification;
+
+import javax.annotation.PreDestroy;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.fao.geonet.repository.specification.MetadataSpecs.hasMetadataId;
+
+/**
+ * Convert metadata records to OAI records, one after the other, handing each record over as
+ * soon as it is converted.
+ *
+ * <p>Records are always loaded from the database by the calling thread. With more than one
+ * thread, the conversions (parsing and XSL transformation) run in parallel and the records are
+ * still handed over in the order of the ids, by conversion threads running with the service
+ * context of the request. At most twice as many records as threads are waiting to be handed
+ * over.</p>
+ */
+public class RecordConverter {
+
+    /**
+     * Receive the converted records.
+     */
+    public interface RecordHandler {
+        void handle(Record record) throws Exception;
+    }
+
+    private int threads = 1;
+    private ExecutorService executor;
+
+    /**
+     * @return the converter of the application context or a sequential one if none is configured.
+     */
+    public static RecordConverter get() {
+        ConfigurableApplicationContext applicationContext = ApplicationContextHolder.get();
+        if (applicationContext != null) {
+            try {
+                return applicationContext.getBean(RecordConverter.class);
+            } catch (NoSuchBeanDefinitionException e) {
+                // use the shared one
+            }
+        }
+        return SharedConverter.INSTANCE;
+    }
+
+    private static final class SharedConverter {
+        private static final RecordConverter INSTANCE = new RecordConverter();
+    }
+
+    public int getThreads() {
+        return threads;
+    }
+
+    /**
+     * @param threads number of threads converting records, 1 to convert them in the
+     *                request thread.
+     */
+    public void setThreads(int threads) {
+        this.threads = Math.max(1, threads);
+    }
+
+    /**
+     * Convert the records to the format of the prefix. Records which do not exist anymore, can't
+     * be converted to the format or fail to be converted are skipped.
+     */
+    public void convert(ServiceContext context, List<Integer> ids, String prefix,
+                        RecordHandler handler) throws Exception {
+        if (threads == 1) {
+            for (int id : ids) {
+                Record record = convert(context, id, prefix);
+                if (record != null) {
+                    handler.handle(record);
+                }
+            }
+            return;
+        }
+
+        ExecutorService executor = getExecutor();
+        Deque<Future<Record>> pending = new ArrayDeque<>();
+        try {
+            for (int id : ids) {
+                Callable<Record> conversion = load(context, id, prefix);
+                if (conversion == null) {
+                    continue;
+                }
+                pending.add(executor.submit(() -> {
+                    context.setAsThreadLocal();
+                    try {
+                        return conversion.call();
+                    } finally {
+                        ServiceContext.clearThreadLocal();
+                        ApplicationContextHolder.clear();
+                    }
+                }));
+                if (pending.size() >= threads * 2) {
+                    handleNext(pending, handler);
+                }
+            }
+            while (!pending.isEmpty()) {
+                handleNext(pending, handler);
+            }
+        } finally {
+            for (Future<Record> future : pending) {
+                future.cancel(true);
+            }
+        }
+    }
+
+    /**
+     * Convert a record in the calling thread.
+     *
+     * @return the record or null if it is skipped.
+     */
+    public Record convert(ServiceContext context, int id, String prefix) throws Exception {
+        Callable<Record> conversion = load(context, id, prefix);
+        return conversion == null ? null : conversion.call();
+    }
+
+    private void handleNext(Deque<Future<Record>> pending, RecordHandler handler) throws Exception {
+        Record record;
+        try {
+            record = pending.poll().get();
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof Exception) {
+                throw (Exception) e.getCause();
+            }
+            throw e;
+        }
+        if (record != null) {
+            handler.handle(record);
+        }
+    }
+
+    /**
+     * Load a record from the database.
+     *
+     * @return the conversion of the record (returning null if it fails) or null if the record
+     * does not exist or can't be disseminated in the format.
+     */
+    Callable<Record> load(ServiceContext context, int id, String prefix) throws Exception {
+        GetRecord.RecordSource source;
+        try {
+            source = GetRecord.loadRecord(context, (Specification<Metadata>) hasMetadataId(id), prefix);
+        } catch (IdDoesNotExistException | CannotDisseminateFormatException e) {
+            return null;
+        }
+        return () -> convert(source);
+    }
+
+    private Record convert(GetRecord.RecordSource source) {
+        try {
+            return source.convert();
+        } catch (Exception e) {
+            Log.error(Geonet.OAI_HARVESTER, "Error converting record " + source.getUuid() + ": " + e.getMessage(), e);
+            return null;
+        }
+    }
+
+    private synchronized ExecutorService getExecutor() {
+        if (executor == null) {
+            AtomicInteger threadCount = new AtomicInteger();
+            executor = Executors.newFixedThreadPool(threads, runnable -> {
+                Thread thread = new Thread(runnable, "oaipmh-conversion-" + threadCount.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+        return executor;
+    }
+
+    @PreDestroy
+    public synchronized void shutdown() {
+        if (executor != null) {
+            executor.shutdownNow();
+            executor = null;
+        }
+    }
+}
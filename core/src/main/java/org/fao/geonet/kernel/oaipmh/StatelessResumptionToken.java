@@ -0,0 +1,99 @@
+/*
+ * Copyright (C) 2001-2016 Food and Agriculture Organization of the
+ * United Nations (FAO-UN), United Nations World Food Programme (WFP)
+ * and United Nations Environment Programme (UNEP)
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or (at
+ * your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301, USA
+ *
+ * Contact: Jeroen Ticheler - FAO - Viale delle Terme di Caracalla 2,
+ * Rome - Italy. email: geonetwork@osgeo.org
+ */
+
+package org.fao.geonet.kernel.oaipmh;
+
+import org.fao.oaipmh.responses.ResumptionToken;
+
+/**
+ * Resumption token carrying everything needed to get the next page of a list request: the
+ * request parameters, the sort values of the last record returned and the position in the
+ * list. No state is kept on the server, so any node can continue the harvest.
+ *
+ * <p>Tokens are encoded and signed by {@link StatelessResumptionTokens}.</p>
+ */
+public class StatelessResumptionToken extends ResumptionToken {
+    private String prefix;
+    private String set;
+    private String from;
+    private String until;
+    private Object[] searchAfter;
+    private long expiry;
+
+    public String getPrefix() {
+        return prefix;
+    }
+
+    public void setPrefix(String prefix) {
+        this.prefix = prefix;
+    }
+
+    public String getSet() {
+        return set;
+    }
+
+    public void setSet(String set) {
+        this.set = set;
+    }
+
+    /**
+     * @return the from date of the request, formatted as sent to the search.
+     */
+    public String getFrom() {
+        return from;
+    }
+
+    public void setFrom(String from) {
+        this.from = from;
+    }
+
+    public String getUntil() {
+        return until;
+    }
+
+    public void setUntil(String until) {
+        this.until = until;
+    }
+
+    /**
+     * @return the sort values of the last record of the previous page.
+     */
+    public Object[] getSearchAfter() {
+        return searchAfter;
+    }
+
+    public void setSearchAfter(Object[] searchAfter) {
+        this.searchAfter = searchAfter;
+    }
+
+    /**
+     * @return the expiration time in milliseconds since the epoch.
+     */
+    public long getExpiry() {
+        return expiry;
+    }
+
+    public void setExpiry(long expiry) {
+        this.expiry = expiry;
+    }
+}
@@ -0,0 +1,214 @@
+/*
+ * Copyright (C) 2001-2016 Food and Agriculture Organization of the
+ * United Nations (FAO-UN), United Nations World Food Programme (WFP)
+ * and United Nations Environment Programme (UNEP)
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or (at
+ * your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301, USA
+ *
+ * Contact: Jeroen Ticheler - FAO - Viale delle Terme di Caracalla 2,
+ * Rome - Italy. email: geonetwork@osgeo.org
+ */
+
+package org.fao.geonet.kernel.oaipmh;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import org.apache.commons.lang.StringUtils;
+import org.fao.geonet.ApplicationContextHolder;
+import org.fao.geonet.constants.Geonet;
+import org.fao.geonet.domain.ISODate;
+import org.fao.geonet.utils.Log;
+import org.fao.oaipmh.exceptions.BadResumptionTokenException;
+import org.fao.oaipmh.responses.GeonetworkResumptionToken;
+import org.springframework.beans.factory.NoSuchBeanDefinitionException;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import javax.annotation.PostConstruct;
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.util.Base64;
+
+/**
+ * Encode and decode {@link StatelessResumptionToken}s. A token is the base64 encoded JSON
+ * of its content followed by a HMAC-SHA256 signature, so a harvester can not forge or alter
+ * it and all nodes sharing the same secret accept the tokens of each other.
+ *
+ * <p>A secret must be configured to enable the stateless tokens, otherwise the results are
+ * kept in the {@link ResumptionTokenCache}.</p>
+ */
+public class StatelessResumptionTokens {
+    private static final String SIGNATURE_SEPARATOR = ".";
+    private static final String HMAC_ALGORITHM = "HmacSHA256";
+
+    private final ObjectMapper mapper = new ObjectMapper();
+    private boolean enabled = false;
+    private String secret;
+
+    /**
+     * @return the tokens of the application context or null if none is configured.
+     */
+    public static StatelessResumptionTokens get() {
+        ConfigurableApplicationContext applicationContext = ApplicationContextHolder.get();
+        if (applicationContext == null) {
+            return null;
+        }
+        try {
+            return applicationContext.getBean(StatelessResumptionTokens.class);
+        } catch (NoSuchBeanDefinitionException e) {
+            return null;
+        }
+    }
+
+    @PostConstruct
+    public void init() {
+        if (enabled && StringUtils.isEmpty(secret)) {
+            Log.error(Geonet.OAI_HARVESTER, "OAI-PMH stateless resumption tokens are disabled: "
+                + "set oai.resumptionToken.secret to enable them.");
+            enabled = false;
+        }
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * @param enabled if true, list requests return stateless tokens instead of storing
+     *                the result in the {@link ResumptionTokenCache}.
+     */
+    public void setEnabled(boolean enabled) {
+        this.enabled = enabled;
+    }
+
+    public void setSecret(String secret) {
+        this.secret = secret;
+    }
+
+    /**
+     * @return true if the token has the stateless format (tokens of the
+     * {@link ResumptionTokenCache} are still accepted after switching mode).
+     */
+    public boolean isStatelessToken(String token) {
+        return token.contains(SIGNATURE_SEPARATOR) && !token.contains(GeonetworkResumptionToken.SEPARATOR);
+    }
+
+    /**
+     * Set the text of the token from its content.
+     *
+     * @param timeoutSeconds number of seconds the token remains valid.
+     */
+    public StatelessResumptionToken encode(StatelessResumptionToken token, long timeoutSeconds) {
+        token.setExpiry(System.currentTimeMillis() + timeoutSeconds * 1000);
+        token.setExpirDate(new ISODate(token.getExpiry(), false));
+
+        ObjectNode content = mapper.createObjectNode();
+        content.put("prefix", token.getPrefix());
+        content.put("set", token.getSet());
+        content.put("from", token.getFrom());
+        content.put("until", token.getUntil());
+        ArrayNode searchAfter = content.putArray("searchAfter");
+        for (Object value : token.getSearchAfter()) {
+            if (value instanceof Long || value instanceof Integer) {
+                searchAfter.add(((Number) value).longValue());
+            } else if (value instanceof Number) {
+                searchAfter.add(((Number) value).doubleValue());
+            } else {
+                searchAfter.add(String.valueOf(value));
+            }
+        }
+        content.put("cursor", token.getCursor());
+        content.put("completeListSize", token.getCompleteListSize());
+        content.put("expiry", token.getExpiry());
+
+        String payload = Base64.getUrlEncoder().withoutPadding()
+            .encodeToString(content.toString().getBytes(StandardCharsets.UTF_8));
+        token.setToken(payload + SIGNATURE_SEPARATOR + sign(payload));
+        return token;
+    }
+
+    /**
+     * @throws BadResumptionTokenException if the token is malformed, altered or expired.
+     */
+    public StatelessResumptionToken decode(String text) throws BadResumptionTokenException {
+        int separator = text.lastIndexOf(SIGNATURE_SEPARATOR);
+        if (StringUtils.isEmpty(secret)) {
+            throw new BadResumptionTokenException("stateless resumptionTokens are not enabled: " + text);
+        }
+        if (separator < 0) {
+            throw new BadResumptionTokenException("unknown resumptionToken format: " + text);
+        }
+        String payload = text.substring(0, separator);
+        String signature = text.substring(separator + 1);
+        if (!MessageDigest.isEqual(sign(payload).getBytes(StandardCharsets.UTF_8),
+            signature.getBytes(StandardCharsets.UTF_8))) {
+            throw new BadResumptionTokenException("invalid resumptionToken signature: " + text);
+        }
+
+        StatelessResumptionToken token = new StatelessResumptionToken();
+        try {
+            JsonNode content = mapper.readTree(Base64.getUrlDecoder().decode(payload));
+            token.setPrefix(textOrNull(content, "prefix"));
+            token.setSet(textOrNull(content, "set"));
+            token.setFrom(textOrNull(content, "from"));
+            token.setUntil(textOrNull(content, "until"));
+            JsonNode searchAfter = content.get("searchAfter");
+            Object[] values = new Object[searchAfter.size()];
+            for (int i = 0; i < values.length; i++) {
+                JsonNode value = searchAfter.get(i);
+                values[i] = value.isIntegralNumber() ? (Object) value.asLong()
+                    : value.isNumber() ? (Object) value.asDouble() : value.asText();
+            }
+            token.setSearchAfter(values);
+            token.setCursor(content.get("cursor").asInt());
+            token.setCompleteListSize(content.get("completeListSize").asInt());
+            token.setExpiry(content.get("expiry").asLong());
+        } catch (Exception e) {
+            throw new BadResumptionTokenException("unknown resumptionToken format: " + text);
+        }
+        if (token.getExpiry() < System.currentTimeMillis()) {
+            throw new BadResumptionTokenException("resumptionToken expired: " + text);
+        }
+        token.setToken(text);
+        token.setExpirDate(new ISODate(token.getExpiry(), false));
+        return token;
+    }
+
+    private static String textOrNull(JsonNode content, String field) {
+        JsonNode value = content.get(field);
+        return value == null || value.isNull() ? null : value.asText();
+    }
+
+    private String sign(String payload) {
+        try {
+            Mac mac = Mac.getInstance(HMAC_ALGORITHM);
+            mac.init(new SecretKeySpec(getSecret().getBytes(StandardCharsets.UTF_8), HMAC_ALGORITHM));
+            return Base64.getUrlEncoder().withoutPadding()
+                .encodeToString(mac.doFinal(payload.getBytes(StandardCharsets.UTF_8)));
+        } catch (Exception e) {
+            throw new IllegalStateException("Can't sign OAI-PMH resumption token", e);
+        }
+    }
+
+    private String getSecret() {
+        if (StringUtils.isEmpty(secret)) {
+            throw new IllegalStateException("No secret configured to sign OAI-PMH resumption tokens");
+        }
+        return secret;
+    }
+}
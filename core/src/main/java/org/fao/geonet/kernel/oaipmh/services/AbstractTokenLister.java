@@ -30,6 +30,8 @@ import org.fao.geonet.kernel.oaipmh.Lib;
 import org.fao.geonet.kernel.oaipmh.OaiPmhDispatcher;
 import org.fao.geonet.kernel.oaipmh.OaiPmhService;
 import org.fao.geonet.kernel.oaipmh.ResumptionTokenCache;
+import org.fao.geonet.kernel.oaipmh.StatelessResumptionToken;
+import org.fao.geonet.kernel.oaipmh.StatelessResumptionTokens;
 import org.fao.geonet.kernel.setting.SettingManager;
 import org.fao.geonet.kernel.setting.Settings;
 import org.fao.geonet.utils.Log;
@@ -41,6 +43,7 @@ import org.fao.oaipmh.requests.TokenListRequest;
 import org.fao.oaipmh.responses.AbstractResponse;
 import org.fao.oaipmh.responses.GeonetworkResumptionToken;
 import org.fao.oaipmh.responses.ListResponse;
+import org.fao.oaipmh.responses.ResumptionToken;
 import org.fao.oaipmh.util.SearchResult;
 import org.jdom.Element;
 
@@ -124,37 +127,23 @@ public abstract class AbstractTokenLister implements OaiPmhService {
 
         int pos = 0;
 
+        StatelessResumptionTokens statelessTokens = StatelessResumptionTokens.get();
+        if (statelessTokens != null
+            && (strToken == null ? statelessTokens.isEnabled() : statelessTokens.isStatelessToken(strToken))) {
+            return executeStateless(req, statelessTokens, context);
+        }
+
         if (strToken == null) {
             if (Log.isDebugEnabled(Geonet.OAI_HARVESTER))
                 Log.debug(Geonet.OAI_HARVESTER, "OAI " + this.getClass().getSimpleName() + " : new request (no resumptionToken)");
-            Element params = new Element("request");
 
-            ISODate from = req.getFrom();
-            ISODate until = req.getUntil();
-            String set = req.getSet();
             String prefix = req.getMetadataPrefix();
-
-            if (from != null) {
-                String sFrom = from.isDateOnly() ? from.getDateAsString() : from.toString();
-                params.addContent(new Element(getDateFrom()).setText(sFrom));
-            }
-
-            if (until != null) {
-                String sTo = until.isDateOnly() ? until.getDateAsString() : until.toString();
-                params.addContent(new Element(getDateUntil()).setText(sTo));
-            }
-
-            if (from != null && until != null && from.timeDifferenceInSeconds(until) > 0)
-                throw new BadArgumentException("From is greater than until");
-
-            if (set != null)
-                params.addContent(new Element("category").setText(set));
-
-            params.addContent(new Element("_schema").setText(prefix));
+            Element params = buildSearchParams(req.getFrom(), req.getUntil(), req.getSet());
 
             // now do the search
             result = new SearchResult(prefix);
             if (schemaMan.existsSchema(prefix)) {
+                params.addContent(new Element("_schema").setText(prefix));
                 result.setIds(Lib.search(context, params));
             } else {
                 // collect up all the schemas that we can convert to create prefix,
@@ -193,7 +182,7 @@ public abstract class AbstractTokenLister implements OaiPmhService {
         }
 
         ListResponse res = processRequest(req, pos, result, context);
-        pos = pos + res.getSize();
+        pos = pos + getProcessedCount(res);
 
         if (token == null && res.getSize() == 0)
             throw new NoRecordsMatchException("No results");
@@ -207,6 +196,111 @@ public abstract class AbstractTokenLister implements OaiPmhService {
 
     }
 
+    /**
+     * @return the number of search results processed to build the page, by default the number
+     * of records of the page.
+     */
+    protected int getProcessedCount(ListResponse res) {
+        return res.getSize();
+    }
+
+    /**
+     * Process a list request without storing anything on the server: each page is searched
+     * from the sort values of the last record of the previous page, carried by the token.
+     */
+    private AbstractResponse executeStateless(TokenListRequest req, StatelessResumptionTokens statelessTokens,
+                                              ServiceContext context) throws Exception {
+        StatelessResumptionToken previous = null;
+        String prefix;
+        Element params;
+        if (req.getResumptionToken() == null) {
+            prefix = req.getMetadataPrefix();
+            params = buildSearchParams(req.getFrom(), req.getUntil(), req.getSet());
+        } else {
+            previous = statelessTokens.decode(req.getResumptionToken());
+            prefix = previous.getPrefix();
+            params = buildSearchParams(
+                previous.getFrom() == null ? null : new ISODate(previous.getFrom()),
+                previous.getUntil() == null ? null : new ISODate(previous.getUntil()),
+                previous.getSet());
+        }
+
+        if (schemaMan.existsSchema(prefix)) {
+            params.addContent(new Element("_schema").setText(prefix));
+        } else {
+            for (String schema : getSchemasThatCanConvertTo(prefix)) {
+                params.addContent(new Element("_schema").setText(schema));
+            }
+        }
+        if (params.getChildren("_schema").isEmpty())
+            throw new NoRecordsMatchException("No results");
+
+        Lib.SearchPage page = Lib.searchPage(context, params,
+            previous == null ? null : previous.getSearchAfter(), getMaxRecords());
+        if (previous == null && page.getIds().isEmpty())
+            throw new NoRecordsMatchException("No results");
+
+        SearchResult result = new SearchResult(prefix);
+        result.setIds(page.getIds());
+        ListResponse res = processRequest(req, 0, result, context);
+
+        int cursor = previous == null ? 0 : previous.getCursor();
+        int listSize = (int) page.getTotal();
+        boolean lastPage = cursor + page.getIds().size() >= listSize;
+        if (previous == null && lastPage && res.getSize() == 0)
+            throw new NoRecordsMatchException("No results");
+
+        if (!lastPage) {
+            StatelessResumptionToken token = new StatelessResumptionToken();
+            token.setPrefix(prefix);
+            token.setSet(previous == null ? req.getSet() : previous.getSet());
+            token.setFrom(previous == null ? formatDate(req.getFrom()) : previous.getFrom());
+            token.setUntil(previous == null ? formatDate(req.getUntil()) : previous.getUntil());
+            token.setSearchAfter(page.getLastSortValues());
+            token.setCursor(cursor + page.getIds().size());
+            token.setCompleteListSize(listSize);
+            res.setResumptionToken(statelessTokens.encode(token, cache.getTimeout()));
+        } else if (previous != null) {
+            // Last page of a list: an empty token is returned
+            ResumptionToken token = new ResumptionToken();
+            token.setToken("");
+            token.setCursor(cursor);
+            token.setCompleteListSize(listSize);
+            res.setResumptionToken(token);
+        }
+        return res;
+    }
+
+    /**
+     * Build the search parameters of a list request, without the schemas.
+     */
+    private Element buildSearchParams(ISODate from, ISODate until, String set) throws BadArgumentException {
+        Element params = new Element("request");
+
+        if (from != null) {
+            params.addContent(new Element(getDateFrom()).setText(formatDate(from)));
+        }
+
+        if (until != null) {
+            params.addContent(new Element(getDateUntil()).setText(formatDate(until)));
+        }
+
+        if (from != null && until != null && from.timeDifferenceInSeconds(until) > 0)
+            throw new BadArgumentException("From is greater than until");
+
+        if (set != null)
+            params.addContent(new Element("category").setText(set));
+
+        return params;
+    }
+
+    private static String formatDate(ISODate date) {
+        if (date == null) {
+            return null;
+        }
+        return date.isDateOnly() ? date.getDateAsString() : date.toString();
+    }
+
     //---------------------------------------------------------------------------
 
     /**
@@ -26,6 +26,8 @@ package org.fao.geonet.kernel.oaipmh.services;
 import static org.fao.geonet.repository.specification.MetadataSpecs.hasMetadataUuid;
 
 import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
 
 import org.fao.geonet.GeonetContext;
 import org.fao.geonet.constants.Geonet;
@@ -60,6 +62,15 @@ public class GetRecord implements OaiPmhService {
     // function builds a OAI records from a metadata record, according to the arguments select and selectVal
     public static Record buildRecordStat(ServiceContext context, Specification<Metadata> spec/*String select, Object selectVal*/,
                                          String prefix) throws Exception {
+        return loadRecord(context, spec, prefix).convert();
+    }
+
+    /**
+     * Load what is needed to build the OAI record of a metadata record. The conversion, which
+     * does not use the database, can then be done on another thread.
+     */
+    public static RecordSource loadRecord(ServiceContext context, Specification<Metadata> spec,
+                                          String prefix) throws Exception {
         GeonetContext gc = (GeonetContext) context.getHandlerContext(Geonet.CONTEXT_NAME);
         SchemaManager sm = gc.getBean(SchemaManager.class);
 
@@ -67,58 +78,96 @@ public class GetRecord implements OaiPmhService {
         if (metadata == null)
             throw new IdDoesNotExistException(spec.toString());
 
-        String uuid = metadata.getUuid();
+        RecordSource source = new RecordSource();
+        source.uuid = metadata.getUuid();
         final MetadataDataInfo dataInfo = metadata.getDataInfo();
         String schema = dataInfo.getSchemaId();
-        String changeDate = dataInfo.getChangeDate().getDateAndTime();
-        String data = metadata.getData();
-
-        Element md = Xml.loadString(data, false);
+        source.changeDate = dataInfo.getChangeDate().getDateAndTime();
+        source.data = metadata.getData();
 
         //--- try to disseminate format
 
         if (prefix.equals(schema)) {
-            Attribute schemaLocAtt = sm.getSchemaLocation(schema, context);
-            if (schemaLocAtt != null) {
-                if (md.getAttribute(schemaLocAtt.getName(), schemaLocAtt.getNamespace()) == null) {
-                    md.setAttribute(schemaLocAtt);
-                    // make sure namespace declaration for schemalocation is present -
-                    // remove it first (does nothing if not there) then add it
-                    md.removeNamespaceDeclaration(schemaLocAtt.getNamespace());
-                    md.addNamespaceDeclaration(schemaLocAtt.getNamespace());
-                }
-            }
+            source.schemaLocation = sm.getSchemaLocation(schema, context);
         } else {
             Path schemaDir = sm.getSchemaDir(schema);
             if (Lib.existsConverter(schemaDir, prefix)) {
                 final String siteURL = context.getBean(SettingManager.class).getSiteURL(context);
-                Element env = Lib.prepareTransformEnv(uuid, changeDate, context.getBaseUrl(), siteURL, gc.getBean(SettingManager.class)
-                    .getSiteName());
-                md = Lib.transform(schemaDir, env, md, prefix + ".xsl");
+                source.schemaDir = schemaDir;
+                source.styleSheet = prefix + ".xsl";
+                source.env = Lib.prepareTransformEnv(source.uuid, source.changeDate, context.getBaseUrl(), siteURL,
+                    gc.getBean(SettingManager.class).getSiteName());
             } else {
                 throw new CannotDisseminateFormatException("Unknown prefix : " + prefix);
             }
         }
 
-        //--- build header and set some infos
-
-        Header h = new Header();
+        for (MetadataCategory metadataCategory : metadata.getCategories()) {
+            source.sets.add(metadataCategory.getName());
+        }
+        return source;
+    }
 
-        h.setIdentifier(uuid);
-        h.setDateStamp(new ISODate(changeDate));
+    /**
+     * A metadata record loaded from the database, to be converted into an OAI record.
+     */
+    public static class RecordSource {
+        private String uuid;
+        private String changeDate;
+        private String data;
+        private Attribute schemaLocation;
+        private Path schemaDir;
+        private String styleSheet;
+        private Element env;
+        private final List<String> sets = new ArrayList<>();
+
+        private RecordSource() {
+        }
 
-        for (MetadataCategory metadataCategory : metadata.getCategories()) {
-            h.addSet(metadataCategory.getName());
+        public String getUuid() {
+            return uuid;
         }
 
-        //--- build and return record
+        /**
+         * Parse the record and convert it to the requested format.
+         */
+        public Record convert() throws Exception {
+            Element md = Xml.loadString(data, false);
+
+            if (styleSheet == null) {
+                if (schemaLocation != null) {
+                    if (md.getAttribute(schemaLocation.getName(), schemaLocation.getNamespace()) == null) {
+                        md.setAttribute((Attribute) schemaLocation.clone());
+                        // make sure namespace declaration for schemalocation is present -
+                        // remove it first (does nothing if not there) then add it
+                        md.removeNamespaceDeclaration(schemaLocation.getNamespace());
+                        md.addNamespaceDeclaration(schemaLocation.getNamespace());
+                    }
+                }
+            } else {
+                md = Lib.transform(schemaDir, env, md, styleSheet);
+            }
+
+            //--- build header and set some infos
+
+            Header h = new Header();
 
-        Record r = new Record();
+            h.setIdentifier(uuid);
+            h.setDateStamp(new ISODate(changeDate));
 
-        r.setHeader(h);
-        r.setMetadata(md);
+            for (String set : sets) {
+                h.addSet(set);
+            }
+
+            //--- build and return record
+
+            Record r = new Record();
 
-        return r;
+            r.setHeader(h);
+            r.setMetadata(md);
+
+            return r;
+        }
     }
 
     //---------------------------------------------------------------------------
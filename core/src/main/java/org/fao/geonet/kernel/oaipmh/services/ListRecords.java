@@ -24,23 +24,20 @@
 package org.fao.geonet.kernel.oaipmh.services;
 
 
-import static org.fao.geonet.repository.specification.MetadataSpecs.hasMetadataId;
-
-import org.fao.geonet.domain.Metadata;
 import org.fao.geonet.kernel.SchemaManager;
+import org.fao.geonet.kernel.oaipmh.RecordConverter;
 import org.fao.geonet.kernel.oaipmh.ResumptionTokenCache;
 import org.fao.geonet.kernel.setting.SettingManager;
-import org.fao.oaipmh.exceptions.CannotDisseminateFormatException;
-import org.fao.oaipmh.exceptions.IdDoesNotExistException;
 import org.fao.oaipmh.requests.ListRecordsRequest;
 import org.fao.oaipmh.requests.TokenListRequest;
 import org.fao.oaipmh.responses.ListRecordsResponse;
-import org.fao.oaipmh.responses.Record;
+import org.fao.oaipmh.responses.ListResponse;
 import org.fao.oaipmh.util.SearchResult;
-import org.springframework.data.jpa.domain.Specification;
 
 import jeeves.server.context.ServiceContext;
 
+import java.util.ArrayList;
+
 //=============================================================================
 
 public class ListRecords extends AbstractTokenLister {
@@ -63,48 +60,18 @@ public class ListRecords extends AbstractTokenLister {
 
     public ListRecordsResponse processRequest(TokenListRequest req, int pos, SearchResult result, ServiceContext context) throws Exception {
 
-        int num = 0;
-        ListRecordsResponse res = new ListRecordsResponse();
-
-        //--- loop to retrieve metadata
-
-        while (num < getMaxRecords() && pos < result.getIds().size()) {
-            int id = result.getIds().get(pos);
-
-            Record r = buildRecord(context, id, result.prefix);
-
-            if (r != null) {
-                res.addRecord(r);
-                num++;
-            }
-
-            pos++;
-        }
+        //--- records are converted when the response is written
 
+        int end = Math.min(pos + getMaxRecords(), result.getIds().size());
+        StreamedListRecordsResponse res = new StreamedListRecordsResponse(context, result.prefix,
+            new ArrayList<Integer>(result.getIds().subList(Math.min(pos, end), end)), RecordConverter.get());
+        res.prepare();
         return res;
-
     }
 
-    //---------------------------------------------------------------------------
-    //---
-    //--- Private methods
-    //---
-    //---------------------------------------------------------------------------
-
-    private Record buildRecord(ServiceContext context, int id, String prefix) throws Exception {
-
-        // have to catch exceptions and return null because this function can
-        // be called several times for a list of MD records
-        // and we do not want to stop because of one error
-        try {
-            return GetRecord.buildRecordStat(context, (Specification<Metadata>)hasMetadataId(id), prefix);
-        } catch (IdDoesNotExistException e) {
-            return null;
-        } catch (CannotDisseminateFormatException e2) {
-            return null;
-        } catch (Exception e3) {
-            throw e3;
-        }
+    @Override
+    protected int getProcessedCount(ListResponse res) {
+        return ((StreamedListRecordsResponse) res).getIdCount();
     }
 }
 
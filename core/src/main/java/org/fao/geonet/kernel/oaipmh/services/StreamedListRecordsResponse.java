@@ -0,0 +1,132 @@
+/*
+ * Copyright (C) 2001-2016 Food and Agriculture Organization of the
+ * United Nations (FAO-UN), United Nations World Food Programme (WFP)
+ * and United Nations Environment Programme (UNEP)
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or (at
+ * your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301, USA
+ *
+ * Contact: Jeroen Ticheler - FAO - Viale delle Terme di Caracalla 2,
+ * Rome - Italy. email: geonetwork@osgeo.org
+ */
+
+package org.fao.geonet.kernel.oaipmh.services;
+
+import jeeves.server.context.ServiceContext;
+import org.fao.geonet.kernel.oaipmh.RecordConverter;
+import org.fao.geonet.kernel.oaipmh.StreamingResponse;
+import org.fao.oaipmh.OaiPmh;
+import org.fao.oaipmh.requests.ListRecordsRequest;
+import org.fao.oaipmh.responses.ListRecordsResponse;
+import org.fao.oaipmh.responses.Record;
+import org.fao.oaipmh.responses.ResumptionToken;
+import org.jdom.Element;
+import org.jdom.output.XMLOutputter;
+
+import java.io.Writer;
+import java.util.List;
+
+/**
+ * A page of ListRecords response whose records are converted when the response is written.
+ *
+ * <p>The records are converted up to the first one which can be disseminated before the response
+ * is written (see {@link #prepare()}), so that a page without any record is known in advance.</p>
+ */
+public class StreamedListRecordsResponse extends ListRecordsResponse implements StreamingResponse {
+    private final ServiceContext context;
+    private final String prefix;
+    private final List<Integer> ids;
+    private final RecordConverter converter;
+    private Record first;
+    private int next;
+    private int written;
+
+    public StreamedListRecordsResponse(ServiceContext context, String prefix, List<Integer> ids,
+                                       RecordConverter converter) {
+        this.context = context;
+        this.prefix = prefix;
+        this.ids = ids;
+        this.converter = converter;
+    }
+
+    /**
+     * Convert the records of the page up to the first one which can be disseminated.
+     *
+     * @return false if no record of the page can be disseminated.
+     */
+    public boolean prepare() throws Exception {
+        while (first == null && next < ids.size()) {
+            first = converter.convert(context, ids.get(next++), prefix);
+        }
+        return first != null;
+    }
+
+    /**
+     * @return the number of records written or, before the response is written, the number of
+     * records known to be written (ie. 1 if the page has a record to write once prepared).
+     */
+    @Override
+    public int getSize() {
+        return Math.max(written, first == null ? 0 : 1);
+    }
+
+    /**
+     * @return the number of records of the page, including the ones which are skipped.
+     */
+    public int getIdCount() {
+        return ids.size();
+    }
+
+    @Override
+    public void writeContent(XMLOutputter outputter, Writer writer) throws Exception {
+        written = 0;
+        convert(record -> {
+            outputter.output(record.toXml(), writer);
+            writer.flush();
+        });
+
+        ResumptionToken token = getResumptionToken();
+        if (token != null) {
+            outputter.output(token.toXml(), writer);
+        }
+    }
+
+    @Override
+    public Element toXml() {
+        Element root = new Element(ListRecordsRequest.VERB, OaiPmh.Namespaces.OAI_PMH);
+        written = 0;
+        try {
+            convert(record -> root.addContent(record.toXml()));
+        } catch (Exception e) {
+            throw new RuntimeException(e);
+        }
+
+        ResumptionToken token = getResumptionToken();
+        if (token != null)
+            root.addContent(token.toXml());
+
+        return root;
+    }
+
+    private void convert(RecordConverter.RecordHandler handler) throws Exception {
+        if (first != null) {
+            handler.handle(first);
+            written++;
+        }
+        converter.convert(context, ids.subList(next, ids.size()), prefix, record -> {
+            handler.handle(record);
+            written++;
+        });
+    }
+}
@@ -39,6 +39,7 @@ import org.elasticsearch.action.ActionListener;
 import org.elasticsearch.action.admin.indices.delete.DeleteIndexRequest;
 import org.elasticsearch.action.bulk.BulkRequest;
 import org.elasticsearch.action.bulk.BulkResponse;
+import org.elasticsearch.action.search.SearchRequest;
 import org.elasticsearch.action.search.SearchResponse;
 import org.elasticsearch.action.support.master.AcknowledgedResponse;
 import org.elasticsearch.action.update.UpdateRequest;
@@ -48,6 +49,8 @@ import org.elasticsearch.client.indices.CreateIndexRequest;
 import org.elasticsearch.client.indices.CreateIndexResponse;
 import org.elasticsearch.client.indices.GetIndexRequest;
 import org.elasticsearch.common.xcontent.XContentType;
+import org.elasticsearch.index.query.QueryBuilder;
+import org.elasticsearch.index.query.QueryBuilders;
 import org.elasticsearch.index.query.QueryStringQueryBuilder;
 import org.elasticsearch.index.reindex.DeleteByQueryRequest;
 import org.elasticsearch.script.Script;
@@ -62,6 +65,7 @@ import org.fao.geonet.kernel.DataManager;
 import org.fao.geonet.kernel.GeonetworkDataDirectory;
 import org.fao.geonet.kernel.SelectionManager;
 import org.fao.geonet.kernel.datamanager.IMetadataUtils;
+import org.fao.geonet.kernel.search.index.BulkIndexingQueue;
 import org.fao.geonet.kernel.setting.SettingInfo;
 import org.fao.geonet.repository.SourceRepository;
 import org.fao.geonet.repository.specification.MetadataSpecs;
@@ -73,7 +77,11 @@ import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.data.jpa.domain.Specification;
+import org.springframework.jmx.export.MBeanExporter;
 
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import javax.management.ObjectName;
 import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.io.InputStream;
@@ -81,6 +89,7 @@ import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.StandardOpenOption;
 import java.util.*;
+import java.util.stream.Collectors;
 
 import static org.elasticsearch.rest.RestStatus.*;
 import static org.fao.geonet.constants.Geonet.IndexFieldNames.IS_TEMPLATE;
@@ -91,6 +100,11 @@ public class EsSearchManager implements ISearchManager {
 
     public static final String ID = "id";
 
+    /**
+     * Number of records loaded from the database at once when rebuilding the index.
+     */
+    private static final int REINDEX_CHUNK_SIZE = 100;
+
     public static final String SCHEMA_INDEX_XSLT_FOLDER = "index-fields";
     public static final String SCHEMA_INDEX_XSTL_FILENAME = "index.xsl";
     public static final String SCHEMA_INDEX_SUBTEMPLATE_XSTL_FILENAME = "index-subtemplate.xsl";
@@ -174,13 +188,50 @@ public class EsSearchManager implements ISearchManager {
     @Autowired
     public EsRestClient client;
 
+    @Autowired(required = false)
+    private MBeanExporter exporter;
+
+    @Value("${es.index.bulk.maxDocuments:200}")
     private int commitInterval = 200;
 
-    // public for test, to be private or protected
-    public Map<String, String> listOfDocumentsToIndex =
-        Collections.synchronizedMap(new HashMap<>());
+    @Value("${es.index.bulk.maxBytes:10485760}")
+    private long commitMaxBytes = 10485760;
+
+    @Value("${es.index.bulk.flushIntervalMillis:5000}")
+    private long commitFlushIntervalMillis = 5000;
+
+    @Value("${es.index.bulk.concurrentRequests:2}")
+    private int concurrentBulkRequests = 2;
+
+    @Value("${es.index.bulk.maxQueuedRequests:4}")
+    private int maxQueuedBulkRequests = 4;
+
+    @Value("${es.index.bulk.maxRetries:5}")
+    private int bulkMaxRetries = 5;
+
+    @Value("${es.index.bulk.initialBackoffMillis:200}")
+    private long bulkInitialBackoffMillis = 200;
+
+    private BulkIndexingQueue bulkIndexingQueue;
     private Map<String, String> indexList;
 
+    @PostConstruct
+    public void initBulkIndexingQueue() throws Exception {
+        bulkIndexingQueue = new BulkIndexingQueue(
+            documents -> client.bulkRequest(defaultIndex, documents),
+            this::checkIndexResponse,
+            commitInterval, commitMaxBytes, commitFlushIntervalMillis,
+            concurrentBulkRequests, maxQueuedBulkRequests,
+            bulkMaxRetries, bulkInitialBackoffMillis);
+        if (exporter != null) {
+            exporter.registerManagedResource(bulkIndexingQueue, new ObjectName("geonetwork:name=es-bulk-indexing"));
+        }
+    }
+
+    public BulkIndexingQueue getBulkIndexingQueue() {
+        return bulkIndexingQueue;
+    }
+
     private Path getXSLTForIndexing(Path schemaDir, MetadataType metadataType) {
         Path xsltForIndexing = schemaDir
             .resolve(SCHEMA_INDEX_XSLT_FOLDER)
@@ -329,7 +380,11 @@ public class EsSearchManager implements ISearchManager {
     }
 
     @Override
+    @PreDestroy
     public void end() {
+        if (bulkIndexingQueue != null) {
+            bulkIndexingQueue.close();
+        }
     }
 
     public UpdateResponse updateFields(String id, Map<String, Object> fields) throws Exception {
@@ -339,23 +394,38 @@ public class EsSearchManager implements ISearchManager {
     }
 
     public BulkResponse updateFields(String id, Multimap<String, Object> fields, Set<String> fieldsToRemove) throws Exception {
-        fields.put("indexingDate", new Date());
+        return updateFields(Collections.singletonMap(id, fields), fieldsToRemove);
+    }
+
+    /**
+     * Update some fields of several documents in one bulk request: the fields to remove are
+     * removed from each document and then the fields of the document are set.
+     *
+     * @param fieldsById     the fields to set, by document id
+     * @param fieldsToRemove the fields to remove from all the documents
+     */
+    public BulkResponse updateFields(Map<String, Multimap<String, Object>> fieldsById, Set<String> fieldsToRemove) throws Exception {
         BulkRequest bulkrequest = new BulkRequest();
         StringBuffer script = new StringBuffer();
         fieldsToRemove.forEach(f ->
             script.append(String.format("ctx._source.remove('%s');", f)));
-
-        UpdateRequest deleteFieldRequest =
-            new UpdateRequest(defaultIndex, id).script(new Script(ScriptType.INLINE,
-                "painless",
-                script.toString(),
-                Collections.emptyMap()));
-        bulkrequest.add(deleteFieldRequest);
-        Map<String, Object> fieldMap = new HashMap<>();
-        fields.asMap().forEach((e, v) -> fieldMap.put(e, v.toArray()));
-        UpdateRequest addFieldRequest = new UpdateRequest(defaultIndex, id)
-            .doc(fieldMap);
-        bulkrequest.add(addFieldRequest);
+        Script removeScript = new Script(ScriptType.INLINE,
+            "painless",
+            script.toString(),
+            Collections.emptyMap());
+        Date indexingDate = new Date();
+
+        fieldsById.forEach((id, fields) -> {
+            UpdateRequest deleteFieldRequest =
+                new UpdateRequest(defaultIndex, id).script(removeScript);
+            bulkrequest.add(deleteFieldRequest);
+            Map<String, Object> fieldMap = new HashMap<>();
+            fields.asMap().forEach((e, v) -> fieldMap.put(e, v.toArray()));
+            fieldMap.put("indexingDate", new Object[]{indexingDate});
+            UpdateRequest addFieldRequest = new UpdateRequest(defaultIndex, id)
+                .doc(fieldMap);
+            bulkrequest.add(addFieldRequest);
+        });
         return client.getClient().bulk(bulkrequest, RequestOptions.DEFAULT);
     }
 
@@ -419,29 +489,15 @@ public class EsSearchManager implements ISearchManager {
             final BulkResponse bulkItemResponses = client.bulkRequest(defaultIndex, document);
             checkIndexResponse(bulkItemResponses, document);
         } else {
-            listOfDocumentsToIndex.put(id, jsonDocument);
-            if (listOfDocumentsToIndex.size() == commitInterval) {
-                sendDocumentsToIndex();
-            }
+            bulkIndexingQueue.add(id, jsonDocument);
         }
     }
 
+    /**
+     * Send the documents waiting in the bulk indexing queue and wait for their indexing.
+     */
     private void sendDocumentsToIndex() {
-        Map<String, String> documents = new HashMap<>(listOfDocumentsToIndex);
-        listOfDocumentsToIndex.clear();
-        if (documents.size() > 0) {
-            try {
-                final BulkResponse bulkItemResponses = client
-                    .bulkRequest(defaultIndex, documents);
-                checkIndexResponse(bulkItemResponses, documents);
-            } catch (Exception e) {
-                LOGGER.error(
-                    "An error occurred while indexing {} documents in current indexing list. Error is {}.",
-                    new Object[]{listOfDocumentsToIndex.size(), e.getMessage()});
-            } finally {
-                //                listOfDocumentsToIndex.clear();
-            }
-        }
+        bulkIndexingQueue.flush();
     }
 
     private void checkIndexResponse(BulkResponse bulkItemResponses,
@@ -685,6 +741,15 @@ public class EsSearchManager implements ISearchManager {
         sendDocumentsToIndex();
     }
 
+    /**
+     * Index records by chunks so that the database rows of each chunk are loaded at once.
+     */
+    private void indexByChunks(DataManager dataMan, List<String> ids) throws Exception {
+        for (int start = 0; start < ids.size(); start += REINDEX_CHUNK_SIZE) {
+            dataMan.indexMetadata(ids.subList(start, Math.min(start + REINDEX_CHUNK_SIZE, ids.size())), false);
+        }
+    }
+
     @Override
     public boolean rebuildIndex(ServiceContext context, boolean xlinks,
                                 boolean reset, String bucket) throws Exception {
@@ -718,9 +783,7 @@ public class EsSearchManager implements ISearchManager {
                     }
                 }
             }
-            for (String id : listOfIdsToIndex) {
-                dataMan.indexMetadata(id + "", false);
-            }
+            indexByChunks(dataMan, listOfIdsToIndex);
         } else {
             final Specification<Metadata> metadataSpec =
                 Specification.where((Specification<Metadata>) MetadataSpecs.isType(MetadataType.METADATA))
@@ -728,9 +791,7 @@ public class EsSearchManager implements ISearchManager {
             final List<Integer> metadataIds = metadataRepository.findAllIdsBy(
                 Specification.where(metadataSpec)
             );
-            for (Integer id : metadataIds) {
-                dataMan.indexMetadata(id + "", false);
-            }
+            indexByChunks(dataMan, metadataIds.stream().map(String::valueOf).collect(Collectors.toList()));
         }
         sendDocumentsToIndex();
         return true;
@@ -765,6 +826,27 @@ public class EsSearchManager implements ISearchManager {
         return client.query(defaultIndex, jsonRequest, null, includedFields, from, size);
     }
 
+    /**
+     * Build a query on the records to run with others using {@link #multiSearch(List)}.
+     *
+     * @param filterQuery Lucene syntax filter, may be null.
+     */
+    public SearchRequest buildQueryRequest(QueryBuilder query, String filterQuery, Set<String> includedFields,
+                                           int from, int size) {
+        return client.buildSearchRequest(defaultIndex, query,
+            StringUtils.isNotEmpty(filterQuery) ? QueryBuilders.queryStringQuery(filterQuery) : null,
+            includedFields, from, size);
+    }
+
+    /**
+     * Run several queries in one request.
+     *
+     * @return the responses, in the order of the requests.
+     */
+    public List<SearchResponse> multiSearch(List<SearchRequest> requests) throws Exception {
+        return client.multiSearch(requests);
+    }
+
     public Map<String, String> getFieldsValues(String id, Set<String> fields) throws Exception {
         return client.getFieldsValues(defaultIndex, id, fields);
     }
@@ -1017,6 +1099,6 @@ public class EsSearchManager implements ISearchManager {
     }
 
     public boolean isIndexing() {
-        return listOfDocumentsToIndex.size() > 0;
+        return bulkIndexingQueue.getPendingDocuments() > 0;
     }
 }
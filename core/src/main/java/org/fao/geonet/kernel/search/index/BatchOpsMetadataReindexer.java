@@ -45,24 +45,26 @@ import com.google.common.cache.Cache;
 import com.google.common.cache.CacheBuilder;
 import com.google.common.cache.RemovalNotification;
 import com.google.common.collect.Lists;
-import com.google.common.util.concurrent.MoreExecutors;
 import org.fao.geonet.ApplicationContextHolder;
+import org.fao.geonet.constants.Geonet;
 import org.fao.geonet.kernel.DataManager;
 import org.fao.geonet.kernel.MetadataIndexerProcessor;
 import org.fao.geonet.kernel.search.EsSearchManager;
-import org.fao.geonet.util.ThreadUtils;
+import org.fao.geonet.util.XslFunctionCache;
+import org.fao.geonet.utils.Log;
 import org.springframework.jmx.export.MBeanExporter;
 import org.springframework.jmx.export.annotation.ManagedAttribute;
 import org.springframework.jmx.export.annotation.ManagedResource;
 
 import javax.management.ObjectName;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
 import java.util.Set;
 import java.util.concurrent.CompletableFuture;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
 
 
 /**
@@ -79,13 +81,14 @@ public class BatchOpsMetadataReindexer extends MetadataIndexerProcessor implemen
         .build();
 
     private final Set<Integer> metadata;
-    private ExecutorService executor = null;
+    private IndexingScheduler.Job job;
     private ObjectName probeName;
     private final int toProcessCount;
     private final AtomicInteger processed = new AtomicInteger();
     private final AtomicInteger inError = new AtomicInteger();
     private CompletableFuture<Void> allCompleted;
     private final MBeanExporter exporter;
+    private XslFunctionCache functionCache;
 
     public BatchOpsMetadataReindexer(DataManager dm, Set<Integer> metadata) {
         super(dm);
@@ -110,6 +113,19 @@ public class BatchOpsMetadataReindexer extends MetadataIndexerProcessor implemen
         return inError.intValue();
     }
 
+    @ManagedAttribute
+    public long getElapsedSeconds() {
+        return job == null ? 0 : job.getElapsedSeconds();
+    }
+
+    /**
+     * @return an estimation of the remaining indexing time or -1 if unknown.
+     */
+    @ManagedAttribute
+    public long getEstimatedRemainingSeconds() {
+        return job == null ? -1 : job.getEstimatedRemainingSeconds();
+    }
+
     public void process(String catalogueId, boolean runInCurrentThread) throws Exception {
         wrapAsyncProcess(catalogueId, runInCurrentThread);
         allCompleted.get();
@@ -128,47 +144,54 @@ public class BatchOpsMetadataReindexer extends MetadataIndexerProcessor implemen
     }
 
     private String processAsync(boolean runInCurrentThread) throws Exception {
-        int threadCount = ThreadUtils.getNumberOfThreads();
+        List<Integer> ids = new ArrayList<>(metadata);
 
-        if (runInCurrentThread) {
-            executor = MoreExecutors.newDirectExecutorService();
-        } else {
-            executor = Executors.newFixedThreadPool(threadCount);
+        functionCache = XslFunctionCache.get();
+        if (functionCache != null) {
+            functionCache.reindexingStarted();
         }
 
-        int[] ids = metadata.stream().mapToInt(i -> i).toArray();
-
-        int perThread;
-        if (ids.length < threadCount) perThread = ids.length;
-        else perThread = ids.length / threadCount;
-
-        int index = 0;
-
-        List<BatchOpsCallable> jobs = Lists.newArrayList();
-        while (index < ids.length) {
-            int start = index;
-            int count = Math.min(perThread, ids.length - start);
-            // create threads to process this chunk of ids
-            BatchOpsCallable task = new BatchOpsCallable(ids, start, count);
-            jobs.add(task);
-
-            index += count;
+        CompletableFuture<Void> indexed;
+        if (runInCurrentThread) {
+            // Same chunks as the indexing threads, not all the records loaded at once
+            for (List<Integer> chunk : Lists.partition(ids, IndexingScheduler.get().getMaxChunkSize())) {
+                indexChunk(chunk);
+            }
+            indexed = CompletableFuture.completedFuture(null);
+        } else {
+            // Records are indexed by chunks on the shared indexing threads
+            job = IndexingScheduler.get().submit(ids, this::indexChunk);
+            indexed = job.getCompletion();
         }
+        allCompleted = indexed.thenRun(this);
+        return probeName.toString();
+    }
 
-        List<CompletableFuture> submitList = Lists.newArrayList();
-        for (BatchOpsCallable job : jobs) {
-            CompletableFuture completed = CompletableFuture.runAsync(job, executor);
-            submitList.add(completed);
+    private void indexChunk(List<?> ids) {
+        List<String> chunk = ids.stream().map(String::valueOf).collect(Collectors.toList());
+        try {
+            XslFunctionCache.runIndexing(() -> dm.indexMetadata(chunk, false));
+            processed.addAndGet(chunk.size());
+        } catch (Exception e) {
+            // Index the records one by one so that only the failing ones are in error
+            for (String id : chunk) {
+                try {
+                    XslFunctionCache.runIndexing(() -> dm.indexMetadata(Collections.singletonList(id), false));
+                    processed.incrementAndGet();
+                } catch (Exception recordError) {
+                    Log.error(Geonet.INDEX_ENGINE, "Error indexing record " + id + ": " + recordError.getMessage(), recordError);
+                    inError.incrementAndGet();
+                }
+            }
         }
-
-        allCompleted = CompletableFuture.allOf(submitList.toArray(new CompletableFuture[submitList.size()]));
-        allCompleted.thenRun(this);
-        return probeName.toString();
     }
 
     @Override
     public void run() {
-        executor.shutdown();
+        ApplicationContextHolder.get().getBean(EsSearchManager.class).forceIndexChanges();
+        if (functionCache != null) {
+            functionCache.reindexingEnded();
+        }
         PROBE_CACHE.cleanUp();
         PROBE_CACHE.put(probeName, probeName);
     }
@@ -185,29 +208,4 @@ public class BatchOpsMetadataReindexer extends MetadataIndexerProcessor implemen
             this.exporter = exporter;
         }
     }
-
-    private final class BatchOpsCallable implements Runnable {
-        private final int[] ids;
-        private final int beginIndex, count;
-
-        BatchOpsCallable(int[] ids, int beginIndex, int count) {
-            this.ids = ids;
-            this.beginIndex = beginIndex;
-            this.count = count;
-        }
-
-        @Override
-        public void run() {
-            for (int i = beginIndex; i < beginIndex + count; i++) {
-                try {
-                    dm.indexMetadata(ids[i] + "", false);
-                    processed.incrementAndGet();
-                } catch (Exception e) {
-                    inError.incrementAndGet();
-                }
-            }
-            ApplicationContextHolder.get().getBean(EsSearchManager.class).forceIndexChanges();
-        }
-    }
 }
-
@@ -0,0 +1,434 @@
+/*
+ * Copyright (C) 2001-2016 Food and Agriculture Organization of the
+ * United Nations (FAO-UN), United Nations World Food Programme (WFP)
+ * and United Nations Environment Programme (UNEP)
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or (at
+ * your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301, USA
+ *
+ * Contact: Jeroen Ticheler - FAO - Viale delle Terme di Caracalla 2,
+ * Rome - Italy. email: geonetwork@osgeo.org
+ */
+
+package org.fao.geonet.kernel.search.index;
+
+import org.elasticsearch.ElasticsearchStatusException;
+import org.elasticsearch.action.bulk.BulkItemResponse;
+import org.elasticsearch.action.bulk.BulkResponse;
+import org.elasticsearch.client.ResponseException;
+import org.elasticsearch.rest.RestStatus;
+import org.fao.geonet.constants.Geonet;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.jmx.export.annotation.ManagedAttribute;
+import org.springframework.jmx.export.annotation.ManagedResource;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Collect the documents to index and send them to the index in bulk requests.
+ *
+ * <p>A bulk request is sent when the pending documents reach a number of documents or a size,
+ * or when the oldest pending document waited more than the flush interval. A few bulk requests
+ * are sent in parallel on dedicated threads; when too many are waiting, the threads adding
+ * documents block until one completes. Documents rejected because the index is overloaded
+ * (429 or 503) are sent again with an exponential backoff.</p>
+ *
+ * <p>A bulk request containing a document which is also in a bulk request not yet completed is
+ * only sent once that one is completed, so that the last version of a document is the one
+ * indexed.</p>
+ */
+@ManagedResource()
+public class BulkIndexingQueue {
+    private static final Logger LOGGER = LoggerFactory.getLogger(Geonet.INDEX_ENGINE);
+
+    /**
+     * Send a bulk request of documents (id to JSON document).
+     */
+    public interface BulkSender {
+        BulkResponse send(Map<String, String> documents) throws IOException;
+    }
+
+    /**
+     * Report the documents of a bulk request which could not be indexed.
+     */
+    public interface FailureHandler {
+        void onFailures(BulkResponse response, Map<String, String> documents) throws IOException;
+    }
+
+    private final BulkSender sender;
+    private final FailureHandler failureHandler;
+    private final int maxDocuments;
+    private final long maxBytes;
+    private final long flushIntervalMillis;
+    private final int maxRetries;
+    private final long initialBackoffMillis;
+
+    private final Object lock = new Object();
+    private LinkedHashMap<String, String> batch = new LinkedHashMap<>();
+    private long batchBytes = 0;
+    private long batchStartMillis = 0;
+
+    private final Semaphore requestPermits;
+    private final ExecutorService senders;
+    private final ScheduledExecutorService flushTimer;
+    private final Set<CompletableFuture<Void>> inFlight = ConcurrentHashMap.newKeySet();
+    /**
+     * The last bulk containing each document, until it is completed.
+     */
+    private final Map<String, Bulk> pendingIds = new ConcurrentHashMap<>();
+
+    private final AtomicInteger queuedDocuments = new AtomicInteger();
+    private final AtomicLong bulkRequests = new AtomicLong();
+    private final AtomicLong bulkTimeMillis = new AtomicLong();
+    private final AtomicLong indexedDocuments = new AtomicLong();
+    private final AtomicLong failedDocuments = new AtomicLong();
+    private final AtomicLong retries = new AtomicLong();
+    private volatile long lastBulkTimeMillis = 0;
+
+    private long rateWindowStart = System.currentTimeMillis();
+    private long rateWindowDocuments = 0;
+    private volatile double documentsPerSecond = 0;
+
+    /**
+     * @param maxDocuments        number of documents triggering a bulk request
+     * @param maxBytes            size of the JSON documents (in characters) triggering a bulk request
+     * @param flushIntervalMillis maximum time a document waits before being sent (0 to disable)
+     * @param concurrentRequests  number of bulk requests sent in parallel
+     * @param maxQueuedRequests   number of full bulk requests waiting to be sent before blocking
+     *                            the threads adding documents
+     * @param maxRetries          number of retries of rejected documents
+     * @param initialBackoffMillis wait before the first retry, doubled for each following retry
+     */
+    public BulkIndexingQueue(BulkSender sender, FailureHandler failureHandler,
+                             int maxDocuments, long maxBytes, long flushIntervalMillis,
+                             int concurrentRequests, int maxQueuedRequests,
+                             int maxRetries, long initialBackoffMillis) {
+        this.sender = sender;
+        this.failureHandler = failureHandler;
+        this.maxDocuments = Math.max(1, maxDocuments);
+        this.maxBytes = maxBytes;
+        this.flushIntervalMillis = flushIntervalMillis;
+        this.maxRetries = maxRetries;
+        this.initialBackoffMillis = initialBackoffMillis;
+
+        int threads = Math.max(1, concurrentRequests);
+        this.requestPermits = new Semaphore(threads + Math.max(0, maxQueuedRequests));
+        this.senders = Executors.newFixedThreadPool(threads, daemonThreads("es-bulk-indexing"));
+        this.flushTimer = Executors.newSingleThreadScheduledExecutor(daemonThreads("es-bulk-indexing-timer"));
+        if (flushIntervalMillis > 0) {
+            flushTimer.scheduleWithFixedDelay(this::flushExpired,
+                flushIntervalMillis, flushIntervalMillis, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    private static ThreadFactory daemonThreads(String name) {
+        AtomicInteger count = new AtomicInteger();
+        return runnable -> {
+            Thread thread = new Thread(runnable, name + "-" + count.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        };
+    }
+
+    /**
+     * Add a document to the queue. A document added twice before being sent is only sent once,
+     * with the last value. Blocks when too many bulk requests are waiting to be sent.
+     */
+    public void add(String id, String jsonDocument) {
+        Bulk full = null;
+        synchronized (lock) {
+            if (batch.isEmpty()) {
+                batchStartMillis = System.currentTimeMillis();
+            }
+            String previous = batch.put(id, jsonDocument);
+            batchBytes += jsonDocument.length() - (previous == null ? 0 : previous.length());
+            if (batch.size() >= maxDocuments || batchBytes >= maxBytes) {
+                full = takeBatch();
+            }
+        }
+        if (full != null) {
+            submit(full);
+        }
+    }
+
+    /**
+     * Send the pending documents and wait until all bulk requests taken so far are completed.
+     */
+    public void flush() {
+        Bulk bulk = null;
+        synchronized (lock) {
+            if (!batch.isEmpty()) {
+                bulk = takeBatch();
+            }
+        }
+        if (bulk != null) {
+            submit(bulk);
+        }
+        List<CompletableFuture<Void>> running = new ArrayList<>(inFlight);
+        CompletableFuture.allOf(running.toArray(new CompletableFuture[0])).join();
+    }
+
+    /**
+     * Send the pending documents and stop the sending threads.
+     */
+    public void close() {
+        flush();
+        flushTimer.shutdownNow();
+        senders.shutdown();
+    }
+
+    private void flushExpired() {
+        Bulk bulk = null;
+        synchronized (lock) {
+            if (!batch.isEmpty() && System.currentTimeMillis() - batchStartMillis >= flushIntervalMillis) {
+                bulk = takeBatch();
+            }
+        }
+        if (bulk != null) {
+            submit(bulk);
+        }
+    }
+
+    /**
+     * Take the pending documents, called with the lock held. The permit is acquired here so that
+     * the bulks get their permit in the order they are taken: a bulk waiting for a previous bulk
+     * sharing documents never holds the permit that one needs.
+     */
+    private Bulk takeBatch() {
+        boolean permit = false;
+        try {
+            requestPermits.acquire();
+            permit = true;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+
+        Bulk bulk = new Bulk(batch, permit);
+        batch = new LinkedHashMap<>();
+        batchBytes = 0;
+
+        Set<CompletableFuture<Void>> previous = new HashSet<>();
+        for (String id : bulk.documents.keySet()) {
+            Bulk other = pendingIds.put(id, bulk);
+            if (other != null) {
+                previous.add(other.done);
+            }
+        }
+        bulk.previous = previous.toArray(new CompletableFuture[0]);
+        inFlight.add(bulk.done);
+        queuedDocuments.addAndGet(bulk.documents.size());
+        return bulk;
+    }
+
+    private void submit(Bulk bulk) {
+        CompletableFuture.allOf(bulk.previous)
+            .handle((result, error) -> null)
+            .thenRunAsync(() -> send(bulk.documents), senders)
+            .whenComplete((result, error) -> {
+                bulk.documents.keySet().forEach(id -> pendingIds.remove(id, bulk));
+                queuedDocuments.addAndGet(-bulk.documents.size());
+                if (bulk.permit) {
+                    requestPermits.release();
+                }
+                inFlight.remove(bulk.done);
+                bulk.done.complete(null);
+            });
+    }
+
+    private void send(Map<String, String> documents) {
+        Map<String, String> toSend = documents;
+        long backoffMillis = initialBackoffMillis;
+        for (int attempt = 0; ; attempt++) {
+            long start = System.currentTimeMillis();
+            try {
+                BulkResponse response = sender.send(toSend);
+                recordBulk(System.currentTimeMillis() - start);
+
+                Map<String, String> rejected = new HashMap<>();
+                List<BulkItemResponse> failures = new ArrayList<>();
+                for (BulkItemResponse item : response.getItems()) {
+                    if (!item.isFailed()) {
+                        continue;
+                    }
+                    if (attempt < maxRetries && isRetryable(item.status())) {
+                        rejected.put(item.getId(), toSend.get(item.getId()));
+                    } else {
+                        failures.add(item);
+                    }
+                }
+                recordIndexed(toSend.size() - rejected.size() - failures.size());
+                if (!failures.isEmpty()) {
+                    failedDocuments.addAndGet(failures.size());
+                    try {
+                        failureHandler.onFailures(
+                            new BulkResponse(failures.toArray(new BulkItemResponse[0]), response.getTook().millis()),
+                            toSend);
+                    } catch (IOException e) {
+                        // The failed documents are already counted
+                        LOGGER.error("An error occurred while reporting {} indexing failures. Error is {}.",
+                            failures.size(), e.getMessage());
+                    }
+                }
+                if (rejected.isEmpty()) {
+                    return;
+                }
+                toSend = rejected;
+            } catch (ElasticsearchStatusException e) {
+                if (attempt >= maxRetries || !isRetryable(e.status())) {
+                    failed(toSend, e);
+                    return;
+                }
+            } catch (ResponseException e) {
+                if (attempt >= maxRetries
+                    || !isRetryable(RestStatus.fromCode(e.getResponse().getStatusLine().getStatusCode()))) {
+                    failed(toSend, e);
+                    return;
+                }
+            } catch (Exception e) {
+                failed(toSend, e);
+                return;
+            }
+
+            retries.incrementAndGet();
+            LOGGER.warn("Index overloaded, sending {} documents again in {}ms.", toSend.size(), backoffMillis);
+            try {
+                Thread.sleep(backoffMillis);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                failed(toSend, e);
+                return;
+            }
+            backoffMillis *= 2;
+        }
+    }
+
+    private static boolean isRetryable(RestStatus status) {
+        return status == RestStatus.TOO_MANY_REQUESTS || status == RestStatus.SERVICE_UNAVAILABLE;
+    }
+
+    private void failed(Map<String, String> documents, Exception e) {
+        failedDocuments.addAndGet(documents.size());
+        LOGGER.error("An error occurred while indexing {} documents. Error is {}.",
+            documents.size(), e.getMessage());
+    }
+
+    private void recordBulk(long timeMillis) {
+        bulkRequests.incrementAndGet();
+        bulkTimeMillis.addAndGet(timeMillis);
+        lastBulkTimeMillis = timeMillis;
+    }
+
+    private synchronized void recordIndexed(int count) {
+        indexedDocuments.addAndGet(count);
+        rateWindowDocuments += count;
+        long now = System.currentTimeMillis();
+        long elapsed = now - rateWindowStart;
+        if (elapsed >= 10000) {
+            documentsPerSecond = rateWindowDocuments * 1000.0 / elapsed;
+            rateWindowStart = now;
+            rateWindowDocuments = 0;
+        }
+    }
+
+    /**
+     * @return the number of documents not yet indexed (waiting or being sent).
+     */
+    @ManagedAttribute
+    public int getPendingDocuments() {
+        synchronized (lock) {
+            return batch.size() + queuedDocuments.get();
+        }
+    }
+
+    @ManagedAttribute
+    public int getPendingBulkRequests() {
+        return inFlight.size();
+    }
+
+    @ManagedAttribute
+    public long getBulkRequests() {
+        return bulkRequests.get();
+    }
+
+    @ManagedAttribute
+    public long getAverageBulkTimeMillis() {
+        long count = bulkRequests.get();
+        return count == 0 ? 0 : bulkTimeMillis.get() / count;
+    }
+
+    @ManagedAttribute
+    public long getLastBulkTimeMillis() {
+        return lastBulkTimeMillis;
+    }
+
+    @ManagedAttribute
+    public long getIndexedDocuments() {
+        return indexedDocuments.get();
+    }
+
+    @ManagedAttribute
+    public long getFailedDocuments() {
+        return failedDocuments.get();
+    }
+
+    @ManagedAttribute
+    public long getRetries() {
+        return retries.get();
+    }
+
+    /**
+     * @return the number of documents indexed per second, measured on the last 10 seconds
+     * period with activity.
+     */
+    @ManagedAttribute
+    public double getDocumentsPerSecond() {
+        return documentsPerSecond;
+    }
+
+    /**
+     * Documents taken from the queue to be sent in a bulk request.
+     */
+    private static final class Bulk {
+        final Map<String, String> documents;
+        final boolean permit;
+        final CompletableFuture<Void> done = new CompletableFuture<>();
+        /**
+         * The bulks not completed when this one was taken and sharing documents with it.
+         */
+        CompletableFuture<?>[] previous;
+
+        Bulk(Map<String, String> documents, boolean permit) {
+            this.documents = documents;
+            this.permit = permit;
+        }
+    }
+}
@@ -0,0 +1,368 @@
+/*
+ * Copyright (C) 2001-2016 Food and Agriculture Organization of the
+ * United Nations (FAO-UN), United Nations World Food Programme (WFP)
+ * and United Nations Environment Programme (UNEP)
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or (at
+ * your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301, USA
+ *
+ * Contact: Jeroen Ticheler - FAO - Viale delle Terme di Caracalla 2,
+ * Rome - Italy. email: geonetwork@osgeo.org
+ */
+
+package org.fao.geonet.kernel.search.index;
+
+import org.fao.geonet.ApplicationContextHolder;
+import org.fao.geonet.constants.Geonet;
+import org.fao.geonet.util.ThreadUtils;
+import org.fao.geonet.utils.Log;
+import org.springframework.beans.factory.NoSuchBeanDefinitionException;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import javax.annotation.PreDestroy;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.PriorityBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.BooleanSupplier;
+
+/**
+ * Shared pool of threads indexing records.
+ *
+ * <p>The records of a job are indexed by small chunks. Each thread takes the next chunk of a job
+ * when it is done with the previous one, so a slow chunk (eg. large records) does not leave the
+ * other threads idle at the end of a job. Chunks of {@link Priority#INTERACTIVE} jobs are taken
+ * before chunks of {@link Priority#BULK} jobs, then jobs are processed in submission order.</p>
+ *
+ * <p>The number of threads follows the indexing threads setting
+ * (see {@link ThreadUtils#getNumberOfThreads()}) and idle threads are released.</p>
+ *
+ * <p>A job may have to wait for a condition before starting (eg. the transaction which saved the
+ * records to be committed). The condition is checked by a separate thread so that waiting jobs
+ * do not hold indexing threads.</p>
+ */
+public class IndexingScheduler {
+
+    public enum Priority {
+        /**
+         * A few records modified by a user who is waiting for the result.
+         */
+        INTERACTIVE,
+        /**
+         * Batch operations and full reindexing.
+         */
+        BULK
+    }
+
+    /**
+     * Index a chunk of records of a job.
+     */
+    public interface ChunkIndexer {
+        void index(List<?> ids) throws Exception;
+    }
+
+    /**
+     * Delay between two checks of the start condition of a waiting job.
+     */
+    private static final long READY_CHECK_DELAY_MILLIS = 100;
+
+    private final AtomicLong jobSequence = new AtomicLong();
+    private final ThreadPoolExecutor executor;
+    private final ScheduledExecutorService readyChecker;
+    private final Set<Job> waitingJobs = ConcurrentHashMap.newKeySet();
+    private int maxChunkSize = 50;
+    private int interactiveMaxRecords = 10;
+    private int threadCount = 0;
+
+    /**
+     * @return the scheduler of the application context or a shared one if none is configured.
+     */
+    public static IndexingScheduler get() {
+        ConfigurableApplicationContext applicationContext = ApplicationContextHolder.get();
+        if (applicationContext != null) {
+            try {
+                return applicationContext.getBean(IndexingScheduler.class);
+            } catch (NoSuchBeanDefinitionException e) {
+                // use the shared one
+            }
+        }
+        return SharedScheduler.INSTANCE;
+    }
+
+    private static final class SharedScheduler {
+        private static final IndexingScheduler INSTANCE = new IndexingScheduler();
+    }
+
+    public IndexingScheduler() {
+        AtomicInteger threadCount = new AtomicInteger();
+        executor = new ThreadPoolExecutor(1, 1, 60, TimeUnit.SECONDS,
+            new PriorityBlockingQueue<>(),
+            runnable -> {
+                Thread thread = new Thread(runnable, "indexing-" + threadCount.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            });
+        executor.allowCoreThreadTimeOut(true);
+        readyChecker = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "indexing-wait");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * Submit a job with a priority deduced from its size: jobs of up to
+     * {@link #getInteractiveMaxRecords()} records are interactive.
+     */
+    public Job submit(List<?> ids, ChunkIndexer indexer) {
+        return submit(ids, ids.size() <= interactiveMaxRecords ? Priority.INTERACTIVE : Priority.BULK, indexer);
+    }
+
+    public Job submit(List<?> ids, Priority priority, ChunkIndexer indexer) {
+        return submit(ids, priority, indexer, null);
+    }
+
+    /**
+     * Submit a job with a priority deduced from its size, started once the condition is met.
+     */
+    public Job submit(List<?> ids, ChunkIndexer indexer, BooleanSupplier ready) {
+        return submit(ids, ids.size() <= interactiveMaxRecords ? Priority.INTERACTIVE : Priority.BULK, indexer, ready);
+    }
+
+    /**
+     * @param ready if not null, the job is started once this condition is met.
+     */
+    public Job submit(List<?> ids, Priority priority, ChunkIndexer indexer, BooleanSupplier ready) {
+        int threads = resize();
+        int chunkSize = Math.max(1, Math.min(maxChunkSize, ids.size() / (threads * 4)));
+        Job job = new Job(jobSequence.incrementAndGet(), priority, ids, chunkSize, indexer);
+        if (ids.isEmpty()) {
+            job.completion.complete(null);
+            return job;
+        }
+        if (ready == null) {
+            start(job, threads);
+        } else {
+            waitingJobs.add(job);
+            startWhenReady(job, threads, ready);
+        }
+        return job;
+    }
+
+    private void start(Job job, int threads) {
+        int initialChunks = Math.min(threads, job.chunkCount);
+        for (int i = 0; i < initialChunks; i++) {
+            execute(new ChunkTask(job));
+        }
+    }
+
+    private void startWhenReady(Job job, int threads, BooleanSupplier ready) {
+        try {
+            if (ready.getAsBoolean()) {
+                waitingJobs.remove(job);
+                start(job, threads);
+            } else {
+                readyChecker.schedule(() -> startWhenReady(job, threads, ready), READY_CHECK_DELAY_MILLIS, TimeUnit.MILLISECONDS);
+            }
+        } catch (RejectedExecutionException e) {
+            waitingJobs.remove(job);
+            job.completion.completeExceptionally(new CancellationException("Indexing scheduler shut down"));
+        } catch (RuntimeException e) {
+            waitingJobs.remove(job);
+            job.completion.completeExceptionally(e);
+        }
+    }
+
+    /**
+     * Queue a chunk or cancel its job if the scheduler is shut down.
+     */
+    private void execute(ChunkTask task) {
+        try {
+            executor.execute(task);
+        } catch (RejectedExecutionException e) {
+            task.job.completion.completeExceptionally(new CancellationException("Indexing scheduler shut down"));
+        }
+    }
+
+    /**
+     * Adapt the pool to the indexing threads setting.
+     */
+    private synchronized int resize() {
+        int threads = Math.max(1, threadCount > 0 ? threadCount : ThreadUtils.getNumberOfThreads());
+        if (threads > executor.getMaximumPoolSize()) {
+            executor.setMaximumPoolSize(threads);
+            executor.setCorePoolSize(threads);
+        } else if (threads < executor.getMaximumPoolSize()) {
+            executor.setCorePoolSize(threads);
+            executor.setMaximumPoolSize(threads);
+        }
+        return threads;
+    }
+
+    /**
+     * Stop the indexing threads. The jobs not completed yet are cancelled.
+     */
+    @PreDestroy
+    public void shutdown() {
+        readyChecker.shutdownNow();
+        for (Job job : waitingJobs) {
+            job.completion.completeExceptionally(new CancellationException("Indexing scheduler shut down"));
+        }
+        waitingJobs.clear();
+        for (Runnable task : executor.shutdownNow()) {
+            if (task instanceof ChunkTask) {
+                ((ChunkTask) task).job.completion.completeExceptionally(new CancellationException("Indexing scheduler shut down"));
+            }
+        }
+    }
+
+    public int getMaxChunkSize() {
+        return maxChunkSize;
+    }
+
+    public void setMaxChunkSize(int maxChunkSize) {
+        this.maxChunkSize = maxChunkSize;
+    }
+
+    public int getThreadCount() {
+        return threadCount;
+    }
+
+    /**
+     * @param threadCount number of indexing threads or 0 to use the indexing threads setting.
+     */
+    public void setThreadCount(int threadCount) {
+        this.threadCount = threadCount;
+    }
+
+    public int getInteractiveMaxRecords() {
+        return interactiveMaxRecords;
+    }
+
+    public void setInteractiveMaxRecords(int interactiveMaxRecords) {
+        this.interactiveMaxRecords = interactiveMaxRecords;
+    }
+
+    /**
+     * Progress of a submitted job.
+     */
+    public static final class Job {
+        private final long sequence;
+        private final Priority priority;
+        private final List<?> ids;
+        private final int chunkSize;
+        private final int chunkCount;
+        private final ChunkIndexer indexer;
+        private final AtomicInteger nextChunk = new AtomicInteger();
+        private final AtomicInteger completedChunks = new AtomicInteger();
+        private final AtomicInteger processed = new AtomicInteger();
+        private final long startTime = System.currentTimeMillis();
+        private final CompletableFuture<Void> completion = new CompletableFuture<>();
+
+        private Job(long sequence, Priority priority, List<?> ids, int chunkSize, ChunkIndexer indexer) {
+            this.sequence = sequence;
+            this.priority = priority;
+            this.ids = ids;
+            this.chunkSize = chunkSize;
+            this.chunkCount = (ids.size() + chunkSize - 1) / chunkSize;
+            this.indexer = indexer;
+        }
+
+        /**
+         * @return a future completed when all records of the job are processed.
+         */
+        public CompletableFuture<Void> getCompletion() {
+            return completion;
+        }
+
+        public Priority getPriority() {
+            return priority;
+        }
+
+        public int getToProcessCount() {
+            return ids.size();
+        }
+
+        /**
+         * @return the number of records processed, in error or not.
+         */
+        public int getProcessed() {
+            return processed.get();
+        }
+
+        public long getElapsedSeconds() {
+            return (System.currentTimeMillis() - startTime) / 1000;
+        }
+
+        /**
+         * @return an estimation of the time needed to process the remaining records or -1 if
+         * no record has been processed yet.
+         */
+        public long getEstimatedRemainingSeconds() {
+            int done = processed.get();
+            if (done == 0) {
+                return -1;
+            }
+            long elapsedMillis = System.currentTimeMillis() - startTime;
+            return elapsedMillis * (ids.size() - done) / done / 1000;
+        }
+    }
+
+    private final class ChunkTask implements Runnable, Comparable<ChunkTask> {
+        private final Job job;
+
+        private ChunkTask(Job job) {
+            this.job = job;
+        }
+
+        @Override
+        public void run() {
+            int chunk = job.nextChunk.getAndIncrement();
+            if (chunk >= job.chunkCount) {
+                return;
+            }
+            int start = chunk * job.chunkSize;
+            int end = Math.min(start + job.chunkSize, job.ids.size());
+            try {
+                job.indexer.index(job.ids.subList(start, end));
+            } catch (Throwable e) {
+                Log.error(Geonet.INDEX_ENGINE, "Error indexing records " + start + " to " + end + ": " + e.getMessage(), e);
+            } finally {
+                job.processed.addAndGet(end - start);
+                // Queue the next chunk behind the chunks of jobs having a higher priority
+                if (job.nextChunk.get() < job.chunkCount) {
+                    execute(new ChunkTask(job));
+                }
+                if (job.completedChunks.incrementAndGet() == job.chunkCount) {
+                    job.completion.complete(null);
+                }
+            }
+        }
+
+        @Override
+        public int compareTo(ChunkTask other) {
+            int byPriority = job.priority.compareTo(other.job.priority);
+            return byPriority != 0 ? byPriority : Long.compare(job.sequence, other.job.sequence);
+        }
+    }
+}
@@ -0,0 +1,88 @@
+/*
+ * Copyright (C) 2001-2021 Food and Agriculture Organization of the
+ * United Nations (FAO-UN), United Nations World Food Programme (WFP)
+ * and United Nations Environment Programme (UNEP)
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or (at
+ * your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301, USA
+ *
+ * Contact: Jeroen Ticheler - FAO - Viale delle Terme di Caracalla 2,
+ * Rome - Italy. email: geonetwork@osgeo.org
+ */
+
+package org.fao.geonet.kernel.selection;
+
+import org.fao.geonet.ApplicationContextHolder;
+import org.fao.geonet.repository.MetadataDraftRepository;
+import org.fao.geonet.repository.MetadataRepository;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Map uuids and ids with the metadata and metadata draft tables. Their ids are taken from the
+ * same sequence, a draft id is only used for a draft without approved record.
+ */
+public class DatabaseSelectionResolver implements SelectionResolver {
+    public static final DatabaseSelectionResolver INSTANCE = new DatabaseSelectionResolver();
+
+    @Override
+    public Map<String, Integer> getIds(Collection<String> uuids) {
+        Map<String, Integer> ids = new HashMap<>();
+        if (uuids.isEmpty()) {
+            return ids;
+        }
+        for (Object[] idAndUuid : getMetadataRepository().findIdAndUuidByUuidIn(uuids)) {
+            ids.put((String) idAndUuid[1], (Integer) idAndUuid[0]);
+        }
+        if (ids.size() < uuids.size()) {
+            List<String> missing = new ArrayList<>(uuids);
+            missing.removeAll(ids.keySet());
+            for (Object[] idAndUuid : getMetadataDraftRepository().findIdAndUuidByUuidIn(missing)) {
+                ids.putIfAbsent((String) idAndUuid[1], (Integer) idAndUuid[0]);
+            }
+        }
+        return ids;
+    }
+
+    @Override
+    public Map<Integer, String> getUuids(Collection<Integer> ids) {
+        Map<Integer, String> uuids = new HashMap<>();
+        if (ids.isEmpty()) {
+            return uuids;
+        }
+        for (Object[] idAndUuid : getMetadataRepository().findIdAndUuidByIdIn(ids)) {
+            uuids.put((Integer) idAndUuid[0], (String) idAndUuid[1]);
+        }
+        if (uuids.size() < ids.size()) {
+            List<Integer> missing = new ArrayList<>(ids);
+            missing.removeAll(uuids.keySet());
+            for (Object[] idAndUuid : getMetadataDraftRepository().findIdAndUuidByIdIn(missing)) {
+                uuids.put((Integer) idAndUuid[0], (String) idAndUuid[1]);
+            }
+        }
+        return uuids;
+    }
+
+    private static MetadataRepository getMetadataRepository() {
+        return ApplicationContextHolder.get().getBean(MetadataRepository.class);
+    }
+
+    private static MetadataDraftRepository getMetadataDraftRepository() {
+        return ApplicationContextHolder.get().getBean(MetadataDraftRepository.class);
+    }
+}
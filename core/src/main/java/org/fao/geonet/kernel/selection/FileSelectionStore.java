@@ -0,0 +1,154 @@
+/*
+ * Copyright (C) 2001-2021 Food and Agriculture Organization of the
+ * United Nations (FAO-UN), United Nations World Food Programme (WFP)
+ * and United Nations Environment Programme (UNEP)
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or (at
+ * your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301, USA
+ *
+ * Contact: Jeroen Ticheler - FAO - Viale delle Terme di Caracalla 2,
+ * Rome - Italy. email: geonetwork@osgeo.org
+ */
+
+package org.fao.geonet.kernel.selection;
+
+import org.apache.commons.lang.StringUtils;
+
+import javax.annotation.PostConstruct;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.nio.file.DirectoryNotEmptyException;
+import java.nio.file.DirectoryStream;
+import java.io.IOException;
+import java.io.UnsupportedEncodingException;
+import java.net.URLEncoder;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Stores the selections in files of a directory shared by the nodes of a cluster (eg. in the
+ * data directory). A selection is written to a temporary file then moved, the last node saving
+ * a selection wins.
+ *
+ * <p>Without directory, the selections are only kept in the user sessions.</p>
+ */
+public class FileSelectionStore implements SelectionStore {
+    private static final String EXTENSION = ".selection";
+
+    private String directory;
+    private Path root;
+
+    @PostConstruct
+    public void init() throws IOException {
+        if (StringUtils.isNotEmpty(directory)) {
+            root = Files.createDirectories(Paths.get(directory));
+        }
+    }
+
+    @Override
+    public boolean isEnabled() {
+        return root != null;
+    }
+
+    @Override
+    public long getVersion(String owner, String bucket) throws IOException {
+        if (root == null) {
+            return -1;
+        }
+        try (DataInputStream in = new DataInputStream(Files.newInputStream(getFile(owner, bucket)))) {
+            return in.readLong();
+        } catch (NoSuchFileException e) {
+            return -1;
+        }
+    }
+
+    @Override
+    public RecordSelection get(String owner, String bucket, SelectionResolver resolver) throws IOException {
+        if (root == null) {
+            return null;
+        }
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(
+            Files.newInputStream(getFile(owner, bucket))))) {
+            in.readLong();
+            return RecordSelection.readFrom(in, resolver);
+        } catch (NoSuchFileException e) {
+            return null;
+        }
+    }
+
+    @Override
+    public long put(String owner, String bucket, RecordSelection selection) throws IOException {
+        if (root == null) {
+            return -1;
+        }
+        Path file = getFile(owner, bucket);
+        Files.createDirectories(file.getParent());
+        long version = ThreadLocalRandom.current().nextLong(Long.MAX_VALUE);
+        Path tmp = Files.createTempFile(file.getParent(), file.getFileName().toString(), ".tmp");
+        try {
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(tmp)))) {
+                out.writeLong(version);
+                selection.writeTo(out);
+            }
+            Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING);
+        } catch (IOException e) {
+            Files.deleteIfExists(tmp);
+            throw e;
+        }
+        return version;
+    }
+
+    @Override
+    public void remove(String owner) throws IOException {
+        if (root == null) {
+            return;
+        }
+        Path directory = getDirectory(owner);
+        if (!Files.isDirectory(directory)) {
+            return;
+        }
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(directory)) {
+            for (Path file : files) {
+                Files.deleteIfExists(file);
+            }
+        }
+        try {
+            Files.deleteIfExists(directory);
+        } catch (DirectoryNotEmptyException e) {
+            // saved again by another session of the owner in the meantime
+        }
+    }
+
+    private Path getDirectory(String owner) throws UnsupportedEncodingException {
+        return root.resolve(URLEncoder.encode(owner, "UTF-8"));
+    }
+
+    private Path getFile(String owner, String bucket) throws UnsupportedEncodingException {
+        return getDirectory(owner).resolve(URLEncoder.encode(bucket, "UTF-8") + EXTENSION);
+    }
+
+    /**
+     * @param directory directory of the selections, shared by the nodes of a cluster (empty to
+     *                  keep the selections in the user sessions).
+     */
+    public void setDirectory(String directory) {
+        this.directory = directory;
+    }
+}
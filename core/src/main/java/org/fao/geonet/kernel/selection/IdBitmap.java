@@ -0,0 +1,436 @@
+/*
+ * Copyright (C) 2001-2021 Food and Agriculture Organization of the
+ * United Nations (FAO-UN), United Nations World Food Programme (WFP)
+ * and United Nations Environment Programme (UNEP)
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or (at
+ * your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301, USA
+ *
+ * Contact: Jeroen Ticheler - FAO - Viale delle Terme di Caracalla 2,
+ * Rome - Italy. email: geonetwork@osgeo.org
+ */
+
+package org.fao.geonet.kernel.selection;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.NoSuchElementException;
+import java.util.PrimitiveIterator;
+
+/**
+ * A compressed set of record ids.
+ *
+ * <p>The ids are split in chunks of 65536 values on their high 16 bits. A chunk with few ids
+ * stores them as a sorted array of their low 16 bits (2 bytes per id), a chunk with more than
+ * 4096 ids stores them as a bitmap of 8 Kb. A selection of 500000 records takes about 1 Mb in
+ * the worst case and less than 100 Kb when the ids are contiguous.</p>
+ *
+ * <p>Not thread safe, ids are iterated in unsigned order.</p>
+ */
+public class IdBitmap {
+    private static final int ARRAY_MAX_SIZE = 4096;
+    private static final int BITMAP_WORDS = 1024;
+
+    private char[] keys = new char[0];
+    private Chunk[] chunks = new Chunk[0];
+    private int size = 0;
+
+    public IdBitmap() {
+    }
+
+    public IdBitmap(IdBitmap other) {
+        keys = Arrays.copyOf(other.keys, other.size);
+        chunks = new Chunk[other.size];
+        for (int i = 0; i < other.size; i++) {
+            chunks[i] = other.chunks[i].copy();
+        }
+        size = other.size;
+    }
+
+    /**
+     * @return true if the id was not in the set.
+     */
+    public boolean add(int id) {
+        char key = (char) (id >>> 16);
+        int index = Arrays.binarySearch(keys, 0, size, key);
+        if (index < 0) {
+            index = -index - 1;
+            insertChunk(index, key, new ArrayChunk());
+        }
+        Chunk chunk = chunks[index];
+        if (!chunk.add((char) id)) {
+            return false;
+        }
+        if (chunk instanceof ArrayChunk && chunk.cardinality() > ARRAY_MAX_SIZE) {
+            chunks[index] = ((ArrayChunk) chunk).toBitmap();
+        }
+        return true;
+    }
+
+    /**
+     * @return true if the id was in the set.
+     */
+    public boolean remove(int id) {
+        int index = Arrays.binarySearch(keys, 0, size, (char) (id >>> 16));
+        if (index < 0) {
+            return false;
+        }
+        Chunk chunk = chunks[index];
+        if (!chunk.remove((char) id)) {
+            return false;
+        }
+        if (chunk.cardinality() == 0) {
+            removeChunk(index);
+        } else if (chunk instanceof BitmapChunk && chunk.cardinality() <= ARRAY_MAX_SIZE) {
+            chunks[index] = ((BitmapChunk) chunk).toArray();
+        }
+        return true;
+    }
+
+    public boolean contains(int id) {
+        int index = Arrays.binarySearch(keys, 0, size, (char) (id >>> 16));
+        return index >= 0 && chunks[index].contains((char) id);
+    }
+
+    public void addAll(IdBitmap other) {
+        PrimitiveIterator.OfInt ids = other.iterator();
+        while (ids.hasNext()) {
+            add(ids.nextInt());
+        }
+    }
+
+    public int getCardinality() {
+        int cardinality = 0;
+        for (int i = 0; i < size; i++) {
+            cardinality += chunks[i].cardinality();
+        }
+        return cardinality;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    public void clear() {
+        keys = new char[0];
+        chunks = new Chunk[0];
+        size = 0;
+    }
+
+    /**
+     * @return the estimated memory used by the ids.
+     */
+    public long getSizeInBytes() {
+        long bytes = size * 2L;
+        for (int i = 0; i < size; i++) {
+            bytes += chunks[i].sizeInBytes();
+        }
+        return bytes;
+    }
+
+    public PrimitiveIterator.OfInt iterator() {
+        return new PrimitiveIterator.OfInt() {
+            private int index = 0;
+            private int high;
+            private PrimitiveIterator.OfInt lows;
+
+            @Override
+            public boolean hasNext() {
+                while (lows == null || !lows.hasNext()) {
+                    if (index >= size) {
+                        return false;
+                    }
+                    high = keys[index] << 16;
+                    lows = chunks[index++].iterator();
+                }
+                return true;
+            }
+
+            @Override
+            public int nextInt() {
+                if (!hasNext()) {
+                    throw new NoSuchElementException();
+                }
+                return high | lows.nextInt();
+            }
+        };
+    }
+
+    public void writeTo(DataOutput out) throws IOException {
+        out.writeInt(size);
+        for (int i = 0; i < size; i++) {
+            out.writeChar(keys[i]);
+            chunks[i].writeTo(out);
+        }
+    }
+
+    public static IdBitmap readFrom(DataInput in) throws IOException {
+        IdBitmap bitmap = new IdBitmap();
+        int size = in.readInt();
+        bitmap.keys = new char[size];
+        bitmap.chunks = new Chunk[size];
+        for (int i = 0; i < size; i++) {
+            bitmap.keys[i] = in.readChar();
+            bitmap.chunks[i] = Chunk.readFrom(in);
+        }
+        bitmap.size = size;
+        return bitmap;
+    }
+
+    private void insertChunk(int index, char key, Chunk chunk) {
+        if (size == keys.length) {
+            int capacity = Math.max(4, size * 2);
+            keys = Arrays.copyOf(keys, capacity);
+            chunks = Arrays.copyOf(chunks, capacity);
+        }
+        System.arraycopy(keys, index, keys, index + 1, size - index);
+        System.arraycopy(chunks, index, chunks, index + 1, size - index);
+        keys[index] = key;
+        chunks[index] = chunk;
+        size++;
+    }
+
+    private void removeChunk(int index) {
+        System.arraycopy(keys, index + 1, keys, index, size - index - 1);
+        System.arraycopy(chunks, index + 1, chunks, index, size - index - 1);
+        chunks[--size] = null;
+    }
+
+    private abstract static class Chunk {
+        abstract boolean add(char low);
+
+        abstract boolean remove(char low);
+
+        abstract boolean contains(char low);
+
+        abstract int cardinality();
+
+        abstract long sizeInBytes();
+
+        abstract Chunk copy();
+
+        abstract PrimitiveIterator.OfInt iterator();
+
+        abstract void writeTo(DataOutput out) throws IOException;
+
+        static Chunk readFrom(DataInput in) throws IOException {
+            int cardinality = in.readInt();
+            if (cardinality > ARRAY_MAX_SIZE) {
+                BitmapChunk chunk = new BitmapChunk();
+                for (int i = 0; i < BITMAP_WORDS; i++) {
+                    chunk.words[i] = in.readLong();
+                }
+                chunk.cardinality = cardinality;
+                return chunk;
+            }
+            ArrayChunk chunk = new ArrayChunk();
+            chunk.values = new char[cardinality];
+            for (int i = 0; i < cardinality; i++) {
+                chunk.values[i] = in.readChar();
+            }
+            chunk.cardinality = cardinality;
+            return chunk;
+        }
+    }
+
+    private static class ArrayChunk extends Chunk {
+        private char[] values = new char[4];
+        private int cardinality = 0;
+
+        @Override
+        boolean add(char low) {
+            int index = Arrays.binarySearch(values, 0, cardinality, low);
+            if (index >= 0) {
+                return false;
+            }
+            index = -index - 1;
+            if (cardinality == values.length) {
+                values = Arrays.copyOf(values, Math.min(cardinality * 2, ARRAY_MAX_SIZE + 1));
+            }
+            System.arraycopy(values, index, values, index + 1, cardinality - index);
+            values[index] = low;
+            cardinality++;
+            return true;
+        }
+
+        @Override
+        boolean remove(char low) {
+            int index = Arrays.binarySearch(values, 0, cardinality, low);
+            if (index < 0) {
+                return false;
+            }
+            System.arraycopy(values, index + 1, values, index, cardinality - index - 1);
+            cardinality--;
+            return true;
+        }
+
+        @Override
+        boolean contains(char low) {
+            return Arrays.binarySearch(values, 0, cardinality, low) >= 0;
+        }
+
+        @Override
+        int cardinality() {
+            return cardinality;
+        }
+
+        @Override
+        long sizeInBytes() {
+            return values.length * 2L;
+        }
+
+        @Override
+        Chunk copy() {
+            ArrayChunk copy = new ArrayChunk();
+            copy.values = Arrays.copyOf(values, Math.max(cardinality, 4));
+            copy.cardinality = cardinality;
+            return copy;
+        }
+
+        BitmapChunk toBitmap() {
+            BitmapChunk bitmap = new BitmapChunk();
+            for (int i = 0; i < cardinality; i++) {
+                bitmap.add(values[i]);
+            }
+            return bitmap;
+        }
+
+        @Override
+        PrimitiveIterator.OfInt iterator() {
+            return new PrimitiveIterator.OfInt() {
+                private int index = 0;
+
+                @Override
+                public boolean hasNext() {
+                    return index < cardinality;
+                }
+
+                @Override
+                public int nextInt() {
+                    if (index >= cardinality) {
+                        throw new NoSuchElementException();
+                    }
+                    return values[index++];
+                }
+            };
+        }
+
+        @Override
+        void writeTo(DataOutput out) throws IOException {
+            out.writeInt(cardinality);
+            for (int i = 0; i < cardinality; i++) {
+                out.writeChar(values[i]);
+            }
+        }
+    }
+
+    private static class BitmapChunk extends Chunk {
+        private final long[] words = new long[BITMAP_WORDS];
+        private int cardinality = 0;
+
+        @Override
+        boolean add(char low) {
+            long mask = 1L << low;
+            if ((words[low >>> 6] & mask) != 0) {
+                return false;
+            }
+            words[low >>> 6] |= mask;
+            cardinality++;
+            return true;
+        }
+
+        @Override
+        boolean remove(char low) {
+            long mask = 1L << low;
+            if ((words[low >>> 6] & mask) == 0) {
+                return false;
+            }
+            words[low >>> 6] &= ~mask;
+            cardinality--;
+            return true;
+        }
+
+        @Override
+        boolean contains(char low) {
+            return (words[low >>> 6] & (1L << low)) != 0;
+        }
+
+        @Override
+        int cardinality() {
+            return cardinality;
+        }
+
+        @Override
+        long sizeInBytes() {
+            return BITMAP_WORDS * 8L;
+        }
+
+        @Override
+        Chunk copy() {
+            BitmapChunk copy = new BitmapChunk();
+            System.arraycopy(words, 0, copy.words, 0, BITMAP_WORDS);
+            copy.cardinality = cardinality;
+            return copy;
+        }
+
+        ArrayChunk toArray() {
+            ArrayChunk array = new ArrayChunk();
+            array.values = new char[Math.max(cardinality, 4)];
+            PrimitiveIterator.OfInt lows = iterator();
+            while (lows.hasNext()) {
+                array.values[array.cardinality++] = (char) lows.nextInt();
+            }
+            return array;
+        }
+
+        @Override
+        PrimitiveIterator.OfInt iterator() {
+            return new PrimitiveIterator.OfInt() {
+                private int index = 0;
+                private long word = words[0];
+
+                @Override
+                public boolean hasNext() {
+                    while (word == 0) {
+                        if (++index >= BITMAP_WORDS) {
+                            return false;
+                        }
+                        word = words[index];
+                    }
+                    return true;
+                }
+
+                @Override
+                public int nextInt() {
+                    if (!hasNext()) {
+                        throw new NoSuchElementException();
+                    }
+                    long lowest = word & -word;
+                    word ^= lowest;
+                    return index * 64 + Long.numberOfTrailingZeros(lowest);
+                }
+            };
+        }
+
+        @Override
+        void writeTo(DataOutput out) throws IOException {
+            out.writeInt(cardinality);
+            for (long word : words) {
+                out.writeLong(word);
+            }
+        }
+    }
+}
@@ -0,0 +1,275 @@
+/*
+ * Copyright (C) 2001-2021 Food and Agriculture Organization of the
+ * United Nations (FAO-UN), United Nations World Food Programme (WFP)
+ * and United Nations Environment Programme (UNEP)
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or (at
+ * your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301, USA
+ *
+ * Contact: Jeroen Ticheler - FAO - Viale delle Terme di Caracalla 2,
+ * Rome - Italy. email: geonetwork@osgeo.org
+ */
+
+package org.fao.geonet.kernel.selection;
+
+import com.google.common.collect.Iterables;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.AbstractSet;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.PrimitiveIterator;
+import java.util.Set;
+
+/**
+ * The records selected in a bucket, seen as a set of uuids.
+ *
+ * <p>The records are stored by id in an {@link IdBitmap}, the uuids are mapped to ids (and back
+ * when iterating) in batches by a {@link SelectionResolver}. The identifiers not matching a
+ * record are kept as is.</p>
+ *
+ * <p>Same as a {@link Collections#synchronizedSet(Set)}: the methods are synchronized and the
+ * selection must be locked while iterating.</p>
+ */
+public class RecordSelection extends AbstractSet<String> {
+    static final int BATCH_SIZE = 500;
+    private static final int FORMAT = 1;
+
+    private final SelectionResolver resolver;
+    private IdBitmap ids = new IdBitmap();
+    private Set<String> others = new HashSet<>();
+
+    public RecordSelection(SelectionResolver resolver) {
+        this.resolver = resolver;
+    }
+
+    @Override
+    public synchronized int size() {
+        return ids.getCardinality() + others.size();
+    }
+
+    @Override
+    public synchronized boolean isEmpty() {
+        return ids.isEmpty() && others.isEmpty();
+    }
+
+    @Override
+    public synchronized boolean contains(Object o) {
+        if (!(o instanceof String)) {
+            return false;
+        }
+        if (others.contains(o)) {
+            return true;
+        }
+        Integer id = resolve(Collections.singleton((String) o)).get(o);
+        return id != null && ids.contains(id);
+    }
+
+    /**
+     * Check a page of records at once: the uuids are mapped to ids in batches instead of one
+     * query per record as done by {@link #contains(Object)}.
+     *
+     * @return the uuids of the collection which are selected.
+     */
+    public synchronized Set<String> getSelected(Collection<String> uuids) {
+        Set<String> selected = new HashSet<>();
+        List<String> toResolve = new ArrayList<>();
+        for (String uuid : uuids) {
+            if (others.contains(uuid)) {
+                selected.add(uuid);
+            } else if (uuid != null && !ids.isEmpty()) {
+                toResolve.add(uuid);
+            }
+        }
+        for (List<String> batch : Iterables.partition(toResolve, BATCH_SIZE)) {
+            resolve(batch).forEach((uuid, id) -> {
+                if (ids.contains(id)) {
+                    selected.add(uuid);
+                }
+            });
+        }
+        return selected;
+    }
+
+    public synchronized boolean containsId(int id) {
+        return ids.contains(id);
+    }
+
+    /**
+     * @return true if this identifier, not matching a record when it was selected, is selected.
+     */
+    public synchronized boolean containsIdentifier(String identifier) {
+        return others.contains(identifier);
+    }
+
+    @Override
+    public boolean add(String uuid) {
+        return uuid != null && addAll(Collections.singleton(uuid));
+    }
+
+    @Override
+    public synchronized boolean addAll(Collection<? extends String> uuids) {
+        boolean changed = false;
+        for (List<? extends String> batch : Iterables.partition(uuids, BATCH_SIZE)) {
+            Map<String, Integer> resolved = resolve(batch);
+            for (String uuid : batch) {
+                if (uuid == null) {
+                    continue;
+                }
+                Integer id = resolved.get(uuid);
+                changed |= id != null ? ids.add(id) : others.add(uuid);
+            }
+        }
+        return changed;
+    }
+
+    public synchronized boolean addIds(IdBitmap added) {
+        int before = ids.getCardinality();
+        ids.addAll(added);
+        return ids.getCardinality() != before;
+    }
+
+    @Override
+    public boolean remove(Object o) {
+        return o instanceof String && removeAll(Collections.singleton(o));
+    }
+
+    @Override
+    public synchronized boolean removeAll(Collection<?> uuids) {
+        boolean changed = false;
+        List<String> toResolve = new ArrayList<>();
+        for (Object uuid : uuids) {
+            if (others.remove(uuid)) {
+                changed = true;
+            } else if (uuid instanceof String) {
+                toResolve.add((String) uuid);
+            }
+        }
+        for (List<String> batch : Iterables.partition(toResolve, BATCH_SIZE)) {
+            for (Integer id : resolve(batch).values()) {
+                changed |= ids.remove(id);
+            }
+        }
+        return changed;
+    }
+
+    @Override
+    public synchronized void clear() {
+        ids.clear();
+        others.clear();
+    }
+
+    /**
+     * Replace the content of the selection (eg. by the selection saved by another node).
+     */
+    public void replaceWith(RecordSelection other) {
+        IdBitmap otherIds;
+        Set<String> otherUuids;
+        synchronized (other) {
+            otherIds = new IdBitmap(other.ids);
+            otherUuids = new HashSet<>(other.others);
+        }
+        synchronized (this) {
+            ids = otherIds;
+            others = otherUuids;
+        }
+    }
+
+    /**
+     * @return a copy of the ids of the selected records.
+     */
+    public synchronized IdBitmap getIds() {
+        return new IdBitmap(ids);
+    }
+
+    /**
+     * Iterate on the identifiers not matching a record then on the uuids of the records, read in
+     * batches. The iterator works on a copy of the selection.
+     */
+    @Override
+    public synchronized Iterator<String> iterator() {
+        final Iterator<String> otherUuids = new ArrayList<>(others).iterator();
+        final PrimitiveIterator.OfInt recordIds = new IdBitmap(ids).iterator();
+        return new Iterator<String>() {
+            private final Deque<String> batch = new ArrayDeque<>();
+
+            @Override
+            public boolean hasNext() {
+                if (otherUuids.hasNext()) {
+                    return true;
+                }
+                while (batch.isEmpty() && recordIds.hasNext()) {
+                    List<Integer> batchIds = new ArrayList<>(BATCH_SIZE);
+                    while (batchIds.size() < BATCH_SIZE && recordIds.hasNext()) {
+                        batchIds.add(recordIds.nextInt());
+                    }
+                    Map<Integer, String> uuids = resolver.getUuids(batchIds);
+                    for (Integer id : batchIds) {
+                        String uuid = uuids.get(id);
+                        // The records removed since they were selected are skipped
+                        if (uuid != null) {
+                            batch.add(uuid);
+                        }
+                    }
+                }
+                return !batch.isEmpty();
+            }
+
+            @Override
+            public String next() {
+                if (!hasNext()) {
+                    throw new NoSuchElementException();
+                }
+                return otherUuids.hasNext() ? otherUuids.next() : batch.poll();
+            }
+        };
+    }
+
+    public synchronized void writeTo(DataOutput out) throws IOException {
+        out.writeInt(FORMAT);
+        out.writeInt(others.size());
+        for (String uuid : others) {
+            out.writeUTF(uuid);
+        }
+        ids.writeTo(out);
+    }
+
+    public static RecordSelection readFrom(DataInput in, SelectionResolver resolver) throws IOException {
+        int format = in.readInt();
+        if (format != FORMAT) {
+            throw new IOException("Unsupported selection format " + format);
+        }
+        RecordSelection selection = new RecordSelection(resolver);
+        int count = in.readInt();
+        for (int i = 0; i < count; i++) {
+            selection.others.add(in.readUTF());
+        }
+        selection.ids = IdBitmap.readFrom(in);
+        return selection;
+    }
+
+    private Map<String, Integer> resolve(Collection<? extends String> uuids) {
+        return resolver == null ? Collections.emptyMap() : resolver.getIds(new ArrayList<>(uuids));
+    }
+}
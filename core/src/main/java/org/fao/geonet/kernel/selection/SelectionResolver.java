@@ -0,0 +1,43 @@
+/*
+ * Copyright (C) 2001-2021 Food and Agriculture Organization of the
+ * United Nations (FAO-UN), United Nations World Food Programme (WFP)
+ * and United Nations Environment Programme (UNEP)
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or (at
+ * your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301, USA
+ *
+ * Contact: Jeroen Ticheler - FAO - Viale delle Terme di Caracalla 2,
+ * Rome - Italy. email: geonetwork@osgeo.org
+ */
+
+package org.fao.geonet.kernel.selection;
+
+import java.util.Collection;
+import java.util.Map;
+
+/**
+ * Maps the uuids of the selected records to the ids stored in a {@link RecordSelection}.
+ */
+public interface SelectionResolver {
+
+    /**
+     * @return the id of the records with these uuids, the approved record if it has a draft.
+     */
+    Map<String, Integer> getIds(Collection<String> uuids);
+
+    /**
+     * @return the uuid of the records with these ids.
+     */
+    Map<Integer, String> getUuids(Collection<Integer> ids);
+}
@@ -0,0 +1,52 @@
+/*
+ * Copyright (C) 2001-2021 Food and Agriculture Organization of the
+ * United Nations (FAO-UN), United Nations World Food Programme (WFP)
+ * and United Nations Environment Programme (UNEP)
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or (at
+ * your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301, USA
+ *
+ * Contact: Jeroen Ticheler - FAO - Viale delle Terme di Caracalla 2,
+ * Rome - Italy. email: geonetwork@osgeo.org
+ */
+
+
+package org.fao.geonet.kernel.selection;
+
+import jeeves.server.UserSession;
+import jeeves.server.sources.http.JeevesServlet;
+import org.fao.geonet.kernel.SelectionManager;
+import org.springframework.context.ApplicationListener;
+import org.springframework.security.web.session.HttpSessionDestroyedEvent;
+
+/**
+ * Removes the stored selections of a user when the session expires (the selections are removed
+ * on logout by {@link jeeves.config.springutil.LogoutUserSessionHandler}).
+ */
+public class SelectionSessionListener implements ApplicationListener<HttpSessionDestroyedEvent> {
+
+    @Override
+    public void onApplicationEvent(HttpSessionDestroyedEvent event) {
+        Object userSession;
+        try {
+            userSession = event.getSession().getAttribute(JeevesServlet.USER_SESSION_ATTRIBUTE_KEY);
+        } catch (IllegalStateException e) {
+            // session already invalidated
+            return;
+        }
+        if (userSession instanceof UserSession) {
+            SelectionManager.removeStoredSelections((UserSession) userSession);
+        }
+    }
+}
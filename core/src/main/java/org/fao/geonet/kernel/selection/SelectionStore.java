@@ -0,0 +1,60 @@
+/*
+ * Copyright (C) 2001-2021 Food and Agriculture Organization of the
+ * United Nations (FAO-UN), United Nations World Food Programme (WFP)
+ * and United Nations Environment Programme (UNEP)
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or (at
+ * your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301, USA
+ *
+ * Contact: Jeroen Ticheler - FAO - Viale delle Terme di Caracalla 2,
+ * Rome - Italy. email: geonetwork@osgeo.org
+ */
+
+package org.fao.geonet.kernel.selection;
+
+import java.io.IOException;
+
+/**
+ * Stores the selections of the users outside of their session, so that the nodes of a cluster
+ * share them. The selections are still kept in the user session on each node, the store is
+ * written after each change and read again when its version of the selection changed.
+ * The selections are removed from the store when the user logs out or the session ends.
+ */
+public interface SelectionStore {
+
+    /**
+     * @return false if the selections are only kept in the user sessions.
+     */
+    boolean isEnabled();
+
+    /**
+     * @return the version of the stored selection or -1 if none is stored.
+     */
+    long getVersion(String owner, String bucket) throws IOException;
+
+    /**
+     * @return the stored selection or null.
+     */
+    RecordSelection get(String owner, String bucket, SelectionResolver resolver) throws IOException;
+
+    /**
+     * @return the version of the stored selection.
+     */
+    long put(String owner, String bucket, RecordSelection selection) throws IOException;
+
+    /**
+     * Remove all the selections of an owner (eg. when the user logs out).
+     */
+    void remove(String owner) throws IOException;
+}
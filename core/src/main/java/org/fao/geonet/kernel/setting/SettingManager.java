@@ -33,6 +33,7 @@ import org.fao.geonet.domain.HarvesterSetting;
 import org.fao.geonet.domain.Setting;
 import org.fao.geonet.domain.SettingDataType;
 import org.fao.geonet.domain.Setting_;
+import org.fao.geonet.events.setting.SettingsUpdated;
 import org.fao.geonet.repository.LanguageRepository;
 import org.fao.geonet.repository.SettingRepository;
 import org.fao.geonet.repository.SortUtils;
@@ -41,6 +42,9 @@ import org.fao.geonet.utils.Log;
 import org.jasypt.encryption.pbe.StandardPBEStringEncryptor;
 import org.jdom.Element;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.transaction.support.TransactionSynchronizationAdapter;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
 
 import javax.annotation.Nonnull;
 import javax.annotation.PostConstruct;
@@ -50,12 +54,17 @@ import javax.servlet.ServletContext;
 import java.sql.SQLException;
 import java.time.ZoneId;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.NoSuchElementException;
 import java.util.Optional;
+import java.util.Set;
 import java.util.TimeZone;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
 
 import static com.google.common.xml.XmlEscapers.xmlContentEscaper;
 import static org.fao.geonet.kernel.setting.Settings.SYSTEM_SITE_NAME_PATH;
@@ -64,6 +73,12 @@ import static org.fao.geonet.kernel.setting.Settings.SYSTEM_SITE_NAME_PATH;
  * A convenience class for updating and accessing settings.  One of the primary needs of this class
  * at the moment is to maintain backwards compatibility so not all code and xsl files that make use
  * of the settings need to be modified.
+ * <p/>
+ * Values are read from a {@link SettingsSnapshot} of the settings table. The snapshot is
+ * discarded when settings are changed on this node (through this class or the
+ * {@link SettingRepository}) and reloaded on the next read. Changes made by other nodes of a
+ * cluster are seen when the snapshot is older than {@link #setSnapshotMaxAge(int)} seconds or
+ * when {@link #refresh()} is called.
  */
 public class SettingManager {
 
@@ -91,6 +106,13 @@ public class SettingManager {
     @Autowired
     StandardPBEStringEncryptor encryptor;
 
+    @Autowired(required = false)
+    private ApplicationEventPublisher eventPublisher;
+
+    private volatile SettingsSnapshot snapshot;
+    private final AtomicLong snapshotGeneration = new AtomicLong();
+    private long snapshotMaxAgeMillis = TimeUnit.SECONDS.toMillis(60);
+
     @PostConstruct
     private void init() {
         this.pathFinder = new ServletPathFinder(servletContext);
@@ -100,6 +122,64 @@ public class SettingManager {
         TimeZone.setDefault(tzFromSettings);
     }
 
+    /**
+     * @param seconds the number of seconds after which settings are read again from the
+     *                database, to see the changes made by other nodes. 0 or less to keep them
+     *                until they are changed on this node.
+     */
+    public void setSnapshotMaxAge(int seconds) {
+        this.snapshotMaxAgeMillis = TimeUnit.SECONDS.toMillis(seconds);
+    }
+
+    /**
+     * @return the current values of all settings. The snapshot does not change, get a new one
+     * to see later changes.
+     */
+    public SettingsSnapshot getSnapshot() {
+        SettingsSnapshot current = snapshot;
+        if (current != null && (snapshotMaxAgeMillis <= 0
+            || System.currentTimeMillis() - current.getCreationTime() < snapshotMaxAgeMillis)) {
+            return current;
+        }
+        return loadSnapshot();
+    }
+
+    private SettingsSnapshot loadSnapshot() {
+        long generation = snapshotGeneration.get();
+        SettingsSnapshot loaded = new SettingsSnapshot(repo.findAll(), System.currentTimeMillis());
+        synchronized (snapshotGeneration) {
+            // do not publish values read before a change or before encrypted values can be read
+            if (snapshotGeneration.get() == generation && encryptor.isInitialized()) {
+                snapshot = loaded;
+            }
+        }
+        return loaded;
+    }
+
+    /**
+     * Discard the snapshot so that settings are read again from the database. When called in a
+     * transaction, the snapshot is discarded again once the transaction completes so that values
+     * read before the commit (or rollback) are not kept.
+     */
+    public void invalidateSnapshot() {
+        discardSnapshot();
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronizationAdapter() {
+                @Override
+                public void afterCompletion(int status) {
+                    discardSnapshot();
+                }
+            });
+        }
+    }
+
+    private void discardSnapshot() {
+        synchronized (snapshotGeneration) {
+            snapshotGeneration.incrementAndGet();
+            snapshot = null;
+        }
+    }
+
     public List<Setting> getAll() {
         return repo.findAll(SortUtils.createSort(Setting_.name));
     }
@@ -190,6 +270,17 @@ public class SettingManager {
             Log.debug(Geonet.SETTINGS, "Requested setting with name: " + path);
         }
 
+        if (encryptor.isInitialized()) {
+            SettingsSnapshot settings = getSnapshot();
+            if (settings.contains(path)) {
+                String value = settings.getValue(path);
+                if (value == null && !nullable) {
+                    Log.warning(Geonet.SETTINGS, "  Requested setting with name: " + path + " but null value found. Check the settings table.");
+                }
+                return value;
+            }
+        }
+
         Optional<Setting> se = repo.findById(path);
         if (!se.isPresent()) {
             // TODO : When a settings is not available in the settings table
@@ -249,13 +340,13 @@ public class SettingManager {
      */
     public Element getValues(String[] keys) {
         Element env = new Element("settings");
+        SettingsSnapshot settings = getSnapshot();
         for (int i = 0; i < keys.length; i++) {
             String key = keys[i];
-            Optional<Setting> se = repo.findById(key);
-            if (!se.isPresent()) {
+            if (!settings.contains(key)) {
                 Log.error(Geonet.SETTINGS, "  Requested setting with name: " + key + " not found. Add it to the settings table.");
             } else {
-                String value = se.get().getValue();
+                String value = settings.getValue(key);
                 if (value != null) {
                     Element setting = new Element("setting");
                     setting.setAttribute("name", key).setAttribute("value", value);
@@ -323,6 +414,14 @@ public class SettingManager {
      * @return true if the types are correct and the setting is found.
      */
     public boolean setValue(String key, String value) {
+        saveValue(key, value);
+        invalidateSnapshot();
+        publishChange(Collections.singleton(key));
+
+        return true;
+    }
+
+    private void saveValue(String key, String value) {
         if (Log.isDebugEnabled(Geonet.SETTINGS)) {
             Log.debug(Geonet.SETTINGS, "Setting with name: " + key + ", value: " + value);
         }
@@ -339,8 +438,6 @@ public class SettingManager {
         setting.setValue(value);
 
         repo.save(setting);
-
-        return true;
     }
 
     public boolean setValue(Settings.GNSetting setting, String value) {
@@ -369,25 +466,38 @@ public class SettingManager {
      */
     public final boolean setValues(final Map<String, String> values) {
         boolean success = true;
+        Set<String> changed = new LinkedHashSet<>();
         for (Map.Entry<String, String> entry : values.entrySet()) {
             String key = entry.getKey();
             String value = entry.getValue();
             if (StringUtils.isNotEmpty(key)) {
-                 setValue(key, value);
+                 saveValue(key, value);
+                 changed.add(key);
             }
         }
+        invalidateSnapshot();
+        publishChange(changed);
         return success;
     }
 
     /**
      * Refreshes current settings manager. This has to be used when updating the Settings table
-     * without using this class. For example when using an SQL script.
+     * without using this class. For example when using an SQL script or when another node of a
+     * cluster changed the settings.
      */
     public final boolean refresh() throws SQLException {
         _entityManager.getEntityManagerFactory().getCache().evict(HarvesterSetting.class);
+        _entityManager.getEntityManagerFactory().getCache().evict(Setting.class);
+        invalidateSnapshot();
         return true;
     }
 
+    private void publishChange(Set<String> keys) {
+        if (eventPublisher != null) {
+            eventPublisher.publishEvent(new SettingsUpdated(keys));
+        }
+    }
+
     public final String getSiteId() {
         return getValue(Settings.SYSTEM_SITE_SITE_ID_PATH);
     }
@@ -0,0 +1,90 @@
+//=============================================================================
+//===	Copyright (C) 2001-2021 Food and Agriculture Organization of the
+//===	United Nations (FAO-UN), United Nations World Food Programme (WFP)
+//===	and United Nations Environment Programme (UNEP)
+//===
+//===	This program is free software; you can redistribute it and/or modify
+//===	it under the terms of the GNU General Public License as published by
+//===	the Free Software Foundation; either version 2 of the License, or (at
+//===	your option) any later version.
+//===
+//===	This program is distributed in the hope that it will be useful, but
+//===	WITHOUT ANY WARRANTY; without even the implied warranty of
+//===	MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+//===	General Public License for more details.
+//===
+//===	You should have received a copy of the GNU General Public License
+//===	along with this program; if not, write to the Free Software
+//===	Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301, USA
+//===
+//===	Contact: Jeroen Ticheler - FAO - Viale delle Terme di Caracalla 2,
+//===	Rome - Italy. email: geonetwork@osgeo.org
+//==============================================================================
+
+package org.fao.geonet.kernel.setting;
+
+import org.fao.geonet.domain.Setting;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * An immutable copy of the (decrypted) values of all settings, used by {@link SettingManager}
+ * to answer reads without querying the database. A new snapshot is built when settings change.
+ */
+public final class SettingsSnapshot {
+    private final Map<String, String> values;
+    private final long creationTime;
+
+    SettingsSnapshot(Iterable<Setting> settings, long creationTime) {
+        Map<String, String> map = new HashMap<>();
+        for (Setting setting : settings) {
+            map.put(setting.getName(), setting.getValue());
+        }
+        this.values = Collections.unmodifiableMap(map);
+        this.creationTime = creationTime;
+    }
+
+    /**
+     * @return true if the setting exists, even if its value is null.
+     */
+    public boolean contains(String path) {
+        return values.containsKey(path);
+    }
+
+    public String getValue(String path) {
+        return values.get(path);
+    }
+
+    public boolean getValueAsBool(String path, boolean defaultValue) {
+        String value = values.get(path);
+        if (value != null) {
+            return "y".equalsIgnoreCase(value) || "yes".equalsIgnoreCase(value) || Boolean.parseBoolean(value);
+        } else {
+            return defaultValue;
+        }
+    }
+
+    public Integer getValueAsInt(String path, Integer defaultValue) {
+        String value = values.get(path);
+        if (value == null || value.trim().length() == 0) {
+            return defaultValue;
+        }
+        return Integer.valueOf(value);
+    }
+
+    /**
+     * @return all settings by name.
+     */
+    public Map<String, String> getValues() {
+        return values;
+    }
+
+    /**
+     * @return the time the values were read from the database, in milliseconds since the epoch.
+     */
+    public long getCreationTime() {
+        return creationTime;
+    }
+}
@@ -0,0 +1,53 @@
+//=============================================================================
+//===	Copyright (C) 2001-2021 Food and Agriculture Organization of the
+//===	United Nations (FAO-UN), United Nations World Food Programme (WFP)
+//===	and United Nations Environment Programme (UNEP)
+//===
+//===	This program is free software; you can redistribute it and/or modify
+//===	it under the terms of the GNU General Public License as published by
+//===	the Free Software Foundation; either version 2 of the License, or (at
+//===	your option) any later version.
+//===
+//===	This program is distributed in the hope that it will be useful, but
+//===	WITHOUT ANY WARRANTY; without even the implied warranty of
+//===	MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+//===	General Public License for more details.
+//===
+//===	You should have received a copy of the GNU General Public License
+//===	along with this program; if not, write to the Free Software
+//===	Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301, USA
+//===
+//===	Contact: Jeroen Ticheler - FAO - Viale delle Terme di Caracalla 2,
+//===	Rome - Italy. email: geonetwork@osgeo.org
+//==============================================================================
+
+package org.fao.geonet.kernel.setting;
+
+import org.fao.geonet.ApplicationContextHolder;
+import org.fao.geonet.domain.Setting;
+import org.fao.geonet.entitylistener.GeonetworkEntityListener;
+import org.fao.geonet.entitylistener.PersistentEventType;
+import org.springframework.context.ConfigurableApplicationContext;
+
+/**
+ * Discard the settings snapshot of the {@link SettingManager} when a setting is saved or removed
+ * without using the {@link SettingManager}, for example with the
+ * {@link org.fao.geonet.repository.SettingRepository}.
+ */
+public class SettingsSnapshotInvalidator implements GeonetworkEntityListener<Setting> {
+    @Override
+    public Class<Setting> getEntityClass() {
+        return Setting.class;
+    }
+
+    @Override
+    public void handleEvent(PersistentEventType type, Setting entity) {
+        if (type == PersistentEventType.PostPersist || type == PersistentEventType.PostUpdate
+            || type == PersistentEventType.PostRemove) {
+            ConfigurableApplicationContext applicationContext = ApplicationContextHolder.get();
+            if (applicationContext != null) {
+                applicationContext.getBean(SettingManager.class).invalidateSnapshot();
+            }
+        }
+    }
+}
@@ -0,0 +1,114 @@
+/*
+ * Copyright (C) 2001-2021 Food and Agriculture Organization of the
+ * United Nations (FAO-UN), United Nations World Food Programme (WFP)
+ * and United Nations Environment Programme (UNEP)
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or (at
+ * your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301, USA
+ *
+ * Contact: Jeroen Ticheler - FAO - Viale delle Terme di Caracalla 2,
+ * Rome - Italy. email: geonetwork@osgeo.org
+ */
+
+package org.fao.geonet.util;
+
+import org.fao.geonet.domain.MetadataXmlCache;
+import org.fao.geonet.events.md.MetadataDraftRemove;
+import org.fao.geonet.events.md.MetadataDraftUpdate;
+import org.fao.geonet.events.md.MetadataEvent;
+import org.fao.geonet.events.md.MetadataRemove;
+import org.fao.geonet.events.md.MetadataUpdate;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.ApplicationEvent;
+import org.springframework.context.ApplicationListener;
+import org.springframework.jmx.export.MBeanExporter;
+import org.springframework.jmx.export.annotation.ManagedAttribute;
+import org.springframework.jmx.export.annotation.ManagedOperation;
+import org.springframework.jmx.export.annotation.ManagedResource;
+
+import javax.annotation.PostConstruct;
+import javax.management.ObjectName;
+
+/**
+ * Configure the {@link MetadataXmlCache} of parsed records, remove the records updated or
+ * removed from it and expose its statistics over JMX.
+ */
+@ManagedResource()
+public class MetadataXmlCacheManager implements ApplicationListener<ApplicationEvent> {
+
+    @Autowired(required = false)
+    private MBeanExporter exporter;
+
+    private int maximumSizeMb = 64;
+
+    @PostConstruct
+    public void init() throws Exception {
+        MetadataXmlCache.setMaximumSizeMb(maximumSizeMb);
+        if (exporter != null) {
+            exporter.registerManagedResource(this, new ObjectName("geonetwork:name=metadata-xml-cache"));
+        }
+    }
+
+    @Override
+    public void onApplicationEvent(ApplicationEvent event) {
+        if (event instanceof MetadataUpdate || event instanceof MetadataRemove
+            || event instanceof MetadataDraftUpdate || event instanceof MetadataDraftRemove) {
+            MetadataXmlCache.invalidate(((MetadataEvent) event).getMd().getId());
+        }
+    }
+
+    @ManagedOperation
+    public void invalidateAll() {
+        MetadataXmlCache.invalidateAll();
+    }
+
+    @ManagedAttribute
+    public long getHitCount() {
+        return MetadataXmlCache.stats().hitCount();
+    }
+
+    @ManagedAttribute
+    public long getMissCount() {
+        return MetadataXmlCache.stats().missCount();
+    }
+
+    @ManagedAttribute
+    public double getHitRate() {
+        return MetadataXmlCache.stats().hitRate();
+    }
+
+    @ManagedAttribute
+    public long getSize() {
+        return MetadataXmlCache.size();
+    }
+
+    @ManagedAttribute(description = "Estimated memory used by the cached records in bytes")
+    public long getEstimatedSizeBytes() {
+        return MetadataXmlCache.getEstimatedSizeB();
+    }
+
+    @ManagedAttribute
+    public int getMaximumSizeMb() {
+        return maximumSizeMb;
+    }
+
+    /**
+     * @param maximumSizeMb estimated memory used by the cached records, 0 to disable the cache.
+     */
+    @ManagedAttribute
+    public void setMaximumSizeMb(int maximumSizeMb) {
+        this.maximumSizeMb = maximumSizeMb;
+        MetadataXmlCache.setMaximumSizeMb(maximumSizeMb);
+    }
+}
@@ -0,0 +1,110 @@
+/*
+ * Copyright (C) 2001-2021 Food and Agriculture Organization of the
+ * United Nations (FAO-UN), United Nations World Food Programme (WFP)
+ * and United Nations Environment Programme (UNEP)
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or (at
+ * your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301, USA
+ *
+ * Contact: Jeroen Ticheler - FAO - Viale delle Terme di Caracalla 2,
+ * Rome - Italy. email: geonetwork@osgeo.org
+ */
+
+package org.fao.geonet.util;
+
+import org.fao.geonet.utils.TransformerStatistics;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jmx.export.MBeanExporter;
+import org.springframework.jmx.export.annotation.ManagedAttribute;
+import org.springframework.jmx.export.annotation.ManagedOperation;
+import org.springframework.jmx.export.annotation.ManagedResource;
+
+import javax.annotation.PostConstruct;
+import javax.management.ObjectName;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Expose the compilation and execution time of the XSL stylesheets
+ * (see {@link TransformerStatistics}) over JMX.
+ */
+@ManagedResource()
+public class TransformerStatisticsManager {
+
+    @Autowired(required = false)
+    private MBeanExporter exporter;
+
+    @PostConstruct
+    public void init() throws Exception {
+        if (exporter != null) {
+            exporter.registerManagedResource(this, new ObjectName("geonetwork:name=xsl-transformer-statistics"));
+        }
+    }
+
+    /**
+     * @return one line per stylesheet, the stylesheets taking the most time first.
+     */
+    @ManagedAttribute(description = "Executions and compilations of each stylesheet, the slowest first")
+    public String[] getStylesheetStatistics() {
+        List<Map.Entry<String, TransformerStatistics.Entry>> entries =
+            new ArrayList<>(TransformerStatistics.getStatistics().entrySet());
+        entries.sort(Comparator.comparingLong(
+            (Map.Entry<String, TransformerStatistics.Entry> e) ->
+                e.getValue().getExecutionTimeMillis() + e.getValue().getCompilationTimeMillis()).reversed());
+        String[] lines = new String[entries.size()];
+        for (int i = 0; i < lines.length; i++) {
+            TransformerStatistics.Entry entry = entries.get(i).getValue();
+            lines[i] = String.format("%s: %d executions in %d ms, %d compilations in %d ms",
+                entries.get(i).getKey(), entry.getExecutions(), entry.getExecutionTimeMillis(),
+                entry.getCompilations(), entry.getCompilationTimeMillis());
+        }
+        return lines;
+    }
+
+    @ManagedAttribute
+    public int getStylesheetCount() {
+        return TransformerStatistics.getStatistics().size();
+    }
+
+    @ManagedAttribute
+    public long getExecutions() {
+        return TransformerStatistics.getStatistics().values().stream()
+            .mapToLong(TransformerStatistics.Entry::getExecutions).sum();
+    }
+
+    @ManagedAttribute
+    public long getExecutionTimeMillis() {
+        return TransformerStatistics.getStatistics().values().stream()
+            .mapToLong(TransformerStatistics.Entry::getExecutionTimeMillis).sum();
+    }
+
+    @ManagedAttribute
+    public long getCompilations() {
+        return TransformerStatistics.getStatistics().values().stream()
+            .mapToLong(TransformerStatistics.Entry::getCompilations).sum();
+    }
+
+    @ManagedAttribute
+    public long getCompilationTimeMillis() {
+        return TransformerStatistics.getStatistics().values().stream()
+            .mapToLong(TransformerStatistics.Entry::getCompilationTimeMillis).sum();
+    }
+
+    @ManagedOperation
+    public void reset() {
+        TransformerStatistics.clear();
+    }
+}
@@ -0,0 +1,349 @@
+/*
+ * Copyright (C) 2001-2016 Food and Agriculture Organization of the
+ * United Nations (FAO-UN), United Nations World Food Programme (WFP)
+ * and United Nations Environment Programme (UNEP)
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or (at
+ * your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301, USA
+ *
+ * Contact: Jeroen Ticheler - FAO - Viale delle Terme di Caracalla 2,
+ * Rome - Italy. email: geonetwork@osgeo.org
+ */
+
+package org.fao.geonet.util;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheStats;
+import com.google.common.util.concurrent.UncheckedExecutionException;
+import org.fao.geonet.ApplicationContextHolder;
+import org.fao.geonet.constants.Geonet;
+import org.fao.geonet.events.md.MetadataEvent;
+import org.fao.geonet.events.md.MetadataRemove;
+import org.fao.geonet.events.md.MetadataUpdate;
+import org.fao.geonet.events.thesaurus.ThesaurusUpdated;
+import org.fao.geonet.utils.Log;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.ApplicationEvent;
+import org.springframework.context.ApplicationListener;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.jmx.export.MBeanExporter;
+import org.springframework.jmx.export.annotation.ManagedAttribute;
+import org.springframework.jmx.export.annotation.ManagedOperation;
+import org.springframework.jmx.export.annotation.ManagedResource;
+
+import javax.annotation.PostConstruct;
+import javax.management.ObjectName;
+import java.lang.ref.WeakReference;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Memoize the results of the {@link XslUtil} functions called for each record by the index
+ * stylesheets (codelist translations, keywords, ISO language labels, index fields and
+ * records).
+ *
+ * <p>Depending on the {@link Scope}, results are kept only for the indexing threads while a
+ * batch reindexing is running (the default) or for a time to live. Metadata and thesaurus updates invalidate the related
+ * entries. Hit and miss counters are exposed over JMX.</p>
+ */
+@ManagedResource()
+public class XslFunctionCache implements ApplicationListener<ApplicationEvent> {
+
+    public enum Scope {
+        /**
+         * Functions are always computed.
+         */
+        NONE,
+        /**
+         * Results are cached while at least one batch reindexing is running
+         * and dropped when the last one ends. Only the records indexed by
+         * {@link #runIndexing(IndexingTask)} use the cache, other threads
+         * (eg. serving user requests) always compute the functions.
+         */
+        REINDEX,
+        /**
+         * Results are cached until they expire (see {@link #setTimeToLiveSeconds(long)}).
+         */
+        GLOBAL
+    }
+
+    public static final String CODELIST_TRANSLATION = "getCodelistTranslation";
+    public static final String KEYWORD_URI = "getKeywordUri";
+    public static final String KEYWORD_VALUE_BY_URI = "getKeywordValueByUri";
+    public static final String ISO_LANGUAGE_LABEL = "getIsoLanguageLabel";
+    public static final String INDEX_FIELD = "getIndexField";
+    public static final String RECORD = "getRecord";
+
+    private static final String[] KEYWORD_FUNCTIONS = {KEYWORD_URI, KEYWORD_VALUE_BY_URI};
+    private static final String[] RECORD_FUNCTIONS = {INDEX_FIELD, RECORD};
+
+    /**
+     * Indexing work run while the cache is used.
+     */
+    public interface IndexingTask {
+        void run() throws Exception;
+    }
+
+    private static final ThreadLocal<Boolean> INDEXING_THREAD = ThreadLocal.withInitial(() -> false);
+
+    /**
+     * The cache found in the last application context, looked up once per context.
+     */
+    private static volatile Lookup lookup;
+
+    @Autowired(required = false)
+    private MBeanExporter exporter;
+
+    private Scope scope = Scope.REINDEX;
+    private long maximumSize = 10000;
+    private long recordMaximumSize = 500;
+    private long timeToLiveSeconds = 600;
+
+    private final AtomicInteger runningReindexing = new AtomicInteger();
+    private volatile List<FunctionCache> caches = new ArrayList<>();
+
+    /**
+     * @return the cache of the application context or null if none is configured.
+     */
+    public static XslFunctionCache get() {
+        ConfigurableApplicationContext applicationContext = ApplicationContextHolder.get();
+        if (applicationContext == null) {
+            return null;
+        }
+        Lookup current = lookup;
+        if (current == null || current.applicationContext.get() != applicationContext) {
+            current = new Lookup(applicationContext,
+                applicationContext.getBeanProvider(XslFunctionCache.class).getIfAvailable());
+            lookup = current;
+        }
+        return current.functionCache;
+    }
+
+    /**
+     * Index records in the current thread: with the {@link Scope#REINDEX} scope, the functions
+     * called by the task use the cache while a batch reindexing is running.
+     */
+    public static void runIndexing(IndexingTask task) throws Exception {
+        boolean indexing = INDEXING_THREAD.get();
+        INDEXING_THREAD.set(true);
+        try {
+            task.run();
+        } finally {
+            INDEXING_THREAD.set(indexing);
+        }
+    }
+
+    /**
+     * Return the cached result of the function for these arguments or compute it. Exceptions
+     * thrown while computing the result are not cached.
+     */
+    public static <V> V getOrCompute(String function, Callable<V> loader, Object... arguments) throws Exception {
+        XslFunctionCache functionCache = get();
+        if (functionCache == null) {
+            return loader.call();
+        }
+        return functionCache.compute(function, loader, arguments);
+    }
+
+    @PostConstruct
+    public void init() throws Exception {
+        List<FunctionCache> newCaches = new ArrayList<>();
+        for (String function : new String[]{CODELIST_TRANSLATION, KEYWORD_URI, KEYWORD_VALUE_BY_URI,
+            ISO_LANGUAGE_LABEL, INDEX_FIELD, RECORD}) {
+            newCaches.add(new FunctionCache(function, RECORD.equals(function) ? recordMaximumSize : maximumSize));
+        }
+        caches = newCaches;
+
+        if (exporter != null) {
+            exporter.registerManagedResource(this, new ObjectName("geonetwork:name=xsl-function-cache"));
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    public <V> V compute(String function, Callable<V> loader, Object... arguments) throws Exception {
+        FunctionCache cache = getCache(function);
+        if (cache == null || !isCaching()) {
+            return loader.call();
+        }
+        try {
+            Optional<Object> value = cache.values.get(Arrays.asList(arguments),
+                () -> Optional.ofNullable(loader.call()));
+            return (V) value.orElse(null);
+        } catch (ExecutionException | UncheckedExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof Exception) {
+                throw (Exception) cause;
+            }
+            throw e;
+        }
+    }
+
+    private boolean isCaching() {
+        switch (scope) {
+            case GLOBAL:
+                return true;
+            case REINDEX:
+                return runningReindexing.get() > 0 && INDEXING_THREAD.get();
+            default:
+                return false;
+        }
+    }
+
+    /**
+     * Called when a batch reindexing starts. Each call must be followed by a call to
+     * {@link #reindexingEnded()}.
+     */
+    public void reindexingStarted() {
+        runningReindexing.incrementAndGet();
+    }
+
+    public void reindexingEnded() {
+        if (runningReindexing.decrementAndGet() <= 0) {
+            runningReindexing.set(0);
+            if (scope == Scope.REINDEX) {
+                invalidateAll();
+            }
+        }
+    }
+
+    @Override
+    public void onApplicationEvent(ApplicationEvent event) {
+        if (event instanceof MetadataUpdate || event instanceof MetadataRemove) {
+            String uuid = ((MetadataEvent) event).getMd().getUuid();
+            for (String function : RECORD_FUNCTIONS) {
+                FunctionCache cache = getCache(function);
+                if (cache != null && cache.values.size() > 0) {
+                    cache.values.asMap().keySet().removeIf(arguments -> uuid.equals(arguments.get(0)));
+                }
+            }
+        } else if (event instanceof ThesaurusUpdated) {
+            for (String function : KEYWORD_FUNCTIONS) {
+                FunctionCache cache = getCache(function);
+                if (cache != null) {
+                    cache.values.invalidateAll();
+                }
+            }
+        }
+    }
+
+    @ManagedOperation
+    public void invalidateAll() {
+        for (FunctionCache cache : caches) {
+            cache.values.invalidateAll();
+        }
+    }
+
+    @ManagedAttribute
+    public String getScope() {
+        return scope.name();
+    }
+
+    public void setScope(String scope) {
+        this.scope = Scope.valueOf(scope.toUpperCase());
+    }
+
+    @ManagedAttribute
+    public long getHitCount() {
+        return caches.stream().mapToLong(cache -> cache.values.stats().hitCount()).sum();
+    }
+
+    @ManagedAttribute
+    public long getMissCount() {
+        return caches.stream().mapToLong(cache -> cache.values.stats().missCount()).sum();
+    }
+
+    @ManagedAttribute
+    public long getSize() {
+        return caches.stream().mapToLong(cache -> cache.values.size()).sum();
+    }
+
+    /**
+     * @return for each function, the number of hits, misses and cached values.
+     */
+    @ManagedAttribute
+    public String[] getFunctionStatistics() {
+        return caches.stream().map(cache -> {
+            CacheStats stats = cache.values.stats();
+            return String.format("%s: hits=%d, misses=%d, size=%d",
+                cache.function, stats.hitCount(), stats.missCount(), cache.values.size());
+        }).toArray(String[]::new);
+    }
+
+    public long getMaximumSize() {
+        return maximumSize;
+    }
+
+    public void setMaximumSize(long maximumSize) {
+        this.maximumSize = maximumSize;
+    }
+
+    public long getRecordMaximumSize() {
+        return recordMaximumSize;
+    }
+
+    public void setRecordMaximumSize(long recordMaximumSize) {
+        this.recordMaximumSize = recordMaximumSize;
+    }
+
+    public long getTimeToLiveSeconds() {
+        return timeToLiveSeconds;
+    }
+
+    public void setTimeToLiveSeconds(long timeToLiveSeconds) {
+        this.timeToLiveSeconds = timeToLiveSeconds;
+    }
+
+    private FunctionCache getCache(String function) {
+        for (FunctionCache cache : caches) {
+            if (cache.function.equals(function)) {
+                return cache;
+            }
+        }
+        Log.warning(Geonet.GEONETWORK, "XslFunctionCache: no cache configured for function " + function);
+        return null;
+    }
+
+    private static final class Lookup {
+        private final WeakReference<ConfigurableApplicationContext> applicationContext;
+        private final XslFunctionCache functionCache;
+
+        private Lookup(ConfigurableApplicationContext applicationContext, XslFunctionCache functionCache) {
+            this.applicationContext = new WeakReference<>(applicationContext);
+            this.functionCache = functionCache;
+        }
+    }
+
+    private final class FunctionCache {
+        private final String function;
+        private final Cache<List<Object>, Optional<Object>> values;
+
+        private FunctionCache(String function, long size) {
+            this.function = function;
+            CacheBuilder<Object, Object> builder = CacheBuilder.newBuilder()
+                .maximumSize(size)
+                .recordStats();
+            if (scope == Scope.GLOBAL) {
+                builder.expireAfterWrite(timeToLiveSeconds, TimeUnit.SECONDS);
+            }
+            this.values = builder.build();
+        }
+    }
+}
@@ -785,11 +785,13 @@ public final class XslUtil {
         final EsSearchManager searchManager = applicationContext.getBean(EsSearchManager.class);
 
         try {
-            Set<String> fields = new HashSet<>();
-            fields.add(fieldname);
-            // TODO: Multilingual fields
-            final Map<String, String> values = searchManager.getFieldsValues(id, fields);
-            return values.get(fieldname);
+            return XslFunctionCache.getOrCompute(XslFunctionCache.INDEX_FIELD, () -> {
+                Set<String> fields = new HashSet<>();
+                fields.add(fieldname);
+                // TODO: Multilingual fields
+                final Map<String, String> values = searchManager.getFieldsValues(id, fields);
+                return values.get(fieldname);
+            }, id, fieldname, language);
         } catch (Exception e) {
             e.printStackTrace();
             Log.error(Geonet.GEONETWORK, "Failed to get index field '" + fieldname + "' value on '" + id + "', caused by " + e.getMessage());
@@ -824,10 +826,12 @@ public final class XslUtil {
         if (codeListValue != null && codelist != null && langCode != null) {
             String translation = codeListValue;
             try {
-                Translator t = new CodeListTranslator(ApplicationContextHolder.get().getBean(SchemaManager.class),
-                    (String) langCode,
-                    (String) codelist);
-                translation = t.translate(codeListValue);
+                translation = XslFunctionCache.getOrCompute(XslFunctionCache.CODELIST_TRANSLATION, () -> {
+                    Translator t = new CodeListTranslator(ApplicationContextHolder.get().getBean(SchemaManager.class),
+                        (String) langCode,
+                        (String) codelist);
+                    return t.translate(codeListValue);
+                }, codeListValue, codelist, langCode);
             } catch (Exception e) {
                 Log.error(
                     Geonet.GEONETWORK,
@@ -1073,9 +1077,12 @@ public final class XslUtil {
         ApplicationContext applicationContext = ApplicationContextHolder.get();
         DataManager dataManager = applicationContext.getBean(DataManager.class);
         try {
-            String id = dataManager.getMetadataId(uuid);
-            if (id != null) {
-                Element metadata = dataManager.getMetadata(id);
+            Element metadata = XslFunctionCache.getOrCompute(XslFunctionCache.RECORD, () -> {
+                String id = dataManager.getMetadataId(uuid);
+                if (id == null) {
+                    return null;
+                }
+                Element record = dataManager.getMetadata(id);
                 String metadataSchema = dataManager.getMetadataSchema(id);
 
                 if (StringUtils.isNotEmpty(schema)
@@ -1090,10 +1097,14 @@ public final class XslUtil {
                             uuid, metadataSchema, schema));
 
                     };
-                    metadata = Xml.transform(metadata, styleSheet);
+                    record = Xml.transform(record, styleSheet);
                 }
+                return record;
+            }, uuid, schema);
+            if (metadata != null) {
+                // The cached element is shared, output a copy attached to a new document
                 DOMOutputter outputter = new DOMOutputter();
-                return outputter.output(new Document(metadata));
+                return outputter.output(new Document((Element) metadata.clone()));
             }
         } catch (Exception e) {
             Log.error(Geonet.GEONETWORK,"XslUtil getRecord '" + uuid + "' error: " + e.getMessage(), e);
@@ -1371,18 +1382,25 @@ public final class XslUtil {
      * @return
      */
     public static String getIsoLanguageLabel(String code, String language) {
-        ApplicationContext applicationContext = ApplicationContextHolder.get();
-        IsoLanguageRepository isoLanguageRepository = applicationContext.getBean(IsoLanguageRepository.class);
+        try {
+            return XslFunctionCache.getOrCompute(XslFunctionCache.ISO_LANGUAGE_LABEL, () -> {
+                ApplicationContext applicationContext = ApplicationContextHolder.get();
+                IsoLanguageRepository isoLanguageRepository = applicationContext.getBean(IsoLanguageRepository.class);
 
-        List<IsoLanguage> languageValues = isoLanguageRepository.findAllByCode(code);
+                List<IsoLanguage> languageValues = isoLanguageRepository.findAllByCode(code);
 
-        String languageLabel = code;
+                String languageLabel = code;
 
-        if (!languageValues.isEmpty()) {
-            languageLabel = languageValues.get(0).getLabelTranslations().get(language);
-        }
+                if (!languageValues.isEmpty()) {
+                    languageLabel = languageValues.get(0).getLabelTranslations().get(language);
+                }
 
-        return languageLabel;
+                return languageLabel;
+            }, code, language);
+        } catch (Exception e) {
+            Log.error(Geonet.GEONETWORK, "Failed to get label of ISO language '" + code + "', caused by " + e.getMessage());
+            return code;
+        }
     }
 
     public static List<String> getKeywordHierarchy(String keyword, String thesaurusId, String langCode) {
@@ -1420,9 +1438,10 @@ public final class XslUtil {
             Thesaurus thesaurus = thesaurusManager.getThesaurusByName(thesaurusId);
 
             if (thesaurus != null) {
-                KeywordBean keywordBean = thesaurus.getKeyword(uri, langCode);
-                if (keywordBean != null) {
-                    return keywordBean.getPreferredLabel(langCode);
+                String label = XslFunctionCache.getOrCompute(XslFunctionCache.KEYWORD_VALUE_BY_URI,
+                    () -> thesaurus.getPreferredLabel(uri, langCode), uri, thesaurusId, langCode);
+                if (label != null) {
+                    return label;
                 }
             }
             return "";
@@ -1445,9 +1464,10 @@ public final class XslUtil {
             Thesaurus thesaurus = thesaurusManager.getThesaurusByName(thesaurusId);
 
             if (thesaurus != null) {
-                KeywordBean keywordBean = thesaurus.getKeywordWithLabel(keyword, langCode);
-                if (keywordBean != null) {
-                    return keywordBean.getUriCode();
+                String uri = XslFunctionCache.getOrCompute(XslFunctionCache.KEYWORD_URI,
+                    () -> thesaurus.getKeywordUriWithLabel(keyword, langCode), keyword, thesaurusId, langCode);
+                if (uri != null) {
+                    return uri;
                 }
             }
             return "";
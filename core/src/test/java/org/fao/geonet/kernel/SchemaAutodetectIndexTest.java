@@ -0,0 +1,100 @@
+/*
+ * Copyright (C) 2001-2016 Food and Agriculture Organization of the
+ * United Nations (FAO-UN), United Nations World Food Programme (WFP)
+ * and United Nations Environment Programme (UNEP)
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or (at
+ * your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301, USA
+ *
+ * Contact: Jeroen Ticheler - FAO - Viale delle Terme di Caracalla 2,
+ * Rome - Italy. email: geonetwork@osgeo.org
+ */
+
+package org.fao.geonet.kernel;
+
+import org.fao.geonet.exceptions.SchemaMatchConflictException;
+import org.fao.geonet.utils.Xml;
+import org.jdom.Element;
+import org.junit.Test;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+public class SchemaAutodetectIndexTest {
+
+    private static final String A = "xmlns:a=\"http://a\"";
+
+    @Test
+    public void testRoot() throws Exception {
+        SchemaAutodetectIndex index = index(
+            "iso", "<elements type=\"root\"><a:Metadata/><a:Party/></elements>",
+            "profile", "<elements type=\"root\"><a:Other/></elements>");
+
+        assertEquals("iso", index.detect(Xml.loadString("<a:Party " + A + "><a:name/></a:Party>", false)));
+        assertEquals("profile", index.detect(Xml.loadString("<a:Other " + A + "/>", false)));
+        assertNull(index.detect(Xml.loadString("<Metadata/>", false)));
+    }
+
+    @Test
+    public void testMostSpecificRuleWins() throws Exception {
+        SchemaAutodetectIndex index = index(
+            "iso", "<elements type=\"root\"><a:Metadata/></elements>",
+            "profile", "<elements><a:standard>My *profile</a:standard></elements>",
+            "search", "<elements type=\"search\"><a:specific/><a:code/></elements>");
+
+        assertEquals("profile", index.detect(Xml.loadString(
+            "<a:Metadata " + A + "><a:standard> My  profile</a:standard><a:specific>x</a:specific><a:code>1</a:code></a:Metadata>", false)));
+        assertEquals("search", index.detect(Xml.loadString(
+            "<a:Metadata " + A + "><a:standard>Other</a:standard><a:specific>x</a:specific><a:code>1</a:code></a:Metadata>", false)));
+        assertEquals("iso", index.detect(Xml.loadString(
+            "<a:Metadata " + A + "><a:standard>Other</a:standard><a:specific>x</a:specific></a:Metadata>", false)));
+    }
+
+    @Test
+    public void testAttributesAndNamespaces() throws Exception {
+        SchemaAutodetectIndex index = index(
+            "attributes", "<attributes " + A + " a:profile=\"p1\"/>",
+            "namespaces", "<namespaces xmlns:b=\"http://b\" xmlns:c=\"http://c\"/>");
+
+        assertEquals("attributes", index.detect(Xml.loadString(
+            "<root " + A + "><child a:profile=\"p1\"/></root>", false)));
+        assertNull(index.detect(Xml.loadString(
+            "<root " + A + "><child a:profile=\"p2\"/></root>", false)));
+        assertEquals("namespaces", index.detect(Xml.loadString(
+            "<root xmlns:b=\"http://b\"><c:child xmlns:c=\"http://c\"/></root>", false)));
+        assertNull(index.detect(Xml.loadString("<root xmlns:b=\"http://b\"/>", false)));
+    }
+
+    @Test(expected = SchemaMatchConflictException.class)
+    public void testConflict() throws Exception {
+        SchemaAutodetectIndex index = index(
+            "iso", "<elements type=\"root\"><a:Metadata/></elements>",
+            "copy", "<elements type=\"root\"><a:Metadata/></elements>");
+        index.detect(Xml.loadString("<a:Metadata " + A + "/>", false));
+    }
+
+    @SuppressWarnings("unchecked")
+    private static SchemaAutodetectIndex index(String... schemaAndRules) throws Exception {
+        Map<String, List<Element>> autodetectElements = new HashMap<>();
+        for (int i = 0; i < schemaAndRules.length; i += 2) {
+            Element autodetect = Xml.loadString("<autodetect " + A + ">" + schemaAndRules[i + 1] + "</autodetect>", false);
+            autodetectElements.put(schemaAndRules[i], autodetect.getChildren());
+        }
+        return new SchemaAutodetectIndex(autodetectElements);
+    }
+}
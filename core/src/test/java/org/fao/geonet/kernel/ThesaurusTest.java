@@ -43,10 +43,12 @@ import org.openrdf.sesame.query.QueryEvaluationException;
 
 import java.io.IOException;
 import java.nio.file.Path;
+import java.util.Arrays;
 import java.util.List;
 
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertTrue;
 
 public class ThesaurusTest extends AbstractThesaurusBasedTest {
@@ -498,4 +500,35 @@ public class ThesaurusTest extends AbstractThesaurusBasedTest {
         assertEquals(1, hierarchy.size());
         assertEquals("140_testValue_eng", hierarchy.get(0));
     }
+
+    @Test
+    public void testConceptIndexLookups() {
+        assertEquals("135_testValue_eng", thesaurus.getPreferredLabel(THESAURUS_KEYWORD_NS + 135, "eng"));
+        assertEquals(THESAURUS_KEYWORD_NS + 135, thesaurus.getKeywordUriWithLabel("135_testValue_ger", "ger"));
+        assertNull(thesaurus.getKeywordUriWithLabel("unknown", "eng"));
+
+        ThesaurusConceptIndex index = thesaurus.getConceptIndex();
+        assertEquals(keywords, index.size());
+        assertEquals(Arrays.asList(THESAURUS_KEYWORD_NS + 140), index.getBroader(THESAURUS_KEYWORD_NS + 135));
+        assertEquals(Arrays.asList(THESAURUS_KEYWORD_NS + 135), index.getNarrower(THESAURUS_KEYWORD_NS + 140));
+
+        // 99 and 990 to 999
+        List<String> uris = index.getUrisWithLabelPrefix("99_", "en", 20);
+        assertEquals(Arrays.asList(THESAURUS_KEYWORD_NS + 99), uris);
+        assertEquals(11, index.getUrisWithLabelPrefix("99", "en", 20).size());
+        assertEquals(5, index.getUrisWithLabelPrefix("99", "en", 5).size());
+    }
+
+    @Test
+    public void testConceptIndexUpdatedOnModification() throws Exception {
+        assertNull(writableThesaurus.getPreferredLabel(TEST_KEYWORD, "eng"));
+
+        writableThesaurus.addElement(new KeywordBean(isoLangMapper)
+            .setUriCode(TEST_KEYWORD)
+            .setValue("test", "eng"));
+        assertEquals("test", writableThesaurus.getPreferredLabel(TEST_KEYWORD, "eng"));
+
+        writableThesaurus.removeElement(TEST_KEYWORD);
+        assertNull(writableThesaurus.getPreferredLabel(TEST_KEYWORD, "eng"));
+    }
 }
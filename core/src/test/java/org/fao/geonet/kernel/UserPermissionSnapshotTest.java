@@ -0,0 +1,87 @@
+/*
+ * Copyright (C) 2001-2016 Food and Agriculture Organization of the
+ * United Nations (FAO-UN), United Nations World Food Programme (WFP)
+ * and United Nations Environment Programme (UNEP)
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or (at
+ * your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301, USA
+ *
+ * Contact: Jeroen Ticheler - FAO - Viale delle Terme di Caracalla 2,
+ * Rome - Italy. email: geonetwork@osgeo.org
+ */
+package org.fao.geonet.kernel;
+
+import org.fao.geonet.domain.Profile;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests for {@link UserPermissionSnapshot}.
+ */
+public class UserPermissionSnapshotTest {
+
+    @Test
+    public void testAnonymous() {
+        UserPermissionSnapshot permissions = new UserPermissionSnapshot(false, -1, null,
+            Arrays.asList(1), null, null, true);
+
+        assertTrue(permissions.isInGroup(1));
+        assertFalse(permissions.isInGroup(2));
+        assertFalse(permissions.isOwner(1, 2));
+        assertFalse(permissions.hasReviewPermission(2, new int[]{2}));
+    }
+
+    @Test
+    public void testAdministrator() {
+        UserPermissionSnapshot permissions = new UserPermissionSnapshot(true, 1, Profile.Administrator,
+            Arrays.asList(1, 2, 3), Arrays.asList(1, 2, 3), Collections.emptyList(), true);
+
+        assertTrue(permissions.isOwner(42, null));
+        assertTrue(permissions.hasReviewPermission(null, new int[0]));
+    }
+
+    @Test
+    public void testOwnerAndReviewer() {
+        UserPermissionSnapshot editor = new UserPermissionSnapshot(true, 5, Profile.Editor,
+            Arrays.asList(-1, 1, 2), Arrays.asList(2), Collections.emptyList(), true);
+
+        assertTrue(editor.isOwner(5, 3));
+        assertFalse(editor.isOwner(6, 2));
+        assertTrue(editor.isEditorInGroup(2));
+        assertFalse(editor.hasReviewPermission(2, new int[]{2}));
+
+        UserPermissionSnapshot reviewer = new UserPermissionSnapshot(true, 7, Profile.Reviewer,
+            Arrays.asList(-1, 1, 2, 3), Arrays.asList(3), Arrays.asList(2), true);
+
+        assertTrue(reviewer.isOwner(5, 2));
+        assertFalse(reviewer.isOwner(5, 3));
+        assertFalse(reviewer.isOwner(5, null));
+        assertTrue(reviewer.hasReviewPermission(2, new int[0]));
+        assertFalse(reviewer.hasReviewPermission(3, new int[]{2}));
+    }
+
+    @Test
+    public void testReviewerInEditingGroup() {
+        UserPermissionSnapshot reviewer = new UserPermissionSnapshot(true, 7, Profile.Reviewer,
+            Arrays.asList(-1, 1, 2, 3), Arrays.asList(3), Arrays.asList(2), false);
+
+        assertTrue(reviewer.hasReviewPermission(3, new int[]{4, 2}));
+        assertFalse(reviewer.hasReviewPermission(3, new int[]{4}));
+    }
+}
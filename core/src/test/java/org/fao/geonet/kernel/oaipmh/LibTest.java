@@ -0,0 +1,69 @@
+/*
+ * Copyright (C) 2001-2016 Food and Agriculture Organization of the
+ * United Nations (FAO-UN), United Nations World Food Programme (WFP)
+ * and United Nations Environment Programme (UNEP)
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or (at
+ * your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301, USA
+ *
+ * Contact: Jeroen Ticheler - FAO - Viale delle Terme di Caracalla 2,
+ * Rome - Italy. email: geonetwork@osgeo.org
+ */
+package org.fao.geonet.kernel.oaipmh;
+
+import jeeves.server.UserSession;
+import jeeves.server.context.ServiceContext;
+import org.elasticsearch.index.query.QueryBuilder;
+import org.fao.geonet.NodeInfo;
+import org.fao.geonet.domain.Profile;
+import org.fao.geonet.index.es.EsRestClient;
+import org.fao.geonet.kernel.search.EsSearchManager;
+import org.jdom.Element;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Matchers;
+import org.mockito.Mockito;
+
+import static org.junit.Assert.assertTrue;
+
+public class LibTest {
+
+    @Test
+    public void testSetOfCamelCaseCategory() throws Exception {
+        EsRestClient client = Mockito.mock(EsRestClient.class);
+        EsSearchManager searchManager = Mockito.mock(EsSearchManager.class);
+        Mockito.when(searchManager.getClient()).thenReturn(client);
+        Mockito.when(searchManager.getDefaultIndex()).thenReturn("gn-records");
+        NodeInfo node = Mockito.mock(NodeInfo.class);
+        Mockito.when(node.getId()).thenReturn(NodeInfo.DEFAULT_NODE);
+        UserSession session = Mockito.mock(UserSession.class);
+        Mockito.when(session.getProfile()).thenReturn(Profile.Administrator);
+        ServiceContext context = Mockito.mock(ServiceContext.class);
+        Mockito.when(context.getBean(EsSearchManager.class)).thenReturn(searchManager);
+        Mockito.when(context.getBean(NodeInfo.class)).thenReturn(node);
+        Mockito.when(context.getUserSession()).thenReturn(session);
+
+        Element params = new Element("request")
+            .addContent(new Element("_schema").setText("iso19139"))
+            .addContent(new Element("category").setText("interactiveResources"));
+        Lib.searchPage(context, params, null, 10);
+
+        ArgumentCaptor<QueryBuilder> query = ArgumentCaptor.forClass(QueryBuilder.class);
+        Mockito.verify(client).query(Matchers.eq("gn-records"), query.capture(), (QueryBuilder) Matchers.isNull(),
+            Matchers.anySetOf(String.class), (Object[]) Matchers.isNull(), Matchers.eq(10), Matchers.anyList());
+        // The category is matched as is, not by the analysed (lower cased) field
+        String json = query.getValue().toString().replaceAll("\\s", "");
+        assertTrue(json, json.contains("{\"term\":{\"cat.keyword\":{\"value\":\"interactiveResources\""));
+    }
+}
@@ -0,0 +1,230 @@
+/*
+ * Copyright (C) 2001-2016 Food and Agriculture Organization of the
+ * United Nations (FAO-UN), United Nations World Food Programme (WFP)
+ * and United Nations Environment Programme (UNEP)
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or (at
+ * your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301, USA
+ *
+ * Contact: Jeroen Ticheler - FAO - Viale delle Terme di Caracalla 2,
+ * Rome - Italy. email: geonetwork@osgeo.org
+ */
+
+package org.fao.geonet.kernel.oaipmh;
+
+import jeeves.server.context.ServiceContext;
+import org.fao.geonet.domain.ISODate;
+import org.fao.geonet.kernel.GeonetworkDataDirectory;
+import org.fao.geonet.kernel.SchemaManager;
+import org.fao.geonet.kernel.oaipmh.services.StreamedListRecordsResponse;
+import org.fao.geonet.kernel.setting.SettingInfo;
+import org.fao.geonet.kernel.setting.SettingManager;
+import org.fao.geonet.utils.Xml;
+import org.fao.oaipmh.OaiPmh;
+import org.fao.oaipmh.requests.AbstractRequest;
+import org.fao.oaipmh.requests.GetRecordRequest;
+import org.fao.oaipmh.requests.ListRecordsRequest;
+import org.fao.oaipmh.responses.AbstractResponse;
+import org.fao.oaipmh.responses.GetRecordResponse;
+import org.fao.oaipmh.responses.Header;
+import org.fao.oaipmh.responses.Record;
+import org.fao.oaipmh.responses.ResumptionToken;
+import org.jdom.Element;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ThreadLocalRandom;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * Compare the streamed responses with the responses built as a document.
+ */
+public class OaiPmhDispatcherTest {
+    private static final List<Integer> IDS = Arrays.asList(1, 2, 3, 4, 5, 6, 7, 8, 9, 10, 11, 12);
+
+    private Path appDir;
+    private ServiceContext context;
+    private OaiPmhDispatcher dispatcher;
+    private TestConverter converter;
+
+    @Before
+    public void setUp() throws Exception {
+        appDir = Files.createTempDirectory("oaipmh");
+        ConfigurableApplicationContext applicationContext = mock(ConfigurableApplicationContext.class);
+        SettingInfo settingInfo = mock(SettingInfo.class);
+        when(settingInfo.getSiteUrl()).thenReturn("http://localhost:8080");
+        when(applicationContext.getBean(SettingInfo.class)).thenReturn(settingInfo);
+        GeonetworkDataDirectory dataDirectory = mock(GeonetworkDataDirectory.class);
+        when(dataDirectory.getWebappDir()).thenReturn(appDir);
+        when(applicationContext.getBean(GeonetworkDataDirectory.class)).thenReturn(dataDirectory);
+
+        context = new ServiceContext("oaipmh", applicationContext, new HashMap<>(), null);
+        context.setBaseUrl("geonetwork");
+
+        converter = new TestConverter();
+        converter.setThreads(4);
+        dispatcher = new OaiPmhDispatcher(mock(SettingManager.class), mock(SchemaManager.class));
+        dispatcher.register(new TestListRecords());
+        dispatcher.register(new TestGetRecord());
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        converter.shutdown();
+        dispatcher.shutdown();
+        Files.deleteIfExists(appDir);
+    }
+
+    @Test
+    public void testListRecordsStreamed() throws Exception {
+        Element request = request(ListRecordsRequest.VERB);
+        request.addContent(new Element("metadataPrefix").setText("oai_dc"));
+
+        Element streamed = dispatchStreamed(request);
+        assertEquals(Xml.getString(dispatchDocument(request)), Xml.getString(streamed));
+
+        Element verb = streamed.getChild(ListRecordsRequest.VERB, OaiPmh.Namespaces.OAI_PMH);
+        List<String> identifiers = new ArrayList<>();
+        for (Object record : verb.getChildren("record", OaiPmh.Namespaces.OAI_PMH)) {
+            identifiers.add(((Element) record).getChild("header", OaiPmh.Namespaces.OAI_PMH)
+                .getChildText("identifier", OaiPmh.Namespaces.OAI_PMH));
+        }
+        // records converted in parallel are written in the order of the ids, skipped ones excepted
+        assertEquals(Arrays.asList("uuid-1", "uuid-2", "uuid-4", "uuid-5", "uuid-7", "uuid-8",
+            "uuid-10", "uuid-11"), identifiers);
+        assertEquals("token", verb.getChildText("resumptionToken", OaiPmh.Namespaces.OAI_PMH));
+        assertTrue(converter.contextSet);
+    }
+
+    @Test
+    public void testGetRecordStreamed() throws Exception {
+        Element request = request(GetRecordRequest.VERB);
+        request.addContent(new Element("identifier").setText("uuid-1"));
+        request.addContent(new Element("metadataPrefix").setText("oai_dc"));
+
+        assertEquals(Xml.getString(dispatchDocument(request)), Xml.getString(dispatchStreamed(request)));
+    }
+
+    @Test
+    public void testPageWithoutRecord() throws Exception {
+        StreamedListRecordsResponse response = new StreamedListRecordsResponse(context, "oai_dc",
+            Arrays.asList(3, 6, 9), converter);
+        assertFalse(response.prepare());
+        assertEquals(0, response.getSize());
+        assertEquals(3, response.getIdCount());
+
+        response = new StreamedListRecordsResponse(context, "oai_dc", Arrays.asList(3, 4, 5, 6), converter);
+        assertTrue(response.prepare());
+        assertEquals(1, response.getSize());
+        assertEquals(2, response.toXml().getChildren("record", OaiPmh.Namespaces.OAI_PMH).size());
+        assertEquals(2, response.getSize());
+    }
+
+    private Element request(String verb) {
+        return new Element("request").addContent(new Element("verb").setText(verb));
+    }
+
+    private Element dispatchDocument(Element request) {
+        return withoutResponseDate(dispatcher.dispatch((Element) request.clone(), context));
+    }
+
+    private Element dispatchStreamed(Element request) throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        dispatcher.dispatch((Element) request.clone(), context, out);
+        return withoutResponseDate(Xml.loadString(new String(out.toByteArray(), StandardCharsets.UTF_8), false));
+    }
+
+    private static Element withoutResponseDate(Element response) {
+        response.removeChild("responseDate", OaiPmh.Namespaces.OAI_PMH);
+        return response;
+    }
+
+    private static Record record(int id) {
+        Header header = new Header();
+        header.setIdentifier("uuid-" + id);
+        header.setDateStamp(new ISODate("2021-01-01T00:00:00"));
+        Record record = new Record();
+        record.setHeader(header);
+        record.setMetadata(new Element("metadata").addContent(new Element("title").setText("Record " + id)));
+        return record;
+    }
+
+    /**
+     * Skip the ids multiple of 3 and convert the others in a random time.
+     */
+    private static class TestConverter extends RecordConverter {
+        private volatile boolean contextSet;
+
+        @Override
+        Callable<Record> load(ServiceContext context, int id, String prefix) {
+            if (id % 3 == 0) {
+                return null;
+            }
+            return () -> {
+                contextSet = contextSet || ServiceContext.get() == context;
+                Thread.sleep(ThreadLocalRandom.current().nextInt(20));
+                return record(id);
+            };
+        }
+    }
+
+    private class TestListRecords implements OaiPmhService {
+        @Override
+        public String getVerb() {
+            return ListRecordsRequest.VERB;
+        }
+
+        @Override
+        public AbstractResponse execute(AbstractRequest request, ServiceContext context) throws Exception {
+            StreamedListRecordsResponse response = new StreamedListRecordsResponse(context, "oai_dc", IDS, converter);
+            response.prepare();
+            ResumptionToken token = new ResumptionToken();
+            token.setToken("token");
+            token.setCursor(0);
+            token.setCompleteListSize(100);
+            response.setResumptionToken(token);
+            return response;
+        }
+    }
+
+    private static class TestGetRecord implements OaiPmhService {
+        @Override
+        public String getVerb() {
+            return GetRecordRequest.VERB;
+        }
+
+        @Override
+        public AbstractResponse execute(AbstractRequest request, ServiceContext context) {
+            GetRecordResponse response = new GetRecordResponse();
+            response.setRecord(record(1));
+            return response;
+        }
+    }
+}
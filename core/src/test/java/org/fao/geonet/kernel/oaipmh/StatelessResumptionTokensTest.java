@@ -0,0 +1,116 @@
+/*
+ * Copyright (C) 2001-2016 Food and Agriculture Organization of the
+ * United Nations (FAO-UN), United Nations World Food Programme (WFP)
+ * and United Nations Environment Programme (UNEP)
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or (at
+ * your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301, USA
+ *
+ * Contact: Jeroen Ticheler - FAO - Viale delle Terme di Caracalla 2,
+ * Rome - Italy. email: geonetwork@osgeo.org
+ */
+
+package org.fao.geonet.kernel.oaipmh;
+
+import org.fao.oaipmh.exceptions.BadResumptionTokenException;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class StatelessResumptionTokensTest {
+
+    private StatelessResumptionTokens tokens;
+
+    @Before
+    public void setUp() {
+        tokens = new StatelessResumptionTokens();
+        tokens.setSecret("secret");
+    }
+
+    @Test
+    public void testRoundTrip() throws Exception {
+        StatelessResumptionToken token = tokens.encode(newToken(), 60);
+        assertTrue(tokens.isStatelessToken(token.getToken()));
+
+        StatelessResumptionToken decoded = tokens.decode(token.getToken());
+        assertEquals("iso19139", decoded.getPrefix());
+        assertEquals("dataset", decoded.getSet());
+        assertEquals("2020-01-01", decoded.getFrom());
+        assertNull(decoded.getUntil());
+        assertArrayEquals(new Object[]{42L}, decoded.getSearchAfter());
+        assertEquals(Integer.valueOf(100), decoded.getCursor());
+        assertEquals(Integer.valueOf(250), decoded.getCompleteListSize());
+    }
+
+    @Test
+    public void testCacheTokenIsNotStateless() {
+        assertFalse(tokens.isStatelessToken("dataset/-/iso19139/-/2020-01-01/-/null/-/123/-/100"));
+    }
+
+    @Test(expected = BadResumptionTokenException.class)
+    public void testAlteredToken() throws Exception {
+        String text = tokens.encode(newToken(), 60).getToken();
+        tokens.decode("e30" + text);
+    }
+
+    @Test(expected = BadResumptionTokenException.class)
+    public void testOtherSecret() throws Exception {
+        String text = tokens.encode(newToken(), 60).getToken();
+        StatelessResumptionTokens otherTokens = new StatelessResumptionTokens();
+        otherTokens.setSecret("other");
+        otherTokens.decode(text);
+    }
+
+    @Test(expected = BadResumptionTokenException.class)
+    public void testExpiredToken() throws Exception {
+        String text = tokens.encode(newToken(), -1).getToken();
+        tokens.decode(text);
+    }
+
+    @Test
+    public void testSecretRequired() throws Exception {
+        String text = tokens.encode(newToken(), 60).getToken();
+        StatelessResumptionTokens noSecret = new StatelessResumptionTokens();
+        noSecret.setEnabled(true);
+        noSecret.init();
+        assertFalse(noSecret.isEnabled());
+        try {
+            noSecret.decode(text);
+            fail("Tokens are not accepted without secret");
+        } catch (BadResumptionTokenException e) {
+            // expected
+        }
+
+        tokens.setEnabled(true);
+        tokens.init();
+        assertTrue(tokens.isEnabled());
+    }
+
+    private static StatelessResumptionToken newToken() {
+        StatelessResumptionToken token = new StatelessResumptionToken();
+        token.setPrefix("iso19139");
+        token.setSet("dataset");
+        token.setFrom("2020-01-01");
+        token.setSearchAfter(new Object[]{42});
+        token.setCursor(100);
+        token.setCompleteListSize(250);
+        return token;
+    }
+}
@@ -0,0 +1,98 @@
+/*
+ * Copyright (C) 2001-2022 Food and Agriculture Organization of the
+ * United Nations (FAO-UN), United Nations World Food Programme (WFP)
+ * and United Nations Environment Programme (UNEP)
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or (at
+ * your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301, USA
+ *
+ * Contact: Jeroen Ticheler - FAO - Viale delle Terme di Caracalla 2,
+ * Rome - Italy. email: geonetwork@osgeo.org
+ */
+package org.fao.geonet.kernel.search.index;
+
+import org.fao.geonet.ApplicationContextHolder;
+import org.fao.geonet.kernel.DataManager;
+import org.fao.geonet.kernel.search.EsSearchManager;
+import org.fao.geonet.util.XslFunctionCache;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Matchers;
+import org.mockito.Mockito;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.jmx.export.MBeanExporter;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+
+public class BatchOpsMetadataReindexerTest {
+    private IndexingScheduler scheduler;
+
+    @Before
+    @SuppressWarnings("unchecked")
+    public void setUp() {
+        scheduler = new IndexingScheduler();
+        scheduler.setThreadCount(1);
+        scheduler.setMaxChunkSize(2);
+
+        ConfigurableApplicationContext applicationContext = Mockito.mock(ConfigurableApplicationContext.class);
+        Mockito.when(applicationContext.getBean(MBeanExporter.class)).thenReturn(Mockito.mock(MBeanExporter.class));
+        Mockito.when(applicationContext.getBean(EsSearchManager.class)).thenReturn(Mockito.mock(EsSearchManager.class));
+        Mockito.when(applicationContext.getBean(IndexingScheduler.class)).thenReturn(scheduler);
+        Mockito.when(applicationContext.getBeanProvider(XslFunctionCache.class)).thenReturn(Mockito.mock(ObjectProvider.class));
+        ApplicationContextHolder.set(applicationContext);
+    }
+
+    @After
+    public void tearDown() {
+        scheduler.shutdown();
+        ApplicationContextHolder.clear();
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void testChunksAndErrorsInCurrentThread() throws Exception {
+        List<List<String>> calls = Collections.synchronizedList(new ArrayList<>());
+        DataManager dm = Mockito.mock(DataManager.class);
+        Mockito.doAnswer(invocation -> {
+            List<String> ids = new ArrayList<>((List<String>) invocation.getArguments()[0]);
+            calls.add(ids);
+            if (ids.contains("3")) {
+                throw new IllegalStateException("Invalid record");
+            }
+            return null;
+        }).when(dm).indexMetadata(Matchers.anyListOf(String.class), Matchers.anyBoolean());
+
+        BatchOpsMetadataReindexer reindexer = new BatchOpsMetadataReindexer(dm,
+            new LinkedHashSet<>(Arrays.asList(1, 2, 3, 4, 5)));
+        reindexer.process("catalogue", true);
+
+        // Chunks of the scheduler size, the failing chunk is indexed again record by record
+        assertEquals(Arrays.asList(
+            Arrays.asList("1", "2"),
+            Arrays.asList("3", "4"),
+            Collections.singletonList("3"),
+            Collections.singletonList("4"),
+            Collections.singletonList("5")), calls);
+        assertEquals(4, reindexer.getProcessed());
+        assertEquals(1, reindexer.getInError());
+    }
+}
@@ -0,0 +1,188 @@
+/*
+ * Copyright (C) 2001-2022 Food and Agriculture Organization of the
+ * United Nations (FAO-UN), United Nations World Food Programme (WFP)
+ * and United Nations Environment Programme (UNEP)
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or (at
+ * your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301, USA
+ *
+ * Contact: Jeroen Ticheler - FAO - Viale delle Terme di Caracalla 2,
+ * Rome - Italy. email: geonetwork@osgeo.org
+ */
+package org.fao.geonet.kernel.search.index;
+
+import org.elasticsearch.action.bulk.BulkItemResponse;
+import org.elasticsearch.action.bulk.BulkResponse;
+import org.elasticsearch.rest.RestStatus;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+public class BulkIndexingQueueTest {
+
+    private static BulkItemResponse item(String id, RestStatus status) {
+        BulkItemResponse item = mock(BulkItemResponse.class);
+        when(item.getId()).thenReturn(id);
+        when(item.status()).thenReturn(status);
+        when(item.isFailed()).thenReturn(status != RestStatus.OK && status != RestStatus.CREATED);
+        return item;
+    }
+
+    private static BulkResponse response(Map<String, String> documents, Map<String, RestStatus> statuses) {
+        List<BulkItemResponse> items = new ArrayList<>();
+        documents.keySet().forEach(id -> items.add(item(id, statuses.getOrDefault(id, RestStatus.CREATED))));
+        return new BulkResponse(items.toArray(new BulkItemResponse[0]), 1);
+    }
+
+    @Test
+    public void testBatchesByCountAndFlush() {
+        List<Map<String, String>> requests = Collections.synchronizedList(new ArrayList<>());
+        BulkIndexingQueue queue = new BulkIndexingQueue(documents -> {
+            requests.add(documents);
+            return response(documents, Collections.emptyMap());
+        }, (response, documents) -> {
+        }, 3, Long.MAX_VALUE, 0, 2, 2, 0, 0);
+
+        queue.add("1", "{}");
+        queue.add("2", "{}");
+        queue.add("1", "{\"updated\": true}");
+        assertEquals("A document added twice is sent once", 2, queue.getPendingDocuments());
+        queue.add("3", "{}");
+        queue.add("4", "{}");
+        queue.flush();
+
+        assertEquals(2, requests.size());
+        int sent = requests.stream().mapToInt(Map::size).sum();
+        assertEquals(4, sent);
+        assertEquals(4, queue.getIndexedDocuments());
+        assertEquals(0, queue.getPendingDocuments());
+        queue.close();
+    }
+
+    @Test
+    public void testBatchesBySize() {
+        AtomicInteger requests = new AtomicInteger();
+        BulkIndexingQueue queue = new BulkIndexingQueue(documents -> {
+            requests.incrementAndGet();
+            return response(documents, Collections.emptyMap());
+        }, (response, documents) -> {
+        }, 1000, 10, 0, 1, 1, 0, 0);
+
+        queue.add("1", "{\"a\": 1}");
+        queue.add("2", "{\"b\": 2}");
+        queue.flush();
+        assertEquals(1, requests.get());
+        queue.close();
+    }
+
+    @Test
+    public void testRetryRejectedDocuments() {
+        List<Map<String, String>> requests = Collections.synchronizedList(new ArrayList<>());
+        List<String> failures = Collections.synchronizedList(new ArrayList<>());
+        BulkIndexingQueue queue = new BulkIndexingQueue(documents -> {
+            requests.add(documents);
+            Map<String, RestStatus> statuses = new HashMap<>();
+            if (requests.size() == 1) {
+                statuses.put("1", RestStatus.TOO_MANY_REQUESTS);
+                statuses.put("2", RestStatus.BAD_REQUEST);
+            }
+            return response(documents, statuses);
+        }, (response, documents) -> {
+            for (BulkItemResponse item : response.getItems()) {
+                failures.add(item.getId());
+            }
+        }, 10, Long.MAX_VALUE, 0, 1, 1, 3, 1);
+
+        queue.add("1", "{}");
+        queue.add("2", "{}");
+        queue.add("3", "{}");
+        queue.flush();
+
+        assertEquals(2, requests.size());
+        assertEquals(Collections.singleton("1"), requests.get(1).keySet());
+        assertEquals(Collections.singletonList("2"), failures);
+        assertEquals(1, queue.getRetries());
+        assertEquals(2, queue.getIndexedDocuments());
+        assertTrue(queue.getBulkRequests() >= 2);
+        queue.close();
+    }
+
+    @Test
+    public void testSameDocumentSentInOrder() throws Exception {
+        List<String> sentVersions = Collections.synchronizedList(new ArrayList<>());
+        CountDownLatch firstStarted = new CountDownLatch(1);
+        CountDownLatch releaseFirst = new CountDownLatch(1);
+        CountDownLatch secondStarted = new CountDownLatch(1);
+        BulkIndexingQueue queue = new BulkIndexingQueue(documents -> {
+            if (sentVersions.isEmpty()) {
+                sentVersions.add(documents.get("1"));
+                firstStarted.countDown();
+                try {
+                    releaseFirst.await(10, TimeUnit.SECONDS);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            } else {
+                sentVersions.add(documents.get("1"));
+                secondStarted.countDown();
+            }
+            return response(documents, Collections.emptyMap());
+        }, (response, documents) -> {
+        }, 1, Long.MAX_VALUE, 0, 2, 2, 0, 0);
+
+        queue.add("1", "v1");
+        assertTrue(firstStarted.await(10, TimeUnit.SECONDS));
+        queue.add("1", "v2");
+        assertFalse("A bulk sharing a document with a running bulk waits for it",
+            secondStarted.await(200, TimeUnit.MILLISECONDS));
+
+        releaseFirst.countDown();
+        queue.flush();
+        assertEquals(2, sentVersions.size());
+        assertEquals("v1", sentVersions.get(0));
+        assertEquals("v2", sentVersions.get(1));
+        queue.close();
+    }
+
+    @Test
+    public void testFailuresCountedOnceWhenReportFails() {
+        BulkIndexingQueue queue = new BulkIndexingQueue(
+            documents -> response(documents, Collections.singletonMap("1", RestStatus.BAD_REQUEST)),
+            (response, documents) -> {
+                throw new IOException("Can't report failures");
+            }, 10, Long.MAX_VALUE, 0, 1, 1, 0, 0);
+
+        queue.add("1", "{}");
+        queue.add("2", "{}");
+        queue.flush();
+
+        assertEquals(1, queue.getFailedDocuments());
+        assertEquals(1, queue.getIndexedDocuments());
+        queue.close();
+    }
+}
@@ -0,0 +1,141 @@
+/*
+ * Copyright (C) 2001-2022 Food and Agriculture Organization of the
+ * United Nations (FAO-UN), United Nations World Food Programme (WFP)
+ * and United Nations Environment Programme (UNEP)
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or (at
+ * your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301, USA
+ *
+ * Contact: Jeroen Ticheler - FAO - Viale delle Terme di Caracalla 2,
+ * Rome - Italy. email: geonetwork@osgeo.org
+ */
+package org.fao.geonet.kernel.search.index;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class IndexingSchedulerTest {
+    private IndexingScheduler scheduler;
+
+    @Before
+    public void createScheduler() {
+        scheduler = new IndexingScheduler();
+        scheduler.setThreadCount(1);
+        scheduler.setMaxChunkSize(2);
+        scheduler.setInteractiveMaxRecords(1);
+    }
+
+    @After
+    public void shutdown() {
+        scheduler.shutdown();
+    }
+
+    @Test
+    public void testAllRecordsProcessed() throws Exception {
+        scheduler.setThreadCount(3);
+        List<Integer> ids = new ArrayList<>();
+        for (int i = 0; i < 100; i++) {
+            ids.add(i);
+        }
+        List<Object> processed = Collections.synchronizedList(new ArrayList<>());
+        IndexingScheduler.Job job = scheduler.submit(ids, processed::addAll);
+        job.getCompletion().get(10, TimeUnit.SECONDS);
+
+        assertEquals(IndexingScheduler.Priority.BULK, job.getPriority());
+        assertEquals(100, job.getProcessed());
+        assertEquals(100, processed.size());
+        assertEquals(100, processed.stream().distinct().count());
+    }
+
+    @Test
+    public void testInteractiveJobBeforeBulkJob() throws Exception {
+        CountDownLatch firstChunkStarted = new CountDownLatch(1);
+        CountDownLatch interactiveSubmitted = new CountDownLatch(1);
+        List<Object> processed = Collections.synchronizedList(new ArrayList<>());
+
+        IndexingScheduler.Job bulk = scheduler.submit(Arrays.asList(1, 2, 3, 4, 5, 6, 7, 8), chunk -> {
+            firstChunkStarted.countDown();
+            interactiveSubmitted.await();
+            processed.addAll(chunk);
+        });
+        assertTrue(firstChunkStarted.await(10, TimeUnit.SECONDS));
+        IndexingScheduler.Job interactive = scheduler.submit(Collections.singletonList(100), processed::addAll);
+        interactiveSubmitted.countDown();
+
+        bulk.getCompletion().get(10, TimeUnit.SECONDS);
+        interactive.getCompletion().get(10, TimeUnit.SECONDS);
+
+        assertEquals(IndexingScheduler.Priority.INTERACTIVE, interactive.getPriority());
+        assertEquals(Arrays.asList(1, 2, 100, 3, 4, 5, 6, 7, 8), processed);
+    }
+
+    @Test
+    public void testJobStartedWhenReady() throws Exception {
+        AtomicBoolean ready = new AtomicBoolean();
+        List<Object> processed = Collections.synchronizedList(new ArrayList<>());
+        IndexingScheduler.Job waiting = scheduler.submit(Arrays.asList(1, 2, 3), processed::addAll, ready::get);
+        // the waiting job does not hold the indexing thread
+        IndexingScheduler.Job other = scheduler.submit(Collections.singletonList(100), processed::addAll);
+        other.getCompletion().get(10, TimeUnit.SECONDS);
+        assertEquals(Collections.singletonList(100), processed);
+        assertFalse(waiting.getCompletion().isDone());
+
+        ready.set(true);
+        waiting.getCompletion().get(10, TimeUnit.SECONDS);
+        assertEquals(Arrays.asList(100, 1, 2, 3), processed);
+    }
+
+    @Test
+    public void testPendingJobsCancelledOnShutdown() throws Exception {
+        CountDownLatch firstChunkStarted = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        IndexingScheduler.Job running = scheduler.submit(Arrays.asList(1, 2, 3, 4), chunk -> {
+            firstChunkStarted.countDown();
+            release.await();
+        });
+        IndexingScheduler.Job waiting = scheduler.submit(Arrays.asList(5, 6), chunk -> {
+        }, () -> false);
+        assertTrue(firstChunkStarted.await(10, TimeUnit.SECONDS));
+
+        scheduler.shutdown();
+        release.countDown();
+
+        assertCancelled(running);
+        assertCancelled(waiting);
+    }
+
+    private static void assertCancelled(IndexingScheduler.Job job) throws Exception {
+        try {
+            job.getCompletion().get(10, TimeUnit.SECONDS);
+            fail("The job should be cancelled");
+        } catch (CancellationException e) {
+            assertTrue(job.getCompletion().isCompletedExceptionally());
+        }
+    }
+}
@@ -0,0 +1,114 @@
+/*
+ * Copyright (C) 2001-2021 Food and Agriculture Organization of the
+ * United Nations (FAO-UN), United Nations World Food Programme (WFP)
+ * and United Nations Environment Programme (UNEP)
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or (at
+ * your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301, USA
+ *
+ * Contact: Jeroen Ticheler - FAO - Viale delle Terme di Caracalla 2,
+ * Rome - Italy. email: geonetwork@osgeo.org
+ */
+
+package org.fao.geonet.kernel.selection;
+
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.PrimitiveIterator;
+import java.util.Random;
+import java.util.TreeSet;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class IdBitmapTest {
+
+    @Test
+    public void testAddRemove() {
+        IdBitmap bitmap = new IdBitmap();
+        assertTrue(bitmap.add(3));
+        assertTrue(bitmap.add(70000));
+        assertFalse(bitmap.add(3));
+        assertTrue(bitmap.contains(70000));
+        assertFalse(bitmap.contains(4));
+        assertEquals(2, bitmap.getCardinality());
+
+        assertTrue(bitmap.remove(3));
+        assertFalse(bitmap.remove(3));
+        assertTrue(bitmap.remove(70000));
+        assertTrue(bitmap.isEmpty());
+    }
+
+    @Test
+    public void testSameAsTreeSet() {
+        Random random = new Random(42);
+        IdBitmap bitmap = new IdBitmap();
+        TreeSet<Integer> expected = new TreeSet<>();
+        // Dense ids in the first chunks (bitmaps), sparse ids after (arrays)
+        for (int i = 0; i < 200000; i++) {
+            int id = i % 2 == 0 ? random.nextInt(150000) : random.nextInt(Integer.MAX_VALUE);
+            assertEquals(expected.add(id), bitmap.add(id));
+        }
+        for (int i = 0; i < 50000; i++) {
+            int id = random.nextInt(150000);
+            assertEquals(expected.remove(id), bitmap.remove(id));
+        }
+
+        assertEquals(expected.size(), bitmap.getCardinality());
+        assertEquals(new ArrayList<>(expected), toList(bitmap));
+        assertEquals(toList(bitmap), toList(new IdBitmap(bitmap)));
+    }
+
+    @Test
+    public void testContiguousIdsAreCompact() {
+        IdBitmap bitmap = new IdBitmap();
+        for (int id = 1; id <= 500000; id++) {
+            bitmap.add(id);
+        }
+        assertEquals(500000, bitmap.getCardinality());
+        assertTrue(bitmap.getSizeInBytes() < 100 * 1024);
+    }
+
+    @Test
+    public void testWriteRead() throws Exception {
+        IdBitmap bitmap = new IdBitmap();
+        for (int id = 0; id < 10000; id++) {
+            bitmap.add(id * 3);
+        }
+        bitmap.add(1 << 20);
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        bitmap.writeTo(new DataOutputStream(bytes));
+        IdBitmap read = IdBitmap.readFrom(new DataInputStream(new ByteArrayInputStream(bytes.toByteArray())));
+
+        assertEquals(toList(bitmap), toList(read));
+        assertTrue(read.add(1));
+    }
+
+    private static List<Integer> toList(IdBitmap bitmap) {
+        List<Integer> ids = new ArrayList<>();
+        PrimitiveIterator.OfInt iterator = bitmap.iterator();
+        while (iterator.hasNext()) {
+            ids.add(iterator.nextInt());
+        }
+        return ids;
+    }
+}
@@ -0,0 +1,165 @@
+/*
+ * Copyright (C) 2001-2021 Food and Agriculture Organization of the
+ * United Nations (FAO-UN), United Nations World Food Programme (WFP)
+ * and United Nations Environment Programme (UNEP)
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or (at
+ * your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301, USA
+ *
+ * Contact: Jeroen Ticheler - FAO - Viale delle Terme di Caracalla 2,
+ * Rome - Italy. email: geonetwork@osgeo.org
+ */
+
+package org.fao.geonet.kernel.selection;
+
+import com.google.common.collect.Sets;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class RecordSelectionTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private final Map<String, Integer> records = new HashMap<>();
+    private int getIdsCalls;
+    private final SelectionResolver resolver = new SelectionResolver() {
+        @Override
+        public Map<String, Integer> getIds(Collection<String> uuids) {
+            getIdsCalls++;
+            Map<String, Integer> ids = new HashMap<>();
+            for (String uuid : uuids) {
+                if (records.containsKey(uuid)) {
+                    ids.put(uuid, records.get(uuid));
+                }
+            }
+            return ids;
+        }
+
+        @Override
+        public Map<Integer, String> getUuids(Collection<Integer> ids) {
+            Map<Integer, String> uuids = new HashMap<>();
+            records.forEach((uuid, id) -> {
+                if (ids.contains(id)) {
+                    uuids.put(id, uuid);
+                }
+            });
+            return uuids;
+        }
+    };
+
+    @Before
+    public void setUp() {
+        for (int i = 1; i <= 1200; i++) {
+            records.put("uuid" + i, i * 10);
+        }
+    }
+
+    @Test
+    public void testUuids() {
+        RecordSelection selection = new RecordSelection(resolver);
+        assertTrue(selection.addAll(Arrays.asList("uuid1", "uuid2", "unknown")));
+        assertFalse(selection.add("uuid1"));
+
+        assertEquals(3, selection.size());
+        assertTrue(selection.contains("uuid2"));
+        assertTrue(selection.contains("unknown"));
+        assertFalse(selection.contains("uuid3"));
+        assertTrue(selection.containsId(10));
+        assertEquals(Sets.newHashSet("uuid1", "uuid2", "unknown"), new HashSet<>(selection));
+
+        assertTrue(selection.remove("uuid1"));
+        assertTrue(selection.remove("unknown"));
+        assertFalse(selection.remove("uuid3"));
+        assertEquals(Sets.newHashSet("uuid2"), new HashSet<>(selection));
+    }
+
+    @Test
+    public void testGetSelected() {
+        RecordSelection selection = new RecordSelection(resolver);
+        selection.addAll(Arrays.asList("uuid1", "uuid3", "unknown"));
+        getIdsCalls = 0;
+
+        List<String> page = Arrays.asList("uuid1", "uuid2", "uuid3", "uuid4", "unknown", "other");
+        assertEquals(Sets.newHashSet("uuid1", "uuid3", "unknown"), selection.getSelected(page));
+        // The page is resolved at once
+        assertEquals(1, getIdsCalls);
+
+        selection.clear();
+        assertTrue(selection.getSelected(page).isEmpty());
+        assertEquals(1, getIdsCalls);
+    }
+
+    @Test
+    public void testIterateInBatches() {
+        RecordSelection selection = new RecordSelection(resolver);
+        IdBitmap ids = new IdBitmap();
+        for (int id = 10; id <= 12000; id += 10) {
+            ids.add(id);
+        }
+        // Removed record
+        ids.add(5);
+        selection.addIds(ids);
+
+        assertEquals(1201, selection.size());
+        assertEquals(records.keySet(), new HashSet<>(selection));
+    }
+
+    @Test
+    public void testStore() throws Exception {
+        FileSelectionStore store = new FileSelectionStore();
+        store.setDirectory(folder.getRoot().getPath());
+        store.init();
+        assertEquals(-1, store.getVersion("user-1", "metadata"));
+        assertNull(store.get("user-1", "metadata", resolver));
+
+        RecordSelection selection = new RecordSelection(resolver);
+        selection.addAll(Arrays.asList("uuid1", "uuid2", "unknown"));
+        long version = store.put("user-1", "metadata", selection);
+        assertEquals(version, store.getVersion("user-1", "metadata"));
+        assertEquals(-1, store.getVersion("user-1", "../metadata"));
+
+        RecordSelection stored = store.get("user-1", "metadata", resolver);
+        assertEquals(selection, stored);
+        assertTrue(stored.containsId(20));
+
+        selection.clear();
+        assertNotEquals(version, store.put("user-1", "metadata", selection));
+        assertTrue(store.get("user-1", "metadata", resolver).isEmpty());
+
+        store.put("user-1", "bucket", selection);
+        store.put("user-2", "metadata", selection);
+        store.remove("user-1");
+        assertEquals(-1, store.getVersion("user-1", "metadata"));
+        assertEquals(-1, store.getVersion("user-1", "bucket"));
+        assertNotEquals(-1, store.getVersion("user-2", "metadata"));
+        // Nothing stored
+        store.remove("user-3");
+    }
+}
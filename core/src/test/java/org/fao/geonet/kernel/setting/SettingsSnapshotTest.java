@@ -0,0 +1,71 @@
+/*
+ * Copyright (C) 2001-2016 Food and Agriculture Organization of the
+ * United Nations (FAO-UN), United Nations World Food Programme (WFP)
+ * and United Nations Environment Programme (UNEP)
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or (at
+ * your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301, USA
+ *
+ * Contact: Jeroen Ticheler - FAO - Viale delle Terme di Caracalla 2,
+ * Rome - Italy. email: geonetwork@osgeo.org
+ */
+
+package org.fao.geonet.kernel.setting;
+
+import org.fao.geonet.domain.Setting;
+import org.junit.Test;
+
+import java.util.Arrays;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class SettingsSnapshotTest {
+
+    @Test
+    public void testValues() {
+        SettingsSnapshot snapshot = new SettingsSnapshot(Arrays.asList(
+            newSetting("system/site/name", "My catalogue"),
+            newSetting("system/server/port", "8080"),
+            newSetting("system/userSelfRegistration/enable", "true"),
+            newSetting("system/proxy/host", null)), 42);
+
+        assertEquals("My catalogue", snapshot.getValue("system/site/name"));
+        assertEquals(Integer.valueOf(8080), snapshot.getValueAsInt("system/server/port", null));
+        assertTrue(snapshot.getValueAsBool("system/userSelfRegistration/enable", false));
+        assertEquals(42, snapshot.getCreationTime());
+
+        assertTrue(snapshot.contains("system/proxy/host"));
+        assertNull(snapshot.getValue("system/proxy/host"));
+        assertEquals(Integer.valueOf(3128), snapshot.getValueAsInt("system/proxy/host", 3128));
+
+        assertFalse(snapshot.contains("system/unknown"));
+        assertTrue(snapshot.getValueAsBool("system/unknown", true));
+    }
+
+    @Test(expected = UnsupportedOperationException.class)
+    public void testImmutable() {
+        SettingsSnapshot snapshot = new SettingsSnapshot(Arrays.asList(newSetting("system/site/name", "a")), 0);
+        snapshot.getValues().put("system/site/name", "b");
+    }
+
+    private static Setting newSetting(String name, String value) {
+        Setting setting = new Setting();
+        setting.setName(name);
+        setting.setValue(value);
+        return setting;
+    }
+}
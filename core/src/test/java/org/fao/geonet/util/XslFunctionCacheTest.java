@@ -0,0 +1,111 @@
+/*
+ * Copyright (C) 2001-2022 Food and Agriculture Organization of the
+ * United Nations (FAO-UN), United Nations World Food Programme (WFP)
+ * and United Nations Environment Programme (UNEP)
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or (at
+ * your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301, USA
+ *
+ * Contact: Jeroen Ticheler - FAO - Viale delle Terme di Caracalla 2,
+ * Rome - Italy. email: geonetwork@osgeo.org
+ */
+package org.fao.geonet.util;
+
+import org.fao.geonet.domain.Metadata;
+import org.fao.geonet.events.md.MetadataUpdate;
+import org.fao.geonet.events.thesaurus.ThesaurusUpdated;
+import org.junit.Test;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.fail;
+
+public class XslFunctionCacheTest {
+
+    private static XslFunctionCache newCache(String scope) throws Exception {
+        XslFunctionCache cache = new XslFunctionCache();
+        cache.setScope(scope);
+        cache.init();
+        return cache;
+    }
+
+    @Test
+    public void testReindexScope() throws Exception {
+        XslFunctionCache cache = newCache("REINDEX");
+        AtomicInteger calls = new AtomicInteger();
+
+        cache.compute(XslFunctionCache.CODELIST_TRANSLATION, calls::incrementAndGet, "001", "gmd:CI_RoleCode", "eng");
+        cache.compute(XslFunctionCache.CODELIST_TRANSLATION, calls::incrementAndGet, "001", "gmd:CI_RoleCode", "eng");
+        assertEquals("Nothing is cached outside of a reindexing", 2, calls.get());
+
+        cache.reindexingStarted();
+        XslFunctionCache.runIndexing(() -> {
+            assertEquals(3, (int) cache.compute(XslFunctionCache.CODELIST_TRANSLATION, calls::incrementAndGet, "001", "gmd:CI_RoleCode", "eng"));
+            assertEquals(3, (int) cache.compute(XslFunctionCache.CODELIST_TRANSLATION, calls::incrementAndGet, "001", "gmd:CI_RoleCode", "eng"));
+            assertEquals(4, (int) cache.compute(XslFunctionCache.CODELIST_TRANSLATION, calls::incrementAndGet, "001", "gmd:CI_RoleCode", "fre"));
+        });
+        assertEquals("Requests are not served from the cache during a reindexing",
+            5, (int) cache.compute(XslFunctionCache.CODELIST_TRANSLATION, calls::incrementAndGet, "001", "gmd:CI_RoleCode", "eng"));
+        assertEquals(1, cache.getHitCount());
+        assertEquals(2, cache.getMissCount());
+        assertEquals(2, cache.getSize());
+
+        cache.reindexingEnded();
+        assertEquals(0, cache.getSize());
+    }
+
+    @Test
+    public void testNullValuesAndErrors() throws Exception {
+        XslFunctionCache cache = newCache("GLOBAL");
+        AtomicInteger calls = new AtomicInteger();
+
+        assertNull(cache.compute(XslFunctionCache.INDEX_FIELD, () -> {
+            calls.incrementAndGet();
+            return null;
+        }, "uuid", "resourceTitleObject", null));
+        assertNull(cache.compute(XslFunctionCache.INDEX_FIELD, calls::incrementAndGet, "uuid", "resourceTitleObject", null));
+        assertEquals(1, calls.get());
+
+        try {
+            cache.compute(XslFunctionCache.ISO_LANGUAGE_LABEL, () -> {
+                throw new IllegalStateException("Database not available");
+            }, "fre", "eng");
+            fail("The error of the function is expected");
+        } catch (IllegalStateException e) {
+            assertEquals("Database not available", e.getMessage());
+        }
+        assertEquals("French", cache.compute(XslFunctionCache.ISO_LANGUAGE_LABEL, () -> "French", "fre", "eng"));
+    }
+
+    @Test
+    public void testInvalidationOnEvents() throws Exception {
+        XslFunctionCache cache = newCache("GLOBAL");
+        cache.compute(XslFunctionCache.INDEX_FIELD, () -> "Title 1", "uuid-1", "resourceTitleObject", null);
+        cache.compute(XslFunctionCache.INDEX_FIELD, () -> "Title 2", "uuid-2", "resourceTitleObject", null);
+        cache.compute(XslFunctionCache.KEYWORD_URI, () -> "http://concept", "Keyword", "external.theme.test", "eng");
+        assertEquals(3, cache.getSize());
+
+        Metadata metadata = new Metadata();
+        metadata.setUuid("uuid-1");
+        cache.onApplicationEvent(new MetadataUpdate(metadata));
+        assertEquals(2, cache.getSize());
+        assertEquals("Title 2", cache.compute(XslFunctionCache.INDEX_FIELD, () -> "Updated", "uuid-2", "resourceTitleObject", null));
+        assertEquals("Updated", cache.compute(XslFunctionCache.INDEX_FIELD, () -> "Updated", "uuid-1", "resourceTitleObject", null));
+
+        cache.onApplicationEvent(new ThesaurusUpdated("external.theme.test"));
+        assertEquals(2, cache.getSize());
+    }
+}
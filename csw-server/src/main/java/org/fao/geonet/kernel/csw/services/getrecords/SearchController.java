@@ -47,6 +47,7 @@ import org.fao.geonet.domain.AbstractMetadata;
 import org.fao.geonet.kernel.DataManager;
 import org.fao.geonet.kernel.SchemaManager;
 import org.fao.geonet.kernel.csw.services.getrecords.es.CswFilter2Es;
+import org.fao.geonet.kernel.datamanager.IMetadataManager;
 import org.fao.geonet.kernel.datamanager.IMetadataUtils;
 import org.fao.geonet.kernel.schema.MetadataSchema;
 import org.fao.geonet.kernel.search.EsFilterBuilder;
@@ -64,6 +65,7 @@ import org.opengis.filter.capability.FilterCapabilities;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.xml.sax.SAXException;
 
+import javax.annotation.PreDestroy;
 import javax.xml.parsers.ParserConfigurationException;
 import java.io.IOException;
 import java.io.StringReader;
@@ -75,6 +77,12 @@ import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
 
 
 public class SearchController {
@@ -100,6 +108,29 @@ public class SearchController {
     @Autowired
     private SchemaManager schemaManager;
 
+    @Autowired
+    private IMetadataManager metadataManager;
+
+    /**
+     * Bounded pool used to convert GetRecords hits to the output schema in parallel.
+     */
+    private final ExecutorService presentExecutor =
+        Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors(), new ThreadFactory() {
+            private final AtomicInteger threadCount = new AtomicInteger();
+
+            @Override
+            public Thread newThread(Runnable runnable) {
+                Thread thread = new Thread(runnable, "csw-present-" + threadCount.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+
+    @PreDestroy
+    public void shutdown() {
+        presentExecutor.shutdownNow();
+    }
+
     /**
      * Retrieves metadata from the database. Conversion between metadata record and output schema
      * are defined in xml/csw/schemas/ directory.
@@ -125,61 +156,72 @@ public class SearchController {
             GeonetContext gc = (GeonetContext) context.getHandlerContext(Geonet.CONTEXT_NAME);
             boolean forEditing = false, withValidationErrors = false, keepXlinkAttributes = false;
             Element res = gc.getBean(DataManager.class).getMetadata(context, id, forEditing, withValidationErrors, keepXlinkAttributes);
-            SchemaManager scm = gc.getBean(SchemaManager.class);
             if (res == null) {
                 return null;
             }
-            Element info = res.getChild(Edit.RootChild.INFO, Edit.NAMESPACE);
-            String schema = info.getChildText(Edit.Info.Elem.SCHEMA);
-
-            // Add schemaLocation from schema config if not present in the metadata
-            Attribute schemaLocAtt = scm.getSchemaLocation(
-                schema, context);
-
-            if (schemaLocAtt != null) {
-                if (res.getAttribute(
-                    schemaLocAtt.getName(),
-                    schemaLocAtt.getNamespace()) == null) {
-                    res.setAttribute(schemaLocAtt);
-                    // make sure namespace declaration for schemalocation is present -
-                    // remove it first (does nothing if not there) then add it
-                    res.removeNamespaceDeclaration(schemaLocAtt.getNamespace());
-                    res.addNamespaceDeclaration(schemaLocAtt.getNamespace());
-                }
+            return presentMetadata(context, res, id, setName, outSchema, elemNames, typeName, resultType, strategy, displayLanguage);
+        } catch (InvalidParameterValueEx e) {
+            throw e;
+        } catch (Exception e) {
+            context.error("Error while getting metadata with id : " + id);
+            context.error("  (C) StackTrace:\n" + Util.getStackTrace(e));
+            throw new NoApplicableCodeEx("Raised exception while getting metadata :" + e);
+        }
+    }
+
+    /**
+     * Converts a metadata record (as returned by {@link DataManager#getMetadata}) to the requested
+     * output schema. Does not access the database, so it can run outside of the request thread.
+     *
+     * @return The converted record or null if the record can not be converted to the output schema.
+     */
+    private static Element presentMetadata(ServiceContext context, Element res, String id, ElementSetName setName, String
+        outSchema, Set<String> elemNames, String typeName, ResultType resultType, String strategy, String displayLanguage) throws Exception {
+        SchemaManager scm = context.getBean(SchemaManager.class);
+        Element info = res.getChild(Edit.RootChild.INFO, Edit.NAMESPACE);
+        String schema = info.getChildText(Edit.Info.Elem.SCHEMA);
+
+        // Add schemaLocation from schema config if not present in the metadata
+        Attribute schemaLocAtt = scm.getSchemaLocation(
+            schema, context);
+
+        if (schemaLocAtt != null) {
+            if (res.getAttribute(
+                schemaLocAtt.getName(),
+                schemaLocAtt.getNamespace()) == null) {
+                res.setAttribute(schemaLocAtt);
+                // make sure namespace declaration for schemalocation is present -
+                // remove it first (does nothing if not there) then add it
+                res.removeNamespaceDeclaration(schemaLocAtt.getNamespace());
+                res.addNamespaceDeclaration(schemaLocAtt.getNamespace());
             }
+        }
 
-            // apply stylesheet according to setName and schema
-            //
-            // OGC 07-045 :
-            // Because for this application profile it is not possible that a query includes more than one
-            // typename, any value(s) of the typeNames attribute of the elementSetName element are ignored.
-            res = org.fao.geonet.csw.common.util.Xml.applyElementSetName(context, scm, schema, res, outSchema, setName, resultType, id, displayLanguage);
+        // apply stylesheet according to setName and schema
+        //
+        // OGC 07-045 :
+        // Because for this application profile it is not possible that a query includes more than one
+        // typename, any value(s) of the typeNames attribute of the elementSetName element are ignored.
+        res = org.fao.geonet.csw.common.util.Xml.applyElementSetName(context, scm, schema, res, outSchema, setName, resultType, id, displayLanguage);
 
-            res = applyElementNames(context, elemNames, typeName, scm, schema, res, resultType, info, strategy);
+        res = applyElementNames(context, elemNames, typeName, scm, schema, res, resultType, info, strategy);
 
-            if(Log.isDebugEnabled(Geonet.CSW_SEARCH))
-                Log.debug(Geonet.CSW_SEARCH, "SearchController:retrieveMetadata: before applying postprocessing on metadata Element for id " + id);
+        if(Log.isDebugEnabled(Geonet.CSW_SEARCH))
+            Log.debug(Geonet.CSW_SEARCH, "SearchController:retrieveMetadata: before applying postprocessing on metadata Element for id " + id);
 
-            res = applyPostProcessing(context, scm, schema, res, outSchema, setName, resultType, id, displayLanguage);
+        res = applyPostProcessing(context, scm, schema, res, outSchema, setName, resultType, id, displayLanguage);
 
-            if(Log.isDebugEnabled(Geonet.CSW_SEARCH))
-                Log.debug(Geonet.CSW_SEARCH, "SearchController:retrieveMetadata: All processing is complete on metadata Element for id " + id);
+        if(Log.isDebugEnabled(Geonet.CSW_SEARCH))
+            Log.debug(Geonet.CSW_SEARCH, "SearchController:retrieveMetadata: All processing is complete on metadata Element for id " + id);
 
-            if (res != null) {
-                if (Log.isDebugEnabled(Geonet.CSW_SEARCH))
-                    Log.debug(Geonet.CSW_SEARCH, "SearchController returns\n" + Xml.getString(res));
-            } else {
-                if (Log.isDebugEnabled(Geonet.CSW_SEARCH))
-                    Log.debug(Geonet.CSW_SEARCH, "SearchController returns null");
-            }
-            return res;
-        } catch (InvalidParameterValueEx e) {
-            throw e;
-        } catch (Exception e) {
-            context.error("Error while getting metadata with id : " + id);
-            context.error("  (C) StackTrace:\n" + Util.getStackTrace(e));
-            throw new NoApplicableCodeEx("Raised exception while getting metadata :" + e);
+        if (res != null) {
+            if (Log.isDebugEnabled(Geonet.CSW_SEARCH))
+                Log.debug(Geonet.CSW_SEARCH, "SearchController returns\n" + Xml.getString(res));
+        } else {
+            if (Log.isDebugEnabled(Geonet.CSW_SEARCH))
+                Log.debug(Geonet.CSW_SEARCH, "SearchController returns null");
         }
+        return res;
     }
 
     /**
@@ -477,23 +519,83 @@ public class SearchController {
 
             int counter = 0;
 
+            List<Integer> ids = new ArrayList<>(hits.length);
             for(SearchHit hit : hits) {
-                int mdId =  Integer.parseInt((String) hit.getSourceAsMap().get("id"));
+                ids.add(Integer.parseInt((String) hit.getSourceAsMap().get("id")));
+            }
 
-                AbstractMetadata metadata = metadataUtils.findOne(mdId);
+            // Load all records of the page in one query
+            Map<Integer, AbstractMetadata> records = new HashMap<>(ids.size());
+            if (!ids.isEmpty()) {
+                for (AbstractMetadata metadata : metadataUtils.findAll(new HashSet<>(ids))) {
+                    records.put(metadata.getId(), metadata);
+                }
+            }
 
-                String displayLanguage = context.getLanguage();
-                Element resultMD = retrieveMetadata(context, metadata.getId() + "",
-                    setName, outSchema, elemNames, typeName, resultType, strategy, displayLanguage);
+            // Database access (privileges, xlinks, info) is done in the request thread,
+            // XSL conversions to the output schema are done in parallel.
+            String displayLanguage = context.getLanguage();
+            List<Future<Element>> presentedRecords = new ArrayList<>(ids.size());
+            boolean presented = false;
+            try {
+                for (Integer mdId : ids) {
+                    AbstractMetadata metadata = records.get(mdId);
+                    if (metadata == null) {
+                        // Record deleted since it was indexed
+                        continue;
+                    }
+                    final String id = String.valueOf(mdId);
+                    final Element md;
+                    try {
+                        md = metadataManager.getMetadata(context, metadata, true, false);
+                    } catch (Exception e) {
+                        context.error("Error while getting metadata with id : " + id);
+                        context.error("  (C) StackTrace:\n" + Util.getStackTrace(e));
+                        throw new NoApplicableCodeEx("Raised exception while getting metadata :" + e);
+                    }
+                    if (md == null) {
+                        continue;
+                    }
+                    presentedRecords.add(presentExecutor.submit(() -> {
+                        context.setAsThreadLocal();
+                        try {
+                            return presentMetadata(context, md, id, setName, outSchema, elemNames, typeName,
+                                resultType, strategy, displayLanguage);
+                        } finally {
+                            ServiceContext.clearThreadLocal();
+                        }
+                    }));
+                }
 
-                if (resultMD != null) {
-                    if (resultType == ResultType.RESULTS) {
-                        results.addContent(resultMD);
+                for (Future<Element> presentedRecord : presentedRecords) {
+                    Element resultMD;
+                    try {
+                        resultMD = presentedRecord.get();
+                    } catch (ExecutionException e) {
+                        if (e.getCause() instanceof InvalidParameterValueEx) {
+                            throw (InvalidParameterValueEx) e.getCause();
+                        }
+                        context.error("Error while presenting metadata");
+                        context.error("  (C) StackTrace:\n" + Util.getStackTrace(e.getCause()));
+                        throw new NoApplicableCodeEx("Raised exception while getting metadata :" + e.getCause());
                     }
 
-                    counter++;
-                }
+                    if (resultMD != null) {
+                        if (resultType == ResultType.RESULTS) {
+                            results.addContent(resultMD);
+                        }
 
+                        counter++;
+                    }
+                }
+                presented = true;
+            } finally {
+                if (!presented) {
+                    // Do not convert the remaining records of a failed request
+                    for (Future<Element> presentedRecord : presentedRecords) {
+                        presentedRecord.cancel(true);
+                    }
+                }
             }
 
             results.setAttribute("numberOfRecordsMatched", Long.toString(numMatches));
@@ -111,14 +111,15 @@ public abstract class AbstractMetadata extends GeonetEntity {
     }
 
     /**
-     * Get the metadata data as a string (typically XML)
+     * Get the metadata data as a string (typically XML). The data may be stored compressed,
+     * see {@link MetadataDataCodec}.
      *
      * @return the metadata data as a string.
      */
     @Column(nullable = false)
     @Lob
     @Basic(fetch = FetchType.LAZY)
-    @Type(type = "org.hibernate.type.TextType") // this is a work around for postgres so postgres can correctly load clobs
+    @Type(type = "org.fao.geonet.domain.MetadataDataType") // a TextType, this is a work around for postgres so postgres can correctly load clobs
     public String getData() {
         return _data;
     }
@@ -175,7 +176,8 @@ public abstract class AbstractMetadata extends GeonetEntity {
     }
 
     /**
-     * Parse the data as xml and return the data.
+     * Parse the data as xml and return the data. Without validation, the document is parsed
+     * once and then copied from the {@link MetadataXmlCache}.
      *
      * @param validate if true validate the XML while parsing.
      * @return the parsed metadata.
@@ -184,7 +186,11 @@ public abstract class AbstractMetadata extends GeonetEntity {
      */
     @Transient
     public Element getXmlData(boolean validate) throws IOException, JDOMException {
-        return Xml.loadString(getData(), validate);
+        if (validate || getId() == 0) {
+            return Xml.loadString(getData(), validate);
+        }
+        MetadataDataInfo dataInfo = getDataInfo();
+        return MetadataXmlCache.get(getId(), dataInfo == null ? null : dataInfo.getChangeDate(), getData());
     }
 
     private static String replaceString(final String initialString, final String pattern, final String replacement) {
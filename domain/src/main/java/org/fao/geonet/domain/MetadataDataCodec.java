@@ -0,0 +1,138 @@
+/*
+ * Copyright (C) 2001-2021 Food and Agriculture Organization of the
+ * United Nations (FAO-UN), United Nations World Food Programme (WFP)
+ * and United Nations Environment Programme (UNEP)
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or (at
+ * your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301, USA
+ *
+ * Contact: Jeroen Ticheler - FAO - Viale delle Terme di Caracalla 2,
+ * Rome - Italy. email: geonetwork@osgeo.org
+ */
+
+package org.fao.geonet.domain;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * Storage format of the data column of the metadata tables (see {@link MetadataDataType}).
+ *
+ * <p>Records are stored as XML text or, if {@link #setCompress(boolean)} is enabled, compressed
+ * with deflate and encoded in base64 after the {@link #DEFLATE_V1} marker. XML text can't start
+ * with the marker so both formats can be stored in the same column and records are always read,
+ * whatever the current mode is. Compressed records are usually 4 to 8 times smaller than the
+ * text.</p>
+ *
+ * <p>The column stays a text column so that existing databases don't have to be changed, but
+ * SQL statements looking into the XML (eg. {@code data LIKE '%...%'}) don't see the content of
+ * compressed records.</p>
+ */
+public final class MetadataDataCodec {
+    /**
+     * Marker and version of the compressed format.
+     */
+    public static final String DEFLATE_V1 = "#deflate-v1:";
+
+    private static volatile boolean compress = false;
+    private static volatile int minLength = 4096;
+
+    private MetadataDataCodec() {
+    }
+
+    /**
+     * @return the value to store in the data column.
+     */
+    public static String encode(String data) {
+        if (!compress || data == null || data.length() < minLength || isEncoded(data)) {
+            return data;
+        }
+        byte[] bytes = data.getBytes(StandardCharsets.UTF_8);
+        Deflater deflater = new Deflater(Deflater.DEFAULT_COMPRESSION);
+        try {
+            deflater.setInput(bytes);
+            deflater.finish();
+            ByteArrayOutputStream out = new ByteArrayOutputStream(bytes.length / 4);
+            byte[] buffer = new byte[8192];
+            while (!deflater.finished()) {
+                out.write(buffer, 0, deflater.deflate(buffer));
+            }
+            return DEFLATE_V1 + Base64.getEncoder().encodeToString(out.toByteArray());
+        } finally {
+            deflater.end();
+        }
+    }
+
+    /**
+     * @return the XML text of a value of the data column.
+     */
+    public static String decode(String stored) {
+        if (!isEncoded(stored)) {
+            return stored;
+        }
+        byte[] bytes = Base64.getDecoder().decode(stored.substring(DEFLATE_V1.length()));
+        Inflater inflater = new Inflater();
+        try {
+            inflater.setInput(bytes);
+            ByteArrayOutputStream out = new ByteArrayOutputStream(bytes.length * 6);
+            byte[] buffer = new byte[8192];
+            while (!inflater.finished()) {
+                int count = inflater.inflate(buffer);
+                if (count == 0 && (inflater.needsInput() || inflater.needsDictionary())) {
+                    throw new IllegalArgumentException("Truncated compressed metadata data");
+                }
+                out.write(buffer, 0, count);
+            }
+            return new String(out.toByteArray(), StandardCharsets.UTF_8);
+        } catch (DataFormatException e) {
+            throw new IllegalArgumentException("Invalid compressed metadata data: " + e.getMessage(), e);
+        } finally {
+            inflater.end();
+        }
+    }
+
+    /**
+     * @return true if the value of the data column is compressed.
+     */
+    public static boolean isEncoded(String stored) {
+        return stored != null && stored.startsWith(DEFLATE_V1);
+    }
+
+    public static boolean isCompress() {
+        return compress;
+    }
+
+    /**
+     * @param compress if true, records are compressed when saved. Compressed records are read
+     *                 in both modes.
+     */
+    public static void setCompress(boolean compress) {
+        MetadataDataCodec.compress = compress;
+    }
+
+    public static int getMinLength() {
+        return minLength;
+    }
+
+    /**
+     * @param minLength number of characters under which records are stored as text.
+     */
+    public static void setMinLength(int minLength) {
+        MetadataDataCodec.minLength = minLength;
+    }
+}
@@ -0,0 +1,58 @@
+/*
+ * Copyright (C) 2001-2021 Food and Agriculture Organization of the
+ * United Nations (FAO-UN), United Nations World Food Programme (WFP)
+ * and United Nations Environment Programme (UNEP)
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or (at
+ * your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301, USA
+ *
+ * Contact: Jeroen Ticheler - FAO - Viale delle Terme di Caracalla 2,
+ * Rome - Italy. email: geonetwork@osgeo.org
+ */
+
+package org.fao.geonet.domain;
+
+import org.hibernate.type.AbstractSingleColumnStandardBasicType;
+import org.hibernate.type.descriptor.WrapperOptions;
+import org.hibernate.type.descriptor.java.StringTypeDescriptor;
+import org.hibernate.type.descriptor.sql.LongVarcharTypeDescriptor;
+
+/**
+ * Hibernate type of the data column of the metadata tables: a text column (like
+ * {@link org.hibernate.type.TextType}) where records can be stored compressed by
+ * {@link MetadataDataCodec}. Entities always hold the XML text.
+ */
+public class MetadataDataType extends AbstractSingleColumnStandardBasicType<String> {
+
+    public MetadataDataType() {
+        super(LongVarcharTypeDescriptor.INSTANCE, new DataTypeDescriptor());
+    }
+
+    @Override
+    public String getName() {
+        return "metadata_data";
+    }
+
+    private static final class DataTypeDescriptor extends StringTypeDescriptor {
+        @Override
+        public <X> X unwrap(String value, Class<X> type, WrapperOptions options) {
+            return super.unwrap(MetadataDataCodec.encode(value), type, options);
+        }
+
+        @Override
+        public <X> String wrap(X value, WrapperOptions options) {
+            return MetadataDataCodec.decode(super.wrap(value, options));
+        }
+    }
+}
@@ -0,0 +1,185 @@
+/*
+ * Copyright (C) 2001-2021 Food and Agriculture Organization of the
+ * United Nations (FAO-UN), United Nations World Food Programme (WFP)
+ * and United Nations Environment Programme (UNEP)
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or (at
+ * your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301, USA
+ *
+ * Contact: Jeroen Ticheler - FAO - Viale delle Terme di Caracalla 2,
+ * Rome - Italy. email: geonetwork@osgeo.org
+ */
+
+package org.fao.geonet.domain;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheStats;
+import com.google.common.cache.RemovalListener;
+import com.google.common.hash.HashCode;
+import com.google.common.hash.Hashing;
+import com.google.common.util.concurrent.UncheckedExecutionException;
+import org.fao.geonet.utils.Xml;
+import org.jdom.Element;
+import org.jdom.JDOMException;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Objects;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Parsed XML documents of metadata records, used by {@link AbstractMetadata#getXmlData(boolean)}
+ * so that a record read several times (by the indexer, the formatters, CSW, OAI-PMH...) is only
+ * parsed once.
+ *
+ * <p>Documents are kept by id, change date and a SHA-256 digest of the XML text so an entry never
+ * describes another version of the record, even when the data is changed without updating the
+ * change date. Callers get a copy of the cached document which they are free to modify.
+ * {@link #invalidate(int)} is called when a record is updated or removed to free the memory
+ * used by the old version.</p>
+ *
+ * <p>The size of the cache is the estimated memory used by the documents.</p>
+ */
+public final class MetadataXmlCache {
+    /**
+     * Rough memory used by a parsed document for each character of its XML text.
+     */
+    static final int ESTIMATED_BYTES_PER_CHAR = 6;
+
+    private static final AtomicLong ESTIMATED_SIZE = new AtomicLong();
+    private static volatile long maximumSizeB = 64L * 1024 * 1024;
+    private static volatile Cache<Key, Element> documents = build();
+
+    private MetadataXmlCache() {
+    }
+
+    private static Cache<Key, Element> build() {
+        RemovalListener<Key, Element> listener = notification ->
+            ESTIMATED_SIZE.addAndGet(-weight(notification.getKey()));
+        return CacheBuilder.newBuilder()
+            .maximumWeight(maximumSizeB)
+            .weigher((Key key, Element value) -> weight(key))
+            .removalListener(listener)
+            .recordStats()
+            .build();
+    }
+
+    private static int weight(Key key) {
+        return (int) Math.min(Integer.MAX_VALUE, (long) key.length * ESTIMATED_BYTES_PER_CHAR);
+    }
+
+    /**
+     * @return a copy of the parsed data of the record.
+     */
+    public static Element get(int id, ISODate changeDate, String data) throws IOException, JDOMException {
+        if (maximumSizeB <= 0 || data == null) {
+            return Xml.loadString(data, false);
+        }
+        Key key = new Key(id, changeDate == null ? null : changeDate.getDateAndTime(), data);
+        try {
+            Element document = documents.get(key, () -> {
+                Element parsed = Xml.loadString(data, false);
+                ESTIMATED_SIZE.addAndGet(weight(key));
+                return parsed;
+            });
+            return (Element) document.clone();
+        } catch (ExecutionException | UncheckedExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof IOException) {
+                throw (IOException) cause;
+            } else if (cause instanceof JDOMException) {
+                throw (JDOMException) cause;
+            } else if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            throw new RuntimeException(cause);
+        }
+    }
+
+    /**
+     * Remove all versions of a record.
+     */
+    public static void invalidate(int id) {
+        if (documents.size() > 0) {
+            documents.asMap().keySet().removeIf(key -> key.id == id);
+        }
+    }
+
+    public static void invalidateAll() {
+        documents.invalidateAll();
+    }
+
+    /**
+     * @param maximumSizeMb estimated memory used by the documents, 0 to disable the cache.
+     */
+    public static synchronized void setMaximumSizeMb(int maximumSizeMb) {
+        long size = maximumSizeMb * 1024L * 1024;
+        if (size != maximumSizeB) {
+            maximumSizeB = size;
+            Cache<Key, Element> old = documents;
+            documents = build();
+            old.invalidateAll();
+        }
+    }
+
+    public static long getMaximumSizeB() {
+        return maximumSizeB;
+    }
+
+    public static long getEstimatedSizeB() {
+        return ESTIMATED_SIZE.get();
+    }
+
+    public static long size() {
+        return documents.size();
+    }
+
+    public static CacheStats stats() {
+        return documents.stats();
+    }
+
+    private static final class Key {
+        private final int id;
+        private final String changeDate;
+        private final int length;
+        private final HashCode digest;
+
+        private Key(int id, String changeDate, String data) {
+            this.id = id;
+            this.changeDate = changeDate;
+            this.length = data.length();
+            this.digest = Hashing.sha256().hashString(data, StandardCharsets.UTF_8);
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof Key)) {
+                return false;
+            }
+            Key key = (Key) o;
+            return id == key.id && length == key.length && digest.equals(key.digest)
+                && Objects.equals(changeDate, key.changeDate);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(id, changeDate, length, digest);
+        }
+    }
+}
@@ -26,6 +26,9 @@ package org.fao.geonet.repository;
 import org.fao.geonet.domain.InspireAtomFeed;
 import org.springframework.data.jpa.repository.JpaSpecificationExecutor;
 
+import java.util.Collection;
+import java.util.List;
+
 
 /**
  * Repository class for InspireAtomFeed. Repository class for InspireAtomFeed.
@@ -41,4 +44,12 @@ public interface InspireAtomFeedRepository extends GeonetRepository<InspireAtomF
      * @return the metadata related to the inspire atom feed
      */
     InspireAtomFeed findByMetadataId(final int metadataId);
+
+    /**
+     * Find the inspire atom feeds related to a set of metadata.
+     *
+     * @param metadataIds metadata identifiers
+     * @return the inspire atom feeds of those metadata
+     */
+    List<InspireAtomFeed> findAllByMetadataIdIn(Collection<Integer> metadataIds);
 }
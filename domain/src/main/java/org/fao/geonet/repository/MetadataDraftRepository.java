@@ -23,6 +23,7 @@
 
 package org.fao.geonet.repository;
 
+import java.util.Collection;
 import java.util.List;
 
 import javax.annotation.Nonnull;
@@ -30,6 +31,8 @@ import javax.annotation.Nullable;
 
 import org.fao.geonet.domain.MetadataDraft;
 import org.springframework.data.jpa.repository.JpaSpecificationExecutor;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 
 /**
  * Data Access object for the {@link MetadataDraft} entities.
@@ -68,4 +71,24 @@ public interface MetadataDraftRepository
      */
     @Nonnull
     List<MetadataDraft> findAllByHarvestInfo_Uuid(@Nonnull String uuid);
+
+    /**
+     * Find the id and uuid of the drafts having one of the ids.
+     *
+     * @param ids the draft ids
+     * @return the id and uuid of the drafts found.
+     */
+    @Nonnull
+    @Query("SELECT m.id, m.uuid FROM MetadataDraft m WHERE m.id IN :ids")
+    List<Object[]> findIdAndUuidByIdIn(@Param("ids") Collection<Integer> ids);
+
+    /**
+     * Find the id and uuid of the drafts having one of the uuids.
+     *
+     * @param uuids the draft uuids
+     * @return the id and uuid of the drafts found.
+     */
+    @Nonnull
+    @Query("SELECT m.id, m.uuid FROM MetadataDraft m WHERE m.uuid IN :uuids")
+    List<Object[]> findIdAndUuidByUuidIn(@Param("uuids") Collection<String> uuids);
 }
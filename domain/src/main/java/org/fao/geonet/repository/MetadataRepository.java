@@ -23,6 +23,7 @@
 
 package org.fao.geonet.repository;
 
+import java.util.Collection;
 import java.util.List;
 
 import javax.annotation.Nonnull;
@@ -76,6 +77,36 @@ public interface MetadataRepository extends GeonetRepository<Metadata, Integer>,
     @Nonnull
     List<Metadata> findAllByHarvestInfo_Uuid(@Nonnull String uuid);
 
+    /**
+     * Find all metadata having one of the ids, with their categories loaded by the same query.
+     *
+     * @param ids the metadata ids
+     * @return the metadata found.
+     */
+    @Nonnull
+    @Query("SELECT DISTINCT m FROM Metadata m LEFT JOIN FETCH m.metadataCategories WHERE m.id IN :ids")
+    List<Metadata> findAllWithCategoriesByIdIn(@Param("ids") Collection<Integer> ids);
+
+    /**
+     * Find the id and uuid of the metadata having one of the ids.
+     *
+     * @param ids the metadata ids
+     * @return the id and uuid of the metadata found.
+     */
+    @Nonnull
+    @Query("SELECT m.id, m.uuid FROM Metadata m WHERE m.id IN :ids")
+    List<Object[]> findIdAndUuidByIdIn(@Param("ids") Collection<Integer> ids);
+
+    /**
+     * Find the id and uuid of the metadata having one of the uuids.
+     *
+     * @param uuids the metadata uuids
+     * @return the id and uuid of the metadata found.
+     */
+    @Nonnull
+    @Query("SELECT m.id, m.uuid FROM Metadata m WHERE m.uuid IN :uuids")
+    List<Object[]> findIdAndUuidByUuidIn(@Param("uuids") Collection<String> uuids);
+
 
 
     @Query(value = "SELECT replace(data, :search, :replace) FROM metadata m " +
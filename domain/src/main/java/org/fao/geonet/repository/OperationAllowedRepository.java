@@ -23,6 +23,7 @@
 
 package org.fao.geonet.repository;
 
+import java.util.Collection;
 import java.util.List;
 
 import javax.annotation.Nonnegative;
@@ -55,6 +56,15 @@ public interface OperationAllowedRepository extends GeonetRepository<OperationAl
     @Nonnull
     List<OperationAllowed> findAllById_MetadataId(int metadataId);
 
+    /**
+     * Find all operations allowed entities of a set of metadata.
+     *
+     * @param metadataIds the metadata ids
+     * @return all operation allowed entities of those metadata.
+     */
+    @Nonnull
+    List<OperationAllowed> findAllById_MetadataIdIn(Collection<Integer> metadataIds);
+
     /**
      * Find all operations allowed entities with the given groupid.
      *
@@ -135,5 +145,21 @@ public interface OperationAllowedRepository extends GeonetRepository<OperationAl
     @Query("DELETE FROM OperationAllowed where metadataId = :metadataId and groupId not in :groupIds")
     public int deleteAllByMetadataIdExceptGroupId(@Param("metadataId") int metadataId, @Param("groupIds") List<Integer> groupIds);
 
+    /**
+     * Delete an operation of a group on a set of metadata.
+     *
+     * @param groupId     the group id
+     * @param operationId the operation id
+     * @param metadataIds the metadata ids
+     * @return the number of entities deleted.
+     */
+    @Nonnegative
+    @Transactional
+    @Modifying(clearAutomatically=true)
+    @Query("DELETE FROM OperationAllowed where id.groupId = :groupId and id.operationId = :operationId and id.metadataId in :metadataIds")
+    public int deleteAllByGroupIdAndOperationIdAndMetadataIdIn(@Param("groupId") int groupId,
+                                                              @Param("operationId") int operationId,
+                                                              @Param("metadataIds") Collection<Integer> metadataIds);
+
 
 }
@@ -22,6 +22,7 @@
  */
 package org.fao.geonet.repository.userfeedback;
 
+import java.util.Collection;
 import java.util.List;
 import java.util.UUID;
 
@@ -32,6 +33,7 @@ import org.springframework.data.domain.Sort;
 import org.springframework.data.jpa.repository.JpaRepository;
 import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import org.springframework.transaction.annotation.Transactional;
 
 /**
@@ -56,6 +58,15 @@ public interface UserFeedbackRepository extends JpaRepository<UserFeedback, UUID
      */
     List<UserFeedback> findByMetadata_Uuid(String metadataUuid);
 
+    /**
+     * Count the feedbacks of a set of metadata.
+     *
+     * @param metadataIds the metadata ids
+     * @return pairs of metadata id and number of feedbacks, for the metadata having feedbacks
+     */
+    @Query("SELECT uf.metadata.id, COUNT(uf) FROM GUF_UserFeedback uf WHERE uf.metadata.id IN :metadataIds GROUP BY uf.metadata.id")
+    List<Object[]> countByMetadataIds(@Param("metadataIds") Collection<Integer> metadataIds);
+
     /**
      * Find by metadata uuid and status order by date desc.
      *
@@ -0,0 +1,79 @@
+/*
+ * Copyright (C) 2001-2021 Food and Agriculture Organization of the
+ * United Nations (FAO-UN), United Nations World Food Programme (WFP)
+ * and United Nations Environment Programme (UNEP)
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or (at
+ * your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301, USA
+ *
+ * Contact: Jeroen Ticheler - FAO - Viale delle Terme di Caracalla 2,
+ * Rome - Italy. email: geonetwork@osgeo.org
+ */
+
+package org.fao.geonet.domain;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class MetadataDataCodecTest {
+
+    private String record;
+
+    @Before
+    public void setUp() {
+        StringBuilder xml = new StringBuilder("<gmd:MD_Metadata xmlns:gmd=\"http://www.isotc211.org/2005/gmd\">\n");
+        for (int i = 0; i < 200; i++) {
+            xml.append("  <gmd:contact>\n    <gmd:name>Contact ").append(i).append(" éàü</gmd:name>\n  </gmd:contact>\n");
+        }
+        record = xml.append("</gmd:MD_Metadata>").toString();
+        MetadataDataCodec.setCompress(true);
+        MetadataDataCodec.setMinLength(100);
+    }
+
+    @After
+    public void tearDown() {
+        MetadataDataCodec.setCompress(false);
+        MetadataDataCodec.setMinLength(4096);
+    }
+
+    @Test
+    public void testRoundTrip() {
+        String stored = MetadataDataCodec.encode(record);
+        assertTrue(MetadataDataCodec.isEncoded(stored));
+        assertTrue(stored.length() < record.length() / 4);
+        assertEquals(record, MetadataDataCodec.decode(stored));
+    }
+
+    @Test
+    public void testShortRecordsAreStoredAsText() {
+        String shortRecord = "<record/>";
+        assertSame(shortRecord, MetadataDataCodec.encode(shortRecord));
+    }
+
+    @Test
+    public void testCompressedRecordsAreReadWhenDisabled() {
+        String stored = MetadataDataCodec.encode(record);
+        MetadataDataCodec.setCompress(false);
+
+        assertFalse(MetadataDataCodec.isEncoded(MetadataDataCodec.encode(record)));
+        assertEquals(record, MetadataDataCodec.decode(stored));
+        assertSame(record, MetadataDataCodec.decode(record));
+    }
+}
@@ -0,0 +1,88 @@
+/*
+ * Copyright (C) 2001-2021 Food and Agriculture Organization of the
+ * United Nations (FAO-UN), United Nations World Food Programme (WFP)
+ * and United Nations Environment Programme (UNEP)
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or (at
+ * your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301, USA
+ *
+ * Contact: Jeroen Ticheler - FAO - Viale delle Terme di Caracalla 2,
+ * Rome - Italy. email: geonetwork@osgeo.org
+ */
+
+package org.fao.geonet.domain;
+
+import org.jdom.Element;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+
+public class MetadataXmlCacheTest {
+
+    private static final ISODate CHANGE_DATE = new ISODate("2021-01-01T00:00:00");
+
+    @Before
+    public void setUp() {
+        MetadataXmlCache.invalidateAll();
+    }
+
+    @After
+    public void tearDown() {
+        MetadataXmlCache.invalidateAll();
+    }
+
+    @Test
+    public void testCallersGetCopies() throws Exception {
+        long misses = MetadataXmlCache.stats().missCount();
+        Element first = MetadataXmlCache.get(1, CHANGE_DATE, "<record><title>a</title></record>");
+        first.getChild("title").setText("changed");
+
+        Element second = MetadataXmlCache.get(1, CHANGE_DATE, "<record><title>a</title></record>");
+        assertNotSame(first, second);
+        assertEquals("a", second.getChildText("title"));
+        assertEquals(misses + 1, MetadataXmlCache.stats().missCount());
+        assertEquals(1, MetadataXmlCache.size());
+        assertEquals(33 * MetadataXmlCache.ESTIMATED_BYTES_PER_CHAR, MetadataXmlCache.getEstimatedSizeB());
+    }
+
+    @Test
+    public void testDataChangedWithoutChangeDate() throws Exception {
+        MetadataXmlCache.get(1, CHANGE_DATE, "<record><title>a</title></record>");
+        Element updated = MetadataXmlCache.get(1, CHANGE_DATE, "<record><title>b</title></record>");
+        assertEquals("b", updated.getChildText("title"));
+    }
+
+    @Test
+    public void testDataWithSameHashCode() throws Exception {
+        String first = "<record><title>Aa</title></record>";
+        String second = "<record><title>BB</title></record>";
+        assertEquals(first.hashCode(), second.hashCode());
+
+        MetadataXmlCache.get(1, CHANGE_DATE, first);
+        assertEquals("BB", MetadataXmlCache.get(1, CHANGE_DATE, second).getChildText("title"));
+    }
+
+    @Test
+    public void testInvalidate() throws Exception {
+        MetadataXmlCache.get(1, CHANGE_DATE, "<record/>");
+        MetadataXmlCache.get(2, CHANGE_DATE, "<record/>");
+        MetadataXmlCache.invalidate(1);
+
+        assertEquals(1, MetadataXmlCache.size());
+        assertEquals(9 * MetadataXmlCache.ESTIMATED_BYTES_PER_CHAR, MetadataXmlCache.getEstimatedSizeB());
+    }
+}
@@ -27,6 +27,7 @@ import org.fao.geonet.domain.*;
 import org.junit.Test;
 import org.springframework.beans.factory.annotation.Autowired;
 
+import java.util.Arrays;
 import java.util.List;
 import java.util.concurrent.atomic.AtomicInteger;
 
@@ -78,6 +79,19 @@ public class MetadataValidationRepositoryTest extends AbstractSpringDataTest {
         assertEquals(val3.getId(), found.get(0).getId());
     }
 
+    @Test
+    public void testFindById_MetadataIdIn() throws Exception {
+        MetadataValidation val1 = _metadataValidationRepository.save(newValidation());
+        MetadataValidation val2 = _metadataValidationRepository.save(newValidation());
+        _metadataValidationRepository.save(newValidation());
+
+        List<MetadataValidation> found = _metadataValidationRepository.findAllById_MetadataIdIn(
+            Arrays.asList(val1.getId().getMetadataId(), val2.getId().getMetadataId()));
+        assertEquals(2, found.size());
+        assertTrue(found.stream().anyMatch(v -> v.getId().equals(val1.getId())));
+        assertTrue(found.stream().anyMatch(v -> v.getId().equals(val2.getId())));
+    }
+
     @Test
     public void testDeleteAllById_MetadataId() throws Exception {
         MetadataValidation val1 = _metadataValidationRepository.save(newValidation());
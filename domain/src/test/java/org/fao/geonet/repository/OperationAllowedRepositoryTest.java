@@ -68,6 +68,20 @@ public class OperationAllowedRepositoryTest extends AbstractOperationsAllowedTes
         assertTrue(opAllowedFound.contains(_opAllowed4));
     }
 
+    @Test
+    public void testFindByMetadataIdIn() {
+        List<OperationAllowed> opAllowedFound = _opAllowRepo.findAllById_MetadataIdIn(Arrays.asList(_md1.getId(), _md2.getId()));
+        assertEquals(4, opAllowedFound.size());
+        assertTrue(opAllowedFound.contains(_opAllowed1));
+        assertTrue(opAllowedFound.contains(_opAllowed2));
+        assertTrue(opAllowedFound.contains(_opAllowed3));
+        assertTrue(opAllowedFound.contains(_opAllowed4));
+
+        opAllowedFound = _opAllowRepo.findAllById_MetadataIdIn(Arrays.asList(_md2.getId()));
+        assertEquals(1, opAllowedFound.size());
+        assertTrue(opAllowedFound.contains(_opAllowed2));
+    }
+
     @Test
     public void testFindByOperationId() {
         List<OperationAllowed> opAllowedFound = _opAllowRepo.findAllById_OperationId(_viewOp.getId());
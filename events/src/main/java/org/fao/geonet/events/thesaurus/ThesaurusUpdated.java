@@ -0,0 +1,47 @@
+/*
+ * Copyright (C) 2001-2016 Food and Agriculture Organization of the
+ * United Nations (FAO-UN), United Nations World Food Programme (WFP)
+ * and United Nations Environment Programme (UNEP)
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or (at
+ * your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301, USA
+ *
+ * Contact: Jeroen Ticheler - FAO - Viale delle Terme di Caracalla 2,
+ * Rome - Italy. email: geonetwork@osgeo.org
+ */
+
+package org.fao.geonet.events.thesaurus;
+
+import org.springframework.context.ApplicationEvent;
+
+/**
+ * Event launched when the concepts of a thesaurus are modified or when a thesaurus is
+ * loaded, reloaded or removed.
+ */
+public class ThesaurusUpdated extends ApplicationEvent {
+
+    private static final long serialVersionUID = 7713450822650218L;
+
+    public ThesaurusUpdated(String thesaurusKey) {
+        super(thesaurusKey);
+    }
+
+    /**
+     * @return the key of the thesaurus (eg. external.theme.gemet)
+     */
+    public String getThesaurusKey() {
+        return (String) getSource();
+    }
+
+}
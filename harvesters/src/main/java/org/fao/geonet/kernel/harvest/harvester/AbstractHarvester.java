@@ -589,6 +589,10 @@ public abstract class AbstractHarvester<T extends HarvestResult, P extends Abstr
         return status;
     }
 
+    public boolean isRunning() {
+        return running;
+    }
+
     /**
      * Nested class to handle harvesting with fast indexing.
      */
@@ -99,6 +99,13 @@ public class RecordInfo {
         return uuid.hashCode();
     }
 
+    /**
+     * @return false if the record had no change date and the current date was used instead.
+     */
+    public boolean hasChangeDate() {
+        return !dateWasNull;
+    }
+
     public boolean isMoreRecentThan(String localChangeDate) {
         if (dateWasNull)
             return true;
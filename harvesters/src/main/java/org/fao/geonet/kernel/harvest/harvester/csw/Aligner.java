@@ -78,7 +78,12 @@ import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.UUID;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import static org.fao.geonet.kernel.setting.Settings.SYSTEM_CSW_TRANSACTION_XPATH_UPDATE_CREATE_NEW_ELEMENTS;
 import static org.fao.geonet.utils.AbstractHttpRequest.Method.GET;
@@ -100,7 +105,9 @@ public class Aligner extends BaseAligner<CswParams> {
     private IMetadataIndexer metadataIndexer;
 
     private HarvestResult result;
+    private CswServer server;
     private GetRecordByIdRequest request;
+    private ExecutorService executor;
     private String processName;
     private Map<String, Object> processParams = new HashMap<String, Object>();
     private Logger log;
@@ -108,6 +115,7 @@ public class Aligner extends BaseAligner<CswParams> {
     public Aligner(AtomicBoolean cancelMonitor, ServiceContext sc, CswServer server, CswParams params, Logger log) throws OperationAbortedEx {
         super(cancelMonitor);
         this.context = sc;
+        this.server = server;
         this.params = params;
         this.log = log;
 
@@ -122,9 +130,15 @@ public class Aligner extends BaseAligner<CswParams> {
         result.couldNotInsert = 0;
         result.xpathFilterExcluded = 0;
 
-        //--- setup get-record-by-id request
+        request = createGetRecordByIdRequest();
+    }
 
-        request = new GetRecordByIdRequest(sc);
+    /**
+     * Setup a get-record-by-id request. Requests are not thread safe, each fetch worker uses
+     * its own.
+     */
+    private GetRecordByIdRequest createGetRecordByIdRequest() throws OperationAbortedEx {
+        GetRecordByIdRequest request = new GetRecordByIdRequest(context);
         request.setElementSetName(ElementSetName.FULL);
 
         CswOperation oper = server.getOperation(CswServer.GET_RECORD_BY_ID);
@@ -161,7 +175,7 @@ public class Aligner extends BaseAligner<CswParams> {
         if (params.isUseAccount()) {
             request.setCredentials(params.getUsername(), params.getPassword());
         }
-
+        return request;
     }
 
     public HarvestResult align(Collection<RecordInfo> records, Collection<HarvestError> errors) throws Exception {
@@ -189,63 +203,252 @@ public class Aligner extends BaseAligner<CswParams> {
         return result;
     }
 
+    public HarvestResult getResult() {
+        return result;
+    }
+
+    /**
+     * Stop the fetch workers, if any.
+     */
+    public void close() {
+        if (executor != null) {
+            executor.shutdownNow();
+            executor = null;
+        }
+    }
+
+    /**
+     * Align the records of a GetRecords page. Records are first checked against the local
+     * ones, then the records to add or update are retrieved and converted and finally saved in
+     * the order of the page.
+     *
+     * <p>With more than one fetch thread or more than one id per GetRecordById request, records
+     * are retrieved and converted by the fetch workers while the previous ones are saved.</p>
+     */
     private void insertOrUpdate(Collection<RecordInfo> records, Collection<HarvestError> errors) {
+        List<RecordTask> tasks = new ArrayList<>(records.size());
         for (RecordInfo ri : records) {
-
             if (cancelMonitor.get()) {
                 return;
             }
+            RecordTask task = new RecordTask(ri);
             try {
-                String id = metadataUtils.getMetadataId(ri.uuid);
-
-                if (id == null) {
-                    //record doesn't exist (so it doesn't belong to this harvester)
-                    log.debug("Adding record with uuid " + ri.uuid);
-                    addMetadata(ri, ri.uuid);
-                } else if (localUuids.getID(ri.uuid) == null) {
-                    //Record does not belong to this harvester
-                    result.datasetUuidExist++;
-
-                    switch (params.getOverrideUuid()) {
-                        case OVERRIDE:
-                            updateMetadata(ri, Integer.toString(metadataUtils.findOneByUuid(ri.uuid).getId()), true);
-                            log.debug("Overriding record with uuid " + ri.uuid);
-
-                            if (params.isIfRecordExistAppendPrivileges()) {
-                                addPrivileges(id, params.getPrivileges(), localGroups, context);
-                                result.privilegesAppendedOnExistingRecord++;
-                            }
-                            break;
-                        case RANDOM:
-                            log.debug("Generating random uuid for remote record with uuid " + ri.uuid);
-                            addMetadata(ri, UUID.randomUUID().toString());
-                            break;
-                        case SKIP:
-                            log.debug("Skipping record with uuid " + ri.uuid);
-                            result.uuidSkipped++;
-                        default:
-                            break;
-                    }
-                } else {
-                    //record exists and belongs to this harvester
-                    updateMetadata(ri, id, false);
+                plan(task);
+            } catch (Throwable t) {
+                task.error = t;
+            }
+            tasks.add(task);
+        }
+
+        boolean pipelined = params.fetchThreads > 1 || params.idsPerRequest > 1;
+        if (pipelined) {
+            submitFetches(tasks);
+        }
 
-                    if (params.isIfRecordExistAppendPrivileges()) {
-                        addPrivileges(id, params.getPrivileges(), localGroups, context);
-                        result.privilegesAppendedOnExistingRecord++;
+        try {
+            for (RecordTask task : tasks) {
+                if (cancelMonitor.get()) {
+                    return;
+                }
+                RecordInfo ri = task.ri;
+                try {
+                    if (task.error != null) {
+                        throw task.error;
                     }
+                    if (task.fetch && task.prepared == null && task.fetched == null) {
+                        task.prepared = prepare(task, retrieveMetadata(request, ri.uuid));
+                    }
+                    store(task);
+                    result.totalMetadata++;
+                } catch (Throwable t) {
+                    errors.add(new HarvestError(this.context, t));
+                    log.error("Unable to process record from csw (" + this.params.getName() + ")");
+                    log.error("   Record failed: " + ri.uuid + ". Error is: " + t.getMessage());
+                    log.error(t);
+                } finally {
+                    result.originalMetadata++;
+                    // free the memory of saved records
+                    task.prepared = null;
+                }
+            }
+        } finally {
+            for (RecordTask task : tasks) {
+                if (task.fetched != null) {
+                    task.fetched.cancel(true);
                 }
+            }
+        }
+    }
 
-                result.totalMetadata++;
-            } catch (Throwable t) {
-                errors.add(new HarvestError(this.context, t));
-                log.error("Unable to process record from csw (" + this.params.getName() + ")");
-                log.error("   Record failed: " + ri.uuid + ". Error is: " + t.getMessage());
-                log.error(t);
-            } finally {
-                result.originalMetadata++;
+    /**
+     * Find out what to do with a record: add it, update it or leave it as is.
+     */
+    private void plan(RecordTask task) throws Exception {
+        RecordInfo ri = task.ri;
+        String id = metadataUtils.getMetadataId(ri.uuid);
+
+        if (id == null) {
+            //record doesn't exist (so it doesn't belong to this harvester)
+            log.debug("Adding record with uuid " + ri.uuid);
+            task.add(ri.uuid);
+        } else if (localUuids.getID(ri.uuid) == null) {
+            //Record does not belong to this harvester
+            result.datasetUuidExist++;
+
+            switch (params.getOverrideUuid()) {
+                case OVERRIDE:
+                    log.debug("Overriding record with uuid " + ri.uuid);
+                    task.update(Integer.toString(metadataUtils.findOneByUuid(ri.uuid).getId()), true);
+                    task.appendPrivilegesTo = id;
+                    break;
+                case RANDOM:
+                    log.debug("Generating random uuid for remote record with uuid " + ri.uuid);
+                    task.add(UUID.randomUUID().toString());
+                    break;
+                case SKIP:
+                    log.debug("Skipping record with uuid " + ri.uuid);
+                    result.uuidSkipped++;
+                default:
+                    break;
+            }
+        } else {
+            //record exists and belongs to this harvester
+            String date = localUuids.getChangeDate(ri.uuid);
+            if (date == null) {
+                log.debug("  - Skipped metadata managed by another harvesting node. uuid:" + ri.uuid + ", name:" + params.getName());
+            } else if (!ri.isMoreRecentThan(date)) {
+                log.debug("  - Metadata XML not changed for uuid:" + ri.uuid);
+                result.unchangedMetadata++;
+            } else {
+                log.debug("  - Updating local metadata for uuid:" + ri.uuid);
+                task.update(id, false);
+            }
+            task.appendPrivilegesTo = id;
+        }
+    }
+
+    /**
+     * Retrieve and convert the records to add or update in the fetch workers, with
+     * {@link CswParams#idsPerRequest} ids per GetRecordById request.
+     */
+    private void submitFetches(List<RecordTask> tasks) {
+        ExecutorService executor = getExecutor();
+        List<RecordTask> batch = new ArrayList<>();
+        for (RecordTask task : tasks) {
+            if (task.error == null && task.fetch) {
+                batch.add(task);
+                if (batch.size() >= params.idsPerRequest) {
+                    submitFetch(executor, batch);
+                    batch = new ArrayList<>();
+                }
+            }
+        }
+        if (!batch.isEmpty()) {
+            submitFetch(executor, batch);
+        }
+    }
+
+    private void submitFetch(ExecutorService executor, List<RecordTask> batch) {
+        Future<?> future = executor.submit(() -> {
+            context.setAsThreadLocal();
+            fetch(batch);
+            return null;
+        });
+        for (RecordTask task : batch) {
+            task.fetched = future;
+        }
+    }
+
+    private void fetch(List<RecordTask> batch) throws Exception {
+        GetRecordByIdRequest workerRequest = createGetRecordByIdRequest();
+        Map<String, Element> records = new HashMap<>();
+        if (batch.size() > 1) {
+            List<String> uuids = new ArrayList<>();
+            for (RecordTask task : batch) {
+                uuids.add(task.ri.uuid);
+            }
+            try {
+                records = retrieveRecords(workerRequest, uuids);
+            } catch (Exception e) {
+                log.warning("Error getting " + uuids.size() + " records at once, getting them one by one: " + e.getMessage());
+            }
+        }
+        for (RecordTask task : batch) {
+            if (cancelMonitor.get() || Thread.currentThread().isInterrupted()) {
+                return;
+            }
+            Element md = records.get(task.ri.uuid);
+            // records not returned with the others (eg. servers returning only the first
+            // record or records without uuid in the output schema) are requested alone
+            Prepared prepared = md != null
+                ? prepare(task, checkMetadata(task.ri.uuid, md))
+                : prepare(task, retrieveMetadata(workerRequest, task.ri.uuid));
+            task.prepared = prepared;
+        }
+    }
+
+    private synchronized ExecutorService getExecutor() {
+        if (executor == null) {
+            AtomicInteger threadCount = new AtomicInteger();
+            String name = "csw-harvester-" + params.getUuid() + "-";
+            executor = Executors.newFixedThreadPool(params.fetchThreads, runnable -> {
+                Thread thread = new Thread(runnable, name + threadCount.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+        return executor;
+    }
+
+    /**
+     * Wait for the record to be retrieved and converted by the fetch workers.
+     */
+    private Prepared getPrepared(RecordTask task) throws Throwable {
+        if (task.fetched != null) {
+            try {
+                task.fetched.get();
+            } catch (ExecutionException e) {
+                throw e.getCause();
+            }
+        }
+        return task.prepared;
+    }
+
+    private void store(RecordTask task) throws Throwable {
+        if (task.fetch) {
+            Prepared prepared = getPrepared(task);
+            if (prepared == null) {
+                throw new IllegalStateException("Record " + task.ri.uuid + " was not retrieved.");
+            }
+            switch (prepared.status) {
+                case INVALID:
+                    result.doesNotValidate++;
+                    break;
+                case DUPLICATE:
+                    result.duplicatedResource++;
+                    result.unchangedMetadata++;
+                    break;
+                case UNRETRIEVABLE:
+                    result.unretrievable++;
+                    break;
+                default:
+                    break;
+            }
+            if (prepared.error != null) {
+                throw prepared.error;
+            }
+
+            if (task.add) {
+                addMetadata(task.ri, task.uuid, prepared);
+            } else {
+                updateMetadata(task.ri, task.id, task.force, prepared);
             }
         }
+
+        if (task.appendPrivilegesTo != null && params.isIfRecordExistAppendPrivileges()) {
+            addPrivileges(task.appendPrivilegesTo, params.getPrivileges(), localGroups, context);
+            result.privilegesAppendedOnExistingRecord++;
+        }
     }
 
     /**
@@ -274,49 +477,67 @@ public class Aligner extends BaseAligner<CswParams> {
         return result;
     }
 
-
-    private void addMetadata(RecordInfo ri, String uuid) throws Exception {
-        if (cancelMonitor.get()) {
-            return;
+    /**
+     * Detect the schema of a retrieved record, filter and convert it. Runs in the fetch workers
+     * so it must not change the result.
+     */
+    private Prepared prepare(RecordTask task, Prepared prepared) {
+        Element md = prepared.md;
+        if (md == null) {
+            return prepared;
         }
+        try {
+            String schema = dataMan.autodetectSchema(md, null);
+            if (task.add && schema == null) {
+                log.debug("  - Metadata skipped due to unknown schema. uuid:" + task.ri.uuid);
+                return new Prepared(Status.UNKNOWN_SCHEMA);
+            }
 
-        Element md = retrieveMetadata(ri.uuid);
+            if (StringUtils.isNotEmpty(params.xpathFilter)) {
+                Object xpathResult = Xml.selectSingle(md, params.xpathFilter, new ArrayList<Namespace>(dataMan.getSchema(schema).getNamespaces()));
+                boolean match = xpathResult instanceof Boolean && ((Boolean) xpathResult).booleanValue();
+                if (!match) {
+                    return new Prepared(Status.EXCLUDED);
+                }
+            }
 
-        if (md == null) {
-            result.unretrievable++;
-            return;
-        }
+            if (!params.xslfilter.equals("")) {
+                md = processMetadata(context, md, processName, processParams);
+                String newSchema = dataMan.autodetectSchema(md);
+                prepared.updateSchema = !task.add && !newSchema.equals(schema);
+                schema = newSchema;
+            }
 
-        String schema = dataMan.autodetectSchema(md, null);
-        if (schema == null) {
-            log.debug("  - Metadata skipped due to unknown schema. uuid:" + ri.uuid);
-            result.unknownSchema++;
-            return;
+            applyBatchEdits(task.ri, md, schema);
+
+            prepared.md = md;
+            prepared.schema = schema;
+        } catch (Throwable t) {
+            prepared.error = t;
         }
+        return prepared;
+    }
 
-        if (StringUtils.isNotEmpty(params.xpathFilter)) {
-            Object xpathResult = Xml.selectSingle(md, params.xpathFilter, new ArrayList<Namespace>(dataMan.getSchema(schema).getNamespaces()));
-            boolean match = xpathResult instanceof Boolean && ((Boolean) xpathResult).booleanValue();
-            if(!match) {
-                result.xpathFilterExcluded ++;
-                return;
-            }
+    private void addMetadata(RecordInfo ri, String uuid, Prepared prepared) throws Exception {
+        if (cancelMonitor.get()) {
+            return;
         }
 
-        log.debug("  - Adding metadata with remote uuid:" + ri.uuid + " schema:" + schema);
+        Element md = prepared.md;
 
-        String mdUuid = ri.uuid;
-        if (!params.xslfilter.equals("")) {
-            md = processMetadata(context, md, processName, processParams);
-            schema = dataMan.autodetectSchema(md);
-            // Get new uuid if modified by XSLT process
-            mdUuid = metadataUtils.extractUUID(schema, md);
-            if (mdUuid == null) {
-                mdUuid = ri.uuid;
+        if (md == null) {
+            if (prepared.status == Status.UNKNOWN_SCHEMA) {
+                result.unknownSchema++;
+            } else if (prepared.status == Status.EXCLUDED) {
+                result.xpathFilterExcluded++;
+            } else {
+                result.unretrievable++;
             }
+            return;
         }
 
-        applyBatchEdits(ri, md, schema);
+        String schema = prepared.schema;
+        log.debug("  - Adding metadata with remote uuid:" + ri.uuid + " schema:" + schema);
 
         //
         // insert metadata
@@ -401,54 +622,29 @@ public class Aligner extends BaseAligner<CswParams> {
             }
         }
     }
-    private void updateMetadata(RecordInfo ri, String id, Boolean force) throws Exception {
-        String date = localUuids.getChangeDate(ri.uuid);
 
-        if (date == null && !force) {
-            log.debug("  - Skipped metadata managed by another harvesting node. uuid:" + ri.uuid + ", name:" + params.getName());
-        } else {
-            if (!force && !ri.isMoreRecentThan(date)) {
-                log.debug("  - Metadata XML not changed for uuid:" + ri.uuid);
-                result.unchangedMetadata++;
-            } else {
-                log.debug("  - Updating local metadata for uuid:" + ri.uuid);
-                if (updatingLocalMetadata(ri, id, force)) {
-                    metadataIndexer.indexMetadata(id, true);
-                    result.updatedMetadata++;
-                }
-            }
+    private void updateMetadata(RecordInfo ri, String id, Boolean force, Prepared prepared) throws Exception {
+        if (updatingLocalMetadata(ri, id, force, prepared)) {
+            metadataIndexer.indexMetadata(id, true);
+            result.updatedMetadata++;
         }
     }
+
     @Transactional(value = TxType.REQUIRES_NEW)
-    boolean updatingLocalMetadata(RecordInfo ri, String id, Boolean force) throws Exception {
-        Element md = retrieveMetadata(ri.uuid);
+    boolean updatingLocalMetadata(RecordInfo ri, String id, Boolean force, Prepared prepared) throws Exception {
+        Element md = prepared.md;
 
         if (md == null) {
-            result.unchangedMetadata++;
-            return false;
-        }
-
-
-        String schema = dataMan.autodetectSchema(md, null);
-
-        if (StringUtils.isNotEmpty(params.xpathFilter)) {
-            Object xpathResult = Xml.selectSingle(md, params.xpathFilter, new ArrayList<Namespace>(dataMan.getSchema(schema).getNamespaces()));
-            boolean match = xpathResult instanceof Boolean && ((Boolean) xpathResult).booleanValue();
-            if(!match) {
-                result.xpathFilterExcluded ++;
-                return false;
+            if (prepared.status == Status.EXCLUDED) {
+                result.xpathFilterExcluded++;
+            } else {
+                result.unchangedMetadata++;
             }
+            return false;
         }
 
-        boolean updateSchema = false;
-        if (!params.xslfilter.equals("")) {
-            md = processMetadata(context, md, processName, processParams);
-            String newSchema = dataMan.autodetectSchema(md);
-            updateSchema = !newSchema.equals(schema);
-            schema = newSchema;
-        }
-
-        applyBatchEdits(ri, md, schema);
+        String schema = prepared.schema;
+        boolean updateSchema = prepared.updateSchema;
 
         //
         // update metadata
@@ -482,12 +678,13 @@ public class Aligner extends BaseAligner<CswParams> {
 
     /**
      * Does CSW GetRecordById request. If validation is requested and the metadata does not
-     * validate, null is returned.
+     * validate, no metadata is returned.
      *
-     * @param uuid uuid of metadata to request
-     * @return metadata the metadata
+     * @param request the request to use
+     * @param uuid    uuid of metadata to request
+     * @return the metadata and the reason why it is missing, if so
      */
-    private Element retrieveMetadata(String uuid) {
+    private Prepared retrieveMetadata(GetRecordByIdRequest request, String uuid) {
         request.clearIds();
         request.addId(uuid);
 
@@ -505,42 +702,78 @@ public class Aligner extends BaseAligner<CswParams> {
             //--- maybe the metadata has been removed
 
             if (list.size() == 0) {
-                return null;
+                return new Prepared(Status.NOT_FOUND);
             }
 
             response = list.get(0);
             response = (Element) response.detach();
 
+            return checkMetadata(uuid, response);
+        } catch (Exception e) {
+            log.error("Raised exception while getting record : " + e);
+            log.error(e);
 
-            try {
-                Integer groupIdVal = null;
-                if (StringUtils.isNotEmpty(params.getOwnerIdGroup())) {
-                    groupIdVal = Integer.parseInt(params.getOwnerIdGroup());
-                }
+            //--- we don't raise any exception here. Just try to go on
+            return new Prepared(Status.UNRETRIEVABLE);
+        }
+    }
 
-                params.getValidate().validate(dataMan, context, response, groupIdVal);
-            } catch (Exception e) {
-                log.debug("Ignoring invalid metadata with uuid " + uuid);
-                result.doesNotValidate++;
-                return null;
+    /**
+     * Does a CSW GetRecordById request for several records.
+     *
+     * @param request the request to use
+     * @param uuids   uuids of the metadata to request
+     * @return the records returned by the server, by uuid
+     */
+    private Map<String, Element> retrieveRecords(GetRecordByIdRequest request, List<String> uuids) throws Exception {
+        request.clearIds();
+        for (String uuid : uuids) {
+            request.addId(uuid);
+        }
+
+        log.debug("Getting " + uuids.size() + " records from : " + request.getHost());
+
+        Element response = request.execute();
+
+        Map<String, Element> records = new HashMap<>();
+        @SuppressWarnings("unchecked")
+        List<Element> list = new ArrayList<>(response.getChildren());
+        for (Element record : list) {
+            record.detach();
+            String schema = dataMan.autodetectSchema(record, null);
+            String uuid = schema == null ? null : metadataUtils.extractUUID(schema, record);
+            if (uuid != null && uuids.contains(uuid)) {
+                records.put(uuid, record);
             }
+        }
+        return records;
+    }
 
-            if (params.rejectDuplicateResource) {
-                if (foundDuplicateForResource(uuid, response)) {
-                    result.unchangedMetadata++;
-                    return null;
-                }
+    /**
+     * Validate the record and check for duplicates, if requested.
+     */
+    private Prepared checkMetadata(String uuid, Element md) {
+        try {
+            Integer groupIdVal = null;
+            if (StringUtils.isNotEmpty(params.getOwnerIdGroup())) {
+                groupIdVal = Integer.parseInt(params.getOwnerIdGroup());
             }
 
-            return response;
+            params.getValidate().validate(dataMan, context, md, groupIdVal);
         } catch (Exception e) {
-            log.error("Raised exception while getting record : " + e);
-            log.error(e);
-            result.unretrievable++;
+            log.debug("Ignoring invalid metadata with uuid " + uuid);
+            return new Prepared(Status.INVALID);
+        }
 
-            //--- we don't raise any exception here. Just try to go on
-            return null;
+        if (params.rejectDuplicateResource) {
+            if (foundDuplicateForResource(uuid, md)) {
+                return new Prepared(Status.DUPLICATE);
+            }
         }
+
+        Prepared prepared = new Prepared(Status.OK);
+        prepared.md = md;
+        return prepared;
     }
 
     /**
@@ -594,8 +827,6 @@ public class Aligner extends BaseAligner<CswParams> {
                             if (!indexRecordUuid.equals(uuid)) {
                                 log.debug("      - UUID " + indexRecordUuid + " in index does not match harvested record UUID " + uuid);
                                 log.warning("      - Duplicates found. Skipping record with UUID " + uuid + " and resource identifier " + identifier);
-
-                                result.duplicatedResource++;
                                 return true;
                             }
                         }
@@ -637,4 +868,64 @@ public class Aligner extends BaseAligner<CswParams> {
         }
         return md;
     }
+
+    /**
+     * A record of a GetRecords page and what to do with it.
+     */
+    private static class RecordTask {
+        final RecordInfo ri;
+        /**
+         * Uuid of the record to add.
+         */
+        String uuid;
+        /**
+         * Id of the record to update.
+         */
+        String id;
+        boolean add;
+        boolean force;
+        /**
+         * True if the record has to be retrieved.
+         */
+        boolean fetch;
+        String appendPrivilegesTo;
+        Future<?> fetched;
+        volatile Prepared prepared;
+        Throwable error;
+
+        RecordTask(RecordInfo ri) {
+            this.ri = ri;
+        }
+
+        void add(String uuid) {
+            this.uuid = uuid;
+            this.add = true;
+            this.fetch = true;
+        }
+
+        void update(String id, boolean force) {
+            this.id = id;
+            this.force = force;
+            this.fetch = true;
+        }
+    }
+
+    private enum Status {
+        OK, NOT_FOUND, INVALID, DUPLICATE, UNRETRIEVABLE, UNKNOWN_SCHEMA, EXCLUDED
+    }
+
+    /**
+     * A retrieved record, converted and ready to be saved.
+     */
+    private static class Prepared {
+        final Status status;
+        Element md;
+        String schema;
+        boolean updateSchema;
+        Throwable error;
+
+        Prepared(Status status) {
+            this.status = status;
+        }
+    }
 }
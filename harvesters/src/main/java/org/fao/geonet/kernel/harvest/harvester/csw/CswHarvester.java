@@ -24,6 +24,7 @@
 package org.fao.geonet.kernel.harvest.harvester.csw;
 
 import org.fao.geonet.Logger;
+import org.fao.geonet.domain.ISODate;
 import org.fao.geonet.kernel.harvest.harvester.AbstractHarvester;
 import org.fao.geonet.kernel.harvest.harvester.HarvestResult;
 import org.jdom.Element;
@@ -60,6 +61,14 @@ public class CswHarvester extends AbstractHarvester<HarvestResult, CswParams> {
         harvesterSettingsManager.add("id:" + siteId, "xslfilter", params.xslfilter);
         harvesterSettingsManager.add("id:" + siteId, "outputSchema", params.outputSchema);
         harvesterSettingsManager.add("id:" + siteId, "sortBy", params.sortBy);
+        harvesterSettingsManager.add("id:" + siteId, "pageSize", params.pageSize);
+        harvesterSettingsManager.add("id:" + siteId, "fetchThreads", params.fetchThreads);
+        harvesterSettingsManager.add("id:" + siteId, "idsPerRequest", params.idsPerRequest);
+        harvesterSettingsManager.add("id:" + siteId, "incremental", params.incremental);
+        harvesterSettingsManager.add("id:" + siteId, "modifiedQueryable", params.modifiedQueryable);
+        harvesterSettingsManager.add("id:" + siteId, "fullHarvestDays", params.fullHarvestDays);
+        harvesterSettingsManager.add("id:" + siteId, "modifiedSince", params.modifiedSince);
+        harvesterSettingsManager.add("id:" + siteId, "lastFullHarvest", params.lastFullHarvest);
 
         //--- store dynamic filter nodes
         String filtersID = harvesterSettingsManager.add(path, "filters", "");
@@ -93,5 +102,23 @@ public class CswHarvester extends AbstractHarvester<HarvestResult, CswParams> {
     public void doHarvest(Logger log) throws Exception {
         Harvester h = new Harvester(cancelMonitor, log, context, params);
         result = h.harvest(log);
+
+        //--- remember where the next incremental harvest starts from
+        if (params.incremental && h.isComplete()) {
+            params.modifiedSince = h.getModifiedSince();
+            storeSiteValue("modifiedSince", params.modifiedSince);
+            if (h.isFullHarvest()) {
+                params.lastFullHarvest = new ISODate().toString();
+                storeSiteValue("lastFullHarvest", params.lastFullHarvest);
+            }
+        }
+    }
+
+    private void storeSiteValue(String name, String value) {
+        String path = "harvesting/id:" + getID() + "/site";
+        // harvesters created before incremental harvesting don't have the setting
+        if (!harvesterSettingsManager.setValue(path + "/" + name, value)) {
+            harvesterSettingsManager.add(path, name, value);
+        }
     }
 }
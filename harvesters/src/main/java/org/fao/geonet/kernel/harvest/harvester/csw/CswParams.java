@@ -37,6 +37,20 @@ import java.util.List;
  */
 public class CswParams extends AbstractParams {
 
+    public static final int DEFAULT_PAGE_SIZE = 20;
+
+    private static final int MAX_PAGE_SIZE = 1000;
+
+    private static final int MAX_FETCH_THREADS = 16;
+
+    private static final int MAX_IDS_PER_REQUEST = 100;
+
+    public static final String DEFAULT_MODIFIED_QUERYABLE = "Modified";
+
+    public static final int DEFAULT_FULL_HARVEST_DAYS = 7;
+
+    private static final int MAX_FULL_HARVEST_DAYS = 365;
+
     public String capabUrl;
 
     public String icon;
@@ -53,6 +67,47 @@ public class CswParams extends AbstractParams {
 
     public Integer hopCount;
 
+    /**
+     * Number of records requested by GetRecords request.
+     */
+    public int pageSize = DEFAULT_PAGE_SIZE;
+
+    /**
+     * Number of threads retrieving and converting records while the previous ones are saved.
+     */
+    public int fetchThreads = 1;
+
+    /**
+     * Number of records requested by GetRecordById request.
+     */
+    public int idsPerRequest = 1;
+
+    /**
+     * If true, only the records modified since the previous harvest are requested, except for
+     * the full harvests made every {@link #fullHarvestDays} days to remove the records deleted
+     * from the remote node.
+     */
+    public boolean incremental;
+
+    /**
+     * Queryable of the modification date used by incremental harvests (eg. Modified,
+     * apiso:Modified or dct:modified).
+     */
+    public String modifiedQueryable = DEFAULT_MODIFIED_QUERYABLE;
+
+    public int fullHarvestDays = DEFAULT_FULL_HARVEST_DAYS;
+
+    /**
+     * Most recent change date of the records harvested by the previous complete harvest, empty
+     * if none. Not changed by the user.
+     */
+    public String modifiedSince = "";
+
+    /**
+     * Date of the previous complete full harvest, empty if none. Not changed by the user.
+     */
+    public String lastFullHarvest = "";
+
     /**
      * The filter is a process (see schema/process folder) which depends on the schema. It could be
      * composed of parameter which will be sent to XSL transformation using the following syntax :
@@ -94,6 +149,14 @@ public class CswParams extends AbstractParams {
         outputSchema = Util.getParam(site, "outputSchema", outputSchema);
         sortBy = Util.getParam(site, "sortBy", "");
         icon = Util.getParam(site, "icon", "default.gif");
+        pageSize = range(Util.getParam(site, "pageSize", DEFAULT_PAGE_SIZE), MAX_PAGE_SIZE);
+        fetchThreads = range(Util.getParam(site, "fetchThreads", 1), MAX_FETCH_THREADS);
+        idsPerRequest = range(Util.getParam(site, "idsPerRequest", 1), MAX_IDS_PER_REQUEST);
+        incremental = Util.getParam(site, "incremental", false);
+        modifiedQueryable = Util.getParam(site, "modifiedQueryable", DEFAULT_MODIFIED_QUERYABLE);
+        fullHarvestDays = range(Util.getParam(site, "fullHarvestDays", DEFAULT_FULL_HARVEST_DAYS), MAX_FULL_HARVEST_DAYS);
+        modifiedSince = Util.getParam(site, "modifiedSince", "");
+        lastFullHarvest = Util.getParam(site, "lastFullHarvest", "");
 
         if (filters != null) {
             @SuppressWarnings("unchecked")
@@ -124,6 +187,15 @@ public class CswParams extends AbstractParams {
         xslfilter = Util.getParam(site, "xslfilter", "");
         outputSchema = Util.getParam(site, "outputSchema", outputSchema);
         sortBy = Util.getParam(site, "sortBy", "");
+        pageSize = range(Util.getParam(site, "pageSize", pageSize), MAX_PAGE_SIZE);
+        fetchThreads = range(Util.getParam(site, "fetchThreads", fetchThreads), MAX_FETCH_THREADS);
+        idsPerRequest = range(Util.getParam(site, "idsPerRequest", idsPerRequest), MAX_IDS_PER_REQUEST);
+        incremental = Util.getParam(site, "incremental", incremental);
+        modifiedQueryable = Util.getParam(site, "modifiedQueryable", modifiedQueryable);
+        fullHarvestDays = range(Util.getParam(site, "fullHarvestDays", fullHarvestDays), MAX_FULL_HARVEST_DAYS);
+        //--- the filters may have changed, the next harvest has to be a full one
+        modifiedSince = "";
+        lastFullHarvest = "";
 
         icon = Util.getParam(site, "icon", icon);
 
@@ -155,6 +227,14 @@ public class CswParams extends AbstractParams {
         copy.xslfilter = xslfilter;
         copy.outputSchema = outputSchema;
         copy.sortBy = sortBy;
+        copy.pageSize = pageSize;
+        copy.fetchThreads = fetchThreads;
+        copy.idsPerRequest = idsPerRequest;
+        copy.incremental = incremental;
+        copy.modifiedQueryable = modifiedQueryable;
+        copy.fullHarvestDays = fullHarvestDays;
+        copy.modifiedSince = modifiedSince;
+        copy.lastFullHarvest = lastFullHarvest;
 
         copy.eltFilters = eltFilters;
         copy.bboxFilter = bboxFilter;
@@ -162,4 +242,8 @@ public class CswParams extends AbstractParams {
         return copy;
     }
 
+    private static int range(int value, int max) {
+        return Math.max(1, Math.min(value, max));
+    }
+
 }
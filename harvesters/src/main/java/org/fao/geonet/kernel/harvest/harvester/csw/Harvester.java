@@ -26,6 +26,7 @@ package org.fao.geonet.kernel.harvest.harvester.csw;
 import java.net.URL;
 import java.nio.file.Path;
 import java.util.*;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
 
 import com.google.common.collect.ImmutableSet;
@@ -43,6 +44,7 @@ import org.fao.geonet.csw.common.TypeName;
 import org.fao.geonet.csw.common.exceptions.CatalogException;
 import org.fao.geonet.csw.common.requests.CatalogRequest;
 import org.fao.geonet.csw.common.requests.GetRecordsRequest;
+import org.fao.geonet.domain.ISODate;
 import org.fao.geonet.exceptions.BadParameterEx;
 import org.fao.geonet.exceptions.BadXmlResponseEx;
 import org.fao.geonet.exceptions.OperationAbortedEx;
@@ -72,8 +74,6 @@ class Harvester implements IHarvester<HarvestResult> {
 
     private final static String ATTRIB_SEARCHRESULT_NEXT = "nextRecord";
 
-    private static int GETRECORDS_REQUEST_MAXRECORDS = 20;
-
     private static String CONSTRAINT_LANGUAGE_VERSION = "1.1.0";
 
     //FIXME version should be parametrized
@@ -89,6 +89,22 @@ class Harvester implements IHarvester<HarvestResult> {
      */
     private List<HarvestError> errors = new LinkedList<HarvestError>();
 
+    /**
+     * Lower bound of the modification date of the records requested, null for a full harvest.
+     */
+    private String modifiedSince;
+
+    /**
+     * Most recent change date of the records found.
+     */
+    private ISODate maxChangeDate;
+    private String maxChangeDateValue;
+
+    /**
+     * True if all the records were searched and aligned without error.
+     */
+    private boolean complete;
+
 
     public Harvester(AtomicBoolean cancelMonitor, Logger log, ServiceContext context, CswParams params) {
         this.cancelMonitor = cancelMonitor;
@@ -111,10 +127,21 @@ class Harvester implements IHarvester<HarvestResult> {
         boolean error = false;
         HarvestResult result = new HarvestResult();
     	Set<String> uuids = new HashSet<String>();
+        chooseHarvestMode();
+        if (modifiedSince != null) {
+            log.info("Harvesting records modified since " + modifiedSince);
+        }
+
+        Aligner aligner = null;
         try {
-            Aligner aligner = new Aligner(cancelMonitor, context, server, params, log);
+            aligner = new Aligner(cancelMonitor, context, server, params, log);
             searchAndAlign(server, uuids, aligner, errors);
-            result = aligner.cleanupRemovedRecords(uuids);
+            if (isFullHarvest()) {
+                result = aligner.cleanupRemovedRecords(uuids);
+            } else {
+                //--- records removed from the remote node are only found by full harvests
+                result = aligner.getResult();
+            }
         } catch (Exception t) {
             error = true;
             log.error("Unknown error trying to harvest");
@@ -126,9 +153,14 @@ class Harvester implements IHarvester<HarvestResult> {
             log.fatal("Something unknown and terrible happened while harvesting");
             log.fatal(t.getMessage());
             errors.add(new HarvestError(context, t));
+        } finally {
+            if (aligner != null) {
+                aligner.close();
+            }
         }
 
         log.info("Total records processed in all searches :" + uuids.size());
+        complete &= !error && !cancelMonitor.get();
         if (error) {
             log.warning("Due to previous errors the align process has not been called");
         }
@@ -136,6 +168,52 @@ class Harvester implements IHarvester<HarvestResult> {
         return result;
     }
 
+    /**
+     * Request all the records or only the ones modified since the previous complete harvest.
+     */
+    void chooseHarvestMode() {
+        modifiedSince = isFullHarvestDue() ? null : params.modifiedSince;
+    }
+
+    /**
+     * @return true if the records modified since the previous harvest are not enough: the
+     * harvester is not incremental, there is no previous complete harvest or the last full
+     * harvest is too old.
+     */
+    private boolean isFullHarvestDue() {
+        if (!params.incremental || StringUtils.isEmpty(params.modifiedSince)
+            || StringUtils.isEmpty(params.lastFullHarvest)) {
+            return true;
+        }
+        long age = new ISODate().timeDifferenceInSeconds(new ISODate(params.lastFullHarvest));
+        return age >= TimeUnit.DAYS.toSeconds(params.fullHarvestDays);
+    }
+
+    /**
+     * @return true if all the records were requested, false if only the modified ones were.
+     */
+    public boolean isFullHarvest() {
+        return modifiedSince == null;
+    }
+
+    /**
+     * @return true if all the records requested were aligned without error.
+     */
+    public boolean isComplete() {
+        return complete;
+    }
+
+    /**
+     * @return the lower bound of the modification date for the next incremental harvest: the
+     * most recent change date of the records found or, if none, the previous one.
+     */
+    public String getModifiedSince() {
+        if (maxChangeDateValue != null) {
+            return maxChangeDateValue;
+        }
+        return StringUtils.defaultString(modifiedSince, params.modifiedSince);
+    }
+
     /**
      * Does CSW GetCapabilities request and check that operations needed for harvesting (ie.
      * GetRecords and GetRecordById) are available in remote node.
@@ -220,7 +298,7 @@ class Harvester implements IHarvester<HarvestResult> {
             request.addSortBy(params.sortBy);
         }
         request.setElementSetName(ElementSetName.SUMMARY);
-        request.setMaxRecords(GETRECORDS_REQUEST_MAXRECORDS);
+        request.setMaxRecords(params.pageSize);
         request.setDistribSearch(params.queryScope.equalsIgnoreCase("distributed"));
         request.setHopCount(params.hopCount);
 
@@ -247,6 +325,8 @@ class Harvester implements IHarvester<HarvestResult> {
 
             configRequest(request, oper, server, PREFERRED_HTTP_METHOD.equals("GET") ? "POST" : "GET");
         }
+        // errors of the probe above don't prevent the harvest from being complete
+        int errorCount = errors.size();
 
 
         while (true) {
@@ -256,7 +336,7 @@ class Harvester implements IHarvester<HarvestResult> {
               return;
             }
             request.setStartPosition(start);
-            Element response = doSearch(request, start, GETRECORDS_REQUEST_MAXRECORDS);
+            Element response = doSearch(request, start, params.pageSize);
             if (log.isDebugEnabled()) {
                 log.debug("Number of child elements in response: " + response.getChildren().size());
             }
@@ -291,6 +371,7 @@ class Harvester implements IHarvester<HarvestResult> {
                     if (recInfo != null) {
                         records.add(recInfo);
                         uuids.add(recInfo.uuid);
+                        updateMaxChangeDate(recInfo);
                     }
 
                 } catch (Exception ex) {
@@ -323,8 +404,8 @@ class Harvester implements IHarvester<HarvestResult> {
 
             //== Some log lines, in case we do not like some of the received values
 
-            if (returnedCount != GETRECORDS_REQUEST_MAXRECORDS) {
-                log.warning("Declared number of returned records (" + returnedCount + ") does not match requested record count (" + GETRECORDS_REQUEST_MAXRECORDS + ")");
+            if (returnedCount != params.pageSize) {
+                log.warning("Declared number of returned records (" + returnedCount + ") does not match requested record count (" + params.pageSize + ")");
             }
 
             if (returnedCount != foundCnt) {
@@ -374,6 +455,22 @@ class Harvester implements IHarvester<HarvestResult> {
         }
 
         log.debug("Records added to result list : " + uuids.size());
+        complete = errors.size() == errorCount;
+    }
+
+    void updateMaxChangeDate(RecordInfo recInfo) {
+        if (!recInfo.hasChangeDate()) {
+            return;
+        }
+        try {
+            ISODate changeDate = new ISODate(recInfo.changeDate);
+            if (maxChangeDate == null || changeDate.compareTo(maxChangeDate) > 0) {
+                maxChangeDate = changeDate;
+                maxChangeDateValue = recInfo.changeDate;
+            }
+        } catch (Exception e) {
+            log.debug("Ignoring invalid change date " + recInfo.changeDate + " of record " + recInfo.uuid);
+        }
     }
 
     private void setUpRequest(GetRecordsRequest request, CswOperation oper, CswServer server, URL url,
@@ -575,7 +672,7 @@ class Harvester implements IHarvester<HarvestResult> {
     }
 
 
-    private String getFilterConstraint(List<Element> filters, Element bboxFilter) throws Exception {
+    String getFilterConstraint(List<Element> filters, Element bboxFilter) throws Exception {
         Path file = context.getAppPath().resolve("xml").resolve("csw").resolve("harvester-csw-filter.xsl");
 
         Element eltFilter = new Element("filters");
@@ -607,6 +704,23 @@ class Harvester implements IHarvester<HarvestResult> {
             }
         }
 
+        if (modifiedSince != null) {
+            List<Element> queryables = new ArrayList<>();
+            buildFilterQueryable(queryables, params.modifiedQueryable, modifiedSince, "PropertyIsGreaterThanOrEqualTo");
+
+            if (cswFilter.getChildren().size() == 0) {
+                cswFilter.addContent(queryables.get(0));
+            } else {
+                Element filterContent = ((Element) cswFilter.getChildren().get(0));
+                filterContent = (Element) filterContent.detach();
+
+                Element and = new Element("And", Csw.NAMESPACE_OGC);
+                and.addContent(filterContent);
+                and.addContent(queryables.get(0));
+                cswFilter.setContent(and);
+            }
+        }
+
         if (cswFilter.getChildren().size() == 0) {
             return StringUtils.EMPTY;
         } else {
@@ -614,7 +728,7 @@ class Harvester implements IHarvester<HarvestResult> {
         }
     }
 
-    private String getCqlConstraint(List<Element> filters, Element bboxFilter) throws Exception {
+    String getCqlConstraint(List<Element> filters, Element bboxFilter) throws Exception {
         String cqlFilter = "";
 
         if (filters.size() > 0) {
@@ -648,6 +762,11 @@ class Harvester implements IHarvester<HarvestResult> {
             );
         }
 
+        if (modifiedSince != null) {
+            String modified = String.format("%s >= '%s'", params.modifiedQueryable, modifiedSince);
+            cqlFilter = StringUtils.isNotEmpty(cqlFilter) ? "(" + cqlFilter + ") AND " + modified : modified;
+        }
+
         return cqlFilter;
     }
 
@@ -31,14 +31,19 @@ import java.sql.SQLException;
 import java.util.List;
 import java.util.Set;
 
+import jeeves.server.context.ServiceContext;
 import org.apache.commons.lang.StringUtils;
 import org.fao.geonet.Logger;
 import org.fao.geonet.domain.AbstractMetadata;
 import org.fao.geonet.domain.ISODate;
 import org.fao.geonet.domain.Metadata;
 import org.fao.geonet.domain.MetadataType;
+import org.fao.geonet.exceptions.BadInputEx;
+import org.fao.geonet.kernel.GeonetworkDataDirectory;
 import org.fao.geonet.kernel.UpdateDatestamp;
 import org.fao.geonet.kernel.harvest.BaseAligner;
+import org.fao.geonet.kernel.harvest.Common.OperResult;
+import org.fao.geonet.kernel.harvest.Common.Status;
 import org.fao.geonet.kernel.harvest.harvester.AbstractHarvester;
 import org.fao.geonet.kernel.harvest.harvester.CategoryMapper;
 import org.fao.geonet.kernel.harvest.harvester.GroupMapper;
@@ -48,6 +53,7 @@ import org.fao.geonet.repository.OperationAllowedRepository;
 import org.fao.geonet.repository.specification.MetadataSpecs;
 import org.fao.geonet.utils.IO;
 import org.jdom.Element;
+import org.quartz.SchedulerException;
 import org.springframework.data.jpa.domain.Specification;
 
 import com.google.common.collect.Lists;
@@ -62,6 +68,8 @@ import java.util.*;
  */
 public class LocalFilesystemHarvester extends AbstractHarvester<HarvestResult, LocalFilesystemParams> {
 
+    private LocalFsDirectoryWatcher watcher;
+
     @Override
     protected void storeNodeExtra(LocalFilesystemParams params, String path, String siteId, String optionsId) throws SQLException {
         setParams(params);
@@ -73,6 +81,9 @@ public class LocalFilesystemHarvester extends AbstractHarvester<HarvestResult, L
         harvesterSettingsManager.add("id:" + siteId, "nodelete", params.nodelete);
         harvesterSettingsManager.add("id:" + siteId, "checkFileLastModifiedForUpdate", params.checkFileLastModifiedForUpdate);
         harvesterSettingsManager.add("id:" + siteId, "beforeScript", params.beforeScript);
+        harvesterSettingsManager.add("id:" + siteId, "useManifest", params.useManifest);
+        harvesterSettingsManager.add("id:" + siteId, "processThreads", params.processThreads);
+        harvesterSettingsManager.add("id:" + siteId, "watch", params.watch);
     }
 
     @Override
@@ -80,30 +91,125 @@ public class LocalFilesystemHarvester extends AbstractHarvester<HarvestResult, L
         return new LocalFilesystemParams(dataMan);
     }
 
+    @Override
+    public void init(Element node, ServiceContext context) throws BadInputEx, SchedulerException {
+        super.init(node, context);
+        updateWatcher();
+    }
+
+    @Override
+    public OperResult start() throws SchedulerException {
+        OperResult result = super.start();
+        updateWatcher();
+        return result;
+    }
+
+    @Override
+    public OperResult stop(Status newStatus) throws SchedulerException {
+        OperResult result = super.stop(newStatus);
+        updateWatcher();
+        return result;
+    }
+
+    @Override
+    public void update(Element node) throws BadInputEx, SQLException, SchedulerException {
+        super.update(node);
+        updateWatcher();
+    }
+
+    @Override
+    public void shutdown() throws SchedulerException {
+        stopWatcher();
+        super.shutdown();
+    }
+
+    @Override
+    public void destroy() throws Exception {
+        stopWatcher();
+        super.destroy();
+        Files.deleteIfExists(getManifestFile());
+    }
+
+    /**
+     * Watch the directory while the harvester is active and in watch mode (or restart watching
+     * if the directory changed).
+     */
+    private synchronized void updateWatcher() {
+        boolean watch = getStatus() == Status.ACTIVE && params.watch && StringUtils.isNotEmpty(params.directoryname);
+        Path directory = watch ? IO.toPath(params.directoryname) : null;
+        if (watcher != null && !watcher.watches(directory, params.recurse)) {
+            stopWatcher();
+        }
+        if (watch && watcher == null) {
+            try {
+                watcher = LocalFsDirectoryWatcher.start(this, directory, params.recurse);
+            } catch (IOException e) {
+                log.error("Can't watch directory " + directory + " for harvester " + params.getName() + ": " + e.getMessage());
+            }
+        }
+    }
+
+    private synchronized void stopWatcher() {
+        if (watcher != null) {
+            watcher.close();
+            watcher = null;
+        }
+    }
+
+    /**
+     * The manifest of the files imported by the last run, see {@link LocalFsManifest}.
+     */
+    private Path getManifestFile() {
+        return context.getBean(GeonetworkDataDirectory.class).getSystemDataDir()
+            .resolve("harvester_manifests").resolve(params.getUuid() + ".manifest");
+    }
+
     /**
      * Aligns new results from filesystem harvesting. Contrary to practice in e.g. CSW Harvesting,
      * files removed from the harvesting source are NOT removed from the database. Also, no checks
      * on modification date are done; the result gets inserted or replaced if the result appears to
      * be in a supported schema.
      *
+     * <p>With {@link LocalFilesystemParams#useManifest}, the files not changed since the last
+     * successful run are skipped and their records kept as they are.</p>
+     *
      * @param root the directory to visit
      */
     private HarvestResult align(Path root) throws Exception {
         log.debug("Start of alignment for : " + params.getName());
-        final LocalFsHarvesterFileVisitor visitor = new LocalFsHarvesterFileVisitor(cancelMonitor, context, params, this);
-        if (params.recurse) {
-            Files.walkFileTree(root, visitor);
-        } else {
-            try (DirectoryStream<Path> paths = Files.newDirectoryStream(root)) {
-                for (Path path : paths) {
-                    if (path != null && Files.isRegularFile(path)) {
-                        visitor.visitFile(path, Files.readAttributes(path, BasicFileAttributes.class));
+        Path manifestFile = getManifestFile();
+        if (!params.useManifest) {
+            // An old manifest would not know about the changes made without it
+            Files.deleteIfExists(manifestFile);
+        }
+        final LocalFsHarvesterFileVisitor visitor = new LocalFsHarvesterFileVisitor(cancelMonitor, context, params, this,
+            root, params.useManifest ? manifestFile : null);
+        try {
+            if (params.recurse) {
+                Files.walkFileTree(root, visitor);
+            } else {
+                try (DirectoryStream<Path> paths = Files.newDirectoryStream(root)) {
+                    for (Path path : paths) {
+                        if (path != null && Files.isRegularFile(path)) {
+                            visitor.visitFile(path, Files.readAttributes(path, BasicFileAttributes.class));
+                        }
                     }
                 }
             }
+            visitor.finish();
+        } finally {
+            visitor.close();
         }
         result = visitor.getResult();
         log.debug(String.format("Scan directory is done. %d files analyzed.", result.totalMetadata));
+
+        if (!cancelMonitor.get()) {
+            try {
+                visitor.saveManifest();
+            } catch (IOException e) {
+                log.warning("Can't save manifest " + manifestFile + ", all files will be read by the next run: " + e.getMessage());
+            }
+        }
         Set<Integer> idsForHarvestingResult = visitor.getListOfRecords();
         Set<Integer> idsResultHs = Sets.newHashSet(idsForHarvestingResult);
 
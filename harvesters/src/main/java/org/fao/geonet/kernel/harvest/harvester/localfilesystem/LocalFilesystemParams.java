@@ -35,6 +35,8 @@ import org.jdom.Element;
  */
 public class LocalFilesystemParams extends AbstractParams {
 
+    private static final int MAX_PROCESS_THREADS = 16;
+
     public String icon;
     public String directoryname;
     public boolean recurse;
@@ -43,6 +45,21 @@ public class LocalFilesystemParams extends AbstractParams {
     public String recordType;
     public String beforeScript;
 
+    /**
+     * Keep a manifest of the imported files and skip the files not changed since the last run.
+     */
+    public boolean useManifest;
+
+    /**
+     * Number of threads reading, converting and validating files while the previous ones are saved.
+     */
+    public int processThreads = 1;
+
+    /**
+     * Run the harvester when files are added, changed or removed in the directory.
+     */
+    public boolean watch;
+
     @Override
     public String getIcon() {
         return icon;
@@ -77,7 +94,7 @@ public class LocalFilesystemParams extends AbstractParams {
     /**
      * TODO Javadoc.
      */
-    private void createOrUpdate(Element node) {
+    private void createOrUpdate(Element node) throws BadInputEx {
         Element site = node.getChild("site");
         directoryname = Util.getParam(site, "directory", "");
         icon = Util.getParam(site, "icon", "filesystem.gif");
@@ -89,6 +106,11 @@ public class LocalFilesystemParams extends AbstractParams {
         checkFileLastModifiedForUpdate = (checkFileLastModifiedForUpdateString.equals("on") || checkFileLastModifiedForUpdateString.equals("true"));
         recordType = Util.getParam(site, "recordType", "n");
         beforeScript = Util.getParam(site, "beforeScript", "");
+        String useManifestString = Util.getParam(site, "useManifest", "false");
+        useManifest = (useManifestString.equals("on") || useManifestString.equals("true"));
+        processThreads = range(Util.getParam(site, "processThreads", 1), MAX_PROCESS_THREADS);
+        String watchString = Util.getParam(site, "watch", "false");
+        watch = (watchString.equals("on") || watchString.equals("true"));
     }
 
     public LocalFilesystemParams copy() {
@@ -101,6 +123,13 @@ public class LocalFilesystemParams extends AbstractParams {
         copy.checkFileLastModifiedForUpdate = checkFileLastModifiedForUpdate;
         copy.recordType = recordType;
         copy.beforeScript = beforeScript;
+        copy.useManifest = useManifest;
+        copy.processThreads = processThreads;
+        copy.watch = watch;
         return copy;
     }
+
+    private static int range(int value, int max) {
+        return Math.max(1, Math.min(value, max));
+    }
 }
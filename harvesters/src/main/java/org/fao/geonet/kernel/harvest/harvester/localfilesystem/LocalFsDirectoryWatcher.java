@@ -0,0 +1,166 @@
+/*
+ * Copyright (C) 2001-2021 Food and Agriculture Organization of the
+ * United Nations (FAO-UN), United Nations World Food Programme (WFP)
+ * and United Nations Environment Programme (UNEP)
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or (at
+ * your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301, USA
+ *
+ * Contact: Jeroen Ticheler - FAO - Viale delle Terme di Caracalla 2,
+ * Rome - Italy. email: geonetwork@osgeo.org
+ */
+
+package org.fao.geonet.kernel.harvest.harvester.localfilesystem;
+
+import org.fao.geonet.constants.Geonet;
+import org.fao.geonet.kernel.harvest.Common.OperResult;
+import org.quartz.SchedulerException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.concurrent.TimeUnit;
+
+import static java.nio.file.StandardWatchEventKinds.ENTRY_CREATE;
+import static java.nio.file.StandardWatchEventKinds.ENTRY_DELETE;
+import static java.nio.file.StandardWatchEventKinds.ENTRY_MODIFY;
+
+/**
+ * Runs a local filesystem harvester when files are added, changed or removed in its directory.
+ * The harvester is run once no change happened during {@link #QUIET_PERIOD} ms, so that a drop
+ * of files is harvested once complete. Changes made while the harvester is running trigger a
+ * new run.
+ */
+class LocalFsDirectoryWatcher implements Runnable {
+    private static final Logger LOGGER = LoggerFactory.getLogger(Geonet.HARVESTER);
+    private static final long QUIET_PERIOD = TimeUnit.SECONDS.toMillis(5);
+
+    private final LocalFilesystemHarvester harvester;
+    private final Path directory;
+    private final boolean recurse;
+    private final WatchService watchService;
+    private final Thread thread;
+
+    private LocalFsDirectoryWatcher(LocalFilesystemHarvester harvester, Path directory, boolean recurse) throws IOException {
+        this.harvester = harvester;
+        this.directory = directory;
+        this.recurse = recurse;
+        this.watchService = directory.getFileSystem().newWatchService();
+        try {
+            register(directory);
+        } catch (IOException e) {
+            watchService.close();
+            throw e;
+        }
+        this.thread = new Thread(this, "localfs-watcher-" + harvester.getParams().getUuid());
+        this.thread.setDaemon(true);
+    }
+
+    static LocalFsDirectoryWatcher start(LocalFilesystemHarvester harvester, Path directory, boolean recurse) throws IOException {
+        LocalFsDirectoryWatcher watcher = new LocalFsDirectoryWatcher(harvester, directory, recurse);
+        watcher.thread.start();
+        LOGGER.info("Watching directory {} for harvester {}.", directory, harvester.getParams().getName());
+        return watcher;
+    }
+
+    boolean watches(Path directory, boolean recurse) {
+        return this.directory.equals(directory) && this.recurse == recurse;
+    }
+
+    void close() {
+        thread.interrupt();
+        try {
+            watchService.close();
+        } catch (IOException e) {
+            LOGGER.warn("Error closing watch service of directory {}: {}", directory, e.getMessage());
+        }
+    }
+
+    private void register(Path dir) throws IOException {
+        if (!recurse) {
+            dir.register(watchService, ENTRY_CREATE, ENTRY_DELETE, ENTRY_MODIFY);
+            return;
+        }
+        Files.walkFileTree(dir, new SimpleFileVisitor<Path>() {
+            @Override
+            public FileVisitResult preVisitDirectory(Path subDir, BasicFileAttributes attrs) throws IOException {
+                subDir.register(watchService, ENTRY_CREATE, ENTRY_DELETE, ENTRY_MODIFY);
+                return FileVisitResult.CONTINUE;
+            }
+        });
+    }
+
+    @Override
+    public void run() {
+        boolean changed = false;
+        try {
+            while (!Thread.currentThread().isInterrupted()) {
+                WatchKey key = changed
+                    ? watchService.poll(QUIET_PERIOD, TimeUnit.MILLISECONDS)
+                    : watchService.take();
+                if (key == null) {
+                    // No change during the quiet period
+                    changed = !runHarvester();
+                    continue;
+                }
+                for (WatchEvent<?> event : key.pollEvents()) {
+                    changed = true;
+                    if (recurse && event.kind() == ENTRY_CREATE) {
+                        Path child = ((Path) key.watchable()).resolve((Path) event.context());
+                        if (Files.isDirectory(child, LinkOption.NOFOLLOW_LINKS)) {
+                            try {
+                                register(child);
+                            } catch (IOException e) {
+                                LOGGER.warn("Can't watch new directory {}: {}", child, e.getMessage());
+                            }
+                        }
+                    }
+                }
+                key.reset();
+            }
+        } catch (InterruptedException | ClosedWatchServiceException e) {
+            // Closed
+        }
+        LOGGER.info("Stopped watching directory {}.", directory);
+    }
+
+    /**
+     * @return false if the harvester is already running, to try again after the next quiet period.
+     */
+    private boolean runHarvester() {
+        if (harvester.isRunning()) {
+            return false;
+        }
+        try {
+            OperResult result = harvester.run();
+            if (result == OperResult.ALREADY_RUNNING) {
+                return false;
+            }
+            LOGGER.debug("Changes in directory {}, harvester {} triggered.", directory, harvester.getParams().getName());
+        } catch (SchedulerException e) {
+            LOGGER.error("Can't run harvester {}: {}", harvester.getParams().getName(), e.getMessage());
+        }
+        return true;
+    }
+}
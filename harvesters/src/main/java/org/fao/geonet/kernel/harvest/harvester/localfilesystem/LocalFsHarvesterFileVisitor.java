@@ -30,6 +30,7 @@ import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.google.common.collect.Iterables;
 import com.google.common.collect.Sets;
+import com.google.common.hash.Hashing;
 import jeeves.server.context.ServiceContext;
 import org.apache.commons.lang.StringUtils;
 import org.apache.commons.lang.time.DateUtils;
@@ -44,9 +45,11 @@ import org.fao.geonet.kernel.harvest.BaseAligner;
 import org.fao.geonet.kernel.harvest.harvester.CategoryMapper;
 import org.fao.geonet.kernel.harvest.harvester.GroupMapper;
 import org.fao.geonet.kernel.harvest.harvester.HarvestResult;
+import org.fao.geonet.kernel.harvest.harvester.Privileges;
 import org.fao.geonet.kernel.mef.MEFLib;
 import org.fao.geonet.repository.MetadataRepository;
 import org.fao.geonet.repository.Updater;
+import org.fao.geonet.repository.specification.MetadataSpecs;
 import org.fao.geonet.utils.Xml;
 import org.jdom.Element;
 import org.jdom.JDOMException;
@@ -56,30 +59,51 @@ import org.json.JSONObject;
 import org.json.XML;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.data.jpa.domain.Specification;
 
 import javax.annotation.Nonnull;
 import java.io.IOException;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.FileVisitResult;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.SimpleFileVisitor;
 import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayDeque;
 import java.util.Calendar;
+import java.util.Collections;
 import java.util.Date;
+import java.util.Deque;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Set;
 import java.util.UUID;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import static org.fao.geonet.kernel.HarvestValidationEnum.NOVALIDATION;
 
 
 /**
+ * Visit the files of the harvested directory. The files are read, converted and validated
+ * (in {@link LocalFilesystemParams#processThreads} threads if more than one) then saved in the
+ * order they are visited.
+ *
+ * <p>With a manifest, the files not changed since the last run are not read again.</p>
+ *
  * @author Jesse on 11/6/2014.
  */
 class LocalFsHarvesterFileVisitor extends SimpleFileVisitor<Path> {
+    /**
+     * Number of files read in advance per process thread.
+     */
+    private static final int QUEUED_FILES_PER_THREAD = 8;
+
     private Logger LOGGER = LoggerFactory.getLogger(Geonet.HARVESTER);
 
     private final LocalFilesystemParams params;
@@ -94,11 +118,23 @@ class LocalFsHarvesterFileVisitor extends SimpleFileVisitor<Path> {
     private final GroupMapper localGroups;
     private final Set<Integer> listOfRecords = Sets.newHashSet();
     private final Set<Integer> listOfRecordsToIndex = Sets.newHashSet();
+    private final Path root;
+    private final Path manifestFile;
+    private final LocalFsManifest previousManifest;
+    private final LocalFsManifest manifest;
+    private final Set<Integer> harvestedIds;
+    private final Deque<FileTask> pending = new ArrayDeque<>();
+    private ExecutorService executor;
     private boolean transformIt = false;
     private Path thisXslt;
     private long startTime;
 
-    public LocalFsHarvesterFileVisitor(AtomicBoolean cancelMonitor, ServiceContext context, LocalFilesystemParams params, LocalFilesystemHarvester harvester) throws Exception {
+    /**
+     * @param root         the harvested directory.
+     * @param manifestFile the manifest of the last run or null to read all files.
+     */
+    public LocalFsHarvesterFileVisitor(AtomicBoolean cancelMonitor, ServiceContext context, LocalFilesystemParams params,
+                                       LocalFilesystemHarvester harvester, Path root, Path manifestFile) throws Exception {
         this.aligner = new LocalFileSytemAligner(cancelMonitor, params);
         this.cancelMonitor = cancelMonitor;
         this.context = context;
@@ -121,9 +157,58 @@ class LocalFsHarvesterFileVisitor extends SimpleFileVisitor<Path> {
 
         String harvesterName = params.getName().replaceAll("\\W+", "_");
         LOGGER =  LoggerFactory.getLogger(harvesterName);
+
+        this.root = root;
+        this.manifestFile = manifestFile;
+        if (manifestFile != null) {
+            String fingerprint = getFingerprint();
+            previousManifest = LocalFsManifest.load(manifestFile, fingerprint);
+            manifest = new LocalFsManifest(fingerprint);
+            // Records removed or taken over since the last run are imported again
+            harvestedIds = previousManifest.isEmpty() ? Collections.<Integer>emptySet()
+                : Sets.newHashSet(context.getBean(MetadataRepository.class).findIdsBy(
+                    (Specification<Metadata>) MetadataSpecs.hasHarvesterUuid(params.getUuid())));
+            LOGGER.debug("{} files in the manifest of the last run.", previousManifest.size());
+        } else {
+            previousManifest = null;
+            manifest = null;
+            harvestedIds = Collections.emptySet();
+        }
         LOGGER.debug("Start visiting files at {}.", this.startTime);
     }
 
+    /**
+     * The settings changing the records created from the files. The manifest is discarded when
+     * one of them changes.
+     */
+    private String getFingerprint() {
+        StringBuilder fingerprint = new StringBuilder()
+            .append(params.getImportXslt()).append('|');
+        if (transformIt) {
+            try {
+                fingerprint.append(Files.getLastModifiedTime(thisXslt).toMillis());
+            } catch (IOException e) {
+                // Reported when transforming
+            }
+        }
+        fingerprint.append('|').append(params.getValidate())
+            .append('|').append(params.recordType)
+            .append('|').append(params.getOverrideUuid())
+            .append('|').append(params.checkFileLastModifiedForUpdate)
+            .append('|').append(params.getOwnerIdGroup())
+            .append('|').append(params.getOwnerIdUser());
+        for (String category : params.getCategories()) {
+            fingerprint.append("|c").append(category);
+        }
+        for (Privileges privileges : params.getPrivileges()) {
+            fingerprint.append("|p").append(privileges.getGroupId());
+            for (Integer operation : privileges.getOperations()) {
+                fingerprint.append(',').append(operation);
+            }
+        }
+        return Hashing.sha256().hashString(fingerprint, StandardCharsets.UTF_8).toString();
+    }
+
     @Override
     public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) throws IOException {
         if (cancelMonitor.get()) {
@@ -150,16 +235,23 @@ class LocalFsHarvesterFileVisitor extends SimpleFileVisitor<Path> {
                 LOGGER.debug("{} records inserted in {} s ({} records/s).", new Object[] {
                         result.totalMetadata,
                         elapsedTime,
-                        result.totalMetadata / elapsedTime});
+                        result.totalMetadata / Math.max(1, elapsedTime)});
             }
 
-            if(isMef) {
-                processMef(file);
-            } else if(isJson) {
-                processJson(file);
-            } else {
-                processXml(file);
+            FileTask task = new FileTask(file, isMef ? FileType.MEF : isJson ? FileType.JSON : FileType.XML,
+                attrs.size(), attrs.lastModifiedTime().toMillis());
+            if (manifest != null) {
+                task.path = root.relativize(file).toString().replace('\\', '/');
+                LocalFsManifest.Entry previous = previousManifest.get(task.path);
+                if (previous != null && isHarvested(previous)) {
+                    task.previous = previous;
+                    if (previous.isSame(task.size, task.lastModified)) {
+                        unchanged(task);
+                        return FileVisitResult.CONTINUE;
+                    }
+                }
             }
+            submit(task);
         } catch (Throwable e) {
             LOGGER.error("An error occurred while harvesting file {}. Error is: {}.",
                 file.toAbsolutePath().normalize(), e.getMessage());
@@ -168,10 +260,198 @@ class LocalFsHarvesterFileVisitor extends SimpleFileVisitor<Path> {
     }
 
 
+    /**
+     * Save the files still being processed. To be called once all the files are visited.
+     */
+    public void finish() {
+        while (!pending.isEmpty() && !cancelMonitor.get()) {
+            importFile(pending.poll());
+        }
+    }
+
+    /**
+     * Stop the process threads, if any.
+     */
+    public void close() {
+        for (FileTask task : pending) {
+            task.future.cancel(true);
+        }
+        pending.clear();
+        if (executor != null) {
+            executor.shutdownNow();
+            executor = null;
+        }
+    }
+
+    /**
+     * Save the manifest of this run.
+     */
+    public void saveManifest() throws IOException {
+        if (manifest != null) {
+            manifest.save(manifestFile);
+            LOGGER.debug("{} files saved in manifest {}.", manifest.size(), manifestFile);
+        }
+    }
+
+    private boolean isHarvested(LocalFsManifest.Entry entry) {
+        for (int id : entry.ids) {
+            if (!harvestedIds.contains(id)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Prepare the file in a process thread, if more than one, and save the files prepared in
+     * advance. With one thread, the file is prepared and saved right away.
+     */
+    private void submit(final FileTask task) {
+        if (params.processThreads <= 1) {
+            task.prepared = prepare(task);
+            importFile(task);
+            return;
+        }
+        task.future = getExecutor().submit(() -> {
+            context.setAsThreadLocal();
+            return prepare(task);
+        });
+        pending.add(task);
+        while (pending.size() > params.processThreads * QUEUED_FILES_PER_THREAD) {
+            importFile(pending.poll());
+        }
+    }
+
+    private synchronized ExecutorService getExecutor() {
+        if (executor == null) {
+            AtomicInteger threadCount = new AtomicInteger();
+            String name = "localfs-harvester-" + params.getUuid() + "-";
+            executor = Executors.newFixedThreadPool(params.processThreads, runnable -> {
+                Thread thread = new Thread(runnable, name + threadCount.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+        return executor;
+    }
+
+    /**
+     * Read, convert and validate a file. No record is read or saved, the harvest result is
+     * updated when the file is saved.
+     *
+     * @return the prepared file or null if the harvest is cancelled.
+     */
+    private Prepared prepare(FileTask task) {
+        if (cancelMonitor.get()) {
+            return null;
+        }
+        String hash = null;
+        if (manifest != null) {
+            try {
+                hash = LocalFsManifest.hash(task.file);
+            } catch (IOException e) {
+                LOGGER.error("Error reading file {}, ignoring", task.file.toAbsolutePath().normalize());
+                LOGGER.error("full stack", e);
+                return new Prepared(Status.UNRETRIEVABLE);
+            }
+            if (task.previous != null && task.previous.hash.equals(hash)) {
+                return new Prepared(Status.UNCHANGED);
+            }
+        }
+
+        Prepared prepared;
+        if (task.type == FileType.MEF) {
+            // MEF files are imported at once when saved
+            prepared = new Prepared(Status.MEF);
+        } else if (task.type == FileType.JSON) {
+            prepared = prepareJson(task.file);
+        } else {
+            prepared = prepareXml(task.file);
+        }
+        prepared.hash = hash;
+        return prepared;
+    }
+
+    /**
+     * Save a prepared file, in the order the files are visited.
+     */
+    private void importFile(FileTask task) {
+        try {
+            Prepared prepared = getPrepared(task);
+            if (prepared == null) {
+                return;
+            }
+            switch (prepared.status) {
+                case UNCHANGED:
+                    unchanged(task);
+                    break;
+                case BAD_FORMAT:
+                    result.badFormat++;
+                    break;
+                case UNRETRIEVABLE:
+                    result.unretrievable++;
+                    break;
+                case UNKNOWN_SCHEMA:
+                    result.unknownSchema++;
+                    break;
+                case INVALID:
+                    result.doesNotValidate++;
+                    break;
+                case MEF:
+                    addToManifest(task, prepared, null, processMef(task.file));
+                    break;
+                case OK:
+                default:
+                    String id = importXmlData(task.file, prepared.xml, prepared.schema, prepared.uuid);
+                    if (id != null) {
+                        addToManifest(task, prepared, prepared.uuid, Collections.singletonList(id));
+                    }
+                    break;
+            }
+        } catch (Throwable e) {
+            LOGGER.error("An error occurred while harvesting file {}. Error is: {}.",
+                task.file.toAbsolutePath().normalize(), e.getMessage());
+        }
+    }
+
+    private Prepared getPrepared(FileTask task) throws Throwable {
+        if (task.future == null) {
+            return task.prepared;
+        }
+        try {
+            return task.future.get();
+        } catch (ExecutionException e) {
+            throw e.getCause();
+        }
+    }
+
+    /**
+     * Keep the records of a file not changed since the last run.
+     */
+    private void unchanged(FileTask task) {
+        LOGGER.debug("File {} not changed since last run, skipping.", task.path);
+        for (int id : task.previous.ids) {
+            listOfRecords.add(id);
+        }
+        result.unchangedMetadata++;
+        manifest.put(task.path, task.previous.withLastModified(task.lastModified));
+    }
+
+    private void addToManifest(FileTask task, Prepared prepared, String uuid, List<String> ids) {
+        if (manifest == null || prepared.hash == null || ids.isEmpty()) {
+            return;
+        }
+        int[] recordIds = new int[ids.size()];
+        for (int i = 0; i < recordIds.length; i++) {
+            recordIds[i] = Integer.parseInt(ids.get(i));
+        }
+        manifest.put(task.path, new LocalFsManifest.Entry(task.size, task.lastModified, prepared.hash, uuid, recordIds));
+    }
+
     // Reads a JSON file, transform it to XML and use the same workflow as for XML files
     // inspired by:
     // https://github.com/geonetwork/core-geonetwork/blob/c57f5de06e5e456af1ee55178eca437235b1d499/harvesters/src/main/java/org/fao/geonet/kernel/harvest/harvester/simpleUrl/Harvester.java#L239
-    private void processJson(Path file) throws Exception {
+    private Prepared prepareJson(Path file) {
         Path filePath = file.toAbsolutePath().normalize();
 
         ObjectMapper objectMapper = new ObjectMapper();
@@ -190,21 +470,18 @@ class LocalFsHarvesterFileVisitor extends SimpleFileVisitor<Path> {
         } catch (JsonProcessingException e) {
             LOGGER.error("Error processing JSON from file {}, ignoring", filePath);
             LOGGER.error("full stack", e);
-            result.badFormat++;
-            return;
+            return new Prepared(Status.BAD_FORMAT);
         } catch (JDOMException e) {
             LOGGER.error("Error transforming JSON into XML from file {}, ignoring", filePath);
             LOGGER.error("full stack", e);
-            result.badFormat++;
-            return;
+            return new Prepared(Status.BAD_FORMAT);
         } catch (Throwable e) {
             LOGGER.error("Error retrieving JSON from file {}, ignoring", filePath);
             LOGGER.error("full stack", e);
-            result.unretrievable++;
-            return;
+            return new Prepared(Status.UNRETRIEVABLE);
         }
 
-        processXmlData(file, recordAsElement);
+        return prepareXmlData(file, recordAsElement);
     }
 
     /**
@@ -244,7 +521,7 @@ class LocalFsHarvesterFileVisitor extends SimpleFileVisitor<Path> {
         return array;
     }
 
-    private void processXml(Path file) throws Exception {
+    private Prepared prepareXml(Path file) {
         Path filePath = file.toAbsolutePath().normalize();
 
         Element xml;
@@ -254,19 +531,17 @@ class LocalFsHarvesterFileVisitor extends SimpleFileVisitor<Path> {
         } catch (JDOMException e) {
             LOGGER.error("Error loading XML from file {}, ignoring", filePath);
             LOGGER.error("full stack", e);
-            result.badFormat++;
-            return;
+            return new Prepared(Status.BAD_FORMAT);
         } catch (Throwable e) {
             LOGGER.error("Error retrieving XML from file {}, ignoring", filePath);
             LOGGER.error("full stack", e);
-            result.unretrievable++;
-            return;
+            return new Prepared(Status.UNRETRIEVABLE);
         }
 
-        processXmlData(file, xml);
+        return prepareXmlData(file, xml);
     }
 
-    private void processXmlData(Path file, Element rawXml) throws Exception {
+    private Prepared prepareXmlData(Path file, Element rawXml) {
         Path filePath = file.toAbsolutePath().normalize();
 
         Element xml = rawXml;
@@ -275,8 +550,7 @@ class LocalFsHarvesterFileVisitor extends SimpleFileVisitor<Path> {
                 xml = Xml.transform(xml, thisXslt);
             } catch (Exception e) {
                 LOGGER.error("Cannot transform XML from file {}, ignoring. Error was: {}", filePath, e.getMessage());
-                result.badFormat++;
-                return;
+                return new Prepared(Status.BAD_FORMAT);
             }
         }
 
@@ -284,8 +558,7 @@ class LocalFsHarvesterFileVisitor extends SimpleFileVisitor<Path> {
         try {
             schema = dataMan.autodetectSchema(xml, null);
         } catch (Exception e) {
-            result.unknownSchema++;
-            return;
+            return new Prepared(Status.UNKNOWN_SCHEMA);
         }
 
         try {
@@ -297,16 +570,30 @@ class LocalFsHarvesterFileVisitor extends SimpleFileVisitor<Path> {
             params.getValidate().validate(dataMan, context, xml, groupIdVal);
         } catch (Exception e) {
             LOGGER.error("Cannot validate XML from file {}, ignoring. Error was: {}", filePath, e.getMessage());
-            result.doesNotValidate++;
-            return;
+            return new Prepared(Status.INVALID);
         }
 
         String uuid = getUuidFromFile(xml, filePath, schema);
         if (uuid == null || uuid.equals("")) {
-            result.badFormat++;
-            return;
+            return new Prepared(Status.BAD_FORMAT);
         }
 
+        Prepared prepared = new Prepared(Status.OK);
+        prepared.xml = xml;
+        prepared.schema = schema;
+        prepared.uuid = uuid;
+        return prepared;
+    }
+
+    /**
+     * Add or update the record of a prepared file.
+     *
+     * @return the id of the record, if harvested by this harvester.
+     */
+    private String importXmlData(Path file, Element xml, String schema, String uuid) throws Exception {
+        Path filePath = file.toAbsolutePath().normalize();
+        boolean harvested = true;
+
         String id = dataMan.getMetadataId(uuid);
         if (id == null) {
             String createDate = getCreateDate(file, xml, schema, uuid);
@@ -331,10 +618,12 @@ class LocalFsHarvesterFileVisitor extends SimpleFileVisitor<Path> {
                     LOGGER.debug("Skipping record with uuid " + metadata.getUuid());
                     result.uuidSkipped++;
                     result.unchangedMetadata++;
+                    harvested = false;
 
                     break;
                 default:
                     // Do nothing
+                    harvested = false;
                     break;
                 }
             } else {
@@ -344,6 +633,7 @@ class LocalFsHarvesterFileVisitor extends SimpleFileVisitor<Path> {
 
         }
         listOfRecords.add(Integer.valueOf(id));
+        return harvested ? id : null;
     }
 
     private String getCreateDate(Path file, Element xml, String schema, String uuid) throws IOException {
@@ -409,7 +699,7 @@ class LocalFsHarvesterFileVisitor extends SimpleFileVisitor<Path> {
         }
     }
 
-    private void processMef(Path file) {
+    private List<String> processMef(Path file) {
         Path filePath = file.toAbsolutePath().normalize();
 
         LOGGER.debug("reading file: {}", filePath);
@@ -459,10 +749,12 @@ class LocalFsHarvesterFileVisitor extends SimpleFileVisitor<Path> {
                 listOfRecords.add(Integer.valueOf(id));
                 result.addedMetadata++;
             }
+            return ids;
         } catch (Exception e) {
             LOGGER.error("Error retrieving MEF from file {}, ignoring", filePath);
             LOGGER.error("Error: ",  e);
             result.unretrievable++;
+            return Collections.emptyList();
         }
     }
 
@@ -514,4 +806,57 @@ class LocalFsHarvesterFileVisitor extends SimpleFileVisitor<Path> {
     public Set<Integer> getListOfRecordsToIndex() {
         return listOfRecordsToIndex;
     }
+
+    private enum FileType {
+        XML, JSON, MEF
+    }
+
+    /**
+     * A visited file.
+     */
+    private static class FileTask {
+        final Path file;
+        final FileType type;
+        final long size;
+        final long lastModified;
+        /**
+         * Path relative to the harvested directory, set when using a manifest.
+         */
+        String path;
+        /**
+         * The file in the manifest of the last run, if any.
+         */
+        LocalFsManifest.Entry previous;
+        Future<Prepared> future;
+        Prepared prepared;
+
+        FileTask(Path file, FileType type, long size, long lastModified) {
+            this.file = file;
+            this.type = type;
+            this.size = size;
+            this.lastModified = lastModified;
+        }
+    }
+
+    private enum Status {
+        OK, MEF, UNCHANGED, BAD_FORMAT, UNRETRIEVABLE, UNKNOWN_SCHEMA, INVALID
+    }
+
+    /**
+     * A file read, converted and validated, ready to be saved.
+     */
+    private static class Prepared {
+        final Status status;
+        Element xml;
+        String schema;
+        String uuid;
+        /**
+         * Content hash, when using a manifest.
+         */
+        String hash;
+
+        Prepared(Status status) {
+            this.status = status;
+        }
+    }
 }
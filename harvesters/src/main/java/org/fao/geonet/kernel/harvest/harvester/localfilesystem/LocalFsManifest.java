@@ -0,0 +1,189 @@
+/*
+ * Copyright (C) 2001-2021 Food and Agriculture Organization of the
+ * United Nations (FAO-UN), United Nations World Food Programme (WFP)
+ * and United Nations Environment Programme (UNEP)
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or (at
+ * your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301, USA
+ *
+ * Contact: Jeroen Ticheler - FAO - Viale delle Terme di Caracalla 2,
+ * Rome - Italy. email: geonetwork@osgeo.org
+ */
+
+package org.fao.geonet.kernel.harvest.harvester.localfilesystem;
+
+import com.google.common.hash.Hashing;
+import org.fao.geonet.constants.Geonet;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * The files imported by the last successful run of a local filesystem harvester: for each file,
+ * its size, last modification time, content hash and the records created from it. A file found
+ * unchanged in the manifest is not read again.
+ *
+ * <p>The manifest is only valid for the settings it was built with (see the fingerprint), it is
+ * discarded when they change.</p>
+ */
+class LocalFsManifest {
+    private static final Logger LOGGER = LoggerFactory.getLogger(Geonet.HARVESTER);
+    private static final int FORMAT = 1;
+
+    private final String fingerprint;
+    private final Map<String, Entry> entries = new HashMap<>();
+
+    LocalFsManifest(String fingerprint) {
+        this.fingerprint = fingerprint;
+    }
+
+    /**
+     * @return the manifest saved in the file or an empty manifest if there is none, if it can't
+     * be read or if it was built with other settings.
+     */
+    static LocalFsManifest load(Path file, String fingerprint) {
+        LocalFsManifest manifest = new LocalFsManifest(fingerprint);
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(
+            new GZIPInputStream(Files.newInputStream(file))))) {
+            int format = in.readInt();
+            if (format != FORMAT || !fingerprint.equals(in.readUTF())) {
+                LOGGER.info("Harvester settings changed since manifest {} was saved, all files will be read.", file);
+                return manifest;
+            }
+            int count = in.readInt();
+            for (int i = 0; i < count; i++) {
+                String path = in.readUTF();
+                long size = in.readLong();
+                long lastModified = in.readLong();
+                String hash = in.readUTF();
+                String uuid = in.readBoolean() ? in.readUTF() : null;
+                int[] ids = new int[in.readInt()];
+                for (int j = 0; j < ids.length; j++) {
+                    ids[j] = in.readInt();
+                }
+                manifest.entries.put(path, new Entry(size, lastModified, hash, uuid, ids));
+            }
+        } catch (NoSuchFileException e) {
+            // First run
+        } catch (IOException e) {
+            LOGGER.warn("Can't read manifest {}, all files will be read. Error is: {}.", file, e.getMessage());
+            manifest.entries.clear();
+        }
+        return manifest;
+    }
+
+    /**
+     * Write the manifest to a temporary file then replace the file.
+     */
+    void save(Path file) throws IOException {
+        Files.createDirectories(file.getParent());
+        Path tmp = Files.createTempFile(file.getParent(), file.getFileName().toString(), ".tmp");
+        try {
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(
+                new GZIPOutputStream(Files.newOutputStream(tmp))))) {
+                out.writeInt(FORMAT);
+                out.writeUTF(fingerprint);
+                out.writeInt(entries.size());
+                for (Map.Entry<String, Entry> e : entries.entrySet()) {
+                    Entry entry = e.getValue();
+                    out.writeUTF(e.getKey());
+                    out.writeLong(entry.size);
+                    out.writeLong(entry.lastModified);
+                    out.writeUTF(entry.hash);
+                    out.writeBoolean(entry.uuid != null);
+                    if (entry.uuid != null) {
+                        out.writeUTF(entry.uuid);
+                    }
+                    out.writeInt(entry.ids.length);
+                    for (int id : entry.ids) {
+                        out.writeInt(id);
+                    }
+                }
+            }
+            Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING);
+        } catch (IOException e) {
+            Files.deleteIfExists(tmp);
+            throw e;
+        }
+    }
+
+    Entry get(String path) {
+        return entries.get(path);
+    }
+
+    void put(String path, Entry entry) {
+        entries.put(path, entry);
+    }
+
+    int size() {
+        return entries.size();
+    }
+
+    boolean isEmpty() {
+        return entries.isEmpty();
+    }
+
+    static String hash(Path file) throws IOException {
+        return com.google.common.io.Files.asByteSource(file.toFile()).hash(Hashing.sha256()).toString();
+    }
+
+    /**
+     * A file imported by the harvester.
+     */
+    static final class Entry {
+        final long size;
+        final long lastModified;
+        final String hash;
+        /**
+         * Uuid of the record, null for MEF files.
+         */
+        final String uuid;
+        /**
+         * Ids of the records created or updated from the file.
+         */
+        final int[] ids;
+
+        Entry(long size, long lastModified, String hash, String uuid, int[] ids) {
+            this.size = size;
+            this.lastModified = lastModified;
+            this.hash = hash;
+            this.uuid = uuid;
+            this.ids = ids;
+        }
+
+        /**
+         * @return true if the file has the same size and modification time (no need to read it).
+         */
+        boolean isSame(long size, long lastModified) {
+            return this.size == size && this.lastModified == lastModified;
+        }
+
+        Entry withLastModified(long lastModified) {
+            return new Entry(size, lastModified, hash, uuid, ids);
+        }
+    }
+}
@@ -0,0 +1,259 @@
+/*
+ * Copyright (C) 2001-2021 Food and Agriculture Organization of the
+ * United Nations (FAO-UN), United Nations World Food Programme (WFP)
+ * and United Nations Environment Programme (UNEP)
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or (at
+ * your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301, USA
+ *
+ * Contact: Jeroen Ticheler - FAO - Viale delle Terme di Caracalla 2,
+ * Rome - Italy. email: geonetwork@osgeo.org
+ */
+
+package org.fao.geonet.kernel.harvest.harvester.csw;
+
+import com.google.common.base.Function;
+
+import jeeves.server.context.ServiceContext;
+
+import org.apache.http.client.methods.HttpUriRequest;
+import org.apache.http.impl.client.HttpClientBuilder;
+import org.fao.geonet.GeonetContext;
+import org.fao.geonet.Logger;
+import org.fao.geonet.constants.Geonet;
+import org.fao.geonet.csw.common.Csw;
+import org.fao.geonet.csw.common.CswOperation;
+import org.fao.geonet.csw.common.CswServer;
+import org.fao.geonet.domain.AbstractMetadata;
+import org.fao.geonet.kernel.DataManager;
+import org.fao.geonet.kernel.HarvestValidationEnum;
+import org.fao.geonet.kernel.UpdateDatestamp;
+import org.fao.geonet.kernel.datamanager.IMetadataIndexer;
+import org.fao.geonet.kernel.datamanager.IMetadataManager;
+import org.fao.geonet.kernel.datamanager.IMetadataUtils;
+import org.fao.geonet.kernel.harvest.harvester.HarvestError;
+import org.fao.geonet.kernel.harvest.harvester.HarvestResult;
+import org.fao.geonet.kernel.harvest.harvester.RecordInfo;
+import org.fao.geonet.kernel.setting.SettingManager;
+import org.fao.geonet.repository.GroupRepository;
+import org.fao.geonet.repository.MetadataCategoryRepository;
+import org.fao.geonet.repository.OperationAllowedRepository;
+import org.fao.geonet.utils.GeonetHttpRequestFactory;
+import org.fao.geonet.utils.Xml;
+import org.jdom.Element;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Mockito;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.client.ClientHttpResponse;
+import org.springframework.mock.http.client.MockClientHttpResponse;
+
+import java.io.IOException;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Test the retrieval of the records by the fetch workers of the {@link Aligner}.
+ */
+public class AlignerTest {
+    private static final String URL = "http://localhost:8080/geonetwork/srv/eng/csw";
+
+    private final FakeCswServer server = new FakeCswServer();
+    private final List<String> stored = Collections.synchronizedList(new ArrayList<String>());
+    private final Set<Thread> storingThreads = Collections.synchronizedSet(new HashSet<Thread>());
+    private ServiceContext context;
+    private CswParams params;
+    private Aligner aligner;
+
+    @Before
+    public void setUp() throws Exception {
+        DataManager dataManager = Mockito.mock(DataManager.class);
+        Mockito.when(dataManager.autodetectSchema(Mockito.any(Element.class), Mockito.anyString())).thenReturn("iso19139");
+        Mockito.when(dataManager.autodetectSchema(Mockito.any(Element.class))).thenReturn("iso19139");
+
+        IMetadataUtils metadataUtils = Mockito.mock(IMetadataUtils.class);
+        Mockito.when(metadataUtils.extractUUID(Mockito.anyString(), Mockito.any(Element.class))).thenAnswer(new Answer<String>() {
+            @Override
+            public String answer(InvocationOnMock invocation) throws Throwable {
+                return ((Element) invocation.getArguments()[1]).getChildText("uuid");
+            }
+        });
+
+        final AtomicInteger ids = new AtomicInteger();
+        IMetadataManager metadataManager = Mockito.mock(IMetadataManager.class);
+        Mockito.when(metadataManager.insertMetadata(Mockito.any(ServiceContext.class), Mockito.any(AbstractMetadata.class),
+            Mockito.any(Element.class), Mockito.anyBoolean(), Mockito.anyBoolean(), Mockito.any(UpdateDatestamp.class),
+            Mockito.anyBoolean(), Mockito.anyBoolean())).thenAnswer(new Answer<AbstractMetadata>() {
+            @Override
+            public AbstractMetadata answer(InvocationOnMock invocation) throws Throwable {
+                AbstractMetadata metadata = (AbstractMetadata) invocation.getArguments()[1];
+                stored.add(metadata.getUuid());
+                storingThreads.add(Thread.currentThread());
+                return metadata.setId(ids.incrementAndGet());
+            }
+        });
+
+        GeonetContext geonetContext = Mockito.mock(GeonetContext.class);
+        Mockito.when(geonetContext.getBean(DataManager.class)).thenReturn(dataManager);
+        Mockito.when(geonetContext.getBean(IMetadataUtils.class)).thenReturn(metadataUtils);
+        Mockito.when(geonetContext.getBean(IMetadataManager.class)).thenReturn(metadataManager);
+        Mockito.when(geonetContext.getBean(IMetadataIndexer.class)).thenReturn(Mockito.mock(IMetadataIndexer.class));
+        Mockito.when(geonetContext.getBean(SettingManager.class)).thenReturn(Mockito.mock(SettingManager.class));
+
+        context = Mockito.mock(ServiceContext.class);
+        Mockito.when(context.getHandlerContext(Geonet.CONTEXT_NAME)).thenReturn(geonetContext);
+        Mockito.when(context.getBean(GeonetHttpRequestFactory.class)).thenReturn(server);
+        Mockito.when(context.getBean(DataManager.class)).thenReturn(dataManager);
+        Mockito.when(context.getBean(IMetadataUtils.class)).thenReturn(metadataUtils);
+        Mockito.when(context.getBean(GroupRepository.class)).thenReturn(Mockito.mock(GroupRepository.class));
+        Mockito.when(context.getBean(MetadataCategoryRepository.class)).thenReturn(Mockito.mock(MetadataCategoryRepository.class));
+        Mockito.when(context.getBean(OperationAllowedRepository.class)).thenReturn(Mockito.mock(OperationAllowedRepository.class));
+
+        params = new CswParams(dataManager);
+        params.setUuid("harvester-uuid");
+        params.setName("csw");
+        params.setOwnerId("1");
+        params.setValidate(HarvestValidationEnum.NOVALIDATION);
+        params.xslfilter = "";
+        params.xpathFilter = "";
+        params.fetchThreads = 3;
+        params.idsPerRequest = 2;
+    }
+
+    @After
+    public void tearDown() {
+        if (aligner != null) {
+            aligner.close();
+        }
+    }
+
+    @Test
+    public void testRecordsStoredInOrder() throws Exception {
+        // the first records are returned last
+        server.delays.put("uuid-1,uuid-2", 300L);
+
+        List<HarvestError> errors = new ArrayList<>();
+        HarvestResult result = align(errors, "uuid-1", "uuid-2", "uuid-3", "uuid-4", "uuid-5");
+
+        assertEquals(Arrays.asList("uuid-1", "uuid-2", "uuid-3", "uuid-4", "uuid-5"), stored);
+        assertEquals(Collections.singleton(Thread.currentThread()), storingThreads);
+        assertEquals(0, errors.size());
+        assertEquals(5, result.addedMetadata);
+        assertEquals(5, result.totalMetadata);
+        assertEquals(5, result.originalMetadata);
+        assertEquals(Arrays.asList("uuid-1,uuid-2", "uuid-3,uuid-4", "uuid-5"), server.sortedRequests());
+    }
+
+    @Test
+    public void testFailedBatch() throws Exception {
+        server.failing.add("uuid-3,uuid-4");
+        server.failing.add("uuid-6");
+        server.missing.add("uuid-6");
+
+        List<HarvestError> errors = new ArrayList<>();
+        HarvestResult result = align(errors, "uuid-1", "uuid-2", "uuid-3", "uuid-4", "uuid-5", "uuid-6", "uuid-7");
+
+        // records of the failed batch are requested one by one, the record missing from its
+        // batch is requested alone and the other records are not affected by the failures
+        assertEquals(Arrays.asList("uuid-1", "uuid-2", "uuid-3", "uuid-4", "uuid-5", "uuid-7"), stored);
+        assertEquals(0, errors.size());
+        assertEquals(6, result.addedMetadata);
+        assertEquals(7, result.originalMetadata);
+        assertTrue(result.unretrievable > 0);
+        assertEquals(Arrays.asList("uuid-1,uuid-2", "uuid-3", "uuid-3,uuid-4", "uuid-4", "uuid-5,uuid-6", "uuid-6", "uuid-7"),
+            server.sortedRequests());
+    }
+
+    private HarvestResult align(List<HarvestError> errors, String... uuids) throws Exception {
+        CswServer cswServer = Mockito.mock(CswServer.class);
+        CswOperation operation = new CswOperation();
+        operation.setGetUrl(new URL(URL));
+        Mockito.when(cswServer.getOperation(CswServer.GET_RECORD_BY_ID)).thenReturn(operation);
+
+        List<RecordInfo> records = new ArrayList<>();
+        for (String uuid : uuids) {
+            records.add(new RecordInfo(uuid, "2021-01-01T00:00:00"));
+        }
+        aligner = new Aligner(new AtomicBoolean(), context, cswServer, params, Mockito.mock(Logger.class));
+        return aligner.align(records, errors);
+    }
+
+    /**
+     * Answer the GetRecordById requests with records only made of their uuid.
+     */
+    private static class FakeCswServer extends GeonetHttpRequestFactory {
+        /**
+         * Ids of the requests answered with a server error.
+         */
+        final Set<String> failing = Collections.synchronizedSet(new HashSet<String>());
+        /**
+         * Records left out of the responses.
+         */
+        final Set<String> missing = Collections.synchronizedSet(new HashSet<String>());
+        final Map<String, Long> delays = Collections.synchronizedMap(new HashMap<String, Long>());
+        final List<String> requests = Collections.synchronizedList(new ArrayList<String>());
+
+        @Override
+        public ClientHttpResponse execute(HttpUriRequest request, Function<HttpClientBuilder, Void> configurator) throws IOException {
+            String ids = "";
+            for (String param : request.getURI().getQuery().split("&")) {
+                if (param.startsWith("id=")) {
+                    ids = param.substring(3);
+                }
+            }
+            requests.add(ids);
+
+            Long delay = delays.get(ids);
+            if (delay != null) {
+                try {
+                    Thread.sleep(delay);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+            if (failing.contains(ids)) {
+                return new MockClientHttpResponse(new byte[0], HttpStatus.INTERNAL_SERVER_ERROR);
+            }
+
+            Element response = new Element("GetRecordByIdResponse", Csw.NAMESPACE_CSW);
+            for (String id : ids.split(",")) {
+                if (!missing.contains(id)) {
+                    response.addContent(new Element("record").addContent(new Element("uuid").setText(id)));
+                }
+            }
+            return new MockClientHttpResponse(Xml.getString(response).getBytes("UTF-8"), HttpStatus.OK);
+        }
+
+        List<String> sortedRequests() {
+            List<String> sorted = new ArrayList<>(requests);
+            Collections.sort(sorted);
+            return sorted;
+        }
+    }
+}
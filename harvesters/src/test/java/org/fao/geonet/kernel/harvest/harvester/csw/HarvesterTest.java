@@ -0,0 +1,205 @@
+/*
+ * Copyright (C) 2001-2021 Food and Agriculture Organization of the
+ * United Nations (FAO-UN), United Nations World Food Programme (WFP)
+ * and United Nations Environment Programme (UNEP)
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or (at
+ * your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301, USA
+ *
+ * Contact: Jeroen Ticheler - FAO - Viale delle Terme di Caracalla 2,
+ * Rome - Italy. email: geonetwork@osgeo.org
+ */
+
+package org.fao.geonet.kernel.harvest.harvester.csw;
+
+import jeeves.server.context.ServiceContext;
+
+import org.fao.geonet.AbstractCoreIntegrationTest;
+import org.fao.geonet.ApplicationContextHolder;
+import org.fao.geonet.csw.common.Csw;
+import org.fao.geonet.domain.ISODate;
+import org.fao.geonet.kernel.harvest.harvester.RecordInfo;
+import org.fao.geonet.kernel.setting.SettingManager;
+import org.fao.geonet.utils.Log;
+import org.fao.geonet.utils.Xml;
+import org.jdom.Element;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Mockito;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Test the incremental mode of the CSW {@link Harvester}.
+ */
+public class HarvesterTest {
+    private static final String MODIFIED_SINCE = "2021-03-01T10:00:00Z";
+
+    private ServiceContext context;
+    private CswParams params;
+
+    @Before
+    public void setUp() throws Exception {
+        context = Mockito.mock(ServiceContext.class);
+        Mockito.when(context.getAppPath()).thenReturn(AbstractCoreIntegrationTest.getWebappDir(HarvesterTest.class));
+
+        params = new CswParams(null);
+        params.incremental = true;
+        params.modifiedSince = MODIFIED_SINCE;
+        params.lastFullHarvest = daysAgo(1);
+    }
+
+    @After
+    public void tearDown() {
+        ApplicationContextHolder.clear();
+    }
+
+    @Test
+    public void testIncrementalHarvest() throws Exception {
+        Harvester harvester = createHarvester();
+        assertFalse(harvester.isFullHarvest());
+
+        Element filter = Xml.loadString(harvester.getFilterConstraint(Collections.<Element>emptyList(), null), false);
+        assertModifiedSince(filter.getChild("PropertyIsGreaterThanOrEqualTo", Csw.NAMESPACE_OGC));
+        assertEquals("Modified >= '" + MODIFIED_SINCE + "'", harvester.getCqlConstraint(Collections.<Element>emptyList(), null));
+    }
+
+    @Test
+    public void testIncrementalHarvestWithFilters() throws Exception {
+        params.modifiedQueryable = "apiso:Modified";
+        Harvester harvester = createHarvester();
+        List<Element> filters = Collections.singletonList(new Element("filter")
+            .addContent(new Element("field").setText("AnyText"))
+            .addContent(new Element("operator").setText("EQUAL"))
+            .addContent(new Element("value").setText("roads")));
+
+        // the date is an additional condition of the configured filters
+        Element filter = Xml.loadString(harvester.getFilterConstraint(filters, null), false);
+        Element and = filter.getChild("And", Csw.NAMESPACE_OGC);
+        assertNotNull(and);
+        assertNotNull(and.getChild("PropertyIsEqualTo", Csw.NAMESPACE_OGC));
+        Element modified = and.getChild("PropertyIsGreaterThanOrEqualTo", Csw.NAMESPACE_OGC);
+        assertEquals("apiso:Modified", modified.getChildText("PropertyName", Csw.NAMESPACE_OGC));
+        assertEquals(MODIFIED_SINCE, modified.getChildText("Literal", Csw.NAMESPACE_OGC));
+
+        assertEquals("(AnyText = 'roads') AND apiso:Modified >= '" + MODIFIED_SINCE + "'",
+            harvester.getCqlConstraint(filters, null));
+    }
+
+    @Test
+    public void testFullHarvestWhenNotIncremental() throws Exception {
+        params.incremental = false;
+        assertFullHarvest(createHarvester());
+    }
+
+    @Test
+    public void testFullHarvestWithoutPreviousHarvest() throws Exception {
+        params.modifiedSince = "";
+        assertFullHarvest(createHarvester());
+
+        params.modifiedSince = MODIFIED_SINCE;
+        params.lastFullHarvest = "";
+        assertFullHarvest(createHarvester());
+    }
+
+    @Test
+    public void testFullHarvestDue() throws Exception {
+        params.fullHarvestDays = 7;
+        params.lastFullHarvest = daysAgo(6);
+        assertFalse(createHarvester().isFullHarvest());
+
+        params.lastFullHarvest = daysAgo(8);
+        assertFullHarvest(createHarvester());
+    }
+
+    @Test
+    public void testFullHarvestAfterSettingsChange() throws Exception {
+        ConfigurableApplicationContext applicationContext = Mockito.mock(ConfigurableApplicationContext.class);
+        Mockito.when(applicationContext.getBean(SettingManager.class)).thenReturn(Mockito.mock(SettingManager.class));
+        ApplicationContextHolder.set(applicationContext);
+
+        Element node = new Element("node")
+            .addContent(new Element("site")
+                .addContent(new Element("name").setText("csw"))
+                .addContent(new Element("incremental").setText("true")));
+        params.create(node);
+        params.modifiedSince = MODIFIED_SINCE;
+        params.lastFullHarvest = daysAgo(1);
+        assertFalse(createHarvester().isFullHarvest());
+
+        // a new filter may match records which were excluded before
+        params.update(node);
+        assertTrue(params.incremental);
+        assertFullHarvest(createHarvester());
+    }
+
+    @Test
+    public void testModifiedSince() throws Exception {
+        Harvester harvester = createHarvester();
+        // nothing modified, the next harvest starts from the same date
+        assertEquals(MODIFIED_SINCE, harvester.getModifiedSince());
+
+        harvester.updateMaxChangeDate(new RecordInfo("uuid-1", "2021-03-02T08:00:00Z"));
+        harvester.updateMaxChangeDate(new RecordInfo("uuid-2", "2021-03-05T12:00:00Z"));
+        harvester.updateMaxChangeDate(new RecordInfo("uuid-3", "2021-03-04T00:00:00Z"));
+        // records without date or with an invalid date are ignored
+        harvester.updateMaxChangeDate(new RecordInfo("uuid-4", null));
+        harvester.updateMaxChangeDate(new RecordInfo("uuid-5", "not a date"));
+
+        // the most recent change date reported by the remote node
+        assertEquals("2021-03-05T12:00:00Z", harvester.getModifiedSince());
+    }
+
+    @Test
+    public void testModifiedSinceOfFullHarvest() throws Exception {
+        params.modifiedSince = "";
+        Harvester harvester = createHarvester();
+        assertEquals("", harvester.getModifiedSince());
+
+        harvester.updateMaxChangeDate(new RecordInfo("uuid-1", "2021-03-02T08:00:00Z"));
+        assertEquals("2021-03-02T08:00:00Z", harvester.getModifiedSince());
+    }
+
+    private Harvester createHarvester() {
+        Harvester harvester = new Harvester(new AtomicBoolean(), Log.createLogger("TEST"), context, params);
+        harvester.chooseHarvestMode();
+        return harvester;
+    }
+
+    private void assertFullHarvest(Harvester harvester) throws Exception {
+        assertTrue(harvester.isFullHarvest());
+        assertEquals("", harvester.getFilterConstraint(Collections.<Element>emptyList(), null));
+        assertEquals("", harvester.getCqlConstraint(Collections.<Element>emptyList(), null));
+    }
+
+    private void assertModifiedSince(Element condition) {
+        assertNotNull(condition);
+        assertEquals("Modified", condition.getChildText("PropertyName", Csw.NAMESPACE_OGC));
+        assertEquals(MODIFIED_SINCE, condition.getChildText("Literal", Csw.NAMESPACE_OGC));
+    }
+
+    private static String daysAgo(int days) {
+        return new ISODate(System.currentTimeMillis() - TimeUnit.DAYS.toMillis(days)).toString();
+    }
+}
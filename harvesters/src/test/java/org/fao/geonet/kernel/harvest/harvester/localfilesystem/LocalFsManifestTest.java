@@ -0,0 +1,96 @@
+/*
+ * Copyright (C) 2001-2021 Food and Agriculture Organization of the
+ * United Nations (FAO-UN), United Nations World Food Programme (WFP)
+ * and United Nations Environment Programme (UNEP)
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or (at
+ * your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301, USA
+ *
+ * Contact: Jeroen Ticheler - FAO - Viale delle Terme di Caracalla 2,
+ * Rome - Italy. email: geonetwork@osgeo.org
+ */
+
+package org.fao.geonet.kernel.harvest.harvester.localfilesystem;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class LocalFsManifestTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void testSaveLoad() throws Exception {
+        Path file = folder.getRoot().toPath().resolve("manifests").resolve("harvester.manifest");
+        LocalFsManifest manifest = new LocalFsManifest("settings");
+        manifest.put("a/record.xml", new LocalFsManifest.Entry(10, 1000, "hash1", "uuid1", new int[]{1}));
+        manifest.put("b/records.mef", new LocalFsManifest.Entry(20, 2000, "hash2", null, new int[]{2, 3}));
+        manifest.save(file);
+
+        LocalFsManifest loaded = LocalFsManifest.load(file, "settings");
+        assertEquals(2, loaded.size());
+        LocalFsManifest.Entry xml = loaded.get("a/record.xml");
+        assertTrue(xml.isSame(10, 1000));
+        assertFalse(xml.isSame(10, 1001));
+        assertEquals("hash1", xml.hash);
+        assertEquals("uuid1", xml.uuid);
+        LocalFsManifest.Entry mef = loaded.get("b/records.mef");
+        assertNull(mef.uuid);
+        assertArrayEquals(new int[]{2, 3}, mef.ids);
+        assertTrue(mef.withLastModified(3000).isSame(20, 3000));
+    }
+
+    @Test
+    public void testDiscardedWhenSettingsChange() throws Exception {
+        Path file = folder.getRoot().toPath().resolve("harvester.manifest");
+        LocalFsManifest manifest = new LocalFsManifest("settings");
+        manifest.put("record.xml", new LocalFsManifest.Entry(10, 1000, "hash", "uuid", new int[]{1}));
+        manifest.save(file);
+
+        assertTrue(LocalFsManifest.load(file, "other settings").isEmpty());
+    }
+
+    @Test
+    public void testMissingOrCorrupted() throws Exception {
+        Path file = folder.getRoot().toPath().resolve("harvester.manifest");
+        assertTrue(LocalFsManifest.load(file, "settings").isEmpty());
+
+        Files.write(file, "not a manifest".getBytes(StandardCharsets.UTF_8));
+        assertTrue(LocalFsManifest.load(file, "settings").isEmpty());
+    }
+
+    @Test
+    public void testHash() throws Exception {
+        Path file = folder.newFile("record.xml").toPath();
+        Files.write(file, "<record/>".getBytes(StandardCharsets.UTF_8));
+        String hash = LocalFsManifest.hash(file);
+        assertEquals(hash, LocalFsManifest.hash(file));
+
+        Files.write(file, "<record></record>".getBytes(StandardCharsets.UTF_8));
+        assertNotEquals(hash, LocalFsManifest.hash(file));
+    }
+}
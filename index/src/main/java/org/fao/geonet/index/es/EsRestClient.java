@@ -44,6 +44,8 @@ import org.elasticsearch.action.bulk.BulkRequest;
 import org.elasticsearch.action.bulk.BulkResponse;
 import org.elasticsearch.action.get.GetRequest;
 import org.elasticsearch.action.index.IndexRequest;
+import org.elasticsearch.action.search.MultiSearchRequest;
+import org.elasticsearch.action.search.MultiSearchResponse;
 import org.elasticsearch.action.search.SearchRequest;
 import org.elasticsearch.action.search.SearchResponse;
 import org.elasticsearch.action.support.WriteRequest;
@@ -69,6 +71,7 @@ import javax.net.ssl.SSLContext;
 import java.io.IOException;
 import java.security.cert.CertificateException;
 import java.security.cert.X509Certificate;
+import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.Iterator;
 import java.util.List;
@@ -286,29 +289,30 @@ public class EsRestClient implements InitializingBean {
 
     public SearchResponse query(String index, QueryBuilder queryBuilder, QueryBuilder postFilterBuilder, Set<String> includedFields,
                                 int from, int size, List<SortBuilder<FieldSortBuilder>> sort) throws Exception {
-        if (!activated) {
-            return null;
-        }
+        return query(index, queryBuilder, postFilterBuilder, includedFields, from, null, size, sort, false);
+    }
 
-        // TODOES: Add permission if index is gn-records
-        // See EsHTTPProxy#addUserInfo
-        SearchRequest searchRequest = new SearchRequest();
-        searchRequest.indices(index);
-        SearchSourceBuilder searchSourceBuilder = new SearchSourceBuilder();
-        searchSourceBuilder.query(queryBuilder);
-        searchSourceBuilder.fetchSource(includedFields.toArray(new String[includedFields.size()]), null);
-        searchSourceBuilder.from(from);
-        searchSourceBuilder.size(size);
-        if (postFilterBuilder != null) {
-            searchSourceBuilder.postFilter(postFilterBuilder);
-        }
+    /**
+     * Query the page of documents following the document having the searchAfter sort values.
+     * The sort must be unique for a document (eg. on the record id). The total number of hits
+     * is always computed.
+     *
+     * @param searchAfter sort values of the last document of the previous page or null for the first page.
+     */
+    public SearchResponse query(String index, QueryBuilder queryBuilder, QueryBuilder postFilterBuilder, Set<String> includedFields,
+                                Object[] searchAfter, int size, List<SortBuilder<FieldSortBuilder>> sort) throws Exception {
+        return query(index, queryBuilder, postFilterBuilder, includedFields, 0, searchAfter, size, sort, true);
+    }
 
-        if ((sort != null) && (!sort.isEmpty())) {
-            sort.forEach(s -> searchSourceBuilder.sort(s));
+    private SearchResponse query(String index, QueryBuilder queryBuilder, QueryBuilder postFilterBuilder, Set<String> includedFields,
+                                 int from, Object[] searchAfter, int size, List<SortBuilder<FieldSortBuilder>> sort,
+                                 boolean trackTotalHits) throws Exception {
+        if (!activated) {
+            return null;
         }
 
-//        searchSourceBuilder.sort(new FieldSortBuilder("_id").order(SortOrder.ASC));
-        searchRequest.source(searchSourceBuilder);
+        SearchRequest searchRequest = buildSearchRequest(index, queryBuilder, postFilterBuilder, includedFields,
+            from, searchAfter, size, sort, trackTotalHits);
 
         try {
             SearchResponse searchResponse = client.search(searchRequest, RequestOptions.DEFAULT);
@@ -330,6 +334,84 @@ public class EsRestClient implements InitializingBean {
         }
     }
 
+    /**
+     * Build a query to run with others in one request using {@link #multiSearch(List)}.
+     */
+    public SearchRequest buildSearchRequest(String index, QueryBuilder queryBuilder, QueryBuilder postFilterBuilder,
+                                            Set<String> includedFields, int from, int size) {
+        return buildSearchRequest(index, queryBuilder, postFilterBuilder, includedFields, from, null, size, null, false);
+    }
+
+    /**
+     * Run several queries in one multi search request.
+     *
+     * @return the responses, in the order of the requests.
+     * @throws IOException if one of the queries failed.
+     */
+    public List<SearchResponse> multiSearch(List<SearchRequest> requests) throws Exception {
+        if (!activated) {
+            throw new IOException("Index not yet activated.");
+        }
+        List<SearchResponse> responses = new ArrayList<>(requests.size());
+        if (requests.isEmpty()) {
+            return responses;
+        }
+
+        MultiSearchRequest multiSearchRequest = new MultiSearchRequest();
+        requests.forEach(multiSearchRequest::add);
+        try {
+            MultiSearchResponse multiSearchResponse = client.msearch(multiSearchRequest, RequestOptions.DEFAULT);
+            for (MultiSearchResponse.Item item : multiSearchResponse.getResponses()) {
+                if (item.isFailure()) {
+                    throw new IOException(String.format(
+                        "Error during querying index. Errors is '%s'.", item.getFailureMessage()
+                    ));
+                }
+                responses.add(item.getResponse());
+            }
+            return responses;
+        } catch (ElasticsearchStatusException esException) {
+            Throwable[] suppressed = esException.getSuppressed();
+            if (suppressed.length > 0 && suppressed[0] instanceof ResponseException) {
+                ResponseException re = (ResponseException) suppressed[0];
+                Log.error("geonetwork.index", String.format(
+                    "Error during querying index. %s", re.getMessage()));
+            }
+            throw esException;
+        }
+    }
+
+    private SearchRequest buildSearchRequest(String index, QueryBuilder queryBuilder, QueryBuilder postFilterBuilder,
+                                             Set<String> includedFields, int from, Object[] searchAfter, int size,
+                                             List<SortBuilder<FieldSortBuilder>> sort, boolean trackTotalHits) {
+        // TODOES: Add permission if index is gn-records
+        // See EsHTTPProxy#addUserInfo
+        SearchRequest searchRequest = new SearchRequest();
+        searchRequest.indices(index);
+        SearchSourceBuilder searchSourceBuilder = new SearchSourceBuilder();
+        searchSourceBuilder.query(queryBuilder);
+        searchSourceBuilder.fetchSource(includedFields.toArray(new String[includedFields.size()]), null);
+        searchSourceBuilder.from(from);
+        searchSourceBuilder.size(size);
+        if (searchAfter != null) {
+            searchSourceBuilder.searchAfter(searchAfter);
+        }
+        if (trackTotalHits) {
+            searchSourceBuilder.trackTotalHits(true);
+        }
+        if (postFilterBuilder != null) {
+            searchSourceBuilder.postFilter(postFilterBuilder);
+        }
+
+        if ((sort != null) && (!sort.isEmpty())) {
+            sort.forEach(s -> searchSourceBuilder.sort(s));
+        }
+
+//        searchSourceBuilder.sort(new FieldSortBuilder("_id").order(SortOrder.ASC));
+        searchRequest.source(searchSourceBuilder);
+        return searchRequest;
+    }
+
 
     public String deleteByQuery(String index, String query) throws Exception {
         if (!activated) {
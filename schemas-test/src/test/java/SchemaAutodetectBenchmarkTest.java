@@ -0,0 +1,124 @@
+/*
+ * Copyright (C) 2001-2016 Food and Agriculture Organization of the
+ * United Nations (FAO-UN), United Nations World Food Programme (WFP)
+ * and United Nations Environment Programme (UNEP)
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or (at
+ * your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301, USA
+ *
+ * Contact: Jeroen Ticheler - FAO - Viale delle Terme di Caracalla 2,
+ * Rome - Italy. email: geonetwork@osgeo.org
+ */
+
+import org.fao.geonet.AbstractCoreIntegrationTest;
+import org.fao.geonet.constants.Geonet;
+import org.fao.geonet.kernel.SchemaAutodetectIndex;
+import org.fao.geonet.utils.Log;
+import org.fao.geonet.utils.Xml;
+import org.jdom.Element;
+import org.jdom.Namespace;
+import org.junit.Before;
+import org.junit.Ignore;
+import org.junit.Test;
+
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Detect the schema of the sample records of the schema plugins with the autodetect rules of all
+ * schema plugins. The throughput benchmark is ignored, run it manually to measure the autodetection.
+ */
+public class SchemaAutodetectBenchmarkTest {
+    private static final Namespace GEONET_SCHEMA_NS = Namespace.getNamespace("http://geonetwork-opensource.org/schemas/schema-ident");
+    private static final int ITERATIONS = 2000;
+
+    private final Map<String, List<Element>> autodetectElements = new HashMap<>();
+    private final List<Element> records = new ArrayList<>();
+    private final List<String> expected = new ArrayList<>();
+
+    @Before
+    public void loadSampleRecords() throws Exception {
+        Path classFile = AbstractCoreIntegrationTest.getClassFile(getClass()).toPath();
+        Path root = classFile;
+        while (root != null && !Files.exists(root.resolve("schemas/dublin-core"))) {
+            root = root.getParent();
+        }
+        if (root == null) {
+            throw new RuntimeException("Check schemas data directory!");
+        }
+
+        try (DirectoryStream<Path> paths = Files.newDirectoryStream(root.resolve("schemas"))) {
+            for (Path path : paths) {
+                Path schemaIdent = path.resolve("src/main/plugin").resolve(path.getFileName()).resolve("schema-ident.xml");
+                if (Files.exists(schemaIdent)) {
+                    Element autodetect = Xml.loadFile(schemaIdent).getChild("autodetect", GEONET_SCHEMA_NS);
+                    @SuppressWarnings("unchecked")
+                    List<Element> children = autodetect == null ? Collections.<Element>emptyList() : autodetect.getChildren();
+                    autodetectElements.put(path.getFileName().toString(), children);
+                }
+            }
+        }
+
+        Map<String, String> expectedSchemas = new LinkedHashMap<>();
+        expectedSchemas.put("cswrecord", "csw-record");
+        expectedSchemas.put("dublincore", "dublin-core");
+        expectedSchemas.put("iso19139", "iso19139");
+
+        Path resources = root.resolve("schemas-test/src/test/resources");
+        for (Map.Entry<String, String> entry : expectedSchemas.entrySet()) {
+            try (DirectoryStream<Path> paths = Files.newDirectoryStream(resources.resolve(entry.getKey()), "*.xml")) {
+                for (Path path : paths) {
+                    Element record = Xml.loadFile(path);
+                    // only records, not other test data
+                    if (!record.getName().equals("relations")) {
+                        records.add(record);
+                        expected.add(entry.getValue());
+                    }
+                }
+            }
+        }
+    }
+
+    @Test
+    public void testAutodetectSampleRecords() {
+        SchemaAutodetectIndex index = new SchemaAutodetectIndex(autodetectElements);
+        for (int i = 0; i < records.size(); i++) {
+            assertEquals(expected.get(i), index.detect(records.get(i)));
+        }
+    }
+
+    @Test
+    @Ignore
+    public void testAutodetectThroughput() {
+        SchemaAutodetectIndex index = new SchemaAutodetectIndex(autodetectElements);
+        long start = System.nanoTime();
+        for (int iteration = 0; iteration < ITERATIONS; iteration++) {
+            for (Element record : records) {
+                index.detect(record);
+            }
+        }
+        long elapsed = System.nanoTime() - start;
+        Log.info(Geonet.SCHEMA_MANAGER, String.format("Schema autodetection of %d records with the rules of %d schemas: %.1f records/s",
+            records.size() * ITERATIONS, autodetectElements.size(), records.size() * ITERATIONS / (elapsed / 1e9)));
+    }
+}
@@ -54,8 +54,10 @@ import org.fao.geonet.domain.*;
 import org.fao.geonet.index.es.EsRestClient;
 import org.fao.geonet.kernel.AccessManager;
 import org.fao.geonet.kernel.SelectionManager;
+import org.fao.geonet.kernel.UserPermissionSnapshot;
 import org.fao.geonet.kernel.datamanager.IMetadataUtils;
 import org.fao.geonet.kernel.search.EsFilterBuilder;
+import org.fao.geonet.kernel.selection.RecordSelection;
 import org.fao.geonet.repository.SourceRepository;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -152,9 +154,15 @@ public class EsHTTPProxy {
         return sub != null ? sub.asInt() : null;
     }
 
-    private static void addSelectionInfo(ObjectNode doc, Set<String> selections) {
+    private static void addSelectionInfo(ObjectNode doc, RecordSelection selections) {
         final String uuid = getSourceString(doc, Geonet.IndexFieldNames.UUID);
-        doc.put(Edit.Info.Elem.SELECTED, selections.contains(uuid));
+        final Integer id = getSourceInteger(doc, Geonet.IndexFieldNames.ID);
+        // Selections are stored by id, a draft is selected with its approved record
+        if (id != null && !"y".equals(getSourceString(doc, Geonet.IndexFieldNames.DRAFT))) {
+            doc.put(Edit.Info.Elem.SELECTED, selections.containsId(id) || selections.containsIdentifier(uuid));
+        } else {
+            doc.put(Edit.Info.Elem.SELECTED, selections.contains(uuid));
+        }
     }
 
     private static void addRelatedTypes(ObjectNode doc,
@@ -177,19 +185,21 @@ public class EsHTTPProxy {
     }
 
     public static void addUserInfo(ObjectNode doc, ServiceContext context) throws Exception {
+        addUserInfo(doc, context.getBean(AccessManager.class).getUserPermissionSnapshot(context));
+    }
+
+    /**
+     * Add the user privileges on the record. Privileges are computed from
+     * the operation fields of the index document and the user permissions
+     * (which is computed once per request) so that no database access is
+     * made for each document.
+     */
+    public static void addUserInfo(ObjectNode doc, UserPermissionSnapshot permissions) {
         final Integer owner = getSourceInteger(doc, Geonet.IndexFieldNames.OWNER);
         final Integer groupOwner = getSourceInteger(doc, Geonet.IndexFieldNames.GROUP_OWNER);
         final String id = getSourceString(doc, Geonet.IndexFieldNames.ID);
 
-        ObjectMapper objectMapper = new ObjectMapper();
-
-        final MetadataSourceInfo sourceInfo = new MetadataSourceInfo();
-        sourceInfo.setOwner(owner);
-        if (groupOwner != null) {
-            sourceInfo.setGroupOwner(groupOwner);
-        }
-        final AccessManager accessManager = context.getBean(AccessManager.class);
-        final boolean isOwner = accessManager.isOwner(context, sourceInfo);
+        final boolean isOwner = permissions.isOwner(owner, groupOwner);
         final HashSet<ReservedOperation> operations;
         boolean canEdit = false;
         if (isOwner) {
@@ -198,35 +208,25 @@ public class EsHTTPProxy {
                 doc.put("ownerId", owner.intValue());
             }
         } else {
-            final Collection<Integer> groups =
-                accessManager.getUserGroups(context.getUserSession(), context.getIpAddress(), false);
-            final Collection<Integer> editingGroups =
-                accessManager.getUserGroups(context.getUserSession(), context.getIpAddress(), true);
             operations = Sets.newHashSet();
             for (ReservedOperation operation : ReservedOperation.values()) {
-                final JsonNode operationNodes = doc.get("_source").get(Geonet.IndexFieldNames.OP_PREFIX + operation.getId());
-                if (operationNodes != null) {
-                    ArrayNode opFields = operationNodes.isArray() ? (ArrayNode) operationNodes : objectMapper.createArrayNode().add(operationNodes);
-                    if (opFields != null) {
-                        for (JsonNode field : opFields) {
-                            final int groupId = field.asInt();
-                            if (operation == ReservedOperation.editing
-                                && canEdit == false
-                                && editingGroups.contains(groupId)) {
-                                canEdit = true;
-                            }
+                for (int groupId : getOperationGroups(doc, operation)) {
+                    if (operation == ReservedOperation.editing
+                        && canEdit == false
+                        && permissions.isEditorInGroup(groupId)) {
+                        canEdit = true;
+                    }
 
-                            if (groups.contains(groupId)) {
-                                operations.add(operation);
-                            }
-                        }
+                    if (permissions.isInGroup(groupId)) {
+                        operations.add(operation);
                     }
                 }
             }
         }
         doc.put(Edit.Info.Elem.EDIT, isOwner || canEdit);
         doc.put(Edit.Info.Elem.REVIEW,
-            id != null ? accessManager.hasReviewPermission(context, id) : false);
+            id != null ? permissions.hasReviewPermission(groupOwner,
+                getOperationGroups(doc, ReservedOperation.editing)) : false);
         doc.put(Edit.Info.Elem.OWNER, isOwner);
         doc.put(Edit.Info.Elem.IS_PUBLISHED_TO_ALL, hasOperation(doc, ReservedGroup.all, ReservedOperation.view));
         addReservedOperation(doc, operations, ReservedOperation.view);
@@ -240,23 +240,34 @@ public class EsHTTPProxy {
         }
     }
 
+    /**
+     * @return the ids of the groups having the operation on the record (ie. op* index fields).
+     */
+    private static int[] getOperationGroups(ObjectNode doc, ReservedOperation operation) {
+        final JsonNode operationNodes = doc.get("_source").get(Geonet.IndexFieldNames.OP_PREFIX + operation.getId());
+        if (operationNodes == null) {
+            return new int[0];
+        }
+        if (!operationNodes.isArray()) {
+            return new int[]{operationNodes.asInt()};
+        }
+        int[] groups = new int[operationNodes.size()];
+        for (int i = 0; i < groups.length; i++) {
+            groups[i] = operationNodes.get(i).asInt();
+        }
+        return groups;
+    }
+
     private static void addReservedOperation(ObjectNode doc, HashSet<ReservedOperation> operations,
                                              ReservedOperation kind) {
         doc.put(kind.name(), operations.contains(kind));
     }
 
     private static boolean hasOperation(ObjectNode doc, ReservedGroup group, ReservedOperation operation) {
-        ObjectMapper objectMapper = new ObjectMapper();
         int groupId = group.getId();
-        final JsonNode operationNodes = doc.get("_source").get(Geonet.IndexFieldNames.OP_PREFIX + operation.getId());
-        if (operationNodes != null) {
-            ArrayNode opFields = operationNodes.isArray() ? (ArrayNode) operationNodes : objectMapper.createArrayNode().add(operationNodes);
-            if (opFields != null) {
-                for (JsonNode field : opFields) {
-                    if (groupId == field.asInt()) {
-                        return true;
-                    }
-                }
+        for (int operationGroupId : getOperationGroups(doc, operation)) {
+            if (groupId == operationGroupId) {
+                return true;
             }
         }
         return false;
@@ -625,13 +636,15 @@ public class EsHTTPProxy {
         JsonGenerator generator = JsonStreamUtils.jsonFactory.createGenerator(streamToClient);
         parser.nextToken();  //Go to the first token
 
-        final Set<String> selections = (addPermissions ?
-            SelectionManager.getManager(ApiUtils.getUserSession(httpSession)).getSelection(bucket) : new HashSet<>());
+        final RecordSelection selections = (addPermissions ?
+            SelectionManager.getManager(ApiUtils.getUserSession(httpSession)).getSelection(bucket) : null);
+        final UserPermissionSnapshot permissions = (addPermissions ?
+            accessManager.getUserPermissionSnapshot(context) : null);
 
         if (endPoint.equals(SEARCH_ENDPOINT)) {
             JsonStreamUtils.addInfoToDocs(parser, generator, doc -> {
                 if (addPermissions) {
-                    addUserInfo(doc, context);
+                    addUserInfo(doc, permissions);
                     addSelectionInfo(doc, selections);
                 }
 
@@ -651,7 +664,7 @@ public class EsHTTPProxy {
         } else {
             JsonStreamUtils.addInfoToDocsMSearch(parser, generator, doc -> {
                 if (addPermissions) {
-                    addUserInfo(doc, context);
+                    addUserInfo(doc, permissions);
                     addSelectionInfo(doc, selections);
                 }
 
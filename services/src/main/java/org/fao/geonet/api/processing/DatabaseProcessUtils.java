@@ -29,6 +29,7 @@ import org.fao.geonet.api.processing.report.MetadataReplacementProcessingReport;
 import org.fao.geonet.api.processing.report.XsltMetadataProcessingReport;
 import org.fao.geonet.domain.AbstractMetadata;
 import org.fao.geonet.domain.ISODate;
+import org.fao.geonet.domain.MetadataDataCodec;
 import org.fao.geonet.kernel.AccessManager;
 import org.fao.geonet.kernel.DataManager;
 import org.fao.geonet.kernel.SchemaManager;
@@ -43,6 +44,8 @@ import org.fao.geonet.utils.Xml;
 import org.jdom.Element;
 
 import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
 
 public class DatabaseProcessUtils {
     /**
@@ -94,6 +97,11 @@ public class DatabaseProcessUtils {
                         : metadataRepository.selectOneWithSearchAndReplace(
                         info.getUuid(), search, replace);
 
+                // The database can't look into records stored compressed
+                if (MetadataDataCodec.isEncoded(updatedXml)) {
+                    updatedXml = searchAndReplace(info.getData(), search, replace, useRegexp, flags);
+                }
+
                 // Check XML is still well formed.
                 wellFormedXml = Xml.loadString(updatedXml, false);
 
@@ -129,4 +137,43 @@ public class DatabaseProcessUtils {
         }
         return null;
     }
+
+    /**
+     * Search and replace in the data of a record like the database functions do for the records
+     * stored as text (replace and regexp_replace of PostgreSQL): without the g flag only the
+     * first match is replaced, \1 to \9 and \&amp; in the replacement are the groups and the match.
+     */
+    static String searchAndReplace(String data, String search, String replace, boolean useRegexp, String flags) {
+        if (!useRegexp) {
+            return data.replace(search, replace);
+        }
+        String options = StringUtils.defaultString(flags);
+        int patternFlags = options.contains("n") ? Pattern.MULTILINE : Pattern.DOTALL;
+        if (options.contains("i")) {
+            patternFlags |= Pattern.CASE_INSENSITIVE | Pattern.UNICODE_CASE;
+        }
+
+        StringBuilder replacement = new StringBuilder();
+        for (int i = 0; i < replace.length(); i++) {
+            char c = replace.charAt(i);
+            char next = i + 1 < replace.length() ? replace.charAt(i + 1) : 0;
+            if (c == '\\' && next >= '1' && next <= '9') {
+                replacement.append('$').append(next);
+                i++;
+            } else if (c == '\\' && next == '&') {
+                replacement.append("$0");
+                i++;
+            } else if (c == '\\' && next == '\\') {
+                replacement.append("\\\\");
+                i++;
+            } else {
+                replacement.append(Matcher.quoteReplacement(String.valueOf(c)));
+            }
+        }
+
+        Matcher matcher = Pattern.compile(search, patternFlags).matcher(data);
+        return options.contains("g")
+            ? matcher.replaceAll(replacement.toString())
+            : matcher.replaceFirst(replacement.toString());
+    }
 }
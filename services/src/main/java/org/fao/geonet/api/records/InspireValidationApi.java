@@ -37,13 +37,14 @@ import org.fao.geonet.api.API;
 import org.fao.geonet.api.ApiParams;
 import org.fao.geonet.api.ApiUtils;
 import org.fao.geonet.api.exception.ResourceNotFoundException;
+import org.fao.geonet.api.records.editing.AjaxEditUtils;
+import org.fao.geonet.api.records.editing.EditingSession;
 import org.fao.geonet.api.records.editing.InspireValidatorUtils;
 import org.fao.geonet.api.records.formatters.FormatType;
 import org.fao.geonet.api.records.formatters.FormatterApi;
 import org.fao.geonet.api.records.formatters.FormatterWidth;
 import org.fao.geonet.api.records.formatters.cache.Key;
 import org.fao.geonet.api.tools.i18n.LanguageUtils;
-import org.fao.geonet.constants.Geonet;
 import org.fao.geonet.domain.AbstractMetadata;
 import org.fao.geonet.domain.Source;
 import org.fao.geonet.events.history.RecordValidationTriggeredEvent;
@@ -221,14 +222,15 @@ public class InspireValidationApi {
         String getRecordByIdUrl = null;
         String testId = null;
 
-        Element md = (Element) ApiUtils.getUserSession(session).getProperty(Geonet.Session.METADATA_EDITING + id);
-        if (md == null) {
+        EditingSession editingSession = EditingSession.get(ApiUtils.getUserSession(session), id);
+        if (editingSession == null) {
             response.setStatus(HttpStatus.SC_NOT_FOUND);
             return String.format("Metadata with id '%s' not found in session. To be validated, the record must be in edition session.", id);
             // TODO: Add support for such validation from not editing session ?
         }
 
         if (StringUtils.isEmpty(mode)) {
+            Element md;
             // Use formatter to convert the record
             if (!schema.equals("iso19139")) {
                 try {
@@ -243,7 +245,8 @@ public class InspireValidationApi {
                     return String.format("Metadata with id '%s' is in schema '%s'. No iso19139 formatter found. Error is %s", id, schema, e.getMessage());
                 }
             } else {
-                // Cleanup metadocument elements
+                // Cleanup metadocument elements (of a copy of the record being edited)
+                md = AjaxEditUtils.getMetadataCopy(ApiUtils.getUserSession(session), id);
                 EditLib editLib = appContext.getBean(DataManager.class).getEditLib();
                 editLib.removeEditingInfo(md);
                 editLib.contractElements(md);
@@ -24,6 +24,9 @@
 package org.fao.geonet.api.records;
 
 import com.google.common.base.Optional;
+import com.google.common.collect.ArrayListMultimap;
+import com.google.common.collect.Iterables;
+import com.google.common.collect.Multimap;
 import io.swagger.v3.oas.annotations.Parameter;
 import io.swagger.v3.oas.annotations.responses.ApiResponse;
 import io.swagger.v3.oas.annotations.responses.ApiResponses;
@@ -96,6 +99,9 @@ public class MetadataSharingApi {
     @Autowired
     IMetadataIndexer metadataIndexer;
 
+    @Autowired
+    IMetadataOperations metadataOperations;
+
     @Autowired
     AccessManager accessManager;
 
@@ -142,6 +148,11 @@ public class MetadataSharingApi {
     @Qualifier("publicationConfig")
     private Map publicationConfig;
 
+    /**
+     * Number of records whose privileges are written and indexed at once by batch sharing.
+     */
+    private static final int SHARING_CHUNK_SIZE = 500;
+
     public static Vector<OperationAllowedId> retrievePrivileges(ServiceContext context, String id, Integer userId, Integer groupId) throws Exception {
 
         OperationAllowedRepository opAllowRepo = context.getBean(OperationAllowedRepository.class);
@@ -528,55 +539,63 @@ public class MetadataSharingApi {
             context.getIpAddress(), // TODO: Use the request
             false);
 
-        List<Group> elGroup = groupRepository.findAll();
-        List<Operation> allOperations = operationRepository.findAll();
-
-        List<GroupPrivilege> groupPrivileges = new ArrayList<>(elGroup.size());
-        if (elGroup != null) {
-            for (Group g : elGroup) {
-                GroupPrivilege groupPrivilege = new GroupPrivilege();
-                groupPrivilege.setGroup(g.getId());
-                groupPrivilege.setReserved(g.isReserved());
-                // TODO: Restrict to user group only in response depending on settings?
-                groupPrivilege.setUserGroup(userGroups.contains(g.getId()));
-
-                // TODO: Collecting all those info is probably a bit slow when having lots of groups
-                final Specification<UserGroup> hasGroupId = UserGroupSpecs.hasGroupId(g.getId());
-                final Specification<UserGroup> hasUserId = UserGroupSpecs.hasUserId(userSession.getUserIdAsInt());
-                final Specification<UserGroup> hasUserIdAndGroupId = where(hasGroupId).and(hasUserId);
-                List<UserGroup> userGroupEntities = userGroupRepository.findAll(hasUserIdAndGroupId);
-                List<Profile> userGroupProfile = new ArrayList<>();
-                for (UserGroup ug : userGroupEntities) {
-                    userGroupProfile.add(ug.getProfile());
-                }
-                groupPrivilege.setUserProfile(userGroupProfile);
-
+        List<GroupPrivilege> groupPrivileges = buildGroupPrivileges(
+            groupRepository.findAll(), operationRepository.findAll(),
+            userGroups, getUserGroupProfiles(userSession.getUserIdAsInt()),
+            operationAllowedRepository.findAllById_MetadataId(metadata.getId()));
+        sharingResponse.setPrivileges(groupPrivileges);
+        return sharingResponse;
+    }
 
-                //--- get all operations that this group can do on given metadata
-                Specification<OperationAllowed> hasGroupIdAndMetadataId =
-                    where(hasGroupId(g.getId()))
-                        .and(hasMetadataId(metadata.getId()));
-                List<OperationAllowed> operationAllowedForGroup =
-                    operationAllowedRepository.findAll(hasGroupIdAndMetadataId);
+    /**
+     * @return the profiles of a user, by group.
+     */
+    private Map<Integer, List<Profile>> getUserGroupProfiles(int userId) {
+        Map<Integer, List<Profile>> userGroupProfiles = new HashMap<>();
+        for (UserGroup ug : userGroupRepository.findAll(UserGroupSpecs.hasUserId(userId))) {
+            userGroupProfiles.computeIfAbsent(ug.getId().getGroupId(), g -> new ArrayList<>()).add(ug.getProfile());
+        }
+        return userGroupProfiles;
+    }
 
-                Map<String, Boolean> operations = new HashMap<>(allOperations.size());
-                for (Operation o : allOperations) {
+    /**
+     * Build the sharing settings of a record.
+     *
+     * @param groups             all the groups
+     * @param allOperations      all the operations
+     * @param userGroups         the groups of the user
+     * @param userGroupProfiles  the profiles of the user, by group
+     * @param operationsAllowed  the privileges of the record
+     */
+    private List<GroupPrivilege> buildGroupPrivileges(List<Group> groups, List<Operation> allOperations,
+                                                      Set<Integer> userGroups, Map<Integer, List<Profile>> userGroupProfiles,
+                                                      Collection<OperationAllowed> operationsAllowed) {
+        List<GroupPrivilege> groupPrivileges = new ArrayList<>(groups.size());
+        for (Group g : groups) {
+            GroupPrivilege groupPrivilege = new GroupPrivilege();
+            groupPrivilege.setGroup(g.getId());
+            groupPrivilege.setReserved(g.isReserved());
+            // TODO: Restrict to user group only in response depending on settings?
+            groupPrivilege.setUserGroup(userGroups.contains(g.getId()));
+            groupPrivilege.setUserProfile(new ArrayList<>(userGroupProfiles.getOrDefault(g.getId(), Collections.emptyList())));
 
-                    boolean operationSetForGroup = false;
-                    for (OperationAllowed operationAllowed : operationAllowedForGroup) {
-                        if (o.getId() == operationAllowed.getId().getOperationId()) {
-                            operationSetForGroup = true;
-                            break;
-                        }
+            //--- get all operations that this group can do on given metadata
+            Map<String, Boolean> operations = new HashMap<>(allOperations.size());
+            for (Operation o : allOperations) {
+                boolean operationSetForGroup = false;
+                for (OperationAllowed operationAllowed : operationsAllowed) {
+                    if (operationAllowed.getId().getGroupId() == g.getId()
+                        && o.getId() == operationAllowed.getId().getOperationId()) {
+                        operationSetForGroup = true;
+                        break;
                     }
-                    operations.put(o.getName(), operationSetForGroup);
                 }
-                groupPrivilege.setOperations(operations);
-                groupPrivileges.add(groupPrivilege);
+                operations.put(o.getName(), operationSetForGroup);
             }
+            groupPrivilege.setOperations(operations);
+            groupPrivileges.add(groupPrivilege);
         }
-        sharingResponse.setPrivileges(groupPrivileges);
-        return sharingResponse;
+        return groupPrivileges;
     }
 
     @io.swagger.v3.oas.annotations.Operation(
@@ -1029,6 +1048,10 @@ public class MetadataSharingApi {
 
     /**
      * Shares a metadata selection with a list of groups, returning a report with the results.
+     * <p>
+     * Records are processed by chunks: the privileges to add and remove are computed for all the
+     * records of a chunk, written with batched statements and only the privileges fields of the
+     * records are updated in the index.
      *
      * @param uuids   Metadata list of uuids to share.
      * @param bucket
@@ -1044,46 +1067,31 @@ public class MetadataSharingApi {
         MetadataProcessingReport report = new SimpleMetadataProcessingReport();
 
         try {
-            Set<String> records = ApiUtils.getUuidsParameterOrSelection(uuids, bucket, ApiUtils.getUserSession(session));
+            UserSession userSession = ApiUtils.getUserSession(session);
+            Set<String> records = ApiUtils.getUuidsParameterOrSelection(uuids, bucket, userSession);
             report.setTotalRecords(records.size());
 
             final ApplicationContext appContext = ApplicationContextHolder.get();
-            final DataManager dataMan = appContext.getBean(DataManager.class);
             final AccessManager accessMan = appContext.getBean(AccessManager.class);
-            final IMetadataUtils metadataRepository = appContext.getBean(IMetadataUtils.class);
 
             ServiceContext context = ApiUtils.createServiceContext(request);
-
-            List<String> listOfUpdatedRecords = new ArrayList<>();
-            for (String uuid : records) {
-                AbstractMetadata metadata = metadataRepository.findOneByUuid(uuid);
-                if (metadata == null) {
-                    report.incrementNullRecords();
-                } else if (!accessMan.canEdit(
-                    ApiUtils.createServiceContext(request), String.valueOf(metadata.getId()))) {
-                    report.addNotEditableMetadataId(metadata.getId());
-                } else {
-                    boolean skipAllReservedGroup = false;
-                    if (!accessMan.hasReviewPermission(context, Integer.toString(metadata.getId()))) {
-                        skipAllReservedGroup = true;
+            BulkSharing bulkSharing = new BulkSharing(sharing, context, userSession, report, request);
+
+            for (List<String> chunk : Iterables.partition(records, SHARING_CHUNK_SIZE)) {
+                List<AbstractMetadata> editableRecords = new ArrayList<>(chunk.size());
+                for (String uuid : chunk) {
+                    AbstractMetadata metadata = metadataUtils.findOneByUuid(uuid);
+                    if (metadata == null) {
+                        report.incrementNullRecords();
+                    } else if (!accessMan.canEdit(context, String.valueOf(metadata.getId()))) {
+                        report.addNotEditableMetadataId(metadata.getId());
+                    } else {
+                        editableRecords.add(metadata);
+                        report.incrementProcessedRecords();
                     }
-
-                    OperationRepository operationRepository = appContext.getBean(OperationRepository.class);
-                    List<Operation> operationList = operationRepository.findAll();
-                    Map<String, Integer> operationMap = new HashMap<>(operationList.size());
-                    for (Operation o : operationList) {
-                        operationMap.put(o.getName(), o.getId());
-                    }
-
-                    List<GroupOperations> privileges = sharing.getPrivileges();
-                    setOperations(sharing, dataMan, context, appContext, metadata, operationMap, privileges,
-                        ApiUtils.getUserSession(session).getUserIdAsInt(), skipAllReservedGroup, report, request);
-                    report.incrementProcessedRecords();
-                    listOfUpdatedRecords.add(String.valueOf(metadata.getId()));
                 }
+                bulkSharing.share(editableRecords);
             }
-            dataMan.flush();
-            dataMan.indexMetadata(listOfUpdatedRecords);
 
         } catch (Exception exception) {
             report.addError(exception);
@@ -1094,6 +1102,178 @@ public class MetadataSharingApi {
         return report;
     }
 
+    /**
+     * Applies the same sharing settings to chunks of records (see {@link #setOperations} for the
+     * rules applied to each record).
+     */
+    private class BulkSharing {
+        private final SharingParameter sharing;
+        private final ServiceContext context;
+        private final MetadataProcessingReport report;
+        private final ResourceBundle messages;
+        private final Integer userId;
+        private final Map<String, Integer> operationMap = new HashMap<>();
+        private final List<Group> groups;
+        private final List<Operation> operations;
+        private final Set<Integer> userGroups;
+        private final Map<Integer, List<Profile>> userGroupProfiles;
+        private final boolean allowPublishInvalidMd;
+        private final boolean allowPublishNonApprovedMd;
+        private final boolean isMdWorkflowEnable;
+        private final Set<Integer> checkedGroups = new HashSet<>();
+
+        BulkSharing(SharingParameter sharing, ServiceContext context, UserSession userSession,
+                    MetadataProcessingReport report, HttpServletRequest request) throws Exception {
+            this.sharing = sharing;
+            this.context = context;
+            this.report = report;
+            this.userId = userSession.getUserIdAsInt();
+            Locale locale = languageUtils.parseAcceptLanguage(request.getLocales());
+            this.messages = ResourceBundle.getBundle("org.fao.geonet.api.Messages", locale);
+
+            this.operations = operationRepository.findAll();
+            for (Operation o : operations) {
+                operationMap.put(o.getName(), o.getId());
+            }
+            this.groups = groupRepository.findAll();
+            this.userGroups = accessManager.getUserGroups(userSession, context.getIpAddress(), false);
+            this.userGroupProfiles = getUserGroupProfiles(userId);
+
+            this.allowPublishInvalidMd = sm.getValueAsBool(Settings.METADATA_WORKFLOW_ALLOW_PUBLISH_INVALID_MD);
+            this.allowPublishNonApprovedMd = sm.getValueAsBool(Settings.METADATA_WORKFLOW_ALLOW_PUBLISH_NON_APPROVED_MD);
+            this.isMdWorkflowEnable = sm.getValueAsBool(Settings.METADATA_WORKFLOW_ENABLE);
+        }
+
+        void share(List<AbstractMetadata> records) throws Exception {
+            List<GroupOperations> privileges = sharing.getPrivileges();
+            if (privileges == null || records.isEmpty()) {
+                return;
+            }
+
+            Map<Integer, AbstractMetadata> recordsById = new LinkedHashMap<>();
+            records.forEach(md -> recordsById.put(md.getId(), md));
+            Multimap<Integer, OperationAllowed> existing = ArrayListMultimap.create();
+            for (OperationAllowed op : operationAllowedRepository.findAllById_MetadataIdIn(recordsById.keySet())) {
+                existing.put(op.getId().getMetadataId(), op);
+            }
+
+            List<OperationAllowedId> toAdd = new ArrayList<>();
+            List<OperationAllowedId> toRemove = new ArrayList<>();
+            List<AbstractMetadata> changedRecords = new ArrayList<>();
+            for (AbstractMetadata metadata : records) {
+                Collection<OperationAllowed> before = existing.get(metadata.getId());
+                Set<OperationAllowedId> beforeIds = new HashSet<>();
+                before.forEach(op -> beforeIds.add(op.getId()));
+
+                Set<OperationAllowedId> after = getOperations(metadata, beforeIds, privileges);
+                if (after == null || after.equals(beforeIds)) {
+                    continue;
+                }
+                for (OperationAllowedId id : after) {
+                    if (!beforeIds.contains(id)) {
+                        toAdd.add(id);
+                    }
+                }
+                for (OperationAllowedId id : beforeIds) {
+                    if (!after.contains(id)) {
+                        toRemove.add(id);
+                    }
+                }
+                changedRecords.add(metadata);
+
+                List<GroupPrivilege> sharingBefore = buildGroupPrivileges(groups, operations, userGroups, userGroupProfiles, before);
+                new RecordPrivilegesChangeEvent(metadata.getId(), userId,
+                    ObjectJSONUtils.convertObjectInJsonObject(sharingBefore, RecordPrivilegesChangeEvent.FIELD),
+                    ObjectJSONUtils.convertObjectInJsonObject(privileges, RecordPrivilegesChangeEvent.FIELD)).publish(ApplicationContextHolder.get());
+            }
+
+            metadataOperations.forceUnsetOperations(context, toRemove);
+            metadataOperations.forceSetOperations(context, toAdd);
+            dataManager.flush();
+            metadataIndexer.indexMetadataPrivileges(changedRecords);
+        }
+
+        /**
+         * @return the privileges of the record once shared, null if it can't be shared.
+         */
+        private Set<OperationAllowedId> getOperations(AbstractMetadata metadata, Set<OperationAllowedId> before,
+                                                      List<GroupOperations> privileges) throws Exception {
+            //--- in case of owner, privileges for groups 0,1 and GUEST are disabled
+            //--- and are not sent to the server. So we cannot remove them
+            boolean skipAllReservedGroup = !accessManager.hasReviewPermission(context, Integer.toString(metadata.getId()));
+
+            // Check not trying to publish a retired metadata
+            Integer groupOwnerId = metadata.getSourceInfo().getGroupOwner();
+            if (isMdWorkflowEnable && (groupOwnerId != null) && isPublishing(privileges)) {
+                java.util.Optional<Group> groupOwner = groupRepository.findById(groupOwnerId);
+                if (groupOwner.isPresent() && WorkflowUtil.isGroupWithEnabledWorkflow(groupOwner.get().getName())) {
+                    MetadataStatus mdStatus = metadataStatus.getStatus(metadata.getId());
+                    if ((mdStatus != null) &&
+                        (mdStatus.getStatusValue().getId() == Integer.parseInt(StatusValue.Status.RETIRED))) {
+                        report.addMetadataError(metadata, String.format("Retired metadata %s can't be published.",
+                            metadata.getUuid()));
+                        return null;
+                    }
+                }
+            }
+
+            Set<OperationAllowedId> after = new HashSet<>();
+            for (OperationAllowedId id : before) {
+                if (!sharing.isClear() || (skipAllReservedGroup && ReservedGroup.isReserved(id.getGroupId()))) {
+                    after.add(id);
+                }
+            }
+
+            for (GroupOperations p : privileges) {
+                for (Map.Entry<String, Boolean> o : p.getOperations().entrySet()) {
+                    Integer opId = operationMap.get(o.getKey());
+                    // Never set editing for reserved group
+                    if (opId == ReservedOperation.editing.getId() &&
+                        ReservedGroup.isReserved(p.getGroup())) {
+                        continue;
+                    }
+
+                    OperationAllowedId id = new OperationAllowedId()
+                        .setGroupId(p.getGroup()).setMetadataId(metadata.getId()).setOperationId(opId);
+                    if (o.getValue()) {
+                        // For privileges to ALL group, check if it's allowed or not to publish invalid metadata
+                        if ((p.getGroup() == ReservedGroup.all.getId())) {
+                            try {
+                                checkCanPublishToAllGroup(context, dataManager, messages, metadata,
+                                    allowPublishInvalidMd, allowPublishNonApprovedMd);
+                            } catch (Exception ex) {
+                                report.addMetadataError(metadata, ex.getMessage());
+                                break;
+                            }
+                        }
+                        if (!before.contains(id)) {
+                            checkOperationPermission(p.getGroup());
+                        }
+                        after.add(id);
+                    } else if (!sharing.isClear()) {
+                        checkOperationPermission(p.getGroup());
+                        after.remove(id);
+                    }
+                }
+            }
+            return after;
+        }
+
+        private boolean isPublishing(List<GroupOperations> privileges) {
+            return privileges.stream().anyMatch(p ->
+                p.getGroup() == ReservedGroup.all.getId() && p.getOperations().containsValue(true));
+        }
+
+        /**
+         * The permission to change the privileges of a group only depends on the user.
+         */
+        private void checkOperationPermission(int groupId) {
+            if (checkedGroups.add(groupId)) {
+                metadataOperations.checkOperationPermission(context, groupId, userGroupRepository);
+            }
+        }
+    }
+
 
     /**
      * Creates a ref {@link SharingParameter} object with privileges to publih/un-publish
@@ -30,7 +30,10 @@ import com.fasterxml.jackson.databind.node.ObjectNode;
 import com.google.common.base.Joiner;
 import jeeves.server.context.ServiceContext;
 import org.apache.commons.lang.StringUtils;
+import org.elasticsearch.action.search.SearchRequest;
 import org.elasticsearch.action.search.SearchResponse;
+import org.elasticsearch.index.query.QueryBuilder;
+import org.elasticsearch.index.query.QueryBuilders;
 import org.elasticsearch.search.SearchHit;
 import org.fao.geonet.ApplicationContextHolder;
 import org.fao.geonet.Constants;
@@ -45,8 +48,10 @@ import org.fao.geonet.domain.AbstractMetadata;
 import org.fao.geonet.domain.Pair;
 import org.fao.geonet.domain.ReservedOperation;
 import org.fao.geonet.domain.Source;
+import org.fao.geonet.kernel.AccessManager;
 import org.fao.geonet.kernel.DataManager;
 import org.fao.geonet.kernel.SchemaManager;
+import org.fao.geonet.kernel.UserPermissionSnapshot;
 import org.fao.geonet.kernel.datamanager.IMetadataValidator;
 import org.fao.geonet.kernel.mef.MEFLib;
 import org.fao.geonet.kernel.schema.AssociatedResource;
@@ -90,6 +95,8 @@ public class MetadataUtils {
 
     private static final Logger LOGGER = LoggerFactory.getLogger(Geonet.SEARCH_ENGINE);
 
+    private static final String PORTAL_QUERY_NAME = "portal";
+
     public static class RelatedTypeDetails {
         private String query;
         private Set<String> expectedRecords = new HashSet<>();
@@ -283,25 +290,39 @@ public class MetadataUtils {
 
         Map<RelatedItemType, List<AssociatedRecord>> associated =
             new HashMap<RelatedItemType, List<AssociatedRecord>>();
-        Set<String> allCatalogueUuids = new HashSet<>();
 
         String privilegesFilter = buildPermissionsFilter(context);
+        String portalFilter = getPortalFilter();
+        UserPermissionSnapshot permissions = context.getBean(AccessManager.class).getUserPermissionSnapshot(context);
         ObjectMapper mapper = new ObjectMapper();
-        for (RelatedItemType type : queries.keySet()) {
-            // TODO: Use msearch ?
+
+        // All types are searched in one request. In a portal having a filter,
+        // the records of the portal are flagged by a named query not changing the scores.
+        List<RelatedItemType> searchedTypes = new ArrayList<>(queries.keySet());
+        List<SearchRequest> requests = new ArrayList<>(searchedTypes.size());
+        for (RelatedItemType type : searchedTypes) {
+            QueryBuilder query = QueryBuilders.queryStringQuery(queries.get(type).getQuery());
+            if (portalFilter != null) {
+                query = QueryBuilders.boolQuery()
+                    .must(query)
+                    .should(QueryBuilders.constantScoreQuery(QueryBuilders.queryStringQuery(portalFilter))
+                        .boost(0)
+                        .queryName(PORTAL_QUERY_NAME));
+            }
+            requests.add(searchMan.buildQueryRequest(query, privilegesFilter, FIELDLIST_RELATED, start, size));
+        }
+        List<SearchResponse> responses = searchMan.multiSearch(requests);
+
+        for (int i = 0; i < searchedTypes.size(); i++) {
+            RelatedItemType type = searchedTypes.get(i);
             RelatedTypeDetails relatedTypeDetails = queries.get(type);
-            final SearchResponse result = searchMan.query(
-                relatedTypeDetails.getQuery(),
-                privilegesFilter,
-                FIELDLIST_RELATED,
-                start, size);
+            final SearchResponse result = responses.get(i);
             Set<String> expectedUuids = relatedTypeDetails.getExpectedRecords();
             Set<String> remoteRecords = relatedTypeDetails.getRemoteRecords();
 
             List<AssociatedRecord> records = new ArrayList<>();
             if (result.getHits().getTotalHits().value > 0) {
                 for (SearchHit e : Arrays.asList(result.getHits().getHits())) {
-                    allCatalogueUuids.add(e.getId());
                     AssociatedRecord record = new AssociatedRecord();
                     record.setUuid(e.getId());
                     // Set properties eg. remote, associationType, ...
@@ -309,7 +330,7 @@ public class MetadataUtils {
                     JsonNode source = mapper.readTree(e.getSourceAsString());
                     ObjectNode doc = mapper.createObjectNode();
                     doc.set("_source", source);
-                    EsHTTPProxy.addUserInfo(doc, context);
+                    EsHTTPProxy.addUserInfo(doc, permissions);
                     Iterator<String> fieldNames = doc.fieldNames();
                     while (fieldNames.hasNext()) {
                         String field = fieldNames.next();
@@ -318,7 +339,9 @@ public class MetadataUtils {
                         }
                     }
                     record.setRecord(source);
-                    record.setOrigin(RelatedItemOrigin.catalog.name());
+                    record.setOrigin(portalFilter != null && Arrays.asList(e.getMatchedQueries()).contains(PORTAL_QUERY_NAME)
+                        ? RelatedItemOrigin.portal.name()
+                        : RelatedItemOrigin.catalog.name());
                     records.add(record);
                     if (expectedUuids.contains(e.getId())) {
                         expectedUuids.remove(e.getId());
@@ -334,8 +357,6 @@ public class MetadataUtils {
             associated.put(type, records);
         }
 
-        assignPortalOrigin(start, size, searchMan, associated, allCatalogueUuids);
-
         // TODO: Editable relation
         return associated;
     }
@@ -354,39 +375,19 @@ public class MetadataUtils {
         }
     }
 
-    private static void assignPortalOrigin(int start, int size, EsSearchManager searchMan, Map<RelatedItemType, List<AssociatedRecord>> associated, Set<String> allCatalogueUuids) throws Exception {
-        String portalFilter;
-        SourceRepository sourceRepository = ApplicationContextHolder.get().getBean(SourceRepository.class);
+    /**
+     * @return the filter of the current portal or null if the node is not a portal having a filter.
+     */
+    private static String getPortalFilter() {
         NodeInfo node = ApplicationContextHolder.get().getBean(NodeInfo.class);
         if (node != null && !NodeInfo.DEFAULT_NODE.equals(node.getId())) {
+            SourceRepository sourceRepository = ApplicationContextHolder.get().getBean(SourceRepository.class);
             final Source portal = sourceRepository.findById(node.getId()).get();
             if (StringUtils.isNotEmpty(portal.getFilter())) {
-                portalFilter = portal.getFilter();
-
-                final SearchResponse recordsInPortal = searchMan.query(
-                    String.format("+uuid:(%s)",
-                        allCatalogueUuids.stream()
-                            .collect(Collectors.joining("\" OR \"", "\"", "\""))),
-                    portalFilter,
-                    FIELDLIST_UUID,
-                    start, size);
-
-                Set<String> allPortalUuids = new HashSet<>();
-                if (recordsInPortal.getHits().getTotalHits().value > 0) {
-                    for (SearchHit e : Arrays.asList(recordsInPortal.getHits().getHits())) {
-                        allPortalUuids.add(e.getId());
-                    }
-                }
-
-                if (allPortalUuids.size() > 0) {
-                    associated.forEach((t, records) -> {
-                        records.stream()
-                            .filter(r -> allPortalUuids.contains(r.getUuid()))
-                            .forEach(r -> r.setOrigin(RelatedItemOrigin.portal.name()));
-                    });
-                }
+                return portal.getFilter();
             }
         }
+        return null;
     }
 
     private static String buildRemoteRecord(Map<String, String> props) {
@@ -477,13 +478,14 @@ public class MetadataUtils {
             Set<AssociatedResource> listOfAssociatedResources = schemaPlugin.getAssociatedResourcesUUIDs(md);
 
             if (listOfAssociatedResources != null) {
+                // Search in the index to use the portal filter and verify the metadata are available for the portal
+                Set<String> uuidsInPortal = getUuidsInPortal(listOfAssociatedResources.stream()
+                    .map(AssociatedResource::getUuid)
+                    .collect(Collectors.toSet()), portalFilter);
                 for (AssociatedResource resource : listOfAssociatedResources) {
 
                     String origin;
-                    // Search in the index to use the portal filter and verify the metadata is available for the portal
-                    Element searchResult = search("\"" + resource.getUuid() + "\"", RelatedItemType.siblings.value(), context, from, to, fast, null, false);
-                    // If can't be find, skip the result.
-                    if (hasResult(searchResult)) {
+                    if (uuidsInPortal.contains(resource.getUuid())) {
                         origin = RelatedItemOrigin.portal.name();
                     } else {
                         origin = RelatedItemOrigin.catalog.name();
@@ -561,12 +563,11 @@ public class MetadataUtils {
                 Element fcat = new Element("fcats");
 
                 if (listOfUUIDs != null && listOfUUIDs.size() > 0) {
+                    // Search in the index to use the portal filter and verify the metadata are available for the portal
+                    Set<String> uuidsInPortal = getUuidsInPortal(listOfUUIDs, portalFilter);
                     for (String fcat_uuid : listOfUUIDs) {
                         String origin;
-                        // Search in the index to use the portal filter and verify the metadata is available for the portal
-                        Element searchResult = search("\"" + fcat_uuid + "\"", RelatedItemType.fcats.value(), context, from, to, fast, null, false);
-                        // If can't be find, skip the result.
-                        if (hasResult(searchResult)) {
+                        if (uuidsInPortal.contains(fcat_uuid)) {
                             origin = RelatedItemOrigin.portal.name();
                         } else {
                             origin = RelatedItemOrigin.catalog.name();
@@ -617,6 +618,27 @@ public class MetadataUtils {
         return relatedRecords;
     }
 
+    /**
+     * @return the uuids of the records found in the index, restricted to the portal if it has a filter.
+     */
+    private static Set<String> getUuidsInPortal(Set<String> uuids, String portalFilter) throws Exception {
+        Set<String> uuidsInPortal = new HashSet<>();
+        if (uuids.isEmpty()) {
+            return uuidsInPortal;
+        }
+        EsSearchManager searchMan = ApplicationContextHolder.get().getBean(EsSearchManager.class);
+        final SearchResponse result = searchMan.query(
+            String.format("+uuid:(%s)",
+                uuids.stream().collect(Collectors.joining("\" OR \"", "\"", "\""))),
+            StringUtils.isNotEmpty(portalFilter) ? portalFilter : null,
+            FIELDLIST_UUID,
+            0, uuids.size());
+        for (SearchHit e : result.getHits().getHits()) {
+            uuidsInPortal.add(e.getId());
+        }
+        return uuidsInPortal;
+    }
+
     private static Element search(String uuidQueryValue, String type, ServiceContext context, String from, String to,
                                   String fast, String exclude, boolean ignorePortalFilter) throws Exception {
         ApplicationContext applicationContext = ApplicationContextHolder.get();
@@ -794,36 +816,6 @@ public class MetadataUtils {
     }
 
 
-    /**
-     * Checks if a result for a search query has results.
-     * <p>
-     * Response examples:
-     *
-     * <siblings>
-     * <response from="1" to="0" />
-     * </siblings>
-     *
-     *
-     * <siblings>
-     * <response from="1" to="1">
-     * <metadata>...</metadata>
-     * </response>
-     * </siblings>
-     *
-     * @param searchResponse
-     * @return True it the response has results, False in other cases.
-     */
-    private static boolean hasResult(Element searchResponse) {
-
-        if (searchResponse.getChildren().size() > 0) {
-            Element containerResults = (Element) searchResponse.getChildren().get(0);
-            return containerResults.getChildren().size() > 0;
-        }
-
-        return false;
-    }
-
-
     /**
      * Process search results to add the origin of the metadata:
      *
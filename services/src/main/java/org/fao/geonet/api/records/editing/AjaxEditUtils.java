@@ -56,19 +56,18 @@ public class AjaxEditUtils extends EditUtils {
     }
 
     /**
-     * TODO javadoc.
+     * Returns the record being edited in the session, to be locked before using it.
      */
-    protected static Element getMetadataFromSession(UserSession session, String id) throws ResourceNotFoundException {
+    protected static EditingSession getEditingSession(UserSession session, String id) throws ResourceNotFoundException {
         if (Log.isDebugEnabled(Geonet.EDITOR))
             Log.debug(Geonet.EDITOR, "Retrieving metadata from session " + session.getUserId());
-        Element md = (Element) session.getProperty(Geonet.Session.METADATA_EDITING + id);
-        if (md == null) {
+        EditingSession editingSession = EditingSession.get(session, id);
+        if (editingSession == null) {
             throw new ResourceNotFoundException(String.format(
                 "Requested metadata with id '%s' is not available in current session. " +
                     "Open an editing session on this record first.", id));
         }
-        md.detach();
-        return md;
+        return editingSession;
     }
 
     /**
@@ -132,7 +131,31 @@ public class AjaxEditUtils extends EditUtils {
         }
 
         // --- get metadata from session
-        Element md = getMetadataFromSession(session, id);
+        EditingSession editingSession = getEditingSession(session, id);
+        editingSession.lock();
+        Element md;
+        try {
+            md = applyChangesEmbedded(editingSession, id, schema, metadataSchema, editLib, changes);
+        } finally {
+            editingSession.unlock();
+        }
+
+        // --- remove editing info
+        editLib.removeEditingInfo(md);
+        editLib.contractElements(md);
+
+        return (Element) md.detach();
+    }
+
+    /**
+     * Apply the changes to the record being edited.
+     *
+     * @return a copy of the updated record.
+     */
+    private Element applyChangesEmbedded(EditingSession editingSession, String id, String schema,
+                                         MetadataSchema metadataSchema, EditLib editLib,
+                                         Map<String, String> changes) throws Exception {
+        Element md = editingSession.getMetadata();
 
         // Store XML fragments to be handled after other elements update
         Map<String, String> xmlInputs = new HashMap<String, String>();
@@ -166,7 +189,7 @@ public class AjaxEditUtils extends EditUtils {
             }
 
             String actualRef = ref != null ? ref : originalRef;
-            Element el = editLib.findElement(md, actualRef);
+            Element el = editingSession.findElement(actualRef);
             if (el == null) {
                 Log.error(Geonet.EDITOR, EditLib.MSG_ELEMENT_NOT_FOUND_AT_REF + originalRef);
                 continue;
@@ -210,7 +233,7 @@ public class AjaxEditUtils extends EditUtils {
                 continue;
             }
 
-            if (updatedLocalizedTextElement(md, schema, ref, value, editLib)) {
+            if (updatedLocalizedTextElement(schema, ref, value, editingSession::findElement)) {
                 continue;
             }
 
@@ -220,7 +243,7 @@ public class AjaxEditUtils extends EditUtils {
                 ref = ref.substring(0, at);
             }
 
-            Element el = editLib.findElement(md, ref);
+            Element el = editingSession.findElement(ref);
             if (el == null) {
                 Log.error(Geonet.EDITOR, EditLib.MSG_ELEMENT_NOT_FOUND_AT_REF + ref);
                 continue;
@@ -252,20 +275,16 @@ public class AjaxEditUtils extends EditUtils {
         // Deals with XML fragments to insert or update
         if (!xmlInputs.isEmpty()) {
             editLib.addXMLFragments(schema, md, xmlInputs);
+            editingSession.invalidateIndex();
         }
 
         // Deals with XML fragments and XPath to insert or update
         if (!xmlAndXpathInputs.isEmpty()) {
             editLib.addElementOrFragmentFromXpaths(md, xmlAndXpathInputs, metadataSchema, true);
+            editingSession.invalidateIndex();
         }
 
-        setMetadataIntoSession(session, (Element) md.clone(), id);
-
-        // --- remove editing info
-        editLib.removeEditingInfo(md);
-        editLib.contractElements(md);
-
-        return (Element) md.detach();
+        return editingSession.copyMetadata();
     }
 
     /**
@@ -309,12 +328,12 @@ public class AjaxEditUtils extends EditUtils {
     }
 
     /**
-     * TODO javadoc.
+     * Starts the editing session of a record.
      */
     private void setMetadataIntoSession(UserSession session, Element md, String id) {
         if (Log.isDebugEnabled(Geonet.EDITOR))
             Log.debug(Geonet.EDITOR, "Storing metadata in session " + session.getUserId());
-        session.setProperty(Geonet.Session.METADATA_EDITING + id, md);
+        context.getBean(EditingSessionStore.class).open(session, id, md);
     }
 
     /**
@@ -323,7 +342,7 @@ public class AjaxEditUtils extends EditUtils {
     public void removeMetadataEmbedded(UserSession session, String id) {
         if (Log.isDebugEnabled(Geonet.EDITOR))
             Log.debug(Geonet.EDITOR, "Removing metadata from session " + session.getUserId());
-        session.removeProperty(Geonet.Session.METADATA_EDITING + id);
+        context.getBean(EditingSessionStore.class).close(session, id);
         session.removeProperty(Geonet.Session.VALIDATION_REPORT + id);
     }
 
@@ -340,16 +359,30 @@ public class AjaxEditUtils extends EditUtils {
 
     /**
      * For Ajax Editing : adds an element or an attribute to a metadata element ([add] link).
+     *
+     * @return the element added, in a copy of the record which can be changed by the caller.
      */
-    public synchronized Element addElementEmbedded(UserSession session, String id, String ref, String name, String childName) throws Exception {
+    public Element addElementEmbedded(UserSession session, String id, String ref, String name, String childName) throws Exception {
         Lib.resource.checkEditPrivilege(context, id);
         String schema = dataManager.getMetadataSchema(id);
         //--- get metadata from session
-        Element md = getMetadataFromSession(session, id);
+        EditingSession editingSession = getEditingSession(session, id);
+        editingSession.lock();
+        try {
+            Element child = addElementEmbedded(editingSession, id, schema, ref, name, childName);
+            return findInCopy(child, editingSession.copyMetadata());
+        } finally {
+            editingSession.unlock();
+        }
+    }
+
+    private Element addElementEmbedded(EditingSession editingSession, String id, String schema,
+                                       String ref, String name, String childName) throws Exception {
+        Element md = editingSession.getMetadata();
 
         //--- ref is parent element so find it
         EditLib editLib = dataManager.getEditLib();
-        Element el = editLib.findElement(md, ref);
+        Element el = editingSession.findElement(ref);
         if (el == null)
             throw new IllegalStateException(EditLib.MSG_ELEMENT_NOT_FOUND_AT_REF + ref);
 
@@ -412,9 +445,10 @@ public class AjaxEditUtils extends EditUtils {
             //--- now add the geonet:element back again to keep ref number
             el.addContent(refEl);
 
-            int iRef = editLib.findMaximumRef(md);
+            int iRef = editingSession.getMaximumRef();
             editLib.expandElements(schema, child);
             editLib.enumerateTreeStartingAt(child, iRef + 1, Integer.parseInt(ref));
+            editingSession.addElements(child);
 
             //--- add editing info to everything from the parent down
             editLib.expandTree(mds, el);
@@ -453,24 +487,46 @@ public class AjaxEditUtils extends EditUtils {
             md.addContent((Element) info.clone());
         }
 
-        //--- store the metadata in the session again
-        setMetadataIntoSession(session, (Element) md.clone(), id);
-
         // Return element added
         return child;
 
     }
 
+    /**
+     * @return the element at the same position as {@code element} in a copy of its tree.
+     */
+    private static Element findInCopy(Element element, Element copy) {
+        Deque<Integer> positions = new ArrayDeque<>();
+        for (Element e = element; e.getParentElement() != null; e = e.getParentElement()) {
+            positions.push(e.getParentElement().indexOf(e));
+        }
+        Element result = copy;
+        while (!positions.isEmpty()) {
+            result = (Element) result.getContent(positions.pop());
+        }
+        return result;
+    }
+
     /**
      * For Ajax Editing : removes an element from a metadata ([del] link).
      */
-    public synchronized Element deleteElementEmbedded(UserSession session, String id, String ref, String parentRef) throws Exception {
+    public Element deleteElementEmbedded(UserSession session, String id, String ref, String parentRef) throws Exception {
         Lib.resource.checkEditPrivilege(context, id);
 
         String schema = dataManager.getMetadataSchema(id);
 
         //--- get metadata from session
-        Element md = getMetadataFromSession(session, id);
+        EditingSession editingSession = getEditingSession(session, id);
+        editingSession.lock();
+        try {
+            return deleteElementEmbedded(editingSession, schema, ref, parentRef);
+        } finally {
+            editingSession.unlock();
+        }
+    }
+
+    private Element deleteElementEmbedded(EditingSession editingSession, String schema, String ref, String parentRef) throws Exception {
+        Element md = editingSession.getMetadata();
 
         //--- locate the geonet:info element and clone for later re-use
         Element info = (Element) (md.getChild(Edit.RootChild.INFO, Edit.NAMESPACE)).clone();
@@ -478,10 +534,12 @@ public class AjaxEditUtils extends EditUtils {
 
         //--- get element to remove
         EditLib editLib = dataManager.getEditLib();
-        Element el = editLib.findElement(md, ref);
+        Element el = editingSession.findElement(ref);
 
-        if (el == null)
+        if (el == null) {
+            md.addContent(info);
             throw new IllegalStateException(EditLib.MSG_ELEMENT_NOT_FOUND_AT_REF + ref);
+        }
 
 
         String uName = el.getName();
@@ -526,6 +584,7 @@ public class AjaxEditUtils extends EditUtils {
                 parent.removeContent(me);
             }
         } else {
+            md.addContent(info);
             throw new IllegalStateException("Element at ref = " + ref + " doesn't have a parent");
         }
 
@@ -538,9 +597,6 @@ public class AjaxEditUtils extends EditUtils {
         //--- reattach the info element to the metadata
         md.addContent((Element) info.clone());
 
-        //--- store the metadata in the session again
-        setMetadataIntoSession(session, (Element) md.clone(), id);
-
         return result;
     }
 
@@ -549,7 +605,7 @@ public class AjaxEditUtils extends EditUtils {
      *
      * @param ref Attribute identifier (eg. _169_uom).
      */
-    public synchronized Element deleteAttributeEmbedded(UserSession session, String id, String ref) throws Exception {
+    public Element deleteAttributeEmbedded(UserSession session, String id, String ref) throws Exception {
         Lib.resource.checkEditPrivilege(context, id);
 
         String[] token = ref.split("_");
@@ -558,20 +614,23 @@ public class AjaxEditUtils extends EditUtils {
         Element result = new Element(Edit.RootChild.NULL, Edit.NAMESPACE);
 
         //--- get metadata from session
-        Element md = getMetadataFromSession(session, id);
-
-        //--- get element to remove
-        EditLib editLib = dataManager.getEditLib();
-        Element el = editLib.findElement(md, elementId);
-
-        if (el != null) {
-            Pair<Namespace, String> attInfo = parseAttributeName(attributeName, ":", id, md, editLib);
-            el.removeAttribute(attInfo.two(), attInfo.one());
+        EditingSession editingSession = getEditingSession(session, id);
+        editingSession.lock();
+        try {
+            Element md = editingSession.getMetadata();
+
+            //--- get element to remove
+            EditLib editLib = dataManager.getEditLib();
+            Element el = editingSession.findElement(elementId);
+
+            if (el != null) {
+                Pair<Namespace, String> attInfo = parseAttributeName(attributeName, ":", id, md, editLib);
+                el.removeAttribute(attInfo.two(), attInfo.one());
+            }
+        } finally {
+            editingSession.unlock();
         }
 
-        //--- store the metadata in the session again
-        setMetadataIntoSession(session, (Element) md.clone(), id);
-
         return result;
     }
 
@@ -595,17 +654,24 @@ public class AjaxEditUtils extends EditUtils {
     /**
      * For Ajax Editing : swap element with sibling ([up] and [down] links).
      */
-    public synchronized void swapElementEmbedded(UserSession session, String id, String ref, boolean down) throws Exception {
+    public void swapElementEmbedded(UserSession session, String id, String ref, boolean down) throws Exception {
         Lib.resource.checkEditPrivilege(context, id);
 
         dataManager.getMetadataSchema(id);
 
         //--- get metadata from session
-        Element md = getMetadataFromSession(session, id);
+        EditingSession editingSession = getEditingSession(session, id);
+        editingSession.lock();
+        try {
+            swapElementEmbedded(editingSession, ref, down);
+        } finally {
+            editingSession.unlock();
+        }
+    }
 
+    private void swapElementEmbedded(EditingSession editingSession, String ref, boolean down) {
         //--- get element to swap
-        EditLib editLib = dataManager.getEditLib();
-        Element elSwap = editLib.findElement(md, ref);
+        Element elSwap = editingSession.findElement(ref);
 
         if (elSwap == null)
             throw new IllegalStateException(EditLib.MSG_ELEMENT_NOT_FOUND_AT_REF + ref);
@@ -631,9 +697,6 @@ public class AjaxEditUtils extends EditUtils {
         if (down) swapElements(elSwap, list.get(iSwapIndex + 1));
         else swapElements(elSwap, list.get(iSwapIndex - 1));
 
-        //--- store the metadata in the session again
-        setMetadataIntoSession(session, (Element) md.clone(), id);
-
     }
 
     /**
@@ -643,8 +706,7 @@ public class AjaxEditUtils extends EditUtils {
         String schema = dataManager.getMetadataSchema(id);
 
         //--- get metadata from session and clone it for validation
-        Element realMd = getMetadataFromSession(session, id);
-        Element md = (Element) realMd.clone();
+        Element md = getMetadataCopy(session, id);
 
         //--- remove editing info
         EditLib editLib = dataManager.getEditLib();
@@ -659,6 +721,19 @@ public class AjaxEditUtils extends EditUtils {
 
     }
 
+    /**
+     * Returns a copy of the record being edited in the session.
+     */
+    public static Element getMetadataCopy(UserSession session, String id) throws Exception {
+        EditingSession editingSession = getEditingSession(session, id);
+        editingSession.lock();
+        try {
+            return editingSession.copyMetadata();
+        } finally {
+            editingSession.unlock();
+        }
+    }
+
     /**
      * For Editing : adds an attribute from a metadata ([add] link). FIXME: Modify and use within
      * Ajax controls
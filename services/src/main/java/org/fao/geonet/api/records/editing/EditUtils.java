@@ -47,6 +47,7 @@ import java.util.HashMap;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
+import java.util.function.Function;
 
 
 /**
@@ -305,6 +306,15 @@ class EditUtils {
      */
     protected boolean updatedLocalizedTextElement(Element md, String schema,
                                                   String ref, String val, EditLib editLib) {
+        return updatedLocalizedTextElement(schema, ref, val, parentRef -> editLib.findElement(md, parentRef));
+    }
+
+    /**
+     * Same as {@link #updatedLocalizedTextElement(Element, String, String, String, EditLib)}
+     * looking up the elements by ref with {@code findElement}.
+     */
+    protected boolean updatedLocalizedTextElement(String schema, String ref, String val,
+                                                  Function<String, Element> findElement) {
         if (ref.startsWith("lang")) {
             if (val.length() > 0) {
 
@@ -312,7 +322,7 @@ class EditUtils {
                 if (schemaPlugin instanceof MultilingualSchemaPlugin) {
                     String[] ids = ref.split("_");
                     // --- search element in current parent
-                    Element parent = editLib.findElement(md, ids[2]);
+                    Element parent = findElement.apply(ids[2]);
                     String language = ids[1];
                     List<Element> elems = ((MultilingualSchemaPlugin) schemaPlugin)
                         .getTranslationForElement(parent, language);
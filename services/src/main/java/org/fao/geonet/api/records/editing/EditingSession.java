@@ -0,0 +1,307 @@
+/*
+ * Copyright (C) 2001-2021 Food and Agriculture Organization of the
+ * United Nations (FAO-UN), United Nations World Food Programme (WFP)
+ * and United Nations Environment Programme (UNEP)
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or (at
+ * your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301, USA
+ *
+ * Contact: Jeroen Ticheler - FAO - Viale delle Terme di Caracalla 2,
+ * Rome - Italy. email: geonetwork@osgeo.org
+ */
+
+package org.fao.geonet.api.records.editing;
+
+import jeeves.server.UserSession;
+import org.fao.geonet.constants.Edit;
+import org.fao.geonet.constants.Geonet;
+import org.fao.geonet.utils.Log;
+import org.fao.geonet.utils.Xml;
+import org.jdom.Element;
+import org.jdom.JDOMException;
+import org.jdom.output.Format;
+import org.jdom.output.XMLOutputter;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * A record being edited in a user session: the record expanded for editing (with the
+ * geonet:element refs used by the editor form) and an index of its elements by ref.
+ *
+ * <p>The editor changes are applied to the tree in place, while holding the lock of the record,
+ * instead of storing a copy of the record in the session after each change. The tree must only
+ * be read or changed between {@link #lock()} and {@link #unlock()}: requests on the same record
+ * are serialized, requests on other records are not blocked.</p>
+ *
+ * <p>The index is built on first lookup. Elements removed from the tree are detected when found
+ * and elements added without being registered with {@link #addElements(Element)} are found by
+ * building the index again.</p>
+ *
+ * <p>An idle record can be written to a file by {@link EditingSessionStore} to free memory, it
+ * is read again on next access.</p>
+ */
+public class EditingSession {
+    private final String id;
+    private final Path spillFile;
+    private final ReentrantLock lock = new ReentrantLock();
+
+    private Element metadata;
+    private boolean spilled = false;
+    private volatile boolean closed = false;
+    private Map<String, Element> elementsByRef;
+    private int maximumRef;
+    private volatile long lastAccess = System.currentTimeMillis();
+
+    EditingSession(String id, Element metadata, Path spillFile) {
+        this.id = id;
+        this.metadata = metadata;
+        this.spillFile = spillFile;
+    }
+
+    /**
+     * @return the record with this id being edited in the user session, or null.
+     */
+    public static EditingSession get(UserSession session, String id) {
+        Object editingSession = session.getProperty(Geonet.Session.METADATA_EDITING + id);
+        return editingSession instanceof EditingSession ? (EditingSession) editingSession : null;
+    }
+
+    public String getId() {
+        return id;
+    }
+
+    /**
+     * Lock the record, reading it again if it was written to a file.
+     */
+    public void lock() throws IOException {
+        lock.lock();
+        try {
+            lastAccess = System.currentTimeMillis();
+            if (spilled) {
+                restore();
+            } else if (metadata.getParent() != null) {
+                // The record returned when opening the session may have been added to a document
+                metadata.detach();
+            }
+        } catch (IOException | RuntimeException e) {
+            lock.unlock();
+            throw e;
+        }
+    }
+
+    public void unlock() {
+        lock.unlock();
+    }
+
+    /**
+     * @return the record expanded for editing, changed in place by the editor.
+     */
+    public Element getMetadata() {
+        checkLocked();
+        return metadata;
+    }
+
+    /**
+     * @return a copy of the record, for callers changing it (eg. to remove the editing info).
+     */
+    public Element copyMetadata() {
+        return (Element) getMetadata().clone();
+    }
+
+    /**
+     * Same as {@link org.fao.geonet.kernel.EditLib#findElement(Element, String)} without visiting
+     * the tree for each ref.
+     *
+     * @return the element with this geonet:element ref or null.
+     */
+    public Element findElement(String ref) {
+        Element root = getMetadata();
+        if (elementsByRef == null) {
+            index(root);
+        }
+        Element element = elementsByRef.get(ref);
+        if (element == null || !isInTree(element, ref, root)) {
+            index(root);
+            element = elementsByRef.get(ref);
+        }
+        return element;
+    }
+
+    /**
+     * Same as {@link org.fao.geonet.kernel.EditLib#findMaximumRef(Element)} without visiting the
+     * tree.
+     */
+    public int getMaximumRef() {
+        Element root = getMetadata();
+        if (elementsByRef == null) {
+            index(root);
+        }
+        return maximumRef;
+    }
+
+    /**
+     * Register the elements of a subtree just enumerated.
+     */
+    public void addElements(Element subtree) {
+        checkLocked();
+        if (elementsByRef != null) {
+            maximumRef = Math.max(maximumRef, addToIndex(subtree, elementsByRef));
+        }
+    }
+
+    /**
+     * Drop the index after changes to the tree which may add refs (eg. XML fragments), it is
+     * built again on next lookup.
+     */
+    public void invalidateIndex() {
+        checkLocked();
+        elementsByRef = null;
+    }
+
+    long getLastAccess() {
+        return lastAccess;
+    }
+
+    /**
+     * Write the record to the spill file if it is not used and has not been used since
+     * {@code idleSince}.
+     *
+     * @return true if the record was written.
+     */
+    boolean spillIfIdle(long idleSince) {
+        if (spillFile == null || !lock.tryLock()) {
+            return false;
+        }
+        try {
+            if (closed || spilled || lastAccess > idleSince) {
+                return false;
+            }
+            Path tmp = Files.createTempFile(spillFile.getParent(), spillFile.getFileName().toString(), ".tmp");
+            try {
+                try (OutputStream out = new GZIPOutputStream(Files.newOutputStream(tmp))) {
+                    new XMLOutputter(Format.getRawFormat()).output(metadata, out);
+                }
+                Files.move(tmp, spillFile, StandardCopyOption.REPLACE_EXISTING);
+            } catch (IOException e) {
+                Files.deleteIfExists(tmp);
+                throw e;
+            }
+            metadata = null;
+            elementsByRef = null;
+            spilled = true;
+            return true;
+        } catch (IOException e) {
+            Log.warning(Geonet.EDITOR, String.format("Error writing record %s being edited to %s: %s",
+                id, spillFile, e.getMessage()));
+            return false;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Remove the spill file, if any.
+     */
+    void close() {
+        closed = true;
+        if (spillFile == null) {
+            return;
+        }
+        try {
+            Files.deleteIfExists(spillFile);
+        } catch (IOException e) {
+            Log.warning(Geonet.EDITOR, "Error removing " + spillFile + ": " + e.getMessage());
+        }
+    }
+
+    private void restore() throws IOException {
+        try (InputStream in = new GZIPInputStream(Files.newInputStream(spillFile))) {
+            metadata = Xml.loadStream(in);
+        } catch (JDOMException e) {
+            throw new IOException(String.format("Error reading record %s being edited from %s: %s",
+                id, spillFile, e.getMessage()), e);
+        }
+        spilled = false;
+        Files.deleteIfExists(spillFile);
+    }
+
+    private void checkLocked() {
+        if (!lock.isHeldByCurrentThread()) {
+            throw new IllegalStateException("Record " + id + " being edited must be locked first.");
+        }
+    }
+
+    private void index(Element root) {
+        Map<String, Element> index = new HashMap<>();
+        maximumRef = addToIndex(root, index);
+        elementsByRef = index;
+    }
+
+    /**
+     * @return the maximum ref of the subtree.
+     */
+    private static int addToIndex(Element element, Map<String, Element> index) {
+        int max = 0;
+        Element refElement = element.getChild(Edit.RootChild.ELEMENT, Edit.NAMESPACE);
+        if (refElement != null) {
+            String ref = refElement.getAttributeValue(Edit.Element.Attr.REF);
+            if (ref != null && !ref.isEmpty()) {
+                index.putIfAbsent(ref, element);
+                max = parseRef(ref);
+            }
+        }
+        @SuppressWarnings("unchecked")
+        List<Element> children = element.getChildren();
+        for (Element child : children) {
+            if (!Edit.NAMESPACE.getPrefix().equals(child.getNamespacePrefix())) {
+                max = Math.max(max, addToIndex(child, index));
+            }
+        }
+        return max;
+    }
+
+    private static int parseRef(String ref) {
+        try {
+            return Integer.parseInt(ref);
+        } catch (NumberFormatException e) {
+            return 0;
+        }
+    }
+
+    /**
+     * @return true if the element still has this ref and is still in the tree.
+     */
+    private static boolean isInTree(Element element, String ref, Element root) {
+        Element refElement = element.getChild(Edit.RootChild.ELEMENT, Edit.NAMESPACE);
+        if (refElement == null || !ref.equals(refElement.getAttributeValue(Edit.Element.Attr.REF))) {
+            return false;
+        }
+        Element ancestor = element;
+        while (ancestor.getParentElement() != null) {
+            ancestor = ancestor.getParentElement();
+        }
+        return ancestor == root;
+    }
+}
@@ -0,0 +1,182 @@
+/*
+ * Copyright (C) 2001-2021 Food and Agriculture Organization of the
+ * United Nations (FAO-UN), United Nations World Food Programme (WFP)
+ * and United Nations Environment Programme (UNEP)
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or (at
+ * your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301, USA
+ *
+ * Contact: Jeroen Ticheler - FAO - Viale delle Terme di Caracalla 2,
+ * Rome - Italy. email: geonetwork@osgeo.org
+ */
+
+package org.fao.geonet.api.records.editing;
+
+import jeeves.server.UserSession;
+import org.apache.commons.lang.StringUtils;
+import org.fao.geonet.constants.Geonet;
+import org.fao.geonet.utils.Log;
+import org.jdom.Element;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.io.IOException;
+import java.lang.ref.Reference;
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Creates the {@link EditingSession} of the records opened in the editor and, if
+ * {@link #setSpillAfter(int)} is set, writes the records not used for this number of seconds to
+ * files so that the editing sessions left open don't keep large records in memory.
+ *
+ * <p>Editing sessions are kept in the user session, they are only weakly referenced here: the
+ * file of an editing session which expired with its user session is removed on next check.</p>
+ */
+public class EditingSessionStore {
+    private int spillAfter = 0;
+    private String spillDirectory;
+
+    private Path directory;
+    private ScheduledExecutorService executor;
+    private final ReferenceQueue<EditingSession> expired = new ReferenceQueue<>();
+    private final Set<SessionReference> sessions = ConcurrentHashMap.newKeySet();
+    private final AtomicLong spilledRecords = new AtomicLong();
+
+    @PostConstruct
+    public void init() throws IOException {
+        if (spillAfter <= 0) {
+            return;
+        }
+        if (StringUtils.isNotEmpty(spillDirectory)) {
+            directory = Files.createDirectories(Paths.get(spillDirectory));
+        } else {
+            directory = Files.createTempDirectory("gn-editing-");
+        }
+        executor = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "editing-session-spill");
+            thread.setDaemon(true);
+            return thread;
+        });
+        long period = Math.max(1, Math.min(spillAfter / 2, 60));
+        executor.scheduleWithFixedDelay(this::spillIdleSessions, period, period, TimeUnit.SECONDS);
+    }
+
+    @PreDestroy
+    public void destroy() {
+        if (executor != null) {
+            executor.shutdownNow();
+        }
+        for (SessionReference reference : sessions) {
+            deleteFile(reference.file);
+        }
+        sessions.clear();
+    }
+
+    /**
+     * Start editing a record in a user session, replacing the previous editing session of the
+     * record if any.
+     *
+     * @param metadata the record expanded for editing.
+     */
+    public EditingSession open(UserSession session, String id, Element metadata) {
+        close(session, id);
+        Path file = directory == null ? null : directory.resolve(UUID.randomUUID() + ".xml.gz");
+        EditingSession editingSession = new EditingSession(id, metadata, file);
+        if (file != null) {
+            sessions.add(new SessionReference(editingSession, file, expired));
+        }
+        session.setProperty(Geonet.Session.METADATA_EDITING + id, editingSession);
+        return editingSession;
+    }
+
+    /**
+     * Stop editing a record in a user session.
+     */
+    public void close(UserSession session, String id) {
+        EditingSession editingSession = EditingSession.get(session, id);
+        session.removeProperty(Geonet.Session.METADATA_EDITING + id);
+        if (editingSession != null) {
+            editingSession.close();
+        }
+    }
+
+    public long getSpilledRecords() {
+        return spilledRecords.get();
+    }
+
+    void spillIdleSessions() {
+        try {
+            Reference<? extends EditingSession> reference;
+            while ((reference = expired.poll()) != null) {
+                sessions.remove(reference);
+                deleteFile(((SessionReference) reference).file);
+            }
+
+            long idleSince = System.currentTimeMillis() - TimeUnit.SECONDS.toMillis(spillAfter);
+            for (SessionReference sessionReference : sessions) {
+                EditingSession editingSession = sessionReference.get();
+                if (editingSession != null && editingSession.getLastAccess() < idleSince
+                    && editingSession.spillIfIdle(idleSince)) {
+                    spilledRecords.incrementAndGet();
+                }
+            }
+        } catch (RuntimeException e) {
+            Log.error(Geonet.EDITOR, "Error writing idle editing sessions: " + e.getMessage(), e);
+        }
+    }
+
+    private static void deleteFile(Path file) {
+        try {
+            Files.deleteIfExists(file);
+        } catch (IOException e) {
+            Log.warning(Geonet.EDITOR, "Error removing " + file + ": " + e.getMessage());
+        }
+    }
+
+    /**
+     * @param spillAfter number of seconds after which a record not used in the editor is written
+     *                   to a file and removed from memory (0 to keep the records in memory).
+     */
+    public void setSpillAfter(int spillAfter) {
+        this.spillAfter = spillAfter;
+    }
+
+    /**
+     * @param spillDirectory directory of the files of the idle records (default is a temporary
+     *                       directory).
+     */
+    public void setSpillDirectory(String spillDirectory) {
+        this.spillDirectory = spillDirectory;
+    }
+
+    private static class SessionReference extends WeakReference<EditingSession> {
+        private final Path file;
+
+        SessionReference(EditingSession session, Path file, ReferenceQueue<EditingSession> queue) {
+            super(session, queue);
+            this.file = file;
+        }
+    }
+}
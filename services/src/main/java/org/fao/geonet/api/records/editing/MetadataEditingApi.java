@@ -540,7 +540,8 @@ public class MetadataEditingApi {
         // -- build the element to be added
         // -- Here we do mark the element that is added
         // -- then we traverse up the tree to the root
-        // -- clone from the root and return the clone
+        // -- and return the root (the element is returned
+        // -- in a copy of the record being edited)
         // -- this is done so that the style sheets have
         // -- access to important information like the
         // -- document language and other locales
@@ -552,8 +553,7 @@ public class MetadataEditingApi {
         Element elResp = new AjaxEditUtils(context).addElementEmbedded(ApiUtils.getUserSession(httpSession),
             String.valueOf(metadata.getId()), ref, name, child);
         EditLib.tagForDisplay(elResp);
-        Element md = (Element) findRoot(elResp).clone();
-        EditLib.removeDisplayTag(elResp);
+        Element md = findRoot(elResp);
 
         buildEditorForm(allRequestParams.get("currTab"), httpSession, allRequestParams, request, md,
             metadata.getDataInfo().getSchemaId(), context, applicationContext, true, true, response);
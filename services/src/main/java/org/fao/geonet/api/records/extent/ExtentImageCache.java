@@ -0,0 +1,368 @@
+/*
+ * Copyright (C) 2001-2021 Food and Agriculture Organization of the
+ * United Nations (FAO-UN), United Nations World Food Programme (WFP)
+ * and United Nations Environment Programme (UNEP)
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or (at
+ * your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301, USA
+ *
+ * Contact: Jeroen Ticheler - FAO - Viale delle Terme di Caracalla 2,
+ * Rome - Italy. email: geonetwork@osgeo.org
+ */
+
+package org.fao.geonet.api.records.extent;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.Weigher;
+import org.apache.commons.codec.digest.DigestUtils;
+import org.fao.geonet.constants.Geonet;
+import org.fao.geonet.kernel.GeonetworkDataDirectory;
+import org.fao.geonet.utils.Log;
+import org.springframework.beans.factory.annotation.Autowired;
+
+import javax.annotation.PostConstruct;
+import java.io.IOException;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Cache of the png images rendered by {@link MapRenderer} and of the background maps they are
+ * drawn on.
+ *
+ * <p>Images are kept in memory (up to {@link #setMaxMemorySizeMb(int)}) and in the html cache
+ * directory of the data directory. Keys describe everything the image depends on (the geometry,
+ * the projection, the size, the background and the colors) so entries are never updated: an
+ * image is rendered again with a new key when its record changes, and the files not used for
+ * {@link #setMaxDiskAge(int)} days are removed. The files also use at most
+ * {@link #setMaxDiskSizeMb(int)}: the least recently used ones are removed when the cache is
+ * full (keys depend on request parameters, eg. the size or the colors).</p>
+ *
+ * <p>Background maps are kept in memory only, by URL, for {@link #setBackgroundMaxAge(int)}
+ * seconds so that the same map is not downloaded again for each style of an extent.</p>
+ */
+public class ExtentImageCache {
+    private static final String CACHE_DIR = "extent-images";
+    private static final long CLEANUP_INTERVAL = TimeUnit.DAYS.toMillis(1);
+    /**
+     * When the disk cache is full, files are removed until it is filled to this ratio.
+     */
+    private static final double EVICTION_RATIO = 0.9;
+
+    @Autowired
+    private GeonetworkDataDirectory dataDirectory;
+
+    private boolean enabled = true;
+    private long maxMemorySizeB = 32L * 1024 * 1024;
+    private long backgroundMaxSizeB = 32L * 1024 * 1024;
+    private int backgroundMaxAge = 3600;
+    private int maxDiskAge = 30;
+    private long maxDiskSizeB = 256L * 1024 * 1024;
+
+    private Cache<String, byte[]> images;
+    private Cache<String, byte[]> backgrounds;
+    private final AtomicLong lastCleanUp = new AtomicLong(System.currentTimeMillis());
+    // size of the files, -1 until they are listed
+    private final AtomicLong diskSizeB = new AtomicLong(-1);
+    private final AtomicBoolean evicting = new AtomicBoolean();
+
+    private final AtomicLong memoryHits = new AtomicLong();
+    private final AtomicLong diskHits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+
+    @PostConstruct
+    public void init() {
+        Weigher<String, byte[]> weigher = (key, value) -> value.length;
+        images = CacheBuilder.newBuilder()
+            .maximumWeight(maxMemorySizeB)
+            .weigher(weigher)
+            .build();
+        backgrounds = CacheBuilder.newBuilder()
+            .maximumWeight(backgroundMaxSizeB)
+            .weigher(weigher)
+            .expireAfterWrite(backgroundMaxAge, TimeUnit.SECONDS)
+            .build();
+    }
+
+    /**
+     * @param key the description of the image.
+     * @return the png image or null if not cached.
+     */
+    public byte[] get(String key) {
+        if (!enabled) {
+            return null;
+        }
+        String hash = DigestUtils.sha1Hex(key);
+        byte[] png = images.getIfPresent(hash);
+        Path file = getFile(hash);
+        if (png != null) {
+            memoryHits.incrementAndGet();
+            touch(file);
+            return png;
+        }
+        try {
+            png = Files.readAllBytes(file);
+            touch(file);
+            images.put(hash, png);
+            diskHits.incrementAndGet();
+            return png;
+        } catch (NoSuchFileException e) {
+            // not cached
+        } catch (IOException e) {
+            Log.warning(Geonet.REGION, "Error reading cached extent image " + file + ": " + e.getMessage());
+        }
+        misses.incrementAndGet();
+        return null;
+    }
+
+    /**
+     * @param key the description of the image.
+     * @param png the image rendered completely (ie. not with an error instead of the background).
+     */
+    public void put(String key, byte[] png) {
+        if (!enabled) {
+            return;
+        }
+        String hash = DigestUtils.sha1Hex(key);
+        images.put(hash, png);
+        Path file = getFile(hash);
+        Path tmp = null;
+        try {
+            Files.createDirectories(file.getParent());
+            long replacedSize = Files.exists(file) ? Files.size(file) : 0;
+            tmp = Files.createTempFile(file.getParent(), hash, ".tmp");
+            Files.write(tmp, png);
+            try {
+                Files.move(tmp, file, StandardCopyOption.ATOMIC_MOVE);
+            } catch (AtomicMoveNotSupportedException e) {
+                Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING);
+            }
+            tmp = null;
+            if (diskSizeB.get() >= 0) {
+                diskSizeB.addAndGet(png.length - replacedSize);
+            }
+        } catch (IOException e) {
+            Log.warning(Geonet.REGION, "Error writing cached extent image " + file + ": " + e.getMessage());
+        } finally {
+            if (tmp != null) {
+                try {
+                    Files.deleteIfExists(tmp);
+                } catch (IOException e) {
+                    // ignore
+                }
+            }
+        }
+        cleanUpIfNeeded();
+    }
+
+    /**
+     * @return the image downloaded from the url or null if not cached.
+     */
+    public byte[] getBackground(String url) {
+        return enabled ? backgrounds.getIfPresent(url) : null;
+    }
+
+    public void putBackground(String url, byte[] image) {
+        if (enabled) {
+            backgrounds.put(url, image);
+        }
+    }
+
+    /**
+     * Remove all images from the memory and the disk.
+     */
+    public void clear() throws IOException {
+        images.invalidateAll();
+        backgrounds.invalidateAll();
+        removeFiles(-1);
+    }
+
+    private void cleanUpIfNeeded() {
+        long now = System.currentTimeMillis();
+        long last = lastCleanUp.get();
+        if (now - last > CLEANUP_INTERVAL && lastCleanUp.compareAndSet(last, now)) {
+            try {
+                removeFiles(now - TimeUnit.DAYS.toMillis(maxDiskAge));
+            } catch (IOException e) {
+                Log.warning(Geonet.REGION, "Error removing old extent images: " + e.getMessage());
+            }
+        }
+        long size = diskSizeB.get();
+        if ((size < 0 || size > maxDiskSizeB) && evicting.compareAndSet(false, true)) {
+            try {
+                evictIfFull();
+            } catch (IOException e) {
+                Log.warning(Geonet.REGION, "Error removing least recently used extent images: " + e.getMessage());
+            } finally {
+                evicting.set(false);
+            }
+        }
+    }
+
+    /**
+     * Remove the least recently used files until the files use less than the maximum size.
+     */
+    private void evictIfFull() throws IOException {
+        List<CachedFile> files = listFiles();
+        long size = files.stream().mapToLong(file -> file.size).sum();
+        if (size > maxDiskSizeB) {
+            files.sort(Comparator.comparingLong(file -> file.lastUsed));
+            long target = (long) (maxDiskSizeB * EVICTION_RATIO);
+            for (Iterator<CachedFile> it = files.iterator(); it.hasNext() && size > target; ) {
+                CachedFile file = it.next();
+                Files.deleteIfExists(file.path);
+                size -= file.size;
+            }
+        }
+        diskSizeB.set(size);
+    }
+
+    /**
+     * @param olderThan remove the files not used since this time, -1 to remove all of them.
+     */
+    private void removeFiles(long olderThan) throws IOException {
+        long size = 0;
+        for (CachedFile file : listFiles()) {
+            if (olderThan < 0 || file.lastUsed < olderThan) {
+                Files.deleteIfExists(file.path);
+            } else {
+                size += file.size;
+            }
+        }
+        diskSizeB.set(size);
+    }
+
+    private List<CachedFile> listFiles() throws IOException {
+        List<CachedFile> cachedFiles = new ArrayList<>();
+        Path base = getBaseDir();
+        if (!Files.isDirectory(base)) {
+            return cachedFiles;
+        }
+        try (DirectoryStream<Path> dirs = Files.newDirectoryStream(base)) {
+            for (Path dir : dirs) {
+                if (!Files.isDirectory(dir)) {
+                    continue;
+                }
+                try (DirectoryStream<Path> files = Files.newDirectoryStream(dir, "*.png")) {
+                    for (Path file : files) {
+                        try {
+                            BasicFileAttributes attributes = Files.readAttributes(file, BasicFileAttributes.class);
+                            cachedFiles.add(new CachedFile(file, attributes.size(), attributes.lastModifiedTime().toMillis()));
+                        } catch (NoSuchFileException e) {
+                            // removed by another thread
+                        }
+                    }
+                }
+            }
+        }
+        return cachedFiles;
+    }
+
+    /**
+     * Mark the file as recently used.
+     */
+    private void touch(Path file) {
+        try {
+            Files.setLastModifiedTime(file, FileTime.fromMillis(System.currentTimeMillis()));
+        } catch (IOException e) {
+            // not on disk (eg. write error), kept in memory only
+        }
+    }
+
+    private Path getBaseDir() {
+        return dataDirectory.getHtmlCacheDir().resolve(CACHE_DIR);
+    }
+
+    private Path getFile(String hash) {
+        return getBaseDir().resolve(hash.substring(0, 2)).resolve(hash + ".png");
+    }
+
+    public void setDataDirectory(GeonetworkDataDirectory dataDirectory) {
+        this.dataDirectory = dataDirectory;
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public void setEnabled(boolean enabled) {
+        this.enabled = enabled;
+    }
+
+    public void setMaxMemorySizeMb(int maxMemorySize) {
+        this.maxMemorySizeB = maxMemorySize * 1024L * 1024;
+    }
+
+    public void setBackgroundMaxSizeMb(int backgroundMaxSize) {
+        this.backgroundMaxSizeB = backgroundMaxSize * 1024L * 1024;
+    }
+
+    /**
+     * @param backgroundMaxAge number of seconds a background map is kept.
+     */
+    public void setBackgroundMaxAge(int backgroundMaxAge) {
+        this.backgroundMaxAge = backgroundMaxAge;
+    }
+
+    /**
+     * @param maxDiskAge number of days an image not used is kept on disk.
+     */
+    public void setMaxDiskAge(int maxDiskAge) {
+        this.maxDiskAge = maxDiskAge;
+    }
+
+    /**
+     * @param maxDiskSize maximum size of the images on disk in MB.
+     */
+    public void setMaxDiskSizeMb(int maxDiskSize) {
+        this.maxDiskSizeB = maxDiskSize * 1024L * 1024;
+    }
+
+    public long getMemoryHits() {
+        return memoryHits.get();
+    }
+
+    public long getDiskHits() {
+        return diskHits.get();
+    }
+
+    public long getMisses() {
+        return misses.get();
+    }
+
+    private static final class CachedFile {
+        private final Path path;
+        private final long size;
+        private final long lastUsed;
+
+        private CachedFile(Path path, long size, long lastUsed) {
+            this.path = path;
+            this.size = size;
+            this.lastUsed = lastUsed;
+        }
+    }
+}
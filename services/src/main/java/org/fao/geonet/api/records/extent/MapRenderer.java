@@ -23,7 +23,9 @@
 
 package org.fao.geonet.api.records.extent;
 
+import com.google.common.base.Joiner;
 import jeeves.server.context.ServiceContext;
+import org.apache.commons.codec.digest.DigestUtils;
 import org.apache.commons.io.IOUtils;
 import org.apache.commons.lang.StringUtils;
 import org.fao.geonet.api.regions.GeomFormat;
@@ -42,6 +44,7 @@ import org.locationtech.jts.awt.ShapeWriter;
 import org.locationtech.jts.geom.Envelope;
 import org.locationtech.jts.geom.Geometry;
 import org.locationtech.jts.geom.GeometryFactory;
+import org.locationtech.jts.io.WKBWriter;
 import org.opengis.metadata.extent.Extent;
 import org.opengis.metadata.extent.GeographicBoundingBox;
 import org.opengis.metadata.extent.GeographicExtent;
@@ -53,11 +56,14 @@ import javax.imageio.ImageIO;
 import java.awt.*;
 import java.awt.geom.AffineTransform;
 import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.net.URL;
 import java.net.URLConnection;
 import java.util.Collection;
+import java.util.Date;
 import java.util.Map;
 import java.util.SortedSet;
 
@@ -123,11 +129,57 @@ public class MapRenderer {
 
     public BufferedImage render(String id, String srs, Integer width, Integer height,
                                 String background, String geomParam, String geomType, String geomSrs, String fillColor, String strokeColor) throws Exception {
-        ApplicationContext appContext = context.getApplicationContext();
-        Map<String, String> regionGetMapBackgroundLayers = appContext.getBean("regionGetMapBackgroundLayers", Map.class);
-        SortedSet<ExpandFactor> regionGetMapExpandFactors = appContext.getBean("regionGetMapExpandFactors", SortedSet.class);
-        SettingManager settingManager = appContext.getBean(SettingManager.class);
+        Geometry geom = getGeometry(id, srs, geomParam, geomType, geomSrs);
+        return render(geom, srs, width, height, resolveBackground(background), fillColor, strokeColor).image;
+    }
+
+    /**
+     * Render the geometry as a png image. Images are cached by {@link ExtentImageCache} if
+     * configured: the geometry is always loaded but it is only drawn (and the background map
+     * downloaded) if the same geometry was not rendered before with the same parameters.
+     * Geometries provided by the request (geomParam) are not cached: any client could fill the
+     * disk with them.
+     *
+     * @param changeDate the change date of the record of the region, if any.
+     */
+    public byte[] renderPng(String id, Date changeDate, String srs, Integer width, Integer height,
+                            String background, String geomParam, String geomType, String geomSrs,
+                            String fillColor, String strokeColor) throws Exception {
+        Geometry geom = getGeometry(id, srs, geomParam, geomType, geomSrs);
+        String resolvedBackground = resolveBackground(background);
+        ExtentImageCache cache = geomParam == null ? getCache() : null;
+
+        String key = null;
+        if (cache != null) {
+            key = Joiner.on('\n').useForNull("").join(
+                id, changeDate == null ? null : changeDate.getTime(),
+                DigestUtils.sha1Hex(new WKBWriter().write(geom)),
+                srs, width, height, resolvedBackground, fillColor, strokeColor);
+            byte[] png = cache.get(key);
+            if (png != null) {
+                return png;
+            }
+        }
 
+        Rendering rendering = render(geom, srs, width, height, resolvedBackground, fillColor, strokeColor);
+        byte[] png;
+        try (ByteArrayOutputStream out = new ByteArrayOutputStream()) {
+            ImageIO.write(rendering.image, "png", out);
+            png = out.toByteArray();
+        }
+        // images without their background are rendered again next time
+        if (cache != null && rendering.complete) {
+            cache.put(key, png);
+        }
+        return png;
+    }
+
+    private ExtentImageCache getCache() {
+        Map<String, ExtentImageCache> caches = context.getApplicationContext().getBeansOfType(ExtentImageCache.class);
+        return caches.isEmpty() ? null : caches.values().iterator().next();
+    }
+
+    private Geometry getGeometry(String id, String srs, String geomParam, String geomType, String geomSrs) throws Exception {
         Geometry geom = null;
         if (id != null) {
             Collection<RegionsDAO> daos = context.getApplicationContext().getBeansOfType(RegionsDAO.class).values();
@@ -158,6 +210,53 @@ public class MapRenderer {
                 geom = JTS.transform(geom, transform);
             }
         }
+        return geom;
+    }
+
+    /**
+     * @return the url template of the background map or null if there is no background.
+     */
+    private String resolveBackground(String background) {
+        if (background == null) {
+            return null;
+        }
+        ApplicationContext appContext = context.getApplicationContext();
+        Map<String, String> regionGetMapBackgroundLayers = appContext.getBean("regionGetMapBackgroundLayers", Map.class);
+        SettingManager settingManager = appContext.getBean(SettingManager.class);
+
+        // 4 cases:
+        // * request param is 'settings' and db setting is a full url
+        // * request param is 'settings' and db setting is a named bg layer
+        // * request param is a named bg layer
+        // * request param is a full url
+        if (background.equalsIgnoreCase(MetadataExtentApi.SETTING_BACKGROUND)) {
+            String bgSetting = settingManager.getValue(Settings.REGION_GETMAP_BACKGROUND);
+            if (bgSetting.startsWith("http://") || bgSetting.startsWith("https://")) {
+                background = settingManager.getValue(Settings.REGION_GETMAP_BACKGROUND);
+            } else if (regionGetMapBackgroundLayers.containsKey(bgSetting)) {
+                background = regionGetMapBackgroundLayers.get(bgSetting);
+            }
+        } else if (regionGetMapBackgroundLayers.containsKey(background)) {
+            background = regionGetMapBackgroundLayers.get(background);
+        }
+        return background;
+    }
+
+    private static final class Rendering {
+        private final BufferedImage image;
+        private final boolean complete;
+
+        private Rendering(BufferedImage image, boolean complete) {
+            this.image = image;
+            this.complete = complete;
+        }
+    }
+
+    private Rendering render(Geometry geom, String srs, Integer width, Integer height,
+                             String background, String fillColor, String strokeColor) throws Exception {
+        SortedSet<ExpandFactor> regionGetMapExpandFactors = context.getApplicationContext()
+            .getBean("regionGetMapExpandFactors", SortedSet.class);
+
         BufferedImage image;
         Envelope bboxOfImage = new Envelope(geom.getEnvelopeInternal());
         double expandFactor = calculateExpandFactor(regionGetMapExpandFactors, bboxOfImage, srs);
@@ -166,22 +265,6 @@ public class MapRenderer {
 
         Exception error = null;
         if (background != null) {
-            // 4 cases:
-            // * request param is 'settings' and db setting is a full url
-            // * request param is 'settings' and db setting is a named bg layer
-            // * request param is a named bg layer
-            // * request param is a full url
-            if (background.equalsIgnoreCase(MetadataExtentApi.SETTING_BACKGROUND)) {
-                String bgSetting = settingManager.getValue(Settings.REGION_GETMAP_BACKGROUND);
-                if (bgSetting.startsWith("http://") || bgSetting.startsWith("https://")) {
-                    background = settingManager.getValue(Settings.REGION_GETMAP_BACKGROUND);
-                } else if (regionGetMapBackgroundLayers.containsKey(bgSetting)) {
-                    background = regionGetMapBackgroundLayers.get(bgSetting);
-                }
-            } else if (regionGetMapBackgroundLayers.containsKey(background)) {
-                background = regionGetMapBackgroundLayers.get(background);
-            }
-
             String minx = Double.toString(bboxOfImage.getMinX());
             String maxx = Double.toString(bboxOfImage.getMaxX());
             String miny = Double.toString(bboxOfImage.getMinY());
@@ -194,24 +277,14 @@ public class MapRenderer {
                 .replace("{WIDTH}", Integer.toString(imageDimensions.width))
                 .replace("{HEIGHT}", Integer.toString(imageDimensions.height));
 
-            InputStream in = null;
             try {
-                URL imageUrl = new URL(background);
-                // Setup the proxy for the request if required
-                URLConnection conn = Lib.net.setupProxy(context, imageUrl);
-                in = conn.getInputStream();
-                BufferedImage original = ImageIO.read(in);
+                BufferedImage original = ImageIO.read(new ByteArrayInputStream(getBackground(background)));
                 image = new BufferedImage(original.getWidth(), original.getHeight(), BufferedImage.TYPE_INT_ARGB);
                 Graphics2D g2d = image.createGraphics();
                 g2d.drawImage(original, 0, 0, null);
             } catch (IOException e) {
                 image = new BufferedImage(imageDimensions.width, imageDimensions.height, BufferedImage.TYPE_INT_ARGB);
                 error = e;
-            } finally {
-                if (in != null) {
-                    IOUtils.closeQuietly(in);
-                }
-
             }
         } else {
             image = new BufferedImage(imageDimensions.width, imageDimensions.height, BufferedImage.TYPE_INT_ARGB);
@@ -239,7 +312,27 @@ public class MapRenderer {
         } finally {
             graphics.dispose();
         }
-        return image;
+        return new Rendering(image, error == null);
+    }
+
+    /**
+     * @return the image downloaded from the url, from the cache if it was downloaded recently.
+     */
+    private byte[] getBackground(String url) throws IOException {
+        ExtentImageCache cache = getCache();
+        byte[] data = cache == null ? null : cache.getBackground(url);
+        if (data == null) {
+            URL imageUrl = new URL(url);
+            // Setup the proxy for the request if required
+            URLConnection conn = Lib.net.setupProxy(context, imageUrl);
+            try (InputStream in = conn.getInputStream()) {
+                data = IOUtils.toByteArray(in);
+            }
+            if (cache != null && ImageIO.read(new ByteArrayInputStream(data)) != null) {
+                cache.putBackground(url, data);
+            }
+        }
+        return data;
     }
 
     private Color getColor(String color, Color defaultColor) {
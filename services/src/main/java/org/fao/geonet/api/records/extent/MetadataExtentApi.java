@@ -23,10 +23,13 @@
 
 package org.fao.geonet.api.records.extent;
 
+import com.google.common.base.Joiner;
+import com.google.common.base.Optional;
 import io.swagger.v3.oas.annotations.Parameter;
 import io.swagger.v3.oas.annotations.tags.Tag;
 import jeeves.server.context.ServiceContext;
 import jeeves.services.ReadWriteController;
+import org.apache.commons.codec.digest.DigestUtils;
 import org.apache.commons.lang3.StringUtils;
 import org.fao.geonet.api.ApiUtils;
 import org.fao.geonet.api.regions.MetadataRegionDAO;
@@ -50,11 +53,9 @@ import org.springframework.util.MultiValueMap;
 import org.springframework.web.bind.annotation.*;
 import org.springframework.web.context.request.NativeWebRequest;
 
-import javax.imageio.ImageIO;
 import javax.servlet.http.HttpServletRequest;
-import java.awt.image.BufferedImage;
-import java.io.ByteArrayOutputStream;
 import java.util.ArrayList;
+import java.util.Date;
 import java.util.List;
 
 import static org.fao.geonet.api.ApiParams.*;
@@ -298,28 +299,30 @@ public class MetadataExtentApi {
         }
 
         Request searchRequest = metadataRegionDAO.createSearchRequest(context).id(regionId);
-        if (searchRequest.getLastModified().isPresent() && nativeWebRequest.checkNotModified(searchRequest.getLastModified().get())) {
+        Optional<Long> lastModified = searchRequest.getLastModified();
+        // the image also depends on the rendering parameters and on the background of the settings
+        String etag = "\"" + DigestUtils.sha1Hex(Joiner.on('\n').useForNull("").join(
+            regionId, lastModified.orNull(), srs, width, height, background,
+            SETTING_BACKGROUND.equalsIgnoreCase(background) ? settingManager.getValue(Settings.REGION_GETMAP_BACKGROUND) : null,
+            fillColor, strokeColor)) + "\"";
+        if (lastModified.isPresent()
+            ? nativeWebRequest.checkNotModified(etag, lastModified.get())
+            : nativeWebRequest.checkNotModified(etag)) {
             return null;
         }
 
         MapRenderer renderer = new MapRenderer(context);
-        BufferedImage image = renderer.render(
-            regionId, srs, width, height, background,
+        byte[] png = renderer.renderPng(
+            regionId, lastModified.isPresent() ? new Date(lastModified.get()) : null,
+            srs, width, height, background,
             null, null, null,
             fillColor,
             strokeColor);
 
-        if (image == null) {
-            return null;
-        }
-
-        try (ByteArrayOutputStream out = new ByteArrayOutputStream()) {
-            ImageIO.write(image, "png", out);
-            MultiValueMap<String, String> headers = new HttpHeaders();
-            headers.add(HttpHeaders.CONTENT_DISPOSITION, String.format("inline; filename=\"%s-extent.png\"", metadataUuid));
-            headers.add(HttpHeaders.CACHE_CONTROL, "no-cache");
-            headers.add(HttpHeaders.CONTENT_TYPE, "image/png");
-            return new HttpEntity<>(out.toByteArray(), headers);
-        }
+        MultiValueMap<String, String> headers = new HttpHeaders();
+        headers.add(HttpHeaders.CONTENT_DISPOSITION, String.format("inline; filename=\"%s-extent.png\"", metadataUuid));
+        headers.add(HttpHeaders.CACHE_CONTROL, "no-cache");
+        headers.add(HttpHeaders.CONTENT_TYPE, "image/png");
+        return new HttpEntity<>(png, headers);
     }
 }
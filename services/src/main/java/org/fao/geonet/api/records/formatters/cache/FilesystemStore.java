@@ -38,13 +38,18 @@ import javax.annotation.PreDestroy;
 import java.io.IOException;
 import java.net.URI;
 import java.net.URISyntaxException;
+import java.nio.file.AtomicMoveNotSupportedException;
 import java.nio.file.FileVisitResult;
 import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
 import java.nio.file.Path;
 import java.nio.file.SimpleFileVisitor;
+import java.nio.file.StandardCopyOption;
 import java.nio.file.attribute.BasicFileAttributes;
 import java.sql.*;
+import java.util.Deque;
 import java.util.UUID;
+import java.util.concurrent.ConcurrentLinkedDeque;
 
 import static org.fao.geonet.constants.Params.Access.PRIVATE;
 import static org.fao.geonet.constants.Params.Access.PUBLIC;
@@ -52,6 +57,9 @@ import static org.fao.geonet.constants.Params.Access.PUBLIC;
 /**
  * A {@link org.fao.geonet.api.records.formatters.cache.PersistentStore} that saves the files to
  * disk.
+ * <p/>
+ * Reads are not synchronized and use their own connections to the info database. Files are
+ * written to a temporary file and then moved so that readers never see a partial file.
  *
  * @author Jesse on 3/5/2015.
  */
@@ -76,8 +84,11 @@ public class FilesystemStore implements PersistentStore {
     private static final String QUERY_REMOVE = "DELETE FROM " + INFO_TABLE + " WHERE " + KEY + "=?";
     private static final String QUERY_CLEAR_INFO = "DELETE FROM " + INFO_TABLE;
     private static final String QUERY_CLEAR_STATS = "DELETE FROM " + STATS_TABLE;
+    private static final int MAX_IDLE_READ_CONNECTIONS = 8;
     @VisibleForTesting
     Connection metadataDb;
+    private final Deque<Connection> readConnections = new ConcurrentLinkedDeque<>();
+    private volatile String jdbcUrl;
     @Autowired
     private GeonetworkDataDirectory geonetworkDataDir;
     private boolean testing = false;
@@ -85,7 +96,13 @@ public class FilesystemStore implements PersistentStore {
     private volatile long currentSize = 0;
     private volatile boolean initialized = false;
 
-    private synchronized void init() throws SQLException {
+    private void init() throws SQLException {
+        if (!initialized) {
+            doInit();
+        }
+    }
+
+    private synchronized void doInit() throws SQLException {
         if (!initialized) {
             // using a h2 database and not normal geonetwork DB to ensure that the accesses are always on localhost and therefore
             // hopefully quick.
@@ -104,7 +121,8 @@ public class FilesystemStore implements PersistentStore {
             };
             String init = ";INIT=" + Joiner.on("\\;").join(initSql) + ";DB_CLOSE_DELAY=-1";
             String dbPath = testing ? "mem:" + UUID.randomUUID() : getBaseCacheDir().resolve("info-store").toString();
-            metadataDb = DriverManager.getConnection("jdbc:h2:" + dbPath + init, "fsStore", "");
+            jdbcUrl = "jdbc:h2:" + dbPath + init;
+            metadataDb = DriverManager.getConnection(jdbcUrl, "fsStore", "");
 
             try (
                 Statement statement = metadataDb.createStatement();
@@ -131,26 +149,49 @@ public class FilesystemStore implements PersistentStore {
     @PreDestroy
     synchronized void close() throws ClassNotFoundException, SQLException {
         Log.info(Geonet.FORMATTER, "Stopping the FileSystemStore");
+        Connection connection;
+        while ((connection = readConnections.poll()) != null) {
+            connection.close();
+        }
         if (metadataDb != null) {
             metadataDb.close();
         }
     }
 
+    private Connection borrowReadConnection() throws SQLException {
+        Connection connection = readConnections.poll();
+        return connection != null ? connection : DriverManager.getConnection(jdbcUrl, "fsStore", "");
+    }
+
+    private void releaseReadConnection(Connection connection) throws SQLException {
+        if (readConnections.size() < MAX_IDLE_READ_CONNECTIONS) {
+            readConnections.push(connection);
+        } else {
+            connection.close();
+        }
+    }
+
     @Override
-    public synchronized StoreInfoAndData get(@Nonnull Key key) throws IOException, SQLException {
+    public StoreInfoAndData get(@Nonnull Key key) throws IOException, SQLException {
         init();
         StoreInfo info = getInfo(key);
         if (info == null) {
             return null;
         }
-        byte[] data = Files.readAllBytes(getPrivatePath(key));
-        return new StoreInfoAndData(info, data);
+        try {
+            byte[] data = Files.readAllBytes(getPrivatePath(key));
+            return new StoreInfoAndData(info, data);
+        } catch (NoSuchFileException e) {
+            // removed since the info was read
+            return null;
+        }
     }
 
     @Override
-    public synchronized StoreInfo getInfo(@Nonnull Key key) throws SQLException {
+    public StoreInfo getInfo(@Nonnull Key key) throws SQLException {
         init();
-        try (PreparedStatement statement = this.metadataDb.prepareStatement(QUERY_GET_INFO)) {
+        Connection connection = borrowReadConnection();
+        try (PreparedStatement statement = connection.prepareStatement(QUERY_GET_INFO)) {
             statement.setInt(1, key.hashCode());
             try (ResultSet resultSet = statement.executeQuery()) {
                 if (resultSet.next()) {
@@ -161,6 +202,8 @@ public class FilesystemStore implements PersistentStore {
                     return null;
                 }
             }
+        } finally {
+            releaseReadConnection(connection);
         }
     }
 
@@ -175,7 +218,13 @@ public class FilesystemStore implements PersistentStore {
         }
 
         Files.createDirectories(privatePath.getParent());
-        Files.write(privatePath, data.data);
+        Path tmpPath = privatePath.resolveSibling(privatePath.getFileName() + ".tmp");
+        Files.write(tmpPath, data.data);
+        try {
+            Files.move(tmpPath, privatePath, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(tmpPath, privatePath, StandardCopyOption.REPLACE_EXISTING);
+        }
         currentSize += data.data.length;
 
         updateDbCurrentSize();
@@ -249,9 +298,9 @@ public class FilesystemStore implements PersistentStore {
             throw new Error(e);
         }
         final Path publicPath = getPublicPath(key);
-        if (Files.exists(publicPath)) {
+        try {
             return Files.readAllBytes(publicPath);
-        } else {
+        } catch (NoSuchFileException e) {
             return null;
         }
     }
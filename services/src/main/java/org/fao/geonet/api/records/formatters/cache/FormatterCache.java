@@ -30,16 +30,23 @@ import com.google.common.cache.RemovalListener;
 import com.google.common.cache.RemovalNotification;
 import com.google.common.collect.ArrayListMultimap;
 import com.google.common.collect.Multimap;
+import com.google.common.collect.Multimaps;
 import org.fao.geonet.domain.Pair;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jmx.export.MBeanExporter;
+import org.springframework.jmx.export.annotation.ManagedAttribute;
+import org.springframework.jmx.export.annotation.ManagedResource;
 import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
 
 import javax.annotation.Nullable;
+import javax.annotation.PostConstruct;
 import javax.annotation.PreDestroy;
+import javax.management.ObjectName;
 import java.io.IOException;
 import java.sql.SQLException;
 import java.util.Collection;
 import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.concurrent.locks.Lock;
 import java.util.concurrent.locks.ReadWriteLock;
 import java.util.concurrent.locks.ReentrantReadWriteLock;
@@ -58,18 +65,37 @@ import java.util.concurrent.locks.ReentrantReadWriteLock;
  * parallel with writing to the cache.
  * <p/>
  * Note: The Persistent cache used can be configured.
+ * <p/>
+ * Values are loaded without holding any lock so that different formatters or metadata are
+ * rendered in parallel. Concurrent requests for the same key wait for a single load. A value
+ * loaded while the cache was being invalidated (eg. the metadata was updated) is returned but
+ * not cached.
  *
  * @author Jesse on 3/5/2015.
  */
+@ManagedResource()
 public class FormatterCache {
+    /**
+     * Taken to add values to the cache (short) and to invalidate values.
+     */
     private final ReadWriteLock lock = new ReentrantReadWriteLock();
     private final PersistentStore persistentStore;
     private final Cache<Key, StoreInfoAndData> memoryCache;
-    private final Multimap<Integer, Pair<Key, StoreInfoAndData>> mdIdIndex = ArrayListMultimap.create();
+    private final Multimap<Integer, Pair<Key, StoreInfoAndData>> mdIdIndex =
+        Multimaps.synchronizedListMultimap(ArrayListMultimap.<Integer, Pair<Key, StoreInfoAndData>>create());
+    private final ConcurrentMap<Key, CompletableFuture<StoreInfoAndDataLoadResult>> loading = new ConcurrentHashMap<>();
+    private final AtomicLong invalidations = new AtomicLong();
+    private final AtomicLong memoryHits = new AtomicLong();
+    private final AtomicLong persistentStoreHits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong sharedLoads = new AtomicLong();
+    private final AtomicLong loadTimeMillis = new AtomicLong();
     private final ExecutorService executor;
     private final BlockingQueue<Pair<Key, StoreInfoAndDataLoadResult>> storeRequests;
     @Autowired
     private final CacheConfig cacheConfig;
+    @Autowired(required = false)
+    private MBeanExporter exporter;
 
     public FormatterCache(PersistentStore persistentStore, int memoryCacheSize, int maxStoreRequests) {
         this(persistentStore, memoryCacheSize, maxStoreRequests, new ConfigurableCacheConfig());
@@ -110,10 +136,19 @@ public class FormatterCache {
         this.executor.shutdownNow();
     }
 
+    @PostConstruct
+    public void registerMBean() throws Exception {
+        if (exporter != null) {
+            exporter.registerManagedResource(this, new ObjectName("geonetwork:name=formatter-cache"));
+        }
+    }
+
     public void remove(Key key) throws IOException, SQLException {
         final Lock writeLock = lock.writeLock();
         try {
             writeLock.lock();
+            invalidations.incrementAndGet();
+            this.loading.remove(key);
             this.memoryCache.invalidate(key);
             this.persistentStore.remove(key);
         } finally {
@@ -138,49 +173,79 @@ public class FormatterCache {
     @Nullable
     public byte[] get(Key key, Validator validator, Callable<StoreInfoAndDataLoadResult> loader,
                       boolean writeToStoreInCurrentThread) throws Exception {
-        final Lock readLock = lock.readLock();
-        StoreInfoAndData cached;
-        try {
-            readLock.lock();
-            if (!cacheConfig.allowCaching(key)) {
-                return loader.call().data;
-            }
+        if (!cacheConfig.allowCaching(key)) {
+            return loader.call().data;
+        }
 
-            cached = memoryCache.getIfPresent(key);
-            boolean invalid = false;
-            if (cached != null && !validator.isCacheVersionValid(cached)) {
-                cached = null;
-                invalid = true;
-            }
+        StoreInfoAndData cached = memoryCache.getIfPresent(key);
+        boolean invalid = false;
+        if (cached != null && !validator.isCacheVersionValid(cached)) {
+            cached = null;
+            invalid = true;
+        } else if (cached != null) {
+            memoryHits.incrementAndGet();
+        }
 
-            if (!invalid && cached == null) {
-                cached = loadFromPersistentCache(key, validator);
+        if (!invalid && cached == null) {
+            cached = loadFromPersistentCache(key, validator);
+            if (cached != null) {
+                persistentStoreHits.incrementAndGet();
             }
-
-        } finally {
-            readLock.unlock();
         }
-        final Lock writeLock = lock.writeLock();
+
         if (cached == null) {
-            try {
-                writeLock.lock();
-                StoreInfoAndDataLoadResult loaded = loader.call();
-                cached = loaded;
-                push(key, loaded, writeToStoreInCurrentThread);
-            } finally {
-                writeLock.unlock();
-            }
+            misses.incrementAndGet();
+            cached = load(key, loader, writeToStoreInCurrentThread);
         }
 
         return cached.data;
 
     }
 
+    /**
+     * Load the value, or wait for the value if it is already being loaded by another thread.
+     */
+    private StoreInfoAndDataLoadResult load(Key key, Callable<StoreInfoAndDataLoadResult> loader,
+                                            boolean writeToStoreInCurrentThread) throws Exception {
+        CompletableFuture<StoreInfoAndDataLoadResult> future = new CompletableFuture<>();
+        CompletableFuture<StoreInfoAndDataLoadResult> inProgress = loading.putIfAbsent(key, future);
+        if (inProgress != null) {
+            sharedLoads.incrementAndGet();
+            try {
+                return inProgress.get();
+            } catch (ExecutionException e) {
+                if (e.getCause() instanceof Exception) {
+                    throw (Exception) e.getCause();
+                }
+                throw e;
+            }
+        }
+
+        try {
+            long invalidationsBeforeLoad = invalidations.get();
+            long startTime = System.currentTimeMillis();
+            StoreInfoAndDataLoadResult loaded = loader.call();
+            loadTimeMillis.addAndGet(System.currentTimeMillis() - startTime);
+            push(key, loaded, writeToStoreInCurrentThread, invalidationsBeforeLoad);
+            future.complete(loaded);
+            return loaded;
+        } catch (Throwable e) {
+            future.completeExceptionally(e);
+            throw e;
+        } finally {
+            loading.remove(key, future);
+        }
+    }
+
     private void push(Key key, StoreInfoAndDataLoadResult cached,
-                      boolean writeToStoreInCurrentThread) throws IOException, SQLException {
+                      boolean writeToStoreInCurrentThread, long invalidationsBeforeLoad) throws IOException, SQLException {
         final Lock writeLock = lock.writeLock();
         try {
             writeLock.lock();
+            if (invalidations.get() != invalidationsBeforeLoad) {
+                // the value may have been loaded from an outdated metadata
+                return;
+            }
 
             this.memoryCache.put(key, cached);
             this.mdIdIndex.put(key.mdId, Pair.read(key, cached));
@@ -245,6 +310,7 @@ public class FormatterCache {
         final Lock writeLock = lock.writeLock();
         try {
             writeLock.lock();
+            invalidations.incrementAndGet();
             this.persistentStore.setPublished(metadataId, published);
         } finally {
             writeLock.unlock();
@@ -258,6 +324,8 @@ public class FormatterCache {
         final Lock writeLock = lock.writeLock();
         try {
             writeLock.lock();
+            invalidations.incrementAndGet();
+            this.loading.keySet().removeIf(key -> key.mdId == metadataId);
             Collection<Pair<Key, StoreInfoAndData>> storeInfoAndDatas = this.mdIdIndex.removeAll(metadataId);
             for (Pair<Key, StoreInfoAndData> storeInfoAndData : storeInfoAndDatas) {
                 final Key key = storeInfoAndData.one();
@@ -276,6 +344,8 @@ public class FormatterCache {
         final Lock writeLock = lock.writeLock();
         try {
             writeLock.lock();
+            invalidations.incrementAndGet();
+            this.loading.clear();
             this.memoryCache.invalidateAll();
             this.persistentStore.clear();
         } finally {
@@ -283,6 +353,41 @@ public class FormatterCache {
         }
     }
 
+    @ManagedAttribute(description = "Number of values found in the memory cache")
+    public long getMemoryHitCount() {
+        return memoryHits.get();
+    }
+
+    @ManagedAttribute(description = "Number of values found in the persistent store")
+    public long getPersistentStoreHitCount() {
+        return persistentStoreHits.get();
+    }
+
+    @ManagedAttribute(description = "Number of values which had to be loaded")
+    public long getMissCount() {
+        return misses.get();
+    }
+
+    @ManagedAttribute(description = "Number of misses which waited for the same value loaded by another request")
+    public long getSharedLoadCount() {
+        return sharedLoads.get();
+    }
+
+    @ManagedAttribute(description = "Total time spent loading values in milliseconds")
+    public long getTotalLoadTimeMillis() {
+        return loadTimeMillis.get();
+    }
+
+    @ManagedAttribute(description = "Number of values being loaded")
+    public int getLoadingCount() {
+        return loading.size();
+    }
+
+    @ManagedAttribute
+    public long getMemoryCacheSize() {
+        return memoryCache.size();
+    }
+
     private class RemoveFromIndexListener implements RemovalListener<Key, StoreInfoAndData> {
         @Override
         public void onRemoval(RemovalNotification<Key, StoreInfoAndData> notification) {
@@ -0,0 +1,92 @@
+/*
+ * Copyright (C) 2001-2016 Food and Agriculture Organization of the
+ * United Nations (FAO-UN), United Nations World Food Programme (WFP)
+ * and United Nations Environment Programme (UNEP)
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or (at
+ * your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301, USA
+ *
+ * Contact: Jeroen Ticheler - FAO - Viale delle Terme di Caracalla 2,
+ * Rome - Italy. email: geonetwork@osgeo.org
+ */
+
+package org.fao.geonet.services.main;
+
+import jeeves.constants.Jeeves;
+import jeeves.server.UserSession;
+import jeeves.server.context.ServiceContext;
+import jeeves.server.dispatchers.ServiceManager;
+import org.fao.geonet.ApplicationContextHolder;
+import org.fao.geonet.NodeInfo;
+import org.fao.geonet.kernel.oaipmh.OaiPmhDispatcher;
+import org.jdom.Element;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.ApplicationContext;
+import org.springframework.stereotype.Controller;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestMethod;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.util.Enumeration;
+
+/**
+ * OAI-PMH endpoint writing the response as it is built, so that the records of a ListRecords
+ * page are sent as soon as they are converted (see {@link OaiPmhDispatcher}). Takes precedence
+ * over the oaipmh service of {@link GenericController}.
+ */
+@Controller
+public class OaiPmhController {
+    private static final String SERVICE = "oaipmh";
+
+    @Autowired
+    NodeInfo node;
+
+    @RequestMapping(value = "/{portal}/{lang:[a-z]{3}}/" + SERVICE,
+        method = {RequestMethod.GET, RequestMethod.POST})
+    public void dispatch(@PathVariable String portal,
+                         @PathVariable String lang,
+                         HttpServletRequest request,
+                         HttpServletResponse response) throws Exception {
+        // Records are searched in the portal (see EsFilterBuilder#buildPortalFilter)
+        node.setId(NodeInfo.EXCLUDED_NODE_IDS.contains(portal) ? NodeInfo.DEFAULT_NODE : portal);
+
+        // The dispatcher is registered once the application is started
+        ApplicationContext applicationContext = ApplicationContextHolder.get();
+        ServiceManager serviceManager = applicationContext.getBean(ServiceManager.class);
+        ServiceContext context = serviceManager.createServiceContext(SERVICE, lang, request);
+        if (context.getUserSession() == null) {
+            // Harvesters usually have no session
+            context.setUserSession(new UserSession());
+        }
+        context.setAsThreadLocal();
+        try {
+            Element params = new Element(Jeeves.Elem.REQUEST);
+            Enumeration<String> names = request.getParameterNames();
+            while (names.hasMoreElements()) {
+                String name = names.nextElement();
+                // repeated parameters are reported as bad arguments by the dispatcher
+                for (String value : request.getParameterValues(name)) {
+                    params.addContent(new Element(name).setText(value));
+                }
+            }
+
+            response.setContentType("application/xml; charset=UTF-8");
+            applicationContext.getBean(OaiPmhDispatcher.class).dispatch(params, context, response.getOutputStream());
+        } finally {
+            ServiceContext.clearThreadLocal();
+        }
+    }
+}
@@ -0,0 +1,127 @@
+/*
+ * Copyright (C) 2001-2021 Food and Agriculture Organization of the
+ * United Nations (FAO-UN), United Nations World Food Programme (WFP)
+ * and United Nations Environment Programme (UNEP)
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or (at
+ * your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301, USA
+ *
+ * Contact: Jeroen Ticheler - FAO - Viale delle Terme di Caracalla 2,
+ * Rome - Italy. email: geonetwork@osgeo.org
+ */
+
+package org.fao.geonet.api.records.editing;
+
+import org.fao.geonet.constants.Edit;
+import org.fao.geonet.utils.Xml;
+import org.jdom.Element;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class EditingSessionTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private Element md;
+
+    @Before
+    public void setUp() {
+        md = element("MD_Metadata", 1);
+        Element contact = element("contact", 2);
+        contact.addContent(element("name", 3));
+        md.addContent(contact);
+        md.addContent(element("title", 4));
+    }
+
+    @Test
+    public void testFindElement() throws Exception {
+        EditingSession session = new EditingSession("1", md, null);
+        session.lock();
+        try {
+            assertSame(md, session.findElement("1"));
+            assertEquals("name", session.findElement("3").getName());
+            assertEquals(4, session.getMaximumRef());
+            assertNull(session.findElement("5"));
+        } finally {
+            session.unlock();
+        }
+    }
+
+    @Test
+    public void testIndexFollowsChanges() throws Exception {
+        EditingSession session = new EditingSession("1", md, null);
+        session.lock();
+        try {
+            Element title = session.findElement("4");
+            title.detach();
+            assertNull(session.findElement("4"));
+
+            Element keyword = element("keyword", 5);
+            md.addContent(keyword);
+            session.addElements(keyword);
+            assertSame(keyword, session.findElement("5"));
+            assertEquals(5, session.getMaximumRef());
+
+            Element fragment = element("abstract", 6);
+            md.addContent(fragment);
+            assertSame(fragment, session.findElement("6"));
+        } finally {
+            session.unlock();
+        }
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void testLockRequired() {
+        new EditingSession("1", md, null).findElement("1");
+    }
+
+    @Test
+    public void testSpill() throws Exception {
+        Path file = folder.getRoot().toPath().resolve("1.xml.gz");
+        EditingSession session = new EditingSession("1", md, file);
+        String xml = Xml.getString(md);
+
+        assertFalse(session.spillIfIdle(session.getLastAccess() - 1));
+        assertTrue(session.spillIfIdle(System.currentTimeMillis()));
+        assertTrue(Files.exists(file));
+
+        session.lock();
+        try {
+            assertFalse(Files.exists(file));
+            assertEquals(xml, Xml.getString(session.getMetadata()));
+            assertEquals("name", session.findElement("3").getName());
+        } finally {
+            session.unlock();
+        }
+    }
+
+    private static Element element(String name, int ref) {
+        Element element = new Element(name);
+        element.addContent(new Element(Edit.RootChild.ELEMENT, Edit.NAMESPACE)
+            .setAttribute(Edit.Element.Attr.REF, String.valueOf(ref)));
+        return element;
+    }
+}
@@ -0,0 +1,134 @@
+/*
+ * Copyright (C) 2001-2021 Food and Agriculture Organization of the
+ * United Nations (FAO-UN), United Nations World Food Programme (WFP)
+ * and United Nations Environment Programme (UNEP)
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or (at
+ * your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301, USA
+ *
+ * Contact: Jeroen Ticheler - FAO - Viale delle Terme di Caracalla 2,
+ * Rome - Italy. email: geonetwork@osgeo.org
+ */
+
+package org.fao.geonet.api.records.extent;
+
+import com.google.common.jimfs.Configuration;
+import com.google.common.jimfs.Jimfs;
+import org.fao.geonet.kernel.GeonetworkDataDirectory;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Mockito;
+
+import java.nio.file.FileSystem;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+public class ExtentImageCacheTest {
+
+    private FileSystem fileSystem;
+    private GeonetworkDataDirectory dataDirectory;
+
+    @Before
+    public void setUp() {
+        dataDirectory = Mockito.mock(GeonetworkDataDirectory.class);
+        fileSystem = Jimfs.newFileSystem("extents", Configuration.unix());
+        Mockito.when(dataDirectory.getHtmlCacheDir()).thenReturn(fileSystem.getPath("/html"));
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        fileSystem.close();
+    }
+
+    @Test
+    public void testGetFromMemoryAndDisk() throws Exception {
+        ExtentImageCache cache = newCache();
+        byte[] png = {1, 2, 3};
+        assertNull(cache.get("metadata:@id1"));
+        cache.put("metadata:@id1", png);
+
+        assertArrayEquals(png, cache.get("metadata:@id1"));
+        assertEquals(1, cache.getMemoryHits());
+
+        // a new cache only finds the image on disk
+        ExtentImageCache otherCache = newCache();
+        assertArrayEquals(png, otherCache.get("metadata:@id1"));
+        assertEquals(1, otherCache.getDiskHits());
+        assertNull(otherCache.get("metadata:@id2"));
+    }
+
+    @Test
+    public void testClear() throws Exception {
+        ExtentImageCache cache = newCache();
+        cache.put("metadata:@id1", new byte[]{1});
+        cache.putBackground("http://wms", new byte[]{2});
+        cache.clear();
+
+        assertNull(cache.get("metadata:@id1"));
+        assertNull(cache.getBackground("http://wms"));
+    }
+
+    @Test
+    public void testDisabled() {
+        ExtentImageCache cache = newCache();
+        cache.setEnabled(false);
+        cache.put("metadata:@id1", new byte[]{1});
+        cache.putBackground("http://wms", new byte[]{2});
+
+        assertNull(cache.get("metadata:@id1"));
+        assertNull(cache.getBackground("http://wms"));
+    }
+
+    @Test
+    public void testEvictLeastRecentlyUsedWhenDiskFull() throws Exception {
+        ExtentImageCache cache = newCache();
+        cache.setMaxDiskSizeMb(1);
+        byte[] png = new byte[400 * 1024];
+        cache.put("metadata:@id1", png);
+        cache.put("metadata:@id2", png);
+        setLastUsed(FileTime.fromMillis(1000));
+        // id1 used again
+        assertArrayEquals(png, cache.get("metadata:@id1"));
+
+        cache.put("metadata:@id3", png);
+
+        ExtentImageCache otherCache = newCache();
+        assertArrayEquals(png, otherCache.get("metadata:@id1"));
+        assertNull(otherCache.get("metadata:@id2"));
+        assertArrayEquals(png, otherCache.get("metadata:@id3"));
+    }
+
+    private void setLastUsed(FileTime time) throws Exception {
+        try (Stream<Path> files = Files.walk(fileSystem.getPath("/html"))) {
+            for (Path file : files.filter(Files::isRegularFile).collect(Collectors.toList())) {
+                Files.setLastModifiedTime(file, time);
+            }
+        }
+    }
+
+    private ExtentImageCache newCache() {
+        ExtentImageCache cache = new ExtentImageCache();
+        cache.setDataDirectory(dataDirectory);
+        cache.init();
+        return cache;
+    }
+}
@@ -42,7 +42,10 @@ import java.sql.SQLException;
 import java.util.Date;
 import java.util.concurrent.BlockingQueue;
 import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.FutureTask;
 import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import javax.annotation.Nonnull;
 import javax.annotation.Nullable;
@@ -282,4 +285,40 @@ public class FormatterCacheTest {
         assertNotNull(persistentStore.get(key));
     }
 
+    @Test(timeout = 5000L)
+    public void testConcurrentGetLoadsOnce() throws Exception {
+        final MemoryPersistentStore persistentStore = new MemoryPersistentStore();
+        this.formatterCache = new FormatterCache(persistentStore, 100, 5000);
+
+        final long changeDate = new Date().getTime();
+        final Key key = new Key(1, "eng", FormatType.html, "full_view", true, FormatterWidth._100);
+        final CountDownLatch loadStarted = new CountDownLatch(1);
+        final CountDownLatch allowLoad = new CountDownLatch(1);
+        final AtomicInteger loadCount = new AtomicInteger();
+        final Callable<StoreInfoAndDataLoadResult> loader = new Callable<StoreInfoAndDataLoadResult>() {
+            @Override
+            public StoreInfoAndDataLoadResult call() throws Exception {
+                loadCount.incrementAndGet();
+                loadStarted.countDown();
+                allowLoad.await();
+                return new TestLoader("result", changeDate, false).call();
+            }
+        };
+
+        final FutureTask<String> first = new FutureTask<>(() -> getAsString(key, changeDate, loader));
+        final FutureTask<String> second = new FutureTask<>(() -> getAsString(key, changeDate, loader));
+        new Thread(first).start();
+        loadStarted.await();
+        new Thread(second).start();
+        while (formatterCache.getSharedLoadCount() == 0) {
+            Thread.sleep(10);
+        }
+        allowLoad.countDown();
+
+        assertEquals("result", first.get());
+        assertEquals("result", second.get());
+        assertEquals(1, loadCount.get());
+        assertEquals(1, formatterCache.getMissCount() - formatterCache.getSharedLoadCount());
+    }
+
 }
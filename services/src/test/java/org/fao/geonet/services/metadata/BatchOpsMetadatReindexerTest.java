@@ -3,8 +3,8 @@ package org.fao.geonet.services.metadata;
 import org.fao.geonet.ApplicationContextHolder;
 import org.fao.geonet.kernel.DataManager;
 import org.fao.geonet.kernel.search.EsSearchManager;
-import org.fao.geonet.kernel.search.ISearchManager;
 import org.fao.geonet.kernel.search.index.BatchOpsMetadataReindexer;
+import org.fao.geonet.kernel.search.index.IndexingScheduler;
 import org.fao.geonet.util.ThreadUtils;
 import org.junit.Test;
 import org.junit.runner.RunWith;
@@ -18,7 +18,9 @@ import org.powermock.modules.junit4.PowerMockRunner;
 import org.springframework.context.ConfigurableApplicationContext;
 import org.springframework.jmx.export.MBeanExporter;
 
+import java.util.ArrayList;
 import java.util.HashSet;
+import java.util.List;
 import java.util.Set;
 import java.util.concurrent.CountDownLatch;
 import java.util.stream.Collectors;
@@ -41,8 +43,8 @@ public class BatchOpsMetadatReindexerTest {
         BatchOpsMetadataReindexer toTest = new BatchOpsMetadataReindexer(mockDataMan, toIndex);
         toTest.process("siteId", false);
 
-        ArgumentCaptor<String> metadataIdCaptor = captureIndexationLaunched(mockDataMan);
-        assertEquals("1-2-3-4", metadataIdCaptor.getAllValues().stream().collect(Collectors.joining("-")));
+        List<String> indexedIds = captureIndexationLaunched(mockDataMan);
+        assertEquals("1-2-3-4", indexedIds.stream().collect(Collectors.joining("-")));
         assertEquals(1, usedTread.size());
         assertNotSame(Thread.currentThread(), usedTread.iterator().next());
     }
@@ -58,8 +60,8 @@ public class BatchOpsMetadatReindexerTest {
         BatchOpsMetadataReindexer toTest = new BatchOpsMetadataReindexer(mockDataMan, toIndex);
         toTest.process("siteId", false);
 
-        ArgumentCaptor<String> metadataIdCaptor = captureIndexationLaunched(mockDataMan);
-        assertEquals("1-2-3-4", metadataIdCaptor.getAllValues().stream().sorted().collect(Collectors.joining("-")));
+        List<String> indexedIds = captureIndexationLaunched(mockDataMan);
+        assertEquals("1-2-3-4", indexedIds.stream().sorted().collect(Collectors.joining("-")));
         assertEquals(4, usedTread.size());
     }
 
@@ -74,8 +76,8 @@ public class BatchOpsMetadatReindexerTest {
         BatchOpsMetadataReindexer toTest = new BatchOpsMetadataReindexer(mockDataMan, toIndex);
         toTest.process("siteId", true);
 
-        ArgumentCaptor<String> metadataIdCaptor = captureIndexationLaunched(mockDataMan);
-        assertEquals("1-2-3-4", metadataIdCaptor.getAllValues().stream().sorted().collect(Collectors.joining("-")));
+        List<String> indexedIds = captureIndexationLaunched(mockDataMan);
+        assertEquals("1-2-3-4", indexedIds.stream().sorted().collect(Collectors.joining("-")));
         assertEquals(1, usedTread.size());
         assertEquals(Thread.currentThread(), usedTread.iterator().next());
     }
@@ -99,8 +101,8 @@ public class BatchOpsMetadatReindexerTest {
         Thread.sleep(500);
 
         assertEquals(4, toTest.getProcessed());
-        ArgumentCaptor<String> metadataIdCaptor = captureIndexationLaunched(mockDataMan);
-        assertEquals("1-2-3-4", metadataIdCaptor.getAllValues().stream().collect(Collectors.joining("-")));
+        List<String> indexedIds = captureIndexationLaunched(mockDataMan);
+        assertEquals("1-2-3-4", indexedIds.stream().collect(Collectors.joining("-")));
         assertEquals(1, usedTread.size());
         assertNotSame(Thread.currentThread(), usedTread.iterator().next());
     }
@@ -124,8 +126,8 @@ public class BatchOpsMetadatReindexerTest {
         Thread.sleep(500);
 
         assertEquals(4, toTest.getProcessed());
-        ArgumentCaptor<String> metadataIdCaptor = captureIndexationLaunched(mockDataMan);
-        assertEquals("1-2-3-4", metadataIdCaptor.getAllValues().stream().sorted().collect(Collectors.joining("-")));
+        List<String> indexedIds = captureIndexationLaunched(mockDataMan);
+        assertEquals("1-2-3-4", indexedIds.stream().sorted().collect(Collectors.joining("-")));
         assertEquals(4, usedTread.size());
     }
 
@@ -159,8 +161,8 @@ public class BatchOpsMetadatReindexerTest {
         Thread.sleep(500);
 
         assertEquals(4, toTest.getProcessed());
-        ArgumentCaptor<String> metadataIdCaptor = captureIndexationLaunched(mockDataMan);
-        assertEquals("1-2-3-4", metadataIdCaptor.getAllValues().stream().sorted().collect(Collectors.joining("-")));
+        List<String> indexedIds = captureIndexationLaunched(mockDataMan);
+        assertEquals("1-2-3-4", indexedIds.stream().sorted().collect(Collectors.joining("-")));
         assertEquals(1, usedTread.size());
         assertEquals(currentThread, usedTread.iterator().next());
     }
@@ -176,6 +178,8 @@ public class BatchOpsMetadatReindexerTest {
         PowerMockito.when(ApplicationContextHolder.get()).thenReturn(mockAppContext);
         EsSearchManager searchManager = Mockito.mock(EsSearchManager.class);
         Mockito.when(mockAppContext.getBean(Mockito.eq((EsSearchManager.class)))).thenReturn(searchManager);
+        IndexingScheduler scheduler = new IndexingScheduler();
+        Mockito.when(mockAppContext.getBean(Mockito.eq((IndexingScheduler.class)))).thenReturn(scheduler);
 
         PowerMockito.mockStatic(ThreadUtils.class);
         PowerMockito.when(ThreadUtils.getNumberOfThreads()).thenReturn(numberOfAvailableThreads);
@@ -190,7 +194,7 @@ public class BatchOpsMetadatReindexerTest {
                 usedTread.add(Thread.currentThread());
                 return null;
             }
-        }).when(mockDataMan).indexMetadata(Mockito.anyString(), Mockito.anyBoolean());
+        }).when(mockDataMan).indexMetadata(Mockito.anyList(), Mockito.anyBoolean());
         return mockDataMan;
     }
 
@@ -204,7 +208,7 @@ public class BatchOpsMetadatReindexerTest {
                 latch.await();
                 return null;
             }
-        }).when(mockDataMan).indexMetadata(Mockito.anyString(), Mockito.anyBoolean());
+        }).when(mockDataMan).indexMetadata(Mockito.anyList(), Mockito.anyBoolean());
         return mockDataMan;
     }
 
@@ -217,12 +221,16 @@ public class BatchOpsMetadatReindexerTest {
         return toIndex;
     }
 
-    private ArgumentCaptor<String> captureIndexationLaunched(DataManager mockDataMan) throws Exception {
-        ArgumentCaptor<String> metadataIdCaptor = ArgumentCaptor.forClass(String.class);
+    @SuppressWarnings("unchecked")
+    private List<String> captureIndexationLaunched(DataManager mockDataMan) throws Exception {
+        ArgumentCaptor<List> metadataIdsCaptor = ArgumentCaptor.forClass(List.class);
         ArgumentCaptor<Boolean> forceRefreshCaptor = ArgumentCaptor.forClass(Boolean.class);
-        ArgumentCaptor<ISearchManager> isearchManagerCaptor = ArgumentCaptor.forClass(ISearchManager.class);
 
-        Mockito.verify(mockDataMan, Mockito.times(4)).indexMetadata(metadataIdCaptor.capture(), forceRefreshCaptor.capture());
-        return metadataIdCaptor;
+        Mockito.verify(mockDataMan, Mockito.atLeastOnce()).indexMetadata(metadataIdsCaptor.capture(), forceRefreshCaptor.capture());
+        List<String> indexedIds = new ArrayList<>();
+        for (List<String> chunk : metadataIdsCaptor.getAllValues()) {
+            indexedIds.addAll(chunk);
+        }
+        return indexedIds;
     }
 }
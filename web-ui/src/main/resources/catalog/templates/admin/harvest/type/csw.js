@@ -24,7 +24,13 @@ var gnHarvestercsw = {
         "outputSchema": "http://www.isotc211.org/2005/gmd",
         "sortBy": "identifier:A",
         "queryScope": "local",
-        "hopCount": 2
+        "hopCount": 2,
+        "pageSize": 20,
+        "fetchThreads": 1,
+        "idsPerRequest": 1,
+        "incremental": false,
+        "modifiedQueryable": "Modified",
+        "fullHarvestDays": 7
       },
       "content" : {
         "validate" : "NOVALIDATION",
@@ -110,6 +116,12 @@ var gnHarvestercsw = {
       + '    <sortBy>' + h.site.sortBy + '</sortBy>'
       + '    <queryScope>' + h.site.queryScope + '</queryScope>'
       + '    <hopCount>' + h.site.hopCount + '</hopCount>'
+      + '    <pageSize>' + h.site.pageSize + '</pageSize>'
+      + '    <fetchThreads>' + h.site.fetchThreads + '</fetchThreads>'
+      + '    <idsPerRequest>' + h.site.idsPerRequest + '</idsPerRequest>'
+      + '    <incremental>' + h.site.incremental + '</incremental>'
+      + '    <modifiedQueryable>' + h.site.modifiedQueryable + '</modifiedQueryable>'
+      + '    <fullHarvestDays>' + h.site.fullHarvestDays + '</fullHarvestDays>'
       + '  </site>'
       + gnHarvestercsw.buildResponseCSWBBOXFilter($scope)
       + gnHarvestercsw.buildResponseCSWFilter($scope)
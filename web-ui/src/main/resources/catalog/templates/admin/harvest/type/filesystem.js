@@ -17,7 +17,10 @@ var gnHarvesterfilesystem = {
                 "checkFileLastModifiedForUpdate" : true,
                 "recordType" : 'n',
                 "icon" : "blank.png",
-                "beforeScript": ""
+                "beforeScript": "",
+                "useManifest" : false,
+                "processThreads" : 1,
+                "watch" : false
             },
             "content" : {
                 "validate" : "NOVALIDATION",
@@ -58,6 +61,9 @@ var gnHarvesterfilesystem = {
                 + '    <recordType>' + h.site.recordType + '</recordType>'
                 + '    <icon>' + h.site.icon + '</icon>'
                 + '    <beforeScript>' + h.site.beforeScript + '</beforeScript>'
+                + '    <useManifest>' + h.site.useManifest + '</useManifest>'
+                + '    <processThreads>' + h.site.processThreads + '</processThreads>'
+                + '    <watch>' + h.site.watch + '</watch>'
                 + '  </site>'
                 + '  <options>'
                 + '    <oneRunOnly>' + h.options.oneRunOnly + '</oneRunOnly>'
@@ -62,6 +62,7 @@ import org.fao.geonet.util.ThreadUtils;
 import org.fao.geonet.utils.IO;
 import org.fao.geonet.utils.Log;
 import org.fao.geonet.utils.ProxyInfo;
+import org.fao.geonet.utils.Xml;
 import org.fao.geonet.utils.XmlResolver;
 import org.fao.geonet.wro4j.GeonetWro4jFilter;
 import org.jdom.Element;
@@ -84,6 +85,7 @@ import java.io.File;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.sql.Connection;
+import java.util.ArrayList;
 import java.util.List;
 import java.util.UUID;
 import java.util.concurrent.Executors;
@@ -225,6 +227,17 @@ public class Geonetwork implements ApplicationHandler {
             schemaPluginsDir, context.getLanguage(), handlerConfig.getMandatoryValue(Geonet.Config.PREFERRED_SCHEMA),
             createOrUpdateSchemaCatalog);
 
+        logger.info("  - Compiling schema plugins stylesheets...");
+        List<Path> schemaDirs = new ArrayList<>();
+        for (String schema : schemaMan.getSchemas()) {
+            schemaDirs.add(schemaMan.getSchemaDir(schema));
+        }
+        try {
+            Xml.precompileStylesheets(schemaDirs);
+        } catch (Exception e) {
+            logger.warning("     Schema plugins stylesheets precompilation failed. Error is: " + e.getMessage());
+        }
+
         //------------------------------------------------------------------------
         //--- initialize search and editing
         logger.info("  - Search...");
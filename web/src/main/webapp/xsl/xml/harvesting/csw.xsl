@@ -31,6 +31,30 @@
     <sortBy>
       <xsl:value-of select="sortBy/value"/>
     </sortBy>
+    <pageSize>
+      <xsl:value-of select="pageSize/value"/>
+    </pageSize>
+    <fetchThreads>
+      <xsl:value-of select="fetchThreads/value"/>
+    </fetchThreads>
+    <idsPerRequest>
+      <xsl:value-of select="idsPerRequest/value"/>
+    </idsPerRequest>
+    <incremental>
+      <xsl:value-of select="incremental/value"/>
+    </incremental>
+    <modifiedQueryable>
+      <xsl:value-of select="modifiedQueryable/value"/>
+    </modifiedQueryable>
+    <fullHarvestDays>
+      <xsl:value-of select="fullHarvestDays/value"/>
+    </fullHarvestDays>
+    <modifiedSince>
+      <xsl:value-of select="modifiedSince/value"/>
+    </modifiedSince>
+    <lastFullHarvest>
+      <xsl:value-of select="lastFullHarvest/value"/>
+    </lastFullHarvest>
   </xsl:template>
 
 
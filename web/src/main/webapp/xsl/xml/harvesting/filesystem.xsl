@@ -32,6 +32,15 @@
     <beforeScript>
       <xsl:value-of select="beforeScript/value"/>
     </beforeScript>
+    <useManifest>
+      <xsl:value-of select="useManifest/value"/>
+    </useManifest>
+    <processThreads>
+      <xsl:value-of select="processThreads/value"/>
+    </processThreads>
+    <watch>
+      <xsl:value-of select="watch/value"/>
+    </watch>
   </xsl:template>
 
   <!-- ============================================================================================= -->
@@ -24,30 +24,41 @@
 package org.fao.geonet.harvester.wfsfeatures.worker;
 
 import com.fasterxml.jackson.core.JsonProcessingException;
-import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.fasterxml.jackson.databind.node.ArrayNode;
 import com.fasterxml.jackson.databind.node.ObjectNode;
 import com.google.common.base.Joiner;
 import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Lists;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
 import org.apache.camel.Exchange;
 import org.apache.jcs.access.exception.InvalidArgumentException;
 import org.elasticsearch.action.ActionListener;
+import org.elasticsearch.action.bulk.BulkItemResponse;
 import org.elasticsearch.action.bulk.BulkRequest;
 import org.elasticsearch.action.bulk.BulkResponse;
+import org.elasticsearch.action.delete.DeleteRequest;
 import org.elasticsearch.action.index.IndexRequest;
 import org.elasticsearch.action.index.IndexResponse;
+import org.elasticsearch.action.search.ClearScrollRequest;
+import org.elasticsearch.action.search.SearchRequest;
+import org.elasticsearch.action.search.SearchResponse;
+import org.elasticsearch.action.search.SearchScrollRequest;
 import org.elasticsearch.client.RequestOptions;
 import org.elasticsearch.common.xcontent.XContentType;
+import org.elasticsearch.index.query.QueryBuilders;
 import org.elasticsearch.rest.RestStatus;
+import org.elasticsearch.search.SearchHit;
+import org.elasticsearch.search.builder.SearchSourceBuilder;
 import org.fao.geonet.harvester.wfsfeatures.model.WFSHarvesterParameter;
 import org.fao.geonet.index.es.EsRestClient;
 import org.geotools.data.DataSourceException;
+import org.geotools.data.Query;
 import org.geotools.data.simple.SimpleFeatureCollection;
+import org.geotools.data.simple.SimpleFeatureSource;
 import org.geotools.data.store.ReprojectingFeatureCollection;
 import org.geotools.data.wfs.WFSDataStore;
 import org.geotools.feature.FeatureIterator;
-import org.geotools.geojson.geom.GeometryJSON;
 import org.geotools.referencing.CRS;
 import org.geotools.temporal.object.DefaultInstant;
 import org.geotools.util.logging.Logging;
@@ -57,7 +68,9 @@ import org.locationtech.jts.geom.Point;
 import org.locationtech.jts.geom.PrecisionModel;
 import org.locationtech.jts.precision.GeometryPrecisionReducer;
 import org.opengis.feature.simple.SimpleFeature;
+import org.opengis.filter.sort.SortBy;
 import org.opengis.geometry.BoundingBox;
+import org.opengis.referencing.crs.CoordinateReferenceSystem;
 import org.opengis.temporal.Instant;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -73,10 +86,15 @@ import java.time.ZoneOffset;
 import java.time.format.DateTimeFormatter;
 import java.time.temporal.ChronoUnit;
 import java.util.*;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.concurrent.Phaser;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.TimeoutException;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
 
 import static org.elasticsearch.rest.RestStatus.CREATED;
 import static org.elasticsearch.rest.RestStatus.OK;
@@ -144,6 +162,30 @@ public class EsWFSFeatureIndexer {
         this.numberOfDecimals = numberOfDecimals;
     }
 
+
+    @Value("${es.index.features.pageSize:10000}")
+    private int pageSize;
+
+    public int getPageSize() {
+        return pageSize;
+    }
+
+    public void setPageSize(int pageSize) {
+        this.pageSize = pageSize;
+    }
+
+
+    @Value("${es.index.features.readThreads:2}")
+    private int readThreads;
+
+    public int getReadThreads() {
+        return readThreads;
+    }
+
+    public void setReadThreads(int readThreads) {
+        this.readThreads = readThreads;
+    }
+
     @Autowired
     private EsRestClient client;
 
@@ -157,7 +199,13 @@ public class EsWFSFeatureIndexer {
 
     private ObjectMapper jacksonMapper = new ObjectMapper();
 
-    private int nbOfFeatures;
+    private static final String FEATURE_HASH_FIELD = "featureHash";
+    /**
+     * Order of the features in the pages, the same for all the pages of a layer.
+     */
+    private static final SortBy[] PAGE_SORT = new SortBy[]{SortBy.NATURAL_ORDER};
+    private static final int SCROLL_SIZE = 5000;
+    private static final String SCROLL_KEEP_ALIVE = "5m";
 
     /**
      * Create exchange states for this feature type.
@@ -233,16 +281,23 @@ public class EsWFSFeatureIndexer {
         void setTitle(ObjectNode objectNode, SimpleFeature simpleFeature);
     }
 
+    /**
+     * Index the features of the layer. The features already in the index are compared with the
+     * features read using their content hash: only the new and changed features are indexed and
+     * the features not found anymore are removed once the layer is completely read.
+     *
+     * <p>When the server supports it (startIndex and sorting), large layers are read by pages of
+     * {@link #pageSize} features with {@link #readThreads} threads. Pages are sorted so that
+     * each feature is read once: otherwise features could be skipped and then removed as not
+     * found anymore.</p>
+     */
     public void indexFeatures(Exchange exchange) throws Exception {
         WFSHarvesterExchangeState state = (WFSHarvesterExchangeState) exchange.getProperty("featureTypeConfig");
 
         String url = state.getParameters().getUrl();
         String typeName = state.getParameters().getTypeName();
         String resolvedTypeName = state.getResolvedTypeName();
-        Map<String, String> tokenizedFields = state.getParameters().getTokenizedFields();
         WFSDataStore wfs = state.getWfsDatastore();
-        Map<String, String> featureAttributes = state.getFields();
-        TitleResolver titleResolver = getTitleResolver(state);
 
         LOGGER.info("Indexing WFS features from service '{}' and feature type '{}'. Precision model applied: '{}', number of decimals: '{}'", url, typeName, applyPrecisionModel, numberOfDecimals);
         Report report = new Report(url, typeName);
@@ -255,7 +310,7 @@ public class EsWFSFeatureIndexer {
             linkToParent.put("parent", state.getParameters().getMetadataUuid());
             protoNode.set("featureOfRecord", linkToParent);
         }
-        initFeatureAttributeToDocumentFieldNamesMapping(featureAttributes, state.getParameters().getTreeFields(), report);
+        initFeatureAttributeToDocumentFieldNamesMapping(state.getFields(), state.getParameters().getTreeFields(), report);
         boolean initializeESReportSucceeded = report.saveHarvesterReport();
         if (!initializeESReportSucceeded) {
             String msg = "Couldn't initialize harvesting report, don't even try to go further querying wfs.";
@@ -264,22 +319,289 @@ public class EsWFSFeatureIndexer {
         }
 
         try {
-            nbOfFeatures = 0;
+            long begin = System.currentTimeMillis();
+            String featureTypeId = getIdentifier(url, typeName);
+            IndexedFeatureHashes indexedFeatures = loadIndexedFeatureHashes(featureTypeId);
+            if (indexedFeatures == null) {
+                LOGGER.info("  Features previously indexed will be deleted and all features indexed again.");
+                client.deleteByQuery(index, String.format("+featureTypeId:\"%s\"", featureTypeId));
+                indexedFeatures = new IndexedFeatureHashes();
+            }
+
+            LayerIndexing layer = new LayerIndexing(state, report, protoNode, indexedFeatures);
+            SimpleFeatureSource source = wfs.getFeatureSource(resolvedTypeName);
+            int count = getPagedFeatureCount(source, state.getParameters());
+            if (count > pageSize) {
+                layer.readPages(source, resolvedTypeName, count);
+            } else {
+                layer.readFeatures(source.getFeatures(), 0);
+            }
+            layer.awaitBulks();
+
+            int nbOfDeletions = 0;
+            if (layer.isComplete()) {
+                nbOfDeletions = deleteStaleFeatures(indexedFeatures, featureTypeId, report);
+            } else if (indexedFeatures.getStaleCount() > 0) {
+                LOGGER.warn("{}: the layer was not completely read, {} features not found are kept in the index.",
+                    typeName, indexedFeatures.getStaleCount());
+            }
 
-            final Phaser phaser = new Phaser();
-            BulkResutHandler brh = new AsyncBulkResutHandler(phaser, typeName, url, nbOfFeatures, report, state.getParameters().getMetadataUuid());
+            LOGGER.info("{}: {} features processed ({} indexed, {} removed) in {} ms.", new Object[]{
+                typeName, layer.getNumberOfFeatures(), layer.getNumberOfChanges(), nbOfDeletions,
+                System.currentTimeMillis() - begin
+            });
+            report.success(layer.getNumberOfFeatures(), layer.getNumberOfChanges(), nbOfDeletions);
+        } catch (Exception e) {
+            report.put("status_s", "error");
+            report.put("error_ss", e.getMessage());
+            LOGGER.error(e.getMessage());
+            throw e;
+        } finally {
+            report.saveHarvesterReport();
+        }
+    }
 
-            long begin = System.currentTimeMillis();
-//            FeatureIterator<SimpleFeature> features = wfs.getFeatureSource(typeName).getFeatures(query).features();
+    /**
+     * @return the number of features to read by pages or -1 if the layer is read at once, when the
+     * server does not support startIndex or sorting, the number of features is unknown or limited.
+     */
+    private int getPagedFeatureCount(SimpleFeatureSource source, WFSHarvesterParameter parameters) {
+        if (pageSize <= 0
+            || parameters.getMaxFeatures() != -1
+            || !source.getQueryCapabilities().isOffsetSupported()
+            || !isPageSortSupported(source)) {
+            return -1;
+        }
+        try {
+            return source.getCount(Query.ALL);
+        } catch (IOException e) {
+            LOGGER.debug("Can't get the number of features of {}, layer read at once. Error is {}.",
+                parameters.getTypeName(), e.getMessage());
+            return -1;
+        }
+    }
+
+    private boolean isPageSortSupported(SimpleFeatureSource source) {
+        try {
+            return source.getQueryCapabilities().supportsSorting(PAGE_SORT);
+        } catch (RuntimeException e) {
+            LOGGER.debug("Can't check if {} can be sorted, layer read at once. Error is {}.",
+                source.getName(), e.getMessage());
+            return false;
+        }
+    }
+
+    /**
+     * @return the content hashes of the features of the layer in the index or null if they can't be read.
+     */
+    private IndexedFeatureHashes loadIndexedFeatureHashes(String featureTypeId) {
+        long begin = System.currentTimeMillis();
+        IndexedFeatureHashes hashes = new IndexedFeatureHashes();
+        try {
+            scrollLayerFeatures(featureTypeId, true, hit -> hashes.put(
+                IndexedFeatureHashes.hashId(hit.getId()),
+                IndexedFeatureHashes.parse(hit.getSourceAsMap().get(FEATURE_HASH_FIELD))));
+            LOGGER.info("  {} features previously indexed loaded in {} ms.",
+                hashes.size(), System.currentTimeMillis() - begin);
+            return hashes;
+        } catch (Exception e) {
+            LOGGER.warn("Can't read the features previously indexed for '{}'. Error is {}.", featureTypeId, e.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * Delete the features of the layer in the index which were not harvested.
+     *
+     * @return the number of features deleted.
+     */
+    private int deleteStaleFeatures(IndexedFeatureHashes indexedFeatures, String featureTypeId, Report report) throws IOException {
+        if (indexedFeatures.getStaleCount() == 0) {
+            return 0;
+        }
+        List<String> staleIds = new ArrayList<>(indexedFeatures.getStaleCount());
+        scrollLayerFeatures(featureTypeId, false, hit -> {
+            if (indexedFeatures.isStale(IndexedFeatureHashes.hashId(hit.getId()))) {
+                staleIds.add(hit.getId());
+            }
+        });
+
+        int nbOfDeletions = 0;
+        for (List<String> ids : Lists.partition(staleIds, Math.max(featureCommitInterval, 1))) {
+            BulkRequest bulk = new BulkRequest(index);
+            ids.forEach(id -> bulk.add(new DeleteRequest(index, id)));
+            BulkResponse response = client.getClient().bulk(bulk, RequestOptions.DEFAULT);
+            for (BulkItemResponse item : response.getItems()) {
+                if (item.isFailed()) {
+                    String msg = String.format(
+                        "Feature %s: Deletion error. Error is: %s", item.getId(), item.getFailureMessage());
+                    report.put("error_ss", msg);
+                    LOGGER.warn(msg);
+                } else {
+                    nbOfDeletions++;
+                }
+            }
+        }
+        return nbOfDeletions;
+    }
+
+    private void scrollLayerFeatures(String featureTypeId, boolean withHash, Consumer<SearchHit> consumer) throws IOException {
+        SearchSourceBuilder searchSource = new SearchSourceBuilder()
+            .query(QueryBuilders.termQuery("featureTypeId", featureTypeId))
+            .size(SCROLL_SIZE)
+            .sort("_doc");
+        if (withHash) {
+            searchSource.fetchSource(new String[]{FEATURE_HASH_FIELD}, null);
+        } else {
+            searchSource.fetchSource(false);
+        }
+        SearchRequest request = new SearchRequest(index).source(searchSource).scroll(SCROLL_KEEP_ALIVE);
+        SearchResponse response = client.getClient().search(request, RequestOptions.DEFAULT);
+        String scrollId = response.getScrollId();
+        try {
+            while (response.getHits().getHits().length > 0) {
+                for (SearchHit hit : response.getHits().getHits()) {
+                    consumer.accept(hit);
+                }
+                response = client.getClient().scroll(
+                    new SearchScrollRequest(scrollId).scroll(SCROLL_KEEP_ALIVE), RequestOptions.DEFAULT);
+                scrollId = response.getScrollId();
+            }
+        } finally {
+            ClearScrollRequest clearScroll = new ClearScrollRequest();
+            clearScroll.addScrollId(scrollId);
+            try {
+                client.getClient().clearScroll(clearScroll, RequestOptions.DEFAULT);
+            } catch (Exception e) {
+                LOGGER.debug("Can't clear scroll. Error is {}.", e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * @return the document source with the hash of its content as first field.
+     */
+    static byte[] withFeatureHash(byte[] source, long hash) {
+        byte[] field = String.format("{\"%s\":\"%s\",", FEATURE_HASH_FIELD, IndexedFeatureHashes.toString(hash))
+            .getBytes(StandardCharsets.UTF_8);
+        byte[] document = Arrays.copyOf(field, field.length + source.length - 1);
+        System.arraycopy(source, 1, document, field.length, source.length - 1);
+        return document;
+    }
+
+    /**
+     * The indexing of a layer, possibly read by several threads.
+     */
+    class LayerIndexing {
+        private final String url;
+        private final String typeName;
+        private final String metadataUuid;
+        private final Map<String, String> featureAttributes;
+        private final Map<String, String> tokenizedFields;
+        private final TitleResolver titleResolver;
+        private final Report report;
+        private final ObjectNode protoNode;
+        private final IndexedFeatureHashes indexedFeatures;
+        private final CoordinateReferenceSystem crs;
+        private final Phaser phaser = new Phaser(1);
+        private final AtomicInteger nbOfFeatures = new AtomicInteger();
+        private final AtomicInteger nbOfChanges = new AtomicInteger();
+        private volatile boolean complete = true;
+
+        LayerIndexing(WFSHarvesterExchangeState state, Report report, ObjectNode protoNode,
+                      IndexedFeatureHashes indexedFeatures) throws Exception {
+            this.url = state.getParameters().getUrl();
+            this.typeName = state.getParameters().getTypeName();
+            this.metadataUuid = state.getParameters().getMetadataUuid();
+            this.featureAttributes = state.getFields();
+            this.tokenizedFields = state.getParameters().getTokenizedFields();
+            this.titleResolver = getTitleResolver(state);
+            this.report = report;
+            this.protoNode = protoNode;
+            this.indexedFeatures = indexedFeatures;
+            this.crs = CRS.decode("urn:ogc:def:crs:OGC:1.3:CRS84");
+        }
+
+        int getNumberOfFeatures() {
+            return nbOfFeatures.get();
+        }
 
-            SimpleFeatureCollection fc = wfs.getFeatureSource(resolvedTypeName).getFeatures();
-            ReprojectingFeatureCollection rfc = new ReprojectingFeatureCollection(fc, CRS.decode("urn:ogc:def:crs:OGC:1.3:CRS84"));
+        int getNumberOfChanges() {
+            return nbOfChanges.get();
+        }
+
+        /**
+         * @return false if some features could not be read (eg. network error).
+         */
+        boolean isComplete() {
+            return complete;
+        }
+
+        /**
+         * Read the layer by pages of {@link #pageSize} features, pages shared among the reading threads.
+         * The last page reads up to the end of the layer in case features were added.
+         */
+        void readPages(SimpleFeatureSource source, String resolvedTypeName, int count) throws Exception {
+            int nbOfPages = (count + pageSize - 1) / pageSize;
+            int nbOfThreads = Math.max(1, Math.min(readThreads, nbOfPages));
+            LOGGER.info("  {} features read by pages of {} with {} threads.", new Object[]{count, pageSize, nbOfThreads});
+
+            AtomicInteger nextPage = new AtomicInteger();
+            ExecutorService executor = Executors.newFixedThreadPool(nbOfThreads,
+                new ThreadFactoryBuilder().setDaemon(true).setNameFormat("wfs-features-" + typeName + "-%d").build());
+            try {
+                List<Future<Void>> readers = new ArrayList<>();
+                for (int i = 0; i < nbOfThreads; i++) {
+                    readers.add(executor.submit(() -> {
+                        for (int page = nextPage.getAndIncrement(); page < nbOfPages && complete; page = nextPage.getAndIncrement()) {
+                            boolean lastPage = page == nbOfPages - 1;
+                            Query query = new Query(resolvedTypeName);
+                            query.setSortBy(PAGE_SORT);
+                            query.setStartIndex(page * pageSize);
+                            if (!lastPage) {
+                                query.setMaxFeatures(pageSize);
+                            }
+                            int nbOfPageFeatures = readFeatures(source.getFeatures(query), page * pageSize);
+                            if (!lastPage && nbOfPageFeatures < pageSize) {
+                                String msg = String.format(
+                                    "Page starting at %s returned %s features instead of %s. Features not found will be kept in the index.",
+                                    page * pageSize, nbOfPageFeatures, pageSize);
+                                LOGGER.warn(msg);
+                                report.put("error_ss", msg);
+                                complete = false;
+                            }
+                        }
+                        return null;
+                    }));
+                }
+                for (Future<Void> reader : readers) {
+                    try {
+                        reader.get();
+                    } catch (ExecutionException e) {
+                        complete = false;
+                        throw e.getCause() instanceof Exception ? (Exception) e.getCause() : e;
+                    }
+                }
+            } finally {
+                executor.shutdownNow();
+            }
+        }
 
-            FeatureIterator<SimpleFeature> features = rfc.features();
+        /**
+         * Read the features and send them to the index by bulks.
+         *
+         * @param firstPosition the position of the first feature in the layer.
+         * @return the number of features read.
+         */
+        int readFeatures(SimpleFeatureCollection fc, int firstPosition) throws Exception {
+            BulkResutHandler brh = new AsyncBulkResutHandler(phaser, typeName, url, firstPosition, report, metadataUuid);
+            int position = firstPosition;
+            FeatureIterator<SimpleFeature> features = new ReprojectingFeatureCollection(fc, crs).features();
 
             try {
                 while (features.hasNext()) {
-                    String featurePointer = String.format("%s#%s", typeName, nbOfFeatures);
+                    int featurePosition = position++;
+                    String featurePointer = String.format("%s#%s", typeName, featurePosition);
                     try {
                         SimpleFeature feature = null;
                         try {
@@ -295,6 +617,7 @@ public class EsWFSFeatureIndexer {
                                 );
                                 LOGGER.warn(msg);
                                 report.put("error_ss", msg);
+                                complete = false;
                                 break;
                             }
                             String msg = String.format(
@@ -305,100 +628,10 @@ public class EsWFSFeatureIndexer {
                             report.put("error_ss", msg);
                             continue;
                         }
-                        ObjectNode rootNode = protoNode.deepCopy();
-                        titleResolver.setTitle(rootNode, feature);
-
-                        for (String attributeName : featureAttributes.keySet()) {
-                            Object attributeValue = feature.getAttribute(attributeName);
-                            if (attributeValue == null) {
-
-                            } else if (tokenizedFields != null && tokenizedFields.get(attributeName) != null) {
-                                String rawValue = (String) attributeValue;
-                                String value = rawValue.startsWith(CDATA_START) ?
-                                    rawValue.replaceFirst(CDATA_START_REGEX, "").substring(0, rawValue.length() - CDATA_END.length() - CDATA_START.length()) :
-                                    rawValue;
-
-                                String separator = tokenizedFields.get(attributeName);
-                                String[] tokens = value.split(separator);
-                                ArrayNode arrayNode = jacksonMapper.createArrayNode();
-                                for (String token : tokens) {
-                                    arrayNode.add(token.trim());
-                                }
-                                rootNode.putPOJO(getDocumentFieldName(attributeName), arrayNode);
-                            } else if (getDocumentFieldName(attributeName).equals("geom")) {
-                                Geometry geom = (Geometry) feature.getDefaultGeometry();
-
-                                if (applyPrecisionModel) {
-                                    if (geom.isValid()) {
-                                        PrecisionModel precisionModel = new PrecisionModel(Math.pow(10, numberOfDecimals - 1));
-                                        geom = GeometryPrecisionReducer.reduce(geom, precisionModel);
-                                        // numberOfDecimals is equal to
-                                        // precisionModel.getMaximumSignificantDigits()
-                                    } else {
-                                        String msg = String.format(
-                                            "Feature %s: Cannot apply precision reducer on invalid geometry. Check the geometry validity. The feature will be indexed but with no geometry.",
-                                            featurePointer);
-                                        LOGGER.warn(msg);
-                                        report.put("error_ss", msg);
-                                        break;
-                                    }
-                                }
-
-                                // An issue here is that GeometryJSON conversion may over simplify
-                                // the geometry by truncating coordinates based on numberOfDecimals
-                                // which on default constructor is set to 4. This may lead to
-                                // invalid geometry and Elasticsearch will fail parsing the GeoJSON
-                                // with the following type of error:
-                                // Caused by: org.locationtech.spatial4j.exception.InvalidShapeException:
-                                // Provided shape has duplicate
-                                // consecutive coordinates at: (-3.9997, 48.7463, NaN)
-                                //
-                                // To avoid this, it may be relevant to apply the reduction model
-                                // preserving topology.
-                                String gjson = new GeometryJSON(numberOfDecimals).toString(geom);
-
-                                JsonNode jsonNode = jacksonMapper.readTree(gjson.getBytes(StandardCharsets.UTF_8));
-                                rootNode.put(getDocumentFieldName(attributeName), jsonNode);
-
-                                boolean isPoint = geom instanceof Point;
-                                if (isPoint) {
-                                    Coordinate point = geom.getCoordinate();
-                                    rootNode.put("location", String.format("%s,%s", point.y, point.x));
-                                } else {
-                                    report.setPointOnlyForGeomsFalse();
-                                }
-
-                                // Populate bbox coordinates to be able to compute
-                                // global bbox of search results
-                                final BoundingBox bbox = feature.getBounds();
-                                rootNode.put("bbox_xmin", bbox.getMinX());
-                                rootNode.put("bbox_ymin", bbox.getMinY());
-                                rootNode.put("bbox_xmax", bbox.getMaxX());
-                                rootNode.put("bbox_ymax", bbox.getMaxY());
-                            } else if (attributeValue instanceof Instant) {
-                                try {
-                                    rootNode.put(getDocumentFieldName(attributeName),
-                                        ((DefaultInstant) attributeValue).getPosition().getDate().toInstant().toString());
-                                } catch (Exception instantException) {
-                                    String msg = String.format(
-                                        "Feature %s: Cannot read attribute %s, value %s. Exception is: %s",
-                                        featurePointer, attributeName, attributeValue, instantException.getMessage());
-                                    LOGGER.warn(msg);
-                                    report.put("error_ss", msg);
-                                }
-                            } else {
-                                String value = attributeValue.toString();
-                                rootNode.put(getDocumentFieldName(attributeName),
-                                    value.startsWith(CDATA_START) ?
-                                        value.replaceFirst(CDATA_START_REGEX, "").substring(0, value.length() - CDATA_END.length() - CDATA_START.length()) :
-                                        value
-
-                                );
-                            }
-                        }
+                        ObjectNode rootNode = buildDocument(feature, featurePointer);
 
-                        nbOfFeatures++;
-                        brh.addAction(rootNode, feature);
+                        nbOfFeatures.incrementAndGet();
+                        addFeature(brh, rootNode, feature, featurePosition);
 
                     } catch (Exception ex) {
                         String msg = String.format(
@@ -411,7 +644,7 @@ public class EsWFSFeatureIndexer {
 
                     if (brh.getBulkSize() >= featureCommitInterval) {
                         brh.launchBulk(client);
-                        brh = new AsyncBulkResutHandler(phaser, typeName, url, nbOfFeatures, report, state.getParameters().getMetadataUuid());
+                        brh = new AsyncBulkResutHandler(phaser, typeName, url, position, report, metadataUuid);
                     }
                 }
             } finally {
@@ -421,26 +654,130 @@ public class EsWFSFeatureIndexer {
             if (brh.getBulkSize() > 0) {
                 brh.launchBulk(client);
             }
+            return position - firstPosition;
+        }
 
-            try {
-                if (nbOfFeatures > 0) {
-                    phaser.awaitAdvanceInterruptibly(0, 3, TimeUnit.HOURS);
+        private ObjectNode buildDocument(SimpleFeature feature, String featurePointer) {
+            ObjectNode rootNode = protoNode.deepCopy();
+            titleResolver.setTitle(rootNode, feature);
+
+            for (String attributeName : featureAttributes.keySet()) {
+                Object attributeValue = feature.getAttribute(attributeName);
+                if (attributeValue == null) {
+
+                } else if (tokenizedFields != null && tokenizedFields.get(attributeName) != null) {
+                    String rawValue = (String) attributeValue;
+                    String value = rawValue.startsWith(CDATA_START) ?
+                        rawValue.replaceFirst(CDATA_START_REGEX, "").substring(0, rawValue.length() - CDATA_END.length() - CDATA_START.length()) :
+                        rawValue;
+
+                    String separator = tokenizedFields.get(attributeName);
+                    String[] tokens = value.split(separator);
+                    ArrayNode arrayNode = jacksonMapper.createArrayNode();
+                    for (String token : tokens) {
+                        arrayNode.add(token.trim());
+                    }
+                    rootNode.putPOJO(getDocumentFieldName(attributeName), arrayNode);
+                } else if (getDocumentFieldName(attributeName).equals("geom")) {
+                    Geometry geom = (Geometry) feature.getDefaultGeometry();
+
+                    if (applyPrecisionModel) {
+                        if (geom.isValid()) {
+                            PrecisionModel precisionModel = new PrecisionModel(Math.pow(10, numberOfDecimals - 1));
+                            geom = GeometryPrecisionReducer.reduce(geom, precisionModel);
+                            // numberOfDecimals is equal to
+                            // precisionModel.getMaximumSignificantDigits()
+                        } else {
+                            String msg = String.format(
+                                "Feature %s: Cannot apply precision reducer on invalid geometry. Check the geometry validity. The feature will be indexed but with no geometry.",
+                                featurePointer);
+                            LOGGER.warn(msg);
+                            report.put("error_ss", msg);
+                            break;
+                        }
+                    }
+
+                    // An issue here is that the GeoJSON conversion may over simplify
+                    // the geometry by rounding coordinates based on numberOfDecimals.
+                    // This may lead to invalid geometry and Elasticsearch will fail
+                    // parsing the GeoJSON with the following type of error:
+                    // Caused by: org.locationtech.spatial4j.exception.InvalidShapeException:
+                    // Provided shape has duplicate
+                    // consecutive coordinates at: (-3.9997, 48.7463, NaN)
+                    //
+                    // To avoid this, it may be relevant to apply the reduction model
+                    // preserving topology.
+                    rootNode.putPOJO(getDocumentFieldName(attributeName), new GeoJsonGeometry(geom, numberOfDecimals));
+
+                    boolean isPoint = geom instanceof Point;
+                    if (isPoint) {
+                        Coordinate point = geom.getCoordinate();
+                        rootNode.put("location", String.format("%s,%s", point.y, point.x));
+                    } else {
+                        report.setPointOnlyForGeomsFalse();
+                    }
+
+                    // Populate bbox coordinates to be able to compute
+                    // global bbox of search results
+                    final BoundingBox bbox = feature.getBounds();
+                    rootNode.put("bbox_xmin", bbox.getMinX());
+                    rootNode.put("bbox_ymin", bbox.getMinY());
+                    rootNode.put("bbox_xmax", bbox.getMaxX());
+                    rootNode.put("bbox_ymax", bbox.getMaxY());
+                } else if (attributeValue instanceof Instant) {
+                    try {
+                        rootNode.put(getDocumentFieldName(attributeName),
+                            ((DefaultInstant) attributeValue).getPosition().getDate().toInstant().toString());
+                    } catch (Exception instantException) {
+                        String msg = String.format(
+                            "Feature %s: Cannot read attribute %s, value %s. Exception is: %s",
+                            featurePointer, attributeName, attributeValue, instantException.getMessage());
+                        LOGGER.warn(msg);
+                        report.put("error_ss", msg);
+                    }
+                } else {
+                    String value = attributeValue.toString();
+                    rootNode.put(getDocumentFieldName(attributeName),
+                        value.startsWith(CDATA_START) ?
+                            value.replaceFirst(CDATA_START_REGEX, "").substring(0, value.length() - CDATA_END.length() - CDATA_START.length()) :
+                            value
+
+                    );
                 }
+            }
+            return rootNode;
+        }
+
+        /**
+         * Add the feature to the bulk unless it is indexed with the same content.
+         */
+        private void addFeature(BulkResutHandler brh, ObjectNode rootNode, SimpleFeature feature, int position) throws JsonProcessingException {
+            // generate a unique feature id when geotools gives us a placeholder one
+            String featureId = feature.getID();
+            if (featureId.toLowerCase().indexOf("placeholder") > -1) {
+                featureId = "fid-" + (position + 1);
+            }
+            String id = String.format("%s#%s#%s", url, typeName, featureId);
+
+            byte[] source = jacksonMapper.writeValueAsBytes(rootNode);
+            long hash = IndexedFeatureHashes.hashContent(source);
+            if (indexedFeatures.markSeen(IndexedFeatureHashes.hashId(id), hash)) {
+                return;
+            }
+            nbOfChanges.incrementAndGet();
+            brh.addAction(id, withFeatureHash(source, hash));
+        }
+
+        /**
+         * Wait for all bulks sent to be processed.
+         */
+        void awaitBulks() throws Exception {
+            int phase = phaser.arrive();
+            try {
+                phaser.awaitAdvanceInterruptibly(phase, 3, TimeUnit.HOURS);
             } catch (TimeoutException e) {
                 throw new Exception("Timeout when awaiting all bulks to be processed.");
             }
-            LOGGER.info("{}: {} features processed in {} ms.", new Object[]{
-                typeName, nbOfFeatures,
-                System.currentTimeMillis() - begin
-            });
-            report.success(nbOfFeatures);
-        } catch (Exception e) {
-            report.put("status_s", "error");
-            report.put("error_ss", e.getMessage());
-            LOGGER.error(e.getMessage());
-            throw e;
-        } finally {
-            report.saveHarvesterReport();
         }
     }
 
@@ -486,7 +823,7 @@ public class EsWFSFeatureIndexer {
     }
 
     class Report {
-        private Map<String, Object> report = new HashMap<>();
+        private Map<String, Object> report = Collections.synchronizedMap(new HashMap<>());
         private String url;
         private String typeName;
         private boolean pointOnlyForGeoms;
@@ -507,9 +844,11 @@ public class EsWFSFeatureIndexer {
             this.pointOnlyForGeoms = false;
         }
 
-        public void success(int nbOfFeatures) {
+        public void success(int nbOfFeatures, int nbOfChanges, int nbOfDeletions) {
             report.put("status_s", "success");
             report.put("totalRecords_i", nbOfFeatures);
+            report.put("indexedRecords_i", nbOfChanges);
+            report.put("deletedRecords_i", nbOfDeletions);
             OffsetDateTime dateTime = OffsetDateTime.now(ZoneOffset.UTC).truncatedTo(ChronoUnit.SECONDS);
             report.put("endDate_dt", dateTime.format(DateTimeFormatter.ISO_LOCAL_DATE_TIME));
             report.put("isPointOnly", pointOnlyForGeoms);
@@ -625,16 +964,9 @@ public class EsWFSFeatureIndexer {
             return bulkSize - failuresCount;
         }
 
-        public void addAction(ObjectNode rootNode, SimpleFeature feature) throws JsonProcessingException {
-            // generate a unique feature id when geotools gives us a placeholder one
-            String featureId = feature.getID();
-            if (featureId.toLowerCase().indexOf("placeholder") > -1) {
-                featureId = "fid-" + nbOfFeatures;
-            }
-
-            String id = String.format("%s#%s#%s", url, typeName, featureId);
+        public void addAction(String id, byte[] source) {
             bulk.add(new IndexRequest(index).id(id)
-                .source(jacksonMapper.writeValueAsString(rootNode), XContentType.JSON));
+                .source(source, XContentType.JSON));
 //                .routing(ROUTING_KEY));
             bulkSize++;
         }
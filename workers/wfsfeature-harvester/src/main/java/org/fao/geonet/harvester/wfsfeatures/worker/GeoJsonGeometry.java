@@ -0,0 +1,139 @@
+/*
+ * Copyright (C) 2001-2021 Food and Agriculture Organization of the
+ * United Nations (FAO-UN), United Nations World Food Programme (WFP)
+ * and United Nations Environment Programme (UNEP)
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or (at
+ * your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301, USA
+ *
+ * Contact: Jeroen Ticheler - FAO - Viale delle Terme di Caracalla 2,
+ * Rome - Italy. email: geonetwork@osgeo.org
+ */
+
+package org.fao.geonet.harvester.wfsfeatures.worker;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.JsonSerializable;
+import com.fasterxml.jackson.databind.SerializerProvider;
+import com.fasterxml.jackson.databind.jsontype.TypeSerializer;
+import org.locationtech.jts.geom.CoordinateSequence;
+import org.locationtech.jts.geom.Geometry;
+import org.locationtech.jts.geom.GeometryCollection;
+import org.locationtech.jts.geom.LineString;
+import org.locationtech.jts.geom.MultiLineString;
+import org.locationtech.jts.geom.MultiPoint;
+import org.locationtech.jts.geom.MultiPolygon;
+import org.locationtech.jts.geom.Point;
+import org.locationtech.jts.geom.Polygon;
+
+import java.io.IOException;
+
+/**
+ * A geometry written as GeoJSON directly to the JSON generator of the feature document,
+ * coordinates rounded to the number of decimals (as done by {@link org.geotools.geojson.geom.GeometryJSON}).
+ */
+class GeoJsonGeometry implements JsonSerializable {
+    private final Geometry geometry;
+    private final double scale;
+
+    GeoJsonGeometry(Geometry geometry, int numberOfDecimals) {
+        this.geometry = geometry;
+        this.scale = Math.pow(10, numberOfDecimals);
+    }
+
+    @Override
+    public void serialize(JsonGenerator gen, SerializerProvider serializers) throws IOException {
+        writeGeometry(gen, geometry);
+    }
+
+    @Override
+    public void serializeWithType(JsonGenerator gen, SerializerProvider serializers, TypeSerializer typeSer) throws IOException {
+        serialize(gen, serializers);
+    }
+
+    private void writeGeometry(JsonGenerator gen, Geometry geom) throws IOException {
+        gen.writeStartObject();
+        gen.writeStringField("type", geom instanceof LineString ? "LineString" : geom.getGeometryType());
+        if (geom instanceof GeometryCollection && !isMulti(geom)) {
+            gen.writeArrayFieldStart("geometries");
+            for (int i = 0; i < geom.getNumGeometries(); i++) {
+                writeGeometry(gen, geom.getGeometryN(i));
+            }
+            gen.writeEndArray();
+        } else {
+            gen.writeFieldName("coordinates");
+            writeCoordinates(gen, geom);
+        }
+        gen.writeEndObject();
+    }
+
+    private void writeCoordinates(JsonGenerator gen, Geometry geom) throws IOException {
+        if (geom instanceof Point) {
+            Point point = (Point) geom;
+            if (point.isEmpty()) {
+                gen.writeStartArray();
+                gen.writeEndArray();
+            } else {
+                writePosition(gen, point.getCoordinateSequence(), 0);
+            }
+        } else if (geom instanceof LineString) {
+            writePositions(gen, ((LineString) geom).getCoordinateSequence());
+        } else if (geom instanceof Polygon) {
+            Polygon polygon = (Polygon) geom;
+            gen.writeStartArray();
+            if (!polygon.isEmpty()) {
+                writePositions(gen, polygon.getExteriorRing().getCoordinateSequence());
+                for (int i = 0; i < polygon.getNumInteriorRing(); i++) {
+                    writePositions(gen, polygon.getInteriorRingN(i).getCoordinateSequence());
+                }
+            }
+            gen.writeEndArray();
+        } else {
+            gen.writeStartArray();
+            for (int i = 0; i < geom.getNumGeometries(); i++) {
+                writeCoordinates(gen, geom.getGeometryN(i));
+            }
+            gen.writeEndArray();
+        }
+    }
+
+    private void writePositions(JsonGenerator gen, CoordinateSequence sequence) throws IOException {
+        gen.writeStartArray();
+        for (int i = 0; i < sequence.size(); i++) {
+            writePosition(gen, sequence, i);
+        }
+        gen.writeEndArray();
+    }
+
+    private void writePosition(JsonGenerator gen, CoordinateSequence sequence, int index) throws IOException {
+        gen.writeStartArray();
+        gen.writeNumber(round(sequence.getX(index)));
+        gen.writeNumber(round(sequence.getY(index)));
+        if (sequence.hasZ()) {
+            double z = sequence.getZ(index);
+            if (!Double.isNaN(z)) {
+                gen.writeNumber(round(z));
+            }
+        }
+        gen.writeEndArray();
+    }
+
+    private double round(double value) {
+        return Math.round(value * scale) / scale;
+    }
+
+    private static boolean isMulti(Geometry geom) {
+        return geom instanceof MultiPoint || geom instanceof MultiLineString || geom instanceof MultiPolygon;
+    }
+}
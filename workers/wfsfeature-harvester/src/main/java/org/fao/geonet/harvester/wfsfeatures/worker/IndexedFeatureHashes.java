@@ -0,0 +1,153 @@
+/*
+ * Copyright (C) 2001-2021 Food and Agriculture Organization of the
+ * United Nations (FAO-UN), United Nations World Food Programme (WFP)
+ * and United Nations Environment Programme (UNEP)
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or (at
+ * your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301, USA
+ *
+ * Contact: Jeroen Ticheler - FAO - Viale delle Terme di Caracalla 2,
+ * Rome - Italy. email: geonetwork@osgeo.org
+ */
+
+package org.fao.geonet.harvester.wfsfeatures.worker;
+
+import com.google.common.hash.HashFunction;
+import com.google.common.hash.Hashing;
+
+import java.nio.charset.StandardCharsets;
+import java.util.BitSet;
+
+/**
+ * The content hashes of the features of a layer found in the index, by hash of the document id.
+ * While harvesting, the features read are marked as seen: a feature is indexed again only if its
+ * content changed and the features not seen are removed at the end.
+ *
+ * <p>Ids and contents are stored as 64 bits hashes in an open addressing table (about 30 bytes
+ * per feature) so that layers with millions of features can be compared in memory.</p>
+ */
+class IndexedFeatureHashes {
+    private static final HashFunction HASH_FUNCTION = Hashing.murmur3_128();
+    private static final int INITIAL_CAPACITY = 1024;
+
+    private long[] ids = new long[INITIAL_CAPACITY];
+    private long[] hashes = new long[INITIAL_CAPACITY];
+    private BitSet seen = new BitSet(INITIAL_CAPACITY);
+    private int size;
+    private int seenCount;
+
+    static long hashId(String id) {
+        return nonZero(HASH_FUNCTION.hashString(id, StandardCharsets.UTF_8).asLong());
+    }
+
+    static long hashContent(byte[] content) {
+        return nonZero(HASH_FUNCTION.hashBytes(content).asLong());
+    }
+
+    static String toString(long hash) {
+        return Long.toHexString(hash);
+    }
+
+    /**
+     * @return the hash or 0 if it is not a valid hash (eg. document indexed without hash).
+     */
+    static long parse(Object hash) {
+        try {
+            return hash == null ? 0 : Long.parseUnsignedLong(hash.toString(), 16);
+        } catch (NumberFormatException e) {
+            return 0;
+        }
+    }
+
+    /**
+     * Add a feature found in the index.
+     */
+    synchronized void put(long idHash, long contentHash) {
+        if ((size + 1) * 3L > ids.length * 2L) {
+            grow();
+        }
+        int slot = slot(idHash);
+        if (ids[slot] == 0) {
+            ids[slot] = idHash;
+            size++;
+        }
+        hashes[slot] = contentHash;
+    }
+
+    /**
+     * Mark a harvested feature as seen.
+     *
+     * @return true if the feature is indexed with the same content.
+     */
+    synchronized boolean markSeen(long idHash, long contentHash) {
+        int slot = slot(idHash);
+        if (ids[slot] == 0) {
+            return false;
+        }
+        if (!seen.get(slot)) {
+            seen.set(slot);
+            seenCount++;
+        }
+        return hashes[slot] == contentHash;
+    }
+
+    /**
+     * @return true if the feature is indexed but was not harvested.
+     */
+    synchronized boolean isStale(long idHash) {
+        int slot = slot(idHash);
+        return ids[slot] != 0 && !seen.get(slot);
+    }
+
+    synchronized int size() {
+        return size;
+    }
+
+    synchronized int getStaleCount() {
+        return size - seenCount;
+    }
+
+    private int slot(long idHash) {
+        int mask = ids.length - 1;
+        int slot = (int) (idHash ^ (idHash >>> 32)) & mask;
+        while (ids[slot] != 0 && ids[slot] != idHash) {
+            slot = (slot + 1) & mask;
+        }
+        return slot;
+    }
+
+    private void grow() {
+        long[] oldIds = ids;
+        long[] oldHashes = hashes;
+        BitSet oldSeen = seen;
+        ids = new long[oldIds.length * 2];
+        hashes = new long[oldIds.length * 2];
+        seen = new BitSet(ids.length);
+        for (int i = 0; i < oldIds.length; i++) {
+            if (oldIds[i] != 0) {
+                int slot = slot(oldIds[i]);
+                ids[slot] = oldIds[i];
+                hashes[slot] = oldHashes[i];
+                if (oldSeen.get(i)) {
+                    seen.set(slot);
+                }
+            }
+        }
+    }
+
+    // 0 marks the empty slots and the unknown hashes
+    private static long nonZero(long hash) {
+        return hash == 0 ? 1 : hash;
+    }
+}
@@ -0,0 +1,113 @@
+/*
+ * Copyright (C) 2001-2021 Food and Agriculture Organization of the
+ * United Nations (FAO-UN), United Nations World Food Programme (WFP)
+ * and United Nations Environment Programme (UNEP)
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or (at
+ * your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301, USA
+ *
+ * Contact: Jeroen Ticheler - FAO - Viale delle Terme di Caracalla 2,
+ * Rome - Italy. email: geonetwork@osgeo.org
+ */
+
+package org.fao.geonet.harvester.wfsfeatures.worker;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.geotools.geojson.geom.GeometryJSON;
+import org.junit.Test;
+import org.locationtech.jts.geom.Geometry;
+import org.locationtech.jts.io.WKTReader;
+
+import java.util.Iterator;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * The geometries written directly by the feature documents must be the ones written by {@link GeometryJSON}.
+ */
+public class GeoJsonGeometryTest {
+    private static final int DECIMALS = 4;
+
+    private final ObjectMapper mapper = new ObjectMapper();
+    private final WKTReader reader = new WKTReader();
+
+    @Test
+    public void testPoint() throws Exception {
+        assertSameAsGeometryJson("POINT (1.123456789 -45.98765432)");
+    }
+
+    @Test
+    public void testLineString() throws Exception {
+        assertSameAsGeometryJson("LINESTRING (0 0, 1.00004 1.33333333, 2.7182818 3.14159265)");
+    }
+
+    @Test
+    public void testPolygonWithHole() throws Exception {
+        assertSameAsGeometryJson("POLYGON ((0 0, 10 0, 10 10, 0 10, 0 0), (2.22222 2.22222, 3.33333 2.22222, 3.33333 3.33333, 2.22222 2.22222))");
+    }
+
+    @Test
+    public void testMultiGeometries() throws Exception {
+        assertSameAsGeometryJson("MULTIPOINT ((1.11111 2.22222), (3.33333 4.44444))");
+        assertSameAsGeometryJson("MULTILINESTRING ((0 0, 1 1), (2.123456 2.123456, 3 3))");
+        assertSameAsGeometryJson("MULTIPOLYGON (((0 0, 1 0, 1 1, 0 0)), ((5 5, 6.987654 5, 6 6, 5 5)))");
+    }
+
+    @Test
+    public void testGeometryCollection() throws Exception {
+        assertSameAsGeometryJson("GEOMETRYCOLLECTION (POINT (1.123456 2), LINESTRING (0 0, 1 1), POLYGON ((0 0, 1 0, 1 1, 0 0)))");
+    }
+
+    @Test
+    public void testThreeDimensions() throws Exception {
+        assertSameAsGeometryJson("LINESTRING (0 0 10.123456, 1 1 20.98765)");
+    }
+
+    private void assertSameAsGeometryJson(String wkt) throws Exception {
+        Geometry geometry = reader.read(wkt);
+        JsonNode expected = mapper.readTree(new GeometryJSON(DECIMALS).toString(geometry));
+        JsonNode actual = mapper.readTree(mapper.writeValueAsString(new GeoJsonGeometry(geometry, DECIMALS)));
+        assertJsonEquals(wkt, expected, actual);
+    }
+
+    /**
+     * Compare the trees, numbers by value (1 and 1.0 are the same coordinate).
+     */
+    private static void assertJsonEquals(String path, JsonNode expected, JsonNode actual) {
+        if (expected.isNumber()) {
+            assertTrue(path + ": number expected, found " + actual, actual.isNumber());
+            assertEquals(path, expected.asDouble(), actual.asDouble(), 0);
+        } else if (expected.isArray()) {
+            assertTrue(path + ": array expected, found " + actual, actual.isArray());
+            assertEquals(path + ": size", expected.size(), actual.size());
+            for (int i = 0; i < expected.size(); i++) {
+                assertJsonEquals(path + "[" + i + "]", expected.get(i), actual.get(i));
+            }
+        } else if (expected.isObject()) {
+            assertTrue(path + ": object expected, found " + actual, actual.isObject());
+            assertEquals(path + ": fields", expected.size(), actual.size());
+            Iterator<Map.Entry<String, JsonNode>> fields = expected.fields();
+            while (fields.hasNext()) {
+                Map.Entry<String, JsonNode> field = fields.next();
+                assertTrue(path + ": missing " + field.getKey(), actual.has(field.getKey()));
+                assertJsonEquals(path + "." + field.getKey(), field.getValue(), actual.get(field.getKey()));
+            }
+        } else {
+            assertEquals(path, expected, actual);
+        }
+    }
+}
@@ -0,0 +1,102 @@
+/*
+ * Copyright (C) 2001-2021 Food and Agriculture Organization of the
+ * United Nations (FAO-UN), United Nations World Food Programme (WFP)
+ * and United Nations Environment Programme (UNEP)
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or (at
+ * your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301, USA
+ *
+ * Contact: Jeroen Ticheler - FAO - Viale delle Terme di Caracalla 2,
+ * Rome - Italy. email: geonetwork@osgeo.org
+ */
+
+package org.fao.geonet.harvester.wfsfeatures.worker;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.Test;
+
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertTrue;
+
+public class IndexedFeatureHashesTest {
+
+    @Test
+    public void testIncrementalDiff() {
+        IndexedFeatureHashes hashes = new IndexedFeatureHashes();
+        hashes.put(IndexedFeatureHashes.hashId("unchanged"), content("{\"a\":1}"));
+        hashes.put(IndexedFeatureHashes.hashId("changed"), content("{\"a\":2}"));
+        hashes.put(IndexedFeatureHashes.hashId("removed"), content("{\"a\":3}"));
+        assertEquals(3, hashes.size());
+        assertEquals(3, hashes.getStaleCount());
+
+        // only the changed and new features are indexed again
+        assertTrue(hashes.markSeen(IndexedFeatureHashes.hashId("unchanged"), content("{\"a\":1}")));
+        assertFalse(hashes.markSeen(IndexedFeatureHashes.hashId("changed"), content("{\"a\":20}")));
+        assertFalse(hashes.markSeen(IndexedFeatureHashes.hashId("new"), content("{\"a\":4}")));
+        // a feature read twice (eg. on two pages) is counted once
+        assertTrue(hashes.markSeen(IndexedFeatureHashes.hashId("unchanged"), content("{\"a\":1}")));
+
+        // only the features not harvested are removed
+        assertEquals(1, hashes.getStaleCount());
+        assertTrue(hashes.isStale(IndexedFeatureHashes.hashId("removed")));
+        assertFalse(hashes.isStale(IndexedFeatureHashes.hashId("unchanged")));
+        assertFalse(hashes.isStale(IndexedFeatureHashes.hashId("changed")));
+        assertFalse(hashes.isStale(IndexedFeatureHashes.hashId("new")));
+    }
+
+    @Test
+    public void testGrow() {
+        IndexedFeatureHashes hashes = new IndexedFeatureHashes();
+        for (int i = 0; i < 10000; i++) {
+            hashes.put(IndexedFeatureHashes.hashId("f" + i), i + 1);
+        }
+        for (int i = 0; i < 5000; i++) {
+            assertTrue(hashes.markSeen(IndexedFeatureHashes.hashId("f" + i), i + 1));
+        }
+        assertEquals(10000, hashes.size());
+        assertEquals(5000, hashes.getStaleCount());
+        for (int i = 0; i < 10000; i++) {
+            assertEquals(i >= 5000, hashes.isStale(IndexedFeatureHashes.hashId("f" + i)));
+        }
+    }
+
+    @Test
+    public void testDocumentWithFeatureHash() throws Exception {
+        byte[] source = "{\"id\":\"f1\",\"geom\":{\"type\":\"Point\",\"coordinates\":[1.0,2.0]}}"
+            .getBytes(StandardCharsets.UTF_8);
+        long hash = IndexedFeatureHashes.hashContent(source);
+
+        JsonNode document = new ObjectMapper().readTree(EsWFSFeatureIndexer.withFeatureHash(source, hash));
+        assertEquals("f1", document.get("id").asText());
+        assertEquals(hash, IndexedFeatureHashes.parse(document.get("featureHash").asText()));
+    }
+
+    @Test
+    public void testParse() {
+        long hash = IndexedFeatureHashes.hashId("feature");
+        assertEquals(hash, IndexedFeatureHashes.parse(IndexedFeatureHashes.toString(hash)));
+        assertEquals(0, IndexedFeatureHashes.parse(null));
+        assertEquals(0, IndexedFeatureHashes.parse("not a hash"));
+        assertNotEquals(0, IndexedFeatureHashes.hashContent(new byte[0]));
+    }
+
+    private static long content(String json) {
+        return IndexedFeatureHashes.hashContent(json.getBytes(StandardCharsets.UTF_8));
+    }
+}